@@ -1,4 +1,6 @@
 module commuty.parking.access.client {
+    requires java.net.http;
+    requires static jdk.httpserver;
     requires org.slf4j;
     requires com.fasterxml.jackson.annotation;
     requires com.fasterxml.jackson.databind;
@@ -11,4 +13,6 @@ module commuty.parking.access.client {
     exports net.commuty.parking;
     exports net.commuty.parking.model;
     exports net.commuty.parking.http;
+    exports net.commuty.parking.local;
+    exports net.commuty.parking.report;
 }
\ No newline at end of file
@@ -0,0 +1,32 @@
+package net.commuty.parking;
+
+/**
+ * <p>Notified each time the circuit breaker of an endpoint changes its state.</p>
+ * <p>The listener is called by the thread that made the call triggering the change, it must return quickly.</p>
+ * @see Configuration.Builder#withCircuitBreakerListener(CircuitBreakerListener)
+ */
+@FunctionalInterface
+public interface CircuitBreakerListener {
+
+    /**
+     * @param endpoint The endpoint of the circuit breaker (i.e. <code>/v2/parking-sites/%s/access-requests</code>).
+     * @param from The previous state.
+     * @param to The new state.
+     */
+    void onStateChange(String endpoint, State from, State to);
+
+    enum State {
+        /**
+         * The calls are sent to the api.
+         */
+        CLOSED,
+        /**
+         * The api failed or was too slow recently, the calls fail right away without being sent.
+         */
+        OPEN,
+        /**
+         * A few calls are sent to the api, to decide whether the circuit must be closed or opened again.
+         */
+        HALF_OPEN
+    }
+}
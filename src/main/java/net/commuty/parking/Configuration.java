@@ -1,13 +1,18 @@
 package net.commuty.parking;
 
+import net.commuty.parking.http.ApiException;
+import net.commuty.parking.http.HttpClientException;
+import net.commuty.parking.http.HttpRequestException;
+import net.commuty.parking.rest.ParkingAccessAsyncRestClient;
 import net.commuty.parking.rest.ParkingAccessRestClient;
 
 import java.net.*;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  *<p>This will be your entry point to use the Rest client.</p>
  *<p>You need to use the inner Builder class to create a Configuration object,</p>
- *<p>Then you will be able to instantiate a Rest client via the method {@link #toRestClient()}.</p>
+ *<p>Then you will be able to instantiate a Rest client via the method {@link #toRestClient()} (or {@link #toAsyncClient()} for a non-blocking client).</p>
  *<p>For example, if you want to create a client with only the username and password you were given, use this:</p>
  * <code>
  *     ParkingAccess client = Configuration.Builder.buildDefault("a-username", "a-password").toRestClient();
@@ -21,9 +26,18 @@ public class Configuration {
     private final URL host;
     private final Proxy proxy;
     private final RetryStrategy retryStrategy;
+    private final RetryBudget retryBudget;
     private final Timeout timeout;
-
-    private Configuration(String username, String password, URL host, Proxy proxy, RetryStrategy retryStrategy, Timeout timeout) {
+    private final Transport transport;
+    private final TokenRenewal tokenRenewal;
+    private final Compression compression;
+    private final CircuitBreaker circuitBreaker;
+    private final CircuitBreakerListener circuitBreakerListener;
+    private final VerdictCache verdictCache;
+    private final int verificationParallelism;
+    private final RequestScheduler requestScheduler;
+
+    private Configuration(String username, String password, URL host, Proxy proxy, RetryStrategy retryStrategy, RetryBudget retryBudget, Timeout timeout, Transport transport, TokenRenewal tokenRenewal, Compression compression, CircuitBreaker circuitBreaker, CircuitBreakerListener circuitBreakerListener, VerdictCache verdictCache, int verificationParallelism, RequestScheduler requestScheduler) {
         if (username == null) {
             throw new IllegalArgumentException("A username is required. Did you forgot to call the 'withCredentials' method ?");
         }
@@ -36,15 +50,51 @@ public class Configuration {
         if (retryStrategy == null) {
             throw new IllegalArgumentException("A retry strategy is required. Did you forgot to call the 'withRetryStrategy' method ?");
         }
+        if (retryBudget == null) {
+            throw new IllegalArgumentException("A retry budget is required. Did you forgot to call the 'withRetryBudget' method ?");
+        }
         if(timeout == null) {
             throw new IllegalArgumentException("A timeout is required. Did you forgot to call the 'withTimeout' method ?");
         }
+        if (transport == null) {
+            throw new IllegalArgumentException("A transport is required. Did you forgot to call the 'withHttpClientTransport' method ?");
+        }
+        if (tokenRenewal == null) {
+            throw new IllegalArgumentException("A token renewal is required. Did you forgot to call the 'withTokenRenewal' method ?");
+        }
+        if (compression == null) {
+            throw new IllegalArgumentException("A compression is required. Did you forgot to call the 'withCompression' method ?");
+        }
+        if (circuitBreaker == null) {
+            throw new IllegalArgumentException("A circuit breaker is required. Did you forgot to call the 'withCircuitBreaker' method ?");
+        }
+        if (circuitBreakerListener == null) {
+            throw new IllegalArgumentException("A circuit breaker listener is required. Did you forgot to call the 'withCircuitBreakerListener' method ?");
+        }
+        if (verdictCache == null) {
+            throw new IllegalArgumentException("A verdict cache is required. Did you forgot to call the 'withVerdictCache' method ?");
+        }
+        if (verificationParallelism <= 0) {
+            throw new IllegalArgumentException("You must provide a strictly positive verificationParallelism");
+        }
+        if (requestScheduler == null) {
+            throw new IllegalArgumentException("A request scheduler is required. Did you forgot to call the 'withRequestScheduler' method ?");
+        }
         this.username = username;
         this.password = password;
         this.host = host;
         this.proxy = proxy;
         this.retryStrategy = retryStrategy;
+        this.retryBudget = retryBudget;
         this.timeout = timeout;
+        this.transport = transport;
+        this.tokenRenewal = tokenRenewal;
+        this.compression = compression;
+        this.circuitBreaker = circuitBreaker;
+        this.circuitBreakerListener = circuitBreakerListener;
+        this.verdictCache = verdictCache;
+        this.verificationParallelism = verificationParallelism;
+        this.requestScheduler = requestScheduler;
     }
 
     /**
@@ -89,6 +139,15 @@ public class Configuration {
         return retryStrategy;
     }
 
+    /**
+     * Holds the RetryBudget provided at the creation of the builder.
+     * <p>If no retry budget was provided, this will be {@link RetryBudget#DEFAULT}.</p>
+     * @return The retry budget.
+     */
+    public RetryBudget getRetryBudget() {
+        return retryBudget;
+    }
+
     /**
      * Holds the Timeout values provided at the creation of the builder.
      * @return the timeout
@@ -97,6 +156,78 @@ public class Configuration {
         return timeout;
     }
 
+    /**
+     * Holds the Transport provided at the creation of the builder.
+     * <p>If no transport was provided, this will be {@link Transport#DEFAULT}.</p>
+     * @return the transport
+     */
+    public Transport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Holds the TokenRenewal provided at the creation of the builder.
+     * <p>If no token renewal was provided, this will be {@link TokenRenewal#DISABLED}.</p>
+     * @return the token renewal
+     */
+    public TokenRenewal getTokenRenewal() {
+        return tokenRenewal;
+    }
+
+    /**
+     * Holds the Compression provided at the creation of the builder.
+     * <p>If no compression was provided, this will be {@link Compression#DISABLED}.</p>
+     * @return the compression
+     */
+    public Compression getCompression() {
+        return compression;
+    }
+
+    /**
+     * Holds the CircuitBreaker provided at the creation of the builder.
+     * <p>If no circuit breaker was provided, this will be {@link CircuitBreaker#DISABLED}.</p>
+     * @return the circuit breaker
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Holds the CircuitBreakerListener provided at the creation of the builder.
+     * <p>If no listener was provided, this will be a listener that does nothing.</p>
+     * @return the circuit breaker listener
+     */
+    public CircuitBreakerListener getCircuitBreakerListener() {
+        return circuitBreakerListener;
+    }
+
+    /**
+     * Holds the VerdictCache provided at the creation of the builder.
+     * <p>If no cache was provided, this will be {@link VerdictCache#DISABLED}.</p>
+     * @return the verdict cache
+     */
+    public VerdictCache getVerdictCache() {
+        return verdictCache;
+    }
+
+    /**
+     * Holds the maximum number of users verified at the same time by {@link ParkingAccess#areGranted(String, java.util.Collection)}.
+     * <p>If no parallelism was provided, this will be {@link Builder#DEFAULT_VERIFICATION_PARALLELISM}.</p>
+     * @return the verification parallelism
+     */
+    public int getVerificationParallelism() {
+        return verificationParallelism;
+    }
+
+    /**
+     * Holds the RequestScheduler provided at the creation of the builder.
+     * <p>If no scheduler was provided, this will be {@link RequestScheduler#DISABLED}.</p>
+     * @return the request scheduler
+     */
+    public RequestScheduler getRequestScheduler() {
+        return requestScheduler;
+    }
+
     /**
      * Create a new {@link ParkingAccess} Rest client.
      * @return the client.
@@ -105,20 +236,50 @@ public class Configuration {
         return new ParkingAccessRestClient(this);
     }
 
+    /**
+     * Create a new {@link ParkingAccessAsync} Rest client, that returns a {@link java.util.concurrent.CompletableFuture} for every call.
+     * @return the client.
+     */
+    public ParkingAccessAsync toAsyncClient() {
+        return new ParkingAccessAsyncRestClient(this);
+    }
+
+    /**
+     * <p>Decides whether a failed call must be attempted again, and how long to wait before it.</p>
+     * <p>By default, the client waits a fixed interval between attempts. Use {@link Builder#withExponentialBackoff(int, int, int)}
+     * to wait longer after each failure, with a random jitter so that many clients do not retry in lockstep.
+     * To change which failures are retried, extend this class and pass it to {@link Builder#withRetryStrategy(RetryStrategy)}.</p>
+     */
     public static class RetryStrategy {
         public static final RetryStrategy DEFAULT = new RetryStrategy(5, 1000);
         private final int numberOfRetries;
         private final int intervalInMs;
+        private final int maxIntervalInMs;
+        private final Backoff backoff;
+        private final boolean retryOnNetworkErrors;
 
         RetryStrategy(int numberOfRetries, int intervalInMs) {
+            this(numberOfRetries, intervalInMs, intervalInMs, Backoff.FIXED, true);
+        }
+
+        protected RetryStrategy(int numberOfRetries, int intervalInMs, int maxIntervalInMs, Backoff backoff, boolean retryOnNetworkErrors) {
             if (numberOfRetries < 0) {
                 throw new IllegalArgumentException("You must provide a positive numberOfRetries");
             }
             if (intervalInMs < 0) {
                 throw new IllegalArgumentException("You must provide a positive intervalInMs");
             }
+            if (maxIntervalInMs < intervalInMs) {
+                throw new IllegalArgumentException("You must provide a maxIntervalInMs greater than intervalInMs");
+            }
+            if (backoff == null) {
+                throw new IllegalArgumentException("You must provide a backoff");
+            }
             this.numberOfRetries = numberOfRetries;
             this.intervalInMs = intervalInMs;
+            this.maxIntervalInMs = maxIntervalInMs;
+            this.backoff = backoff;
+            this.retryOnNetworkErrors = retryOnNetworkErrors;
         }
 
         public int getNumberOfRetries() {
@@ -128,6 +289,107 @@ public class Configuration {
         public int getIntervalInMs() {
             return intervalInMs;
         }
+
+        public int getMaxIntervalInMs() {
+            return maxIntervalInMs;
+        }
+
+        public Backoff getBackoff() {
+            return backoff;
+        }
+
+        public boolean isRetryOnNetworkErrors() {
+            return retryOnNetworkErrors;
+        }
+
+        /**
+         * <p>The time to wait (in milliseconds) before a retry.</p>
+         * <p>With an exponential backoff, this is a random duration between 0 and <code>intervalInMs * 2^(retry - 1)</code>,
+         * capped to <code>maxIntervalInMs</code> ("full jitter").</p>
+         * @param retry the number of the retry, starting at 1.
+         * @return the time to wait.
+         */
+        public long getIntervalInMs(int retry) {
+            if (backoff == Backoff.FIXED || intervalInMs == 0) {
+                return intervalInMs;
+            }
+            long ceiling = (long) intervalInMs << Math.min(Math.max(0, retry - 1), 30);
+            return ThreadLocalRandom.current().nextLong(Math.min(ceiling, maxIntervalInMs) + 1L);
+        }
+
+        /**
+         * <p>Indicates whether a failure is temporary and the call is worth attempting again.</p>
+         * <p>By default, the server errors (5xx), the throttling (429) and the timeouts (408) are retried.
+         * Network errors are retried if <code>retryOnNetworkErrors</code> is enabled and, for the calls that must not be sent twice
+         * (i.e. reporting access logs), only if the query did not reach the api.</p>
+         * <p>An expired token (403) is always retried once the token is refreshed, whatever this method returns.</p>
+         * @param failure the exception thrown by the call.
+         * @param idempotent whether the call can be sent twice without side effects.
+         * @return <code>true</code> to attempt the call again.
+         */
+        public boolean isRetryable(ApiException failure, boolean idempotent) {
+            if (failure instanceof HttpRequestException) {
+                HttpRequestException exception = (HttpRequestException) failure;
+                return exception.isServerError()
+                        || exception.isTooManyRequests()
+                        || exception.getHttpResponseCode() == HttpURLConnection.HTTP_CLIENT_TIMEOUT;
+            }
+            if (failure instanceof HttpClientException) {
+                return retryOnNetworkErrors && (idempotent || ((HttpClientException) failure).isConnectionFailure());
+            }
+            return false;
+        }
+
+        public enum Backoff {
+            /**
+             * Wait <code>intervalInMs</code> between each attempt.
+             */
+            FIXED,
+            /**
+             * Wait a random duration that doubles after each attempt.
+             */
+            EXPONENTIAL
+        }
+    }
+
+    /**
+     * <p>Limits the number of retries of a client, so that retries cannot multiply the load on the api during an outage.</p>
+     * <p>Each call earns <code>retryRatio</code> retries and each retry spends one. <code>minRetriesPerSecond</code> retries are earned
+     * every second whatever the traffic, so that a client that makes few calls can still retry. The client can save up to
+     * {@link #MAX_SAVED_SECONDS} seconds of retries.</p>
+     * <p>Once the budget is spent, failures are thrown right away until new retries are earned.</p>
+     */
+    public static class RetryBudget {
+        public static final RetryBudget DEFAULT = new RetryBudget(true, 0.2, 10);
+        public static final RetryBudget DISABLED = new RetryBudget(false, 0, 0);
+        public static final int MAX_SAVED_SECONDS = 10;
+        private final boolean enabled;
+        private final double retryRatio;
+        private final int minRetriesPerSecond;
+
+        RetryBudget(boolean enabled, double retryRatio, int minRetriesPerSecond) {
+            if (retryRatio < 0) {
+                throw new IllegalArgumentException("You must provide a positive retryRatio");
+            }
+            if (minRetriesPerSecond < 0) {
+                throw new IllegalArgumentException("You must provide a positive minRetriesPerSecond");
+            }
+            this.enabled = enabled;
+            this.retryRatio = retryRatio;
+            this.minRetriesPerSecond = minRetriesPerSecond;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public double getRetryRatio() {
+            return retryRatio;
+        }
+
+        public int getMinRetriesPerSecond() {
+            return minRetriesPerSecond;
+        }
     }
 
     public static class Timeout {
@@ -155,6 +417,178 @@ public class Configuration {
         }
     }
 
+    public static class Transport {
+        public static final Transport DEFAULT = new Transport(Type.URL_CONNECTION, 0, 0);
+        private final Type type;
+        private final int connectionPoolSize;
+        private final int keepAliveInMs;
+
+        Transport(Type type, int connectionPoolSize, int keepAliveInMs) {
+            if (type == null) {
+                throw new IllegalArgumentException("You must provide a transport type");
+            }
+            if (connectionPoolSize < 0) {
+                throw new IllegalArgumentException("You must provide a positive connectionPoolSize");
+            }
+            if (keepAliveInMs < 0) {
+                throw new IllegalArgumentException("You must provide a positive keepAliveInMs");
+            }
+            this.type = type;
+            this.connectionPoolSize = connectionPoolSize;
+            this.keepAliveInMs = keepAliveInMs;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * The requested pool size. Applied to the whole JVM, and only if it was not set before (see {@link Builder#withHttpClientTransport(int, int)}).
+         */
+        public int getConnectionPoolSize() {
+            return connectionPoolSize;
+        }
+
+        /**
+         * The requested keep-alive. Applied to the whole JVM, and only if it was not set before (see {@link Builder#withHttpClientTransport(int, int)}).
+         */
+        public int getKeepAliveInMs() {
+            return keepAliveInMs;
+        }
+
+        public enum Type {
+            /**
+             * One {@link java.net.HttpURLConnection} per call, available on every Java version.
+             */
+            URL_CONNECTION,
+            /**
+             * A shared <code>java.net.http.HttpClient</code> (HTTP/2 and connection pool), requires Java 11 or above.
+             */
+            HTTP_CLIENT
+        }
+    }
+
+    public static class TokenRenewal {
+        public static final TokenRenewal DISABLED = new TokenRenewal(false, 0, 0);
+        private final boolean enabled;
+        private final int renewBeforeExpiryInMs;
+        private final int jitterInMs;
+
+        TokenRenewal(boolean enabled, int renewBeforeExpiryInMs, int jitterInMs) {
+            if (renewBeforeExpiryInMs < 0) {
+                throw new IllegalArgumentException("You must provide a positive renewBeforeExpiryInMs");
+            }
+            if (jitterInMs < 0) {
+                throw new IllegalArgumentException("You must provide a positive jitterInMs");
+            }
+            this.enabled = enabled;
+            this.renewBeforeExpiryInMs = renewBeforeExpiryInMs;
+            this.jitterInMs = jitterInMs;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public int getRenewBeforeExpiryInMs() {
+            return renewBeforeExpiryInMs;
+        }
+
+        public int getJitterInMs() {
+            return jitterInMs;
+        }
+    }
+
+    public static class Compression {
+        public static final Compression DISABLED = new Compression(false, 0);
+        private final boolean enabled;
+        private final int minRequestSizeInBytes;
+
+        Compression(boolean enabled, int minRequestSizeInBytes) {
+            if (minRequestSizeInBytes < 0) {
+                throw new IllegalArgumentException("You must provide a positive minRequestSizeInBytes");
+            }
+            this.enabled = enabled;
+            this.minRequestSizeInBytes = minRequestSizeInBytes;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public int getMinRequestSizeInBytes() {
+            return minRequestSizeInBytes;
+        }
+    }
+
+    /**
+     * <p>Stops sending the calls of an endpoint for a while when the api fails or is too slow, instead of making every caller wait for the timeouts.</p>
+     * <p>Each endpoint has its own circuit breaker, that records the outcome of its last <code>windowSize</code> calls.
+     * Network errors, server errors (5xx) and throttling (429) count as failures, and a call that takes more than <code>slowCallDurationInMs</code> is slow.
+     * Once the window is full, the circuit opens if the failure rate or the slow call rate reaches its threshold.</p>
+     * <p>While the circuit is open, the calls fail right away with a {@link net.commuty.parking.http.CircuitBreakerOpenException}.
+     * After <code>openDurationInMs</code>, {@link #PERMITTED_CALLS_IN_HALF_OPEN_STATE} calls are let through:
+     * the circuit closes again if their rates are below the thresholds, otherwise it opens for another <code>openDurationInMs</code>.</p>
+     */
+    public static class CircuitBreaker {
+        public static final CircuitBreaker DISABLED = new CircuitBreaker(false, 50, 100, 60000, 100, 60000);
+        public static final int PERMITTED_CALLS_IN_HALF_OPEN_STATE = 3;
+        private final boolean enabled;
+        private final int failureRateThreshold;
+        private final int slowCallRateThreshold;
+        private final int slowCallDurationInMs;
+        private final int windowSize;
+        private final int openDurationInMs;
+
+        CircuitBreaker(boolean enabled, int failureRateThreshold, int slowCallRateThreshold, int slowCallDurationInMs, int windowSize, int openDurationInMs) {
+            if (failureRateThreshold <= 0 || failureRateThreshold > 100) {
+                throw new IllegalArgumentException("You must provide a failureRateThreshold between 1 and 100");
+            }
+            if (slowCallRateThreshold <= 0 || slowCallRateThreshold > 100) {
+                throw new IllegalArgumentException("You must provide a slowCallRateThreshold between 1 and 100");
+            }
+            if (slowCallDurationInMs < 0) {
+                throw new IllegalArgumentException("You must provide a positive slowCallDurationInMs");
+            }
+            if (windowSize <= 0) {
+                throw new IllegalArgumentException("You must provide a strictly positive windowSize");
+            }
+            if (openDurationInMs < 0) {
+                throw new IllegalArgumentException("You must provide a positive openDurationInMs");
+            }
+            this.enabled = enabled;
+            this.failureRateThreshold = failureRateThreshold;
+            this.slowCallRateThreshold = slowCallRateThreshold;
+            this.slowCallDurationInMs = slowCallDurationInMs;
+            this.windowSize = windowSize;
+            this.openDurationInMs = openDurationInMs;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public int getFailureRateThreshold() {
+            return failureRateThreshold;
+        }
+
+        public int getSlowCallRateThreshold() {
+            return slowCallRateThreshold;
+        }
+
+        public int getSlowCallDurationInMs() {
+            return slowCallDurationInMs;
+        }
+
+        public int getWindowSize() {
+            return windowSize;
+        }
+
+        public int getOpenDurationInMs() {
+            return openDurationInMs;
+        }
+    }
+
     /**
      * Build a configuration object that will be used ton instantiate a Rest client.
      * <p>To use this, call <code>Configuration.Builder.create()</code> then chain one or more builder methods.</p>
@@ -163,13 +597,23 @@ public class Configuration {
     public static class Builder {
 
         private static final String DEFAULT_HOST = "https://parking-access.commuty.net";
+        public static final int DEFAULT_VERIFICATION_PARALLELISM = 8;
 
         private URL host = toURL(DEFAULT_HOST);
         private String username;
         private String password;
         private Proxy proxy;
         private RetryStrategy retryStrategy = RetryStrategy.DEFAULT;
+        private RetryBudget retryBudget = RetryBudget.DEFAULT;
         private Timeout timeout = Timeout.DEFAULT;
+        private Transport transport = Transport.DEFAULT;
+        private TokenRenewal tokenRenewal = TokenRenewal.DISABLED;
+        private Compression compression = Compression.DISABLED;
+        private CircuitBreaker circuitBreaker = CircuitBreaker.DISABLED;
+        private CircuitBreakerListener circuitBreakerListener = (endpoint, from, to) -> { };
+        private VerdictCache verdictCache = VerdictCache.DISABLED;
+        private int verificationParallelism = DEFAULT_VERIFICATION_PARALLELISM;
+        private RequestScheduler requestScheduler = RequestScheduler.DISABLED;
 
         private Builder() {
         }
@@ -245,6 +689,54 @@ public class Configuration {
             return this;
         }
 
+        /**
+         * <p>Wait longer after each failed attempt: the time to wait is random, between 0 and <code>initialIntervalInMs</code> after the first failure,
+         * between 0 and twice as much after the second one and so on, up to <code>maxIntervalInMs</code>.</p>
+         * <p>The randomness spreads the retries of many clients that failed at the same time, i.e. when the api recovers from an outage.</p>
+         * @param numberOfRetries The number of calls that must be attempted every time the API is contacted. Must be positive.
+         * @param initialIntervalInMs The maximum time to wait (in milliseconds) after the first failure. Must be positive.
+         * @param maxIntervalInMs The maximum time to wait (in milliseconds) between two attempts. Must be greater than <code>initialIntervalInMs</code>.
+         * @return this builder instance.
+         */
+        public Builder withExponentialBackoff(int numberOfRetries, int initialIntervalInMs, int maxIntervalInMs) {
+            this.retryStrategy = new RetryStrategy(numberOfRetries, initialIntervalInMs, maxIntervalInMs, RetryStrategy.Backoff.EXPONENTIAL, true);
+            return this;
+        }
+
+        /**
+         * <p>Set a custom retry strategy, i.e. a subclass of {@link RetryStrategy} that retries other failures.</p>
+         * @param retryStrategy The retry strategy.
+         * @return this builder instance.
+         */
+        public Builder withRetryStrategy(RetryStrategy retryStrategy) {
+            if (retryStrategy == null) {
+                throw new IllegalArgumentException("RetryStrategy cannot be null.");
+            }
+            this.retryStrategy = retryStrategy;
+            return this;
+        }
+
+        /**
+         * <p>Limit the number of retries of the client, see {@link RetryBudget}.</p>
+         * <p>If you do not call this method, up to 20% of the calls (and at least 10 per second) can be retried.</p>
+         * @param retryRatio The number of retries earned by each call (i.e. 0.1 allows one retry every 10 calls). Must be positive.
+         * @param minRetriesPerSecond The number of retries earned every second, whatever the traffic. Must be positive.
+         * @return this builder instance.
+         */
+        public Builder withRetryBudget(double retryRatio, int minRetriesPerSecond) {
+            this.retryBudget = new RetryBudget(true, retryRatio, minRetriesPerSecond);
+            return this;
+        }
+
+        /**
+         * Never limit the number of retries: every call is attempted as many times as the {@link RetryStrategy} allows.
+         * @return this builder instance.
+         */
+        public Builder withoutRetryBudget() {
+            this.retryBudget = RetryBudget.DISABLED;
+            return this;
+        }
+
         /**
          * Set timeout values
          * @param connectionTimeoutInMs The duration in milliseconds the client will wait during the connection phase of an HTTP Call to the API. Must be positive.
@@ -256,12 +748,134 @@ public class Configuration {
             return this;
         }
 
+        /**
+         * <p>Send the requests with a shared <code>java.net.http.HttpClient</code> instead of one {@link java.net.HttpURLConnection} per call.</p>
+         * <p>Connections are reused between calls and, if the api supports it, concurrent calls are multiplexed on a single HTTP/2 connection.</p>
+         * <p>This requires Java 11 or above. On Java 8, the client falls back on {@link java.net.HttpURLConnection}.</p>
+         * <p>Only HTTP proxies are supported with this transport.</p>
+         * <p><b>The pool settings are not per client.</b> The JDK reads them from the JVM-wide <code>jdk.httpclient.connectionPoolSize</code>
+         * and <code>jdk.httpclient.keepalive.timeout</code> system properties, once, when the first <code>java.net.http.HttpClient</code>
+         * of the JVM is used. They are best-effort: this method sets these properties only if they are not set yet, so they are ignored if
+         * they were given on the command line, if another client was configured first, or if any <code>java.net.http.HttpClient</code>
+         * already ran in the JVM. They also apply to every other <code>java.net.http.HttpClient</code> of your application.
+         * To control them, set the system properties on the command line instead.</p>
+         * @param connectionPoolSize The maximum number of idle HTTP/1.1 connections kept open (0 means unlimited), for the whole JVM and best-effort. Must be positive.
+         * @param keepAliveInMs The duration in milliseconds an idle connection stays open (rounded to seconds), for the whole JVM and best-effort. Must be positive.
+         * @return this builder instance.
+         */
+        public Builder withHttpClientTransport(int connectionPoolSize, int keepAliveInMs) {
+            this.transport = new Transport(Transport.Type.HTTP_CLIENT, connectionPoolSize, keepAliveInMs);
+            return this;
+        }
+
+        /**
+         * <p>Renew the token in the background before it expires, so that no call has to wait for an authentication.</p>
+         * <p>The expiry is read from the token when the api provides it, otherwise the token is considered valid for 24 hours after it was issued.</p>
+         * <p>The renewal happens between <code>renewBeforeExpiryInMs + jitterInMs</code> and <code>renewBeforeExpiryInMs</code> before the expiry.
+         * The random jitter prevents many clients started together from renewing their tokens at the same time.</p>
+         * @param renewBeforeExpiryInMs How long (in milliseconds) before the expiry the token must be renewed. Must be positive.
+         * @param jitterInMs The maximum random duration (in milliseconds) added to <code>renewBeforeExpiryInMs</code>. Must be positive.
+         * @return this builder instance.
+         */
+        public Builder withTokenRenewal(int renewBeforeExpiryInMs, int jitterInMs) {
+            this.tokenRenewal = new TokenRenewal(true, renewBeforeExpiryInMs, jitterInMs);
+            return this;
+        }
+
+        /**
+         * <p>Compress the payloads with gzip, to use less bandwidth on slow or metered networks.</p>
+         * <p>The api is allowed to gzip its responses, which are inflated by the client. The payloads sent by the client
+         * (i.e. the access logs) are gzipped only when they are larger than <code>minRequestSizeInBytes</code>,
+         * as compressing a small payload costs more than it saves.</p>
+         * @param minRequestSizeInBytes The size (in bytes) above which a payload is gzipped. Must be positive.
+         * @return this builder instance.
+         */
+        public Builder withCompression(int minRequestSizeInBytes) {
+            this.compression = new Compression(true, minRequestSizeInBytes);
+            return this;
+        }
+
+        /**
+         * <p>Fail fast when an endpoint of the api is failing or too slow, see {@link CircuitBreaker}.</p>
+         * <p>i.e. <code>withCircuitBreaker(50, 80, 2000, 20, 30000)</code> stops calling an endpoint during 30 seconds when half of its last 20 calls failed,
+         * or when 80% of them took more than 2 seconds.</p>
+         * @param failureRateThreshold The percentage of failed calls that opens the circuit. Must be between 1 and 100.
+         * @param slowCallRateThreshold The percentage of slow calls that opens the circuit. Must be between 1 and 100.
+         * @param slowCallDurationInMs The duration (in milliseconds) above which a call is slow. Must be positive.
+         * @param windowSize The number of calls used to compute the rates. Must be strictly positive.
+         * @param openDurationInMs How long (in milliseconds) the circuit stays open before letting a few calls through. Must be positive.
+         * @return this builder instance.
+         */
+        public Builder withCircuitBreaker(int failureRateThreshold, int slowCallRateThreshold, int slowCallDurationInMs, int windowSize, int openDurationInMs) {
+            this.circuitBreaker = new CircuitBreaker(true, failureRateThreshold, slowCallRateThreshold, slowCallDurationInMs, windowSize, openDurationInMs);
+            return this;
+        }
+
+        /**
+         * Be notified when a circuit breaker opens or closes, i.e. to raise an alert.
+         * @param listener The listener.
+         * @return this builder instance.
+         */
+        public Builder withCircuitBreakerListener(CircuitBreakerListener listener) {
+            if (listener == null) {
+                throw new IllegalArgumentException("CircuitBreakerListener cannot be null.");
+            }
+            this.circuitBreakerListener = listener;
+            return this;
+        }
+
+        /**
+         * <p>Keep the answers of {@link ParkingAccess#isGranted(String, net.commuty.parking.model.UserId)} for a few seconds, see {@link VerdictCache}.</p>
+         * <p>i.e. <code>withVerdictCache(new VerdictCache(10000, 10000, 2000))</code> verifies a user at most once every 10 seconds when granted,
+         * and once every 2 seconds when denied.</p>
+         * @param cache The cache. Keep a reference to it to read its statistics or invalidate answers.
+         * @return this builder instance.
+         */
+        public Builder withVerdictCache(VerdictCache cache) {
+            if (cache == null) {
+                throw new IllegalArgumentException("VerdictCache cannot be null.");
+            }
+            this.verdictCache = cache;
+            return this;
+        }
+
+        /**
+         * <p>Set how many users {@link ParkingAccess#areGranted(String, java.util.Collection)} verifies at the same time, with the
+         * clients created by {@link Configuration#toRestClient()} and {@link Configuration#toAsyncClient()}.</p>
+         * <p>A higher parallelism verifies a long list faster, but sends more requests to the api at once.
+         * Combine it with {@link #withHttpClientTransport(int, int)} so that the requests share a pool of connections.</p>
+         * @param parallelism The number of verifications in flight at the same time. Must be strictly positive. Defaults to {@link #DEFAULT_VERIFICATION_PARALLELISM}.
+         * @return this builder instance.
+         */
+        public Builder withVerificationParallelism(int parallelism) {
+            if (parallelism <= 0) {
+                throw new IllegalArgumentException("You must provide a strictly positive parallelism");
+            }
+            this.verificationParallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * <p>Limit the number of calls in flight, and let the verifications go before the reports and the listings, see {@link RequestScheduler}.</p>
+         * <p>i.e. <code>withRequestScheduler(new RequestScheduler(16, 16, 4, 2))</code> sends at most 16 calls at the same time,
+         * of which at most 4 reports and 2 listings.</p>
+         * @param scheduler The scheduler. Keep a reference to it to read how long the calls of each priority wait.
+         * @return this builder instance.
+         */
+        public Builder withRequestScheduler(RequestScheduler scheduler) {
+            if (scheduler == null) {
+                throw new IllegalArgumentException("RequestScheduler cannot be null.");
+            }
+            this.requestScheduler = scheduler;
+            return this;
+        }
+
         /**
          * Creates a Configuration instance.
          * @return a new Configuration that will allow you to create a Rest client.
          */
         public Configuration build() {
-            return new Configuration(username, password, host, proxy, retryStrategy, timeout);
+            return new Configuration(username, password, host, proxy, retryStrategy, retryBudget, timeout, transport, tokenRenewal, compression, circuitBreaker, circuitBreakerListener, verdictCache, verificationParallelism, requestScheduler);
         }
 
         /**
@@ -0,0 +1,187 @@
+package net.commuty.parking;
+
+import net.commuty.parking.model.WebhookMessage;
+import net.commuty.parking.model.WebhookMessageOperation;
+import org.slf4j.Logger;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static net.commuty.parking.model.WebhookMessageOperation.CREATE;
+import static net.commuty.parking.model.WebhookMessageOperation.REMOVE;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * <p>Makes sure that a {@link WebhookListener} handles each access right change once, and in order, even though the webhook
+ * messages are sent again when they are not acknowledged, and may arrive in any order.</p>
+ * <p>The messages are keyed by the id of their access right ({@link net.commuty.parking.model.AccessRight#getId()}, or
+ * {@link WebhookMessage#getId()} when the right has no id). An access right is created once, then removed once. So:</p>
+ * <ul>
+ *     <li>a creation or a removal already handled is a duplicate, and is dropped;</li>
+ *     <li>a creation received after the removal of the same right is stale, and is dropped as well.</li>
+ * </ul>
+ * <p>The operations handled are remembered during <code>windowInMs</code>, and at most <code>maxSize</code> access rights are
+ * remembered (the oldest ones are forgotten first). The window should be longer than the time during which a message
+ * can be sent again.</p>
+ * <p>The messages of the same access right are handed to the listener one at a time, the messages of different access rights
+ * are handled in parallel. A message the listener fails to handle is not remembered, so that it is handled when it is sent again.</p>
+ * <pre>
+ * new WebhookReceiver(address, "/commuty/webhook", new IdempotentWebhookListener(listener, 100000, 86400000));
+ * </pre>
+ */
+public class IdempotentWebhookListener implements WebhookListener {
+
+    private static final Logger LOG = getLogger(IdempotentWebhookListener.class);
+
+    private static final int STRIPES = 64;
+
+    private final WebhookListener listener;
+    private final int maxSize;
+    private final long windowInNanos;
+    private final LongSupplier nanoTime;
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+    private final LinkedHashMap<UUID, Handled> handled = new LinkedHashMap<>();
+    private final LongAdder processedCount = new LongAdder();
+    private final LongAdder duplicateCount = new LongAdder();
+    private final LongAdder reorderedCount = new LongAdder();
+
+    /**
+     * @param listener The listener that applies the changes.
+     * @param maxSize The maximum number of access rights remembered. Must be strictly positive.
+     * @param windowInMs How long (in ms) an access right is remembered. Must be strictly positive.
+     */
+    public IdempotentWebhookListener(WebhookListener listener, int maxSize, int windowInMs) {
+        this(listener, maxSize, windowInMs, System::nanoTime);
+    }
+
+    IdempotentWebhookListener(WebhookListener listener, int maxSize, int windowInMs, LongSupplier nanoTime) {
+        if (listener == null) {
+            throw new IllegalArgumentException("The listener cannot be null");
+        }
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("You must provide a strictly positive maxSize");
+        }
+        if (windowInMs <= 0) {
+            throw new IllegalArgumentException("You must provide a strictly positive windowInMs");
+        }
+        this.listener = listener;
+        this.maxSize = maxSize;
+        this.windowInNanos = MILLISECONDS.toNanos(windowInMs);
+        this.nanoTime = nanoTime;
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            locks[stripe] = new ReentrantLock();
+        }
+    }
+
+    @Override
+    public void onCreate(WebhookMessage message) throws Exception {
+        handle(message, CREATE);
+    }
+
+    @Override
+    public void onRemove(WebhookMessage message) throws Exception {
+        handle(message, REMOVE);
+    }
+
+    /**
+     * The number of messages handed to the listener.
+     */
+    public long getProcessedCount() {
+        return processedCount.sum();
+    }
+
+    /**
+     * The number of messages dropped because they were already handled.
+     */
+    public long getDuplicateCount() {
+        return duplicateCount.sum();
+    }
+
+    /**
+     * The number of creations dropped because the access right was already removed.
+     */
+    public long getReorderedCount() {
+        return reorderedCount.sum();
+    }
+
+    private void handle(WebhookMessage message, WebhookMessageOperation operation) throws Exception {
+        UUID key = keyOf(message);
+        if (key == null) {
+            apply(message, operation);
+            return;
+        }
+        ReentrantLock lock = locks[(key.hashCode() & 0x7fffffff) % STRIPES];
+        lock.lock();
+        try {
+            WebhookMessageOperation previous = lastOperation(key);
+            if (previous == operation) {
+                LOG.debug("Webhook message {} ({}) already handled, dropped", message.getId(), operation);
+                duplicateCount.increment();
+                return;
+            }
+            if (previous == REMOVE) {
+                LOG.debug("Access right {} already removed, creation dropped", key);
+                reorderedCount.increment();
+                return;
+            }
+            apply(message, operation);
+            remember(key, operation);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void apply(WebhookMessage message, WebhookMessageOperation operation) throws Exception {
+        if (operation == CREATE) {
+            listener.onCreate(message);
+        } else {
+            listener.onRemove(message);
+        }
+        processedCount.increment();
+    }
+
+    private synchronized WebhookMessageOperation lastOperation(UUID key) {
+        evictExpired(nanoTime.getAsLong());
+        Handled last = handled.get(key);
+        return last != null ? last.operation : null;
+    }
+
+    private synchronized void remember(UUID key, WebhookMessageOperation operation) {
+        long now = nanoTime.getAsLong();
+        // re-inserted, so that the entries stay sorted by the time they were handled
+        handled.remove(key);
+        handled.put(key, new Handled(operation, now + windowInNanos));
+        if (handled.size() > maxSize) {
+            Iterator<Handled> eldest = handled.values().iterator();
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    private void evictExpired(long now) {
+        Iterator<Handled> eldest = handled.values().iterator();
+        while (eldest.hasNext() && now - eldest.next().expiresAt >= 0) {
+            eldest.remove();
+        }
+    }
+
+    private static UUID keyOf(WebhookMessage message) {
+        UUID id = message.getAccessRight() != null ? message.getAccessRight().getId() : null;
+        return id != null ? id : message.getId();
+    }
+
+    private static final class Handled {
+        private final WebhookMessageOperation operation;
+        private final long expiresAt;
+
+        private Handled(WebhookMessageOperation operation, long expiresAt) {
+            this.operation = operation;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
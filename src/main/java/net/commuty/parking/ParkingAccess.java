@@ -1,23 +1,23 @@
 package net.commuty.parking;
 
+import net.commuty.parking.http.ApiException;
 import net.commuty.parking.http.CredentialsException;
 import net.commuty.parking.http.HttpClientException;
 import net.commuty.parking.http.HttpRequestException;
+import net.commuty.parking.http.PartialVerificationException;
 import net.commuty.parking.model.*;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.util.Collection;
-import java.util.List;
-import java.util.Set;
-import java.util.UUID;
+import java.util.*;
+import java.util.stream.Stream;
 
 /**
  * <p>This is the client you must use to query the parking access api of Commuty.</p>
  * <p>To create this client, use the {@link net.commuty.parking.Configuration.Builder}
  * (via the {@link Configuration.Builder#create()} or {@link Configuration.Builder#buildDefault(String, String)}.</p>
  */
-public interface ParkingAccess {
+public interface ParkingAccess extends AutoCloseable {
 
     /**
      * <p>Retrieve a token based on the username and password you provided at the creation of the Builder.</p>
@@ -42,6 +42,35 @@ public interface ParkingAccess {
      */
     boolean isGranted(String parkingSiteId, UserId user) throws CredentialsException, HttpRequestException, HttpClientException;
 
+    /**
+     * <p>Check whether several {@link UserId} are allowed to enter the parking site (or not) when the request is made, i.e. a list of visitors.</p>
+     * <p>Each user is verified with {@link #isGranted(String, UserId)}. When a user cannot be verified, the others are still verified.</p>
+     * <p>This default implementation verifies the users one after the other. The client created by {@link Configuration#toRestClient()}
+     * verifies them in parallel, up to {@link Configuration.Builder#withVerificationParallelism(int)} at a time.</p>
+     * @param parkingSiteId The identifier of the parking site that was given by Commuty.
+     * @param users The {@link UserId}s to check.
+     * @return For each user, <code>true</code> if the user is allowed on the site, <code>false</code> otherwise.
+     * @throws PartialVerificationException At least one user could not be verified. The exception holds the answers of the other users, and the failure of each user that could not be verified.
+     */
+    default Map<UserId, Boolean> areGranted(String parkingSiteId, Collection<UserId> users) throws PartialVerificationException {
+        if (users == null) {
+            throw new IllegalArgumentException("Users cannot be null");
+        }
+        Map<UserId, Boolean> verified = new LinkedHashMap<>();
+        Map<UserId, ApiException> failures = new LinkedHashMap<>();
+        for (UserId user : new LinkedHashSet<>(users)) {
+            try {
+                verified.put(user, isGranted(parkingSiteId, user));
+            } catch (ApiException e) {
+                failures.put(user, e);
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw new PartialVerificationException(verified, failures);
+        }
+        return verified;
+    }
+
     /**
      * <p>List all users (identified by one or more {@link UserId}) that are <b>allowed</b> or <b>denied</b> on the parking site today.</p>
      * <p>This will return all accesses of the current day, even if they were already retrieved.</p>
@@ -90,6 +119,32 @@ public interface ParkingAccess {
                                              UUID subjectId,
                                              Set<AccessRightAttributeName> includeAttributes) throws CredentialsException, HttpRequestException, HttpClientException;
 
+    /**
+     * <p>Same as {@link #listAccessRights(LocalDate, Boolean, Boolean, LocalDateTime, Boolean, String, UUID, Set)}, but the access rights are read one at a time while the response is received.</p>
+     * <p>Use this method when the response is too large to be kept in memory at once: only the current {@link AccessRight} is held by the client, whatever the size of the response.</p>
+     * <p>The connection stays open until the stream is closed, so always use a try-with-resources block:</p>
+     * <pre>
+     * try (Stream&lt;AccessRight&gt; accessRights = client.streamAccessRights(null, null, null, null, null, null, null, emptySet())) {
+     *     accessRights.forEach(localCache::put);
+     * }
+     * </pre>
+     * <p>The retry strategy only applies until the api starts sending the response. If the connection breaks while the stream is consumed, an {@link java.io.UncheckedIOException} is thrown.</p>
+     * @return A stream of {@link AccessRight}, that must be closed.
+     * @throws CredentialsException Your username or password is invalid.
+     * @throws HttpRequestException The query was sent to the api but the status is unsuccessful (HTTP status code &ge; 400). See {@link HttpRequestException} for more details.
+     * @throws HttpClientException The query did not reached the api, i.e. there was a network issue.
+     */
+    default Stream<AccessRight> streamAccessRights(LocalDate date,
+                                                   Boolean unreadOnly,
+                                                   Boolean dryRun,
+                                                   LocalDateTime createdAfter,
+                                                   Boolean granted,
+                                                   String parkingSiteId,
+                                                   UUID subjectId,
+                                                   Set<AccessRightAttributeName> includeAttributes) throws CredentialsException, HttpRequestException, HttpClientException {
+        return listAccessRights(date, unreadOnly, dryRun, createdAfter, granted, parkingSiteId, subjectId, includeAttributes).stream();
+    }
+
     /**
      * <p>Report to Commuty one or more {@link AccessLog} of users that entered/exited the parking site.</p>
      * <p>This will allow Commuty to create attendance reports for parking site owners.</p>
@@ -160,4 +215,12 @@ public interface ParkingAccess {
      * @throws HttpClientException The query did not reached the api, i.e. there was a network issue.
      */
     UUID reportApplicationLog(ApplicationLog log) throws CredentialsException, HttpRequestException, HttpClientException;
+
+    /**
+     * <p>Stop the background work of the client (i.e. the token renewal), once you no longer use it.</p>
+     * <p>The calls already in flight are not interrupted.</p>
+     */
+    @Override
+    default void close() {
+    }
 }
@@ -0,0 +1,170 @@
+package net.commuty.parking;
+
+import net.commuty.parking.http.ApiException;
+import net.commuty.parking.http.CredentialsException;
+import net.commuty.parking.http.HttpClientException;
+import net.commuty.parking.http.HttpRequestException;
+import net.commuty.parking.http.PartialVerificationException;
+import net.commuty.parking.model.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * <p>The non-blocking counterpart of {@link ParkingAccess}.</p>
+ * <p>Every method returns immediately with a {@link CompletableFuture}. Waiting between two attempts does not block any thread,
+ * the retries are scheduled on a timer.</p>
+ * <p>When a call fails, the future completes exceptionally with one of the exceptions the blocking client would throw:</p>
+ * <ul>
+ *     <li>{@link CredentialsException}: your username or password is invalid.</li>
+ *     <li>{@link HttpRequestException}: the query was sent to the api but the status is unsuccessful (HTTP status code &ge; 400).</li>
+ *     <li>{@link HttpClientException}: the query did not reached the api, i.e. there was a network issue.</li>
+ * </ul>
+ * <p>Invalid arguments are rejected right away with an {@link IllegalArgumentException}.</p>
+ * <p>To send requests without holding a thread during the network round-trip, combine this client with
+ * {@link Configuration.Builder#withHttpClientTransport(int, int)} (Java 11 or above). With the default transport,
+ * each request in flight still holds one thread of an internal pool.</p>
+ * <p>To create this client, use the {@link Configuration.Builder} then call {@link Configuration#toAsyncClient()}.</p>
+ */
+public interface ParkingAccessAsync extends AutoCloseable {
+
+    /**
+     * <p>Retrieve a token based on the username and password you provided at the creation of the Builder.</p>
+     * <p>You don't need to use this method as the client will handle authentication for you.</p>
+     * @return The token generated by the api. The token is valid for 24 hours.
+     * @see ParkingAccess#authenticate()
+     */
+    CompletableFuture<String> authenticate();
+
+    /**
+     * <p>Check whether a {@link UserId} is allowed to enter the parking site (or not) when the request is made.</p>
+     * @param parkingSiteId The identifier of the parking site that was given by Commuty.
+     * @param user The {@link UserId} to check.
+     * @return <code>true</code> if the user is allowed on the site, <code>false</code> otherwise.
+     * @see ParkingAccess#isGranted(String, UserId)
+     */
+    CompletableFuture<Boolean> isGranted(String parkingSiteId, UserId user);
+
+    /**
+     * <p>Check whether several {@link UserId} are allowed to enter the parking site (or not) when the request is made.</p>
+     * <p>When a user cannot be verified, the others are still verified, and the future completes exceptionally with a
+     * {@link PartialVerificationException} that holds the answers of the other users.</p>
+     * <p>This default implementation starts the verification of every user at once, without any bound: a long list sends as
+     * many requests at the same time. The client created by {@link Configuration#toAsyncClient()} verifies at most
+     * {@link Configuration.Builder#withVerificationParallelism(int)} users at a time.</p>
+     * @param parkingSiteId The identifier of the parking site that was given by Commuty.
+     * @param users The {@link UserId}s to check.
+     * @return For each user, <code>true</code> if the user is allowed on the site, <code>false</code> otherwise.
+     * @see ParkingAccess#areGranted(String, Collection)
+     */
+    default CompletableFuture<Map<UserId, Boolean>> areGranted(String parkingSiteId, Collection<UserId> users) {
+        if (users == null) {
+            throw new IllegalArgumentException("Users cannot be null");
+        }
+        Map<UserId, CompletableFuture<Boolean>> verifications = new LinkedHashMap<>();
+        for (UserId user : users) {
+            verifications.computeIfAbsent(user, id -> isGranted(parkingSiteId, id));
+        }
+        return CompletableFuture.allOf(verifications.values().toArray(new CompletableFuture<?>[0])).handle((ignored, error) -> {
+            Map<UserId, Boolean> verified = new LinkedHashMap<>();
+            Map<UserId, ApiException> failures = new LinkedHashMap<>();
+            verifications.forEach((user, verification) -> {
+                try {
+                    verified.put(user, verification.join());
+                } catch (CompletionException e) {
+                    if (!(e.getCause() instanceof ApiException)) {
+                        throw e;
+                    }
+                    failures.put(user, (ApiException) e.getCause());
+                }
+            });
+            if (!failures.isEmpty()) {
+                throw new CompletionException(new PartialVerificationException(verified, failures));
+            }
+            return verified;
+        });
+    }
+
+    /**
+     * <p>List all users (identified by one or more {@link UserId}) that are <b>allowed</b> or <b>denied</b> on the parking site today.</p>
+     * @return One or more {@link AccessRight}.
+     * @see ParkingAccess#listAccessRightsForToday()
+     */
+    CompletableFuture<Collection<AccessRight>> listAccessRightsForToday();
+
+    /**
+     * <p>List all users (identified by one or more {@link UserId}) that are <b>allowed</b> or <b>denied</b> on the parking site today.</p>
+     * @param unreadOnly Whether you want to retrieve unread only accesses (<code>true</code>) or all accesses (<code>false</code>)
+     * @return One or more {@link AccessRight}.
+     * @see ParkingAccess#listAccessRightsForToday(boolean)
+     */
+    CompletableFuture<Collection<AccessRight>> listAccessRightsForToday(boolean unreadOnly);
+
+    /**
+     * <p>List all users (identified by one or more {@link UserId}) that are <b>allowed</b> or <b>denied</b> on the parking site for a given day.</p>
+     * <p>See {@link ParkingAccess#listAccessRights(LocalDate, Boolean, Boolean, LocalDateTime, Boolean, String, UUID, Set)} for the meaning of each parameter.</p>
+     * @return One or more {@link AccessRight}.
+     */
+    CompletableFuture<Collection<AccessRight>> listAccessRights(LocalDate date,
+                                                                Boolean unreadOnly,
+                                                                Boolean dryRun,
+                                                                LocalDateTime createdAfter,
+                                                                Boolean granted,
+                                                                String parkingSiteId,
+                                                                UUID subjectId,
+                                                                Set<AccessRightAttributeName> includeAttributes);
+
+    /**
+     * <p>Report to Commuty one or more {@link AccessLog} of users that entered/exited the parking site.</p>
+     * @param parkingSiteId The identifier of the parking site that was given by Commuty.
+     * @param accessLogs A collection of one or more {@link AccessLog}.
+     * @return An identifier of the request you made. This can be kept for further reference
+     * @see ParkingAccess#reportAccessLog(String, Collection)
+     */
+    CompletableFuture<String> reportAccessLog(String parkingSiteId, Collection<AccessLog> accessLogs);
+
+    /**
+     * <p>Report any user (identified by an id and a {@link net.commuty.parking.model.UserIdType}) that is known by you but not by Commuty.</p>
+     * @param user The {@link UserId} to report to Commuty.
+     * @return The reported user.
+     * @see ParkingAccess#reportMissingUserId(UserId)
+     */
+    CompletableFuture<UserId> reportMissingUserId(UserId user);
+
+    /**
+     * <p>Report the number of available spots (and optionally the total number of spots) on a parking site.</p>
+     * @param parkingSiteId The identifier of the parking site that was given by Commuty.
+     * @param count The number of available spots at the time of the submission.
+     * @param total The total number of spots (the size of the parking site) at the time of the submission. Ca be <code>null</code>.
+     * @return The reported counts.
+     * @see ParkingAccess#reportAvailableSpotCount(String, int, Integer)
+     */
+    CompletableFuture<Count> reportAvailableSpotCount(String parkingSiteId, int count, Integer total);
+
+    /**
+     * <p>Lists all the parking spot of a given parking site.</p>
+     * @param parkingSiteId The identifier of the parking site that was given by Commuty. must not be null or blank
+     * @return the active (not deleted) {@link ParkingSpot}s for the given parking site.
+     * @see ParkingAccess#listParkingSpots(String)
+     */
+    CompletableFuture<List<ParkingSpot>> listParkingSpots(String parkingSiteId);
+
+    /**
+     * <p>Submit an application log to Commuty.</p>
+     * <p>Read the recommendations of {@link ParkingAccess#reportApplicationLog(ApplicationLog)} before using this method.</p>
+     * @param log The application log to send.
+     * @return The application log's id once it is saved by the API.
+     */
+    CompletableFuture<UUID> reportApplicationLog(ApplicationLog log);
+
+    /**
+     * <p>Stop the background work of the client (i.e. the token renewal), once you no longer use it.</p>
+     * @see ParkingAccess#close()
+     */
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,272 @@
+package net.commuty.parking;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * <p>Limits the number of calls a client sends at the same time, and lets the calls of a barrier go first when the limit is
+ * reached, so that a gate decision never waits behind a large listing or a log upload.</p>
+ * <p>Each call belongs to a {@link Priority}, and each priority is a bulkhead: at most <code>maxConcurrentCalls</code> calls
+ * are in flight on the whole client, and at most the limit of its priority in each priority. A call over a limit waits in the
+ * queue of its priority. When a call ends, the queued calls are let through by priority ({@link Priority#INTERACTIVE} first),
+ * then in the order they arrived.</p>
+ * <p>i.e. <code>new RequestScheduler(16, 16, 4, 2)</code> lets at most 6 background calls in flight, so that 10 calls are
+ * always available for the verifications.</p>
+ * <p>Pass the scheduler to {@link Configuration.Builder#withRequestScheduler(RequestScheduler)} and keep a reference to it to
+ * read the {@link #getStats(Priority)} of each priority, i.e. how long its calls waited in the queue. A call that is retried
+ * waits again at each attempt, but not during the interval between two attempts. The scheduler applies to the client created
+ * by {@link Configuration#toRestClient()}.</p>
+ */
+public class RequestScheduler {
+
+    /**
+     * A scheduler that never makes a call wait.
+     */
+    public static final RequestScheduler DISABLED = new RequestScheduler();
+
+    private final boolean enabled;
+    private final int maxConcurrentCalls;
+    private final Map<Priority, Bulkhead> bulkheads = new EnumMap<>(Priority.class);
+    private final ReentrantLock lock = new ReentrantLock();
+    private int runningCount;
+
+    /**
+     * @param maxConcurrentCalls The maximum number of calls in flight, whatever their priority. Must be strictly positive.
+     * @param maxInteractiveCalls The maximum number of {@link Priority#INTERACTIVE} calls in flight. Must be between 1 and <code>maxConcurrentCalls</code>.
+     * @param maxReportingCalls The maximum number of {@link Priority#REPORTING} calls in flight. Must be between 1 and <code>maxConcurrentCalls</code>.
+     * @param maxListingCalls The maximum number of {@link Priority#LISTING} calls in flight. Must be between 1 and <code>maxConcurrentCalls</code>.
+     */
+    public RequestScheduler(int maxConcurrentCalls, int maxInteractiveCalls, int maxReportingCalls, int maxListingCalls) {
+        if (maxConcurrentCalls <= 0) {
+            throw new IllegalArgumentException("You must provide a strictly positive maxConcurrentCalls");
+        }
+        this.enabled = true;
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        bulkheads.put(Priority.INTERACTIVE, new Bulkhead(validate("maxInteractiveCalls", maxInteractiveCalls, maxConcurrentCalls)));
+        bulkheads.put(Priority.REPORTING, new Bulkhead(validate("maxReportingCalls", maxReportingCalls, maxConcurrentCalls)));
+        bulkheads.put(Priority.LISTING, new Bulkhead(validate("maxListingCalls", maxListingCalls, maxConcurrentCalls)));
+    }
+
+    private RequestScheduler() {
+        this.enabled = false;
+        this.maxConcurrentCalls = 0;
+        for (Priority priority : Priority.values()) {
+            bulkheads.put(priority, new Bulkhead(0));
+        }
+    }
+
+    private static int validate(String name, int maxCalls, int maxConcurrentCalls) {
+        if (maxCalls <= 0 || maxCalls > maxConcurrentCalls) {
+            throw new IllegalArgumentException("You must provide a " + name + " between 1 and maxConcurrentCalls");
+        }
+        return maxCalls;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * <p>Wait until a call of this priority can be sent. Each call to this method must be followed by a call to
+     * {@link #release(Priority)} once the call ended.</p>
+     * @throws InterruptedException if the thread was interrupted while waiting, the call must not be sent (nor released).
+     */
+    public void acquire(Priority priority) throws InterruptedException {
+        if (!enabled) {
+            return;
+        }
+        Bulkhead bulkhead = bulkheads.get(priority);
+        lock.lock();
+        try {
+            Waiter waiter = new Waiter(System.nanoTime(), lock.newCondition());
+            bulkhead.queue.add(waiter);
+            dispatch();
+            try {
+                while (!waiter.admitted) {
+                    waiter.condition.await();
+                }
+            } catch (InterruptedException e) {
+                if (waiter.admitted) {
+                    // let through while interrupted, give the place to the next call
+                    release(priority);
+                } else {
+                    bulkhead.queue.remove(waiter);
+                }
+                throw e;
+            }
+            bulkhead.record(System.nanoTime() - waiter.queuedAt);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * <p>Mark a call of this priority as ended, and let the next queued call through.</p>
+     */
+    public void release(Priority priority) {
+        if (!enabled) {
+            return;
+        }
+        lock.lock();
+        try {
+            bulkheads.get(priority).runningCount--;
+            runningCount--;
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of calls and how long they waited in the queue, since the scheduler was created.
+     */
+    public Stats getStats(Priority priority) {
+        Bulkhead bulkhead = bulkheads.get(priority);
+        lock.lock();
+        try {
+            return new Stats(bulkhead.callCount, bulkhead.totalWaitInNanos, bulkhead.maxWaitInNanos, bulkhead.runningCount, bulkhead.queue.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Let the queued calls through while there is room, by priority (the bulkheads are sorted by priority).
+     * Only the threads let through are woken up.
+     */
+    private void dispatch() {
+        for (Bulkhead bulkhead : bulkheads.values()) {
+            while (runningCount < maxConcurrentCalls && bulkhead.runningCount < bulkhead.maxCalls && !bulkhead.queue.isEmpty()) {
+                Waiter waiter = bulkhead.queue.poll();
+                waiter.admitted = true;
+                waiter.condition.signal();
+                bulkhead.runningCount++;
+                runningCount++;
+            }
+        }
+    }
+
+    /**
+     * The priorities of the calls, from the first to be let through to the last.
+     */
+    public enum Priority {
+        /**
+         * The verifications of a user in front of a barrier: {@link ParkingAccess#isGranted(String, net.commuty.parking.model.UserId)}
+         * and {@link ParkingAccess#areGranted(String, java.util.Collection)}.
+         */
+        INTERACTIVE,
+        /**
+         * The reports sent to Commuty: access logs, application logs, missing users and available spots.
+         */
+        REPORTING,
+        /**
+         * The listings of access rights and parking spots. A streamed listing is in flight until its stream is closed.
+         */
+        LISTING
+    }
+
+    public static class Stats {
+        private final long callCount;
+        private final long totalWaitInNanos;
+        private final long maxWaitInNanos;
+        private final int runningCount;
+        private final int queuedCount;
+
+        Stats(long callCount, long totalWaitInNanos, long maxWaitInNanos, int runningCount, int queuedCount) {
+            this.callCount = callCount;
+            this.totalWaitInNanos = totalWaitInNanos;
+            this.maxWaitInNanos = maxWaitInNanos;
+            this.runningCount = runningCount;
+            this.queuedCount = queuedCount;
+        }
+
+        /**
+         * The number of calls let through (each attempt of a retried call counts).
+         */
+        public long getCallCount() {
+            return callCount;
+        }
+
+        /**
+         * The time (in ms) spent in the queue by all the calls.
+         */
+        public long getTotalWaitTimeInMs() {
+            return NANOSECONDS.toMillis(totalWaitInNanos);
+        }
+
+        /**
+         * The longest time (in ms) a call spent in the queue.
+         */
+        public long getMaxWaitTimeInMs() {
+            return NANOSECONDS.toMillis(maxWaitInNanos);
+        }
+
+        /**
+         * The average time (in ms) a call spent in the queue.
+         */
+        public double getAverageWaitTimeInMs() {
+            return callCount == 0 ? 0 : totalWaitInNanos / (double) MILLISECONDS.toNanos(1) / callCount;
+        }
+
+        /**
+         * The number of calls currently in flight.
+         */
+        public int getRunningCount() {
+            return runningCount;
+        }
+
+        /**
+         * The number of calls currently waiting in the queue.
+         */
+        public int getQueuedCount() {
+            return queuedCount;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "callCount=" + callCount +
+                    ", totalWaitTimeInMs=" + getTotalWaitTimeInMs() +
+                    ", maxWaitTimeInMs=" + getMaxWaitTimeInMs() +
+                    ", runningCount=" + runningCount +
+                    ", queuedCount=" + queuedCount +
+                    '}';
+        }
+    }
+
+    private static final class Bulkhead {
+        private final int maxCalls;
+        private final ArrayDeque<Waiter> queue = new ArrayDeque<>();
+        private int runningCount;
+        private long callCount;
+        private long totalWaitInNanos;
+        private long maxWaitInNanos;
+
+        private Bulkhead(int maxCalls) {
+            this.maxCalls = maxCalls;
+        }
+
+        private void record(long waitInNanos) {
+            callCount++;
+            totalWaitInNanos += waitInNanos;
+            maxWaitInNanos = Math.max(maxWaitInNanos, waitInNanos);
+        }
+    }
+
+    private static final class Waiter {
+        private final long queuedAt;
+        private final Condition condition;
+        private boolean admitted;
+
+        private Waiter(long queuedAt, Condition condition) {
+            this.queuedAt = queuedAt;
+            this.condition = condition;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package net.commuty.parking;
+
+import net.commuty.parking.model.UserId;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.LongSupplier;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * <p>Keeps the answers of {@link ParkingAccess#isGranted(String, UserId)} for a few seconds, so that a badge swiped twice or a
+ * license plate read several times by a camera is verified only once.</p>
+ * <p>A granted answer is kept during <code>grantedTtlInMs</code> and a denied answer during <code>deniedTtlInMs</code>
+ * (i.e. a shorter time, so that a user who just received an access is let in quickly).
+ * When the cache holds <code>maxSize</code> answers, the least recently used one is dropped.</p>
+ * <p>Pass the cache to {@link Configuration.Builder#withVerdictCache(VerdictCache)} and keep a reference to it to read its
+ * {@link #getStats()} or to {@link #invalidate(String, UserId)} an answer when you know that a right changed.
+ * A verification that is already in flight when an answer is invalidated may still store its result.</p>
+ */
+public class VerdictCache {
+
+    /**
+     * A cache that never keeps any answer.
+     */
+    public static final VerdictCache DISABLED = new VerdictCache();
+
+    private final boolean enabled;
+    private final int maxSize;
+    private final long grantedTtlInNanos;
+    private final long deniedTtlInNanos;
+    private final LongSupplier nanoTime;
+    private final LinkedHashMap<Key, Verdict> verdicts;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * @param maxSize The maximum number of answers kept. Must be strictly positive.
+     * @param grantedTtlInMs How long (in ms) a granted answer is kept. Must be positive.
+     * @param deniedTtlInMs How long (in ms) a denied answer is kept. Must be positive.
+     */
+    public VerdictCache(int maxSize, int grantedTtlInMs, int deniedTtlInMs) {
+        this(maxSize, grantedTtlInMs, deniedTtlInMs, System::nanoTime);
+    }
+
+    VerdictCache(int maxSize, int grantedTtlInMs, int deniedTtlInMs, LongSupplier nanoTime) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("You must provide a strictly positive maxSize");
+        }
+        if (grantedTtlInMs < 0) {
+            throw new IllegalArgumentException("You must provide a positive grantedTtlInMs");
+        }
+        if (deniedTtlInMs < 0) {
+            throw new IllegalArgumentException("You must provide a positive deniedTtlInMs");
+        }
+        this.enabled = true;
+        this.maxSize = maxSize;
+        this.grantedTtlInNanos = MILLISECONDS.toNanos(grantedTtlInMs);
+        this.deniedTtlInNanos = MILLISECONDS.toNanos(deniedTtlInMs);
+        this.nanoTime = nanoTime;
+        this.verdicts = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    private VerdictCache() {
+        this.enabled = false;
+        this.maxSize = 0;
+        this.grantedTtlInNanos = 0;
+        this.deniedTtlInNanos = 0;
+        this.nanoTime = System::nanoTime;
+        this.verdicts = new LinkedHashMap<>();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * <p>Read a cached answer.</p>
+     * @return the answer, or <code>null</code> if it is not cached or expired.
+     */
+    public synchronized Boolean get(String parkingSiteId, UserId user) {
+        if (!enabled) {
+            return null;
+        }
+        Key key = new Key(parkingSiteId, user);
+        Verdict verdict = verdicts.get(key);
+        if (verdict == null) {
+            missCount++;
+            return null;
+        }
+        if (nanoTime.getAsLong() - verdict.expiresAt >= 0) {
+            verdicts.remove(key);
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return verdict.granted;
+    }
+
+    /**
+     * <p>Cache an answer received from the api.</p>
+     */
+    public synchronized void put(String parkingSiteId, UserId user, boolean granted) {
+        if (!enabled) {
+            return;
+        }
+        long ttl = granted ? grantedTtlInNanos : deniedTtlInNanos;
+        if (ttl == 0) {
+            return;
+        }
+        verdicts.put(new Key(parkingSiteId, user), new Verdict(granted, nanoTime.getAsLong() + ttl));
+        if (verdicts.size() > maxSize) {
+            Iterator<Verdict> eldest = verdicts.values().iterator();
+            eldest.next();
+            eldest.remove();
+            evictionCount++;
+        }
+    }
+
+    /**
+     * <p>Drop the answer of a user on a parking site, i.e. when you know that its access right changed.</p>
+     */
+    public synchronized void invalidate(String parkingSiteId, UserId user) {
+        verdicts.remove(new Key(parkingSiteId, user));
+    }
+
+    /**
+     * <p>Drop all the answers of a user, whatever the parking site.</p>
+     */
+    public synchronized void invalidate(UserId user) {
+        verdicts.keySet().removeIf(key -> key.user.equals(user));
+    }
+
+    /**
+     * <p>Drop all the answers.</p>
+     */
+    public synchronized void invalidateAll() {
+        verdicts.clear();
+    }
+
+    /**
+     * @return the number of hits, misses and evictions since the cache was created.
+     */
+    public synchronized Stats getStats() {
+        return new Stats(hitCount, missCount, evictionCount, verdicts.size());
+    }
+
+    public static class Stats {
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+        private final int size;
+
+        Stats(long hitCount, long missCount, long evictionCount, int size) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.size = size;
+        }
+
+        /**
+         * The number of verifications answered by the cache.
+         */
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        /**
+         * The number of verifications sent to the api because the answer was not cached (or expired).
+         */
+        public long getMissCount() {
+            return missCount;
+        }
+
+        /**
+         * The number of answers dropped because the cache was full.
+         */
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        /**
+         * The number of answers currently cached (including the expired ones that were not read since).
+         */
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * The ratio of verifications answered by the cache, between 0 and 1.
+         */
+        public double getHitRate() {
+            long total = hitCount + missCount;
+            return total == 0 ? 0 : (double) hitCount / total;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "hitCount=" + hitCount +
+                    ", missCount=" + missCount +
+                    ", evictionCount=" + evictionCount +
+                    ", size=" + size +
+                    '}';
+        }
+    }
+
+    private static final class Key {
+        private final String parkingSiteId;
+        private final UserId user;
+
+        private Key(String parkingSiteId, UserId user) {
+            this.parkingSiteId = parkingSiteId;
+            this.user = user;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return parkingSiteId.equals(key.parkingSiteId) && user.equals(key.user);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(parkingSiteId, user);
+        }
+    }
+
+    private static final class Verdict {
+        private final boolean granted;
+        private final long expiresAt;
+
+        private Verdict(boolean granted, long expiresAt) {
+            this.granted = granted;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
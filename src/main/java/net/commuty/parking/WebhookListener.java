@@ -0,0 +1,23 @@
+package net.commuty.parking;
+
+import net.commuty.parking.model.WebhookMessage;
+
+/**
+ * <p>Notified of each {@link WebhookMessage} received by a {@link net.commuty.parking.rest.WebhookReceiver}.</p>
+ * <p>The listener is called by the threads of the receiver, possibly by several of them at the same time.
+ * When it throws an exception, the receiver answers with an error, so that the message is sent again later.</p>
+ */
+public interface WebhookListener {
+
+    /**
+     * An access right was created.
+     * @param message The message, holding the new {@link net.commuty.parking.model.AccessRight}.
+     */
+    void onCreate(WebhookMessage message) throws Exception;
+
+    /**
+     * An access right was removed.
+     * @param message The message, holding the removed {@link net.commuty.parking.model.AccessRight}.
+     */
+    void onRemove(WebhookMessage message) throws Exception;
+}
@@ -0,0 +1,23 @@
+package net.commuty.parking.http;
+
+/**
+ * <p>This exception will occur when the circuit breaker of an endpoint is open: the api failed or was too slow recently,
+ * so the query was not sent at all.</p>
+ * <p>The circuit breaker lets a few queries through again once its open state is over.</p>
+ */
+public class CircuitBreakerOpenException extends HttpClientException {
+
+    private final String endpoint;
+
+    public CircuitBreakerOpenException(String endpoint) {
+        super("The circuit breaker of " + endpoint + " is open, the query was not sent");
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * Returns the endpoint whose circuit breaker is open (i.e. <code>/v2/parking-sites/%s/access-requests</code>).
+     */
+    public String getEndpoint() {
+        return endpoint;
+    }
+}
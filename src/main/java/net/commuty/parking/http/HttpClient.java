@@ -2,54 +2,94 @@ package net.commuty.parking.http;
 
 import org.slf4j.Logger;
 
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.*;
-import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.net.HttpURLConnection.HTTP_BAD_REQUEST;
+import static java.time.format.DateTimeFormatter.RFC_1123_DATE_TIME;
+import static java.util.Spliterator.NONNULL;
+import static java.util.Spliterator.ORDERED;
+import static java.util.Spliterators.spliteratorUnknownSize;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static java.util.stream.Collectors.joining;
+import static net.commuty.parking.http.TransportRequest.GET;
+import static net.commuty.parking.http.TransportRequest.POST;
 import static org.slf4j.LoggerFactory.getLogger;
 
 public class HttpClient {
 
     private static final Logger LOG = getLogger(HttpClient.class);
 
-    private static final String GET = "GET";
-    private static final String POST = "GET";
     private static final String CONTENT_TYPE = "Content-Type";
     private static final String APPLICATION_JSON = "application/json; charset=UTF-8";
     private static final String ACCEPT = "Accept";
     private static final String AUTHORIZATION = "Authorization";
     private static final String TOKEN_TEMPLATE = "Bearer %s";
+    private static final String ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String CONTENT_ENCODING = "Content-Encoding";
+    private static final String GZIP = "gzip";
+    private static final String RETRY_AFTER = "Retry-After";
+    private static final int GZIP_BUFFER_SIZE = 8192;
 
     private final URL baseUrl;
     private final Mapper mapper;
-    private final Proxy proxy;
-    private final int connectionTimeoutInMs;
-    private final int requestTimeoutInMs;
+    private final HttpTransport transport;
+    private final boolean compression;
+    private final int compressionThresholdInBytes;
 
     public HttpClient(URL baseUrl,
                       Mapper mapper,
                       Proxy proxy,
                       int connectionTimeoutInMs,
                       int requestTimeoutInMs) {
+        this(baseUrl, mapper, HttpTransportFactory.urlConnection(proxy, connectionTimeoutInMs, requestTimeoutInMs));
+    }
+
+    public HttpClient(URL baseUrl,
+                      Mapper mapper,
+                      HttpTransport transport) {
+        this(baseUrl, mapper, transport, false, 0);
+    }
+
+    /**
+     * @param compression whether responses may be gzipped by the api and large payloads gzipped by the client.
+     * @param compressionThresholdInBytes payloads are gzipped only if their size exceeds this threshold.
+     */
+    public HttpClient(URL baseUrl,
+                      Mapper mapper,
+                      HttpTransport transport,
+                      boolean compression,
+                      int compressionThresholdInBytes) {
         this.baseUrl = baseUrl;
         this.mapper = mapper;
-        this.proxy = proxy;
-        this.connectionTimeoutInMs = connectionTimeoutInMs;
-        this.requestTimeoutInMs = requestTimeoutInMs;
+        this.transport = transport;
+        this.compression = compression;
+        this.compressionThresholdInBytes = compressionThresholdInBytes;
     }
 
     public <T> T makeGetRequest(String path, String token, Map<String, Collection<String>> requestParams, Class<T> type) throws HttpClientException, HttpRequestException {
         try {
             URL url = buildUrl(path, toQueryString(requestParams));
-            HttpURLConnection connection = createGetConnection(url, token);
-
-            return executeMethod(connection, type);
+            TransportRequest request = new TransportRequest(GET, url, createHeaders(token, false), null);
+            return executeMethod(request, type);
         } catch (IOException | URISyntaxException e) {
             LOG.trace("Unrecoverable issue when trying to build the HTTP Client", e);
             throw new HttpClientException(e);
@@ -59,47 +99,215 @@ public class HttpClient {
     public <T> T makePostRequest(String path, String token, Object body, Class<T> type) throws HttpClientException, HttpRequestException {
         try {
             URL url = buildUrl(path);
-            HttpURLConnection connection = createPostConnection(url, token);
-            writeRequestBody(body, connection);
-            return executeMethod(connection, type);
+            Map<String, String> headers = createHeaders(token, true);
+            TransportRequest request = new TransportRequest(POST, url, headers, createBody(body, headers));
+            return executeMethod(request, type);
         } catch (IOException | URISyntaxException e) {
             LOG.trace("Unrecoverable issue when trying to build the HTTP Client", e);
             throw new HttpClientException(e);
         }
     }
 
-    private void writeRequestBody(Object body, HttpURLConnection connection) throws HttpClientException {
-        try (DataOutputStream payloadStream = new DataOutputStream(connection.getOutputStream())) {
-            payloadStream.write(mapper.write(body).getBytes(UTF_8));
-        } catch (IOException e) {
-            LOG.trace("Unrecoverable issue when creating a message body for the HTTP Client", e);
+    /**
+     * <p>Send a GET request and stream the elements of the array present in the field <code>arrayField</code> of the response.</p>
+     * <p>The connection stays open until the stream is closed.</p>
+     */
+    public <T> Stream<T> makeGetStreamRequest(String path, String token, Map<String, Collection<String>> requestParams, String arrayField, Class<T> type) throws HttpClientException, HttpRequestException {
+        TransportResponse response;
+        TransportRequest request;
+        try {
+            URL url = buildUrl(path, toQueryString(requestParams));
+            request = new TransportRequest(GET, url, createHeaders(token, false), null);
+            response = transport.send(request);
+        } catch (IOException | URISyntaxException e) {
+            LOG.trace("Unrecoverable issue when trying to build the HTTP Client", e);
             throw new HttpClientException(e);
         }
+        LOG.trace("{} [{}] {}", request.getMethod(), response.getStatusCode(), request.getUrl());
+        try {
+            if (response.getStatusCode() >= HTTP_BAD_REQUEST) {
+                throw wrapToHttpRequestException(response);
+            }
+            Iterator<T> elements = mapper.readArray(decode(response), arrayField, type);
+            return StreamSupport.stream(spliteratorUnknownSize(elements, ORDERED | NONNULL), false)
+                    .onClose(() -> closeQuietly(response));
+        } catch (IOException e) {
+            LOG.trace("Response body is not readable", e);
+            closeQuietly(response);
+            throw new HttpRequestException(response.getStatusCode(), null);
+        } catch (HttpRequestException | RuntimeException e) {
+            closeQuietly(response);
+            throw e;
+        }
     }
 
-    private <T> T executeMethod(HttpURLConnection connection, Class<T> type) throws IOException, HttpRequestException {
-        connection.connect();
-        try (InputStream stream = connection.getInputStream()) {
-            LOG.trace("{} [{}] {}", connection.getRequestMethod(), connection.getResponseCode(), connection.getURL());
-            return mapper.read(stream, type);
-        } catch (IOException e) {
-            LOG.trace("{} [{}] {}", connection.getRequestMethod(), connection.getResponseCode(), connection.getURL());
-            throw wrapToHttpRequestException(connection);
+    public <T> CompletableFuture<T> makeGetRequestAsync(String path, String token, Map<String, Collection<String>> requestParams, Class<T> type, Executor executor) {
+        try {
+            URL url = buildUrl(path, toQueryString(requestParams));
+            TransportRequest request = new TransportRequest(GET, url, createHeaders(token, false), null);
+            return executeMethodAsync(request, type, executor);
+        } catch (IOException | URISyntaxException e) {
+            LOG.trace("Unrecoverable issue when trying to build the HTTP Client", e);
+            return failed(new HttpClientException(e));
         }
     }
 
-    private HttpRequestException wrapToHttpRequestException(HttpURLConnection connection) throws IOException {
-        try (InputStream stream = connection.getErrorStream()) {
+    public <T> CompletableFuture<T> makePostRequestAsync(String path, String token, Object body, Class<T> type, Executor executor) {
+        try {
+            URL url = buildUrl(path);
+            Map<String, String> headers = createHeaders(token, true);
+            TransportRequest request = new TransportRequest(POST, url, headers, createBody(body, headers));
+            return executeMethodAsync(request, type, executor);
+        } catch (IOException | URISyntaxException e) {
+            LOG.trace("Unrecoverable issue when trying to build the HTTP Client", e);
+            return failed(new HttpClientException(e));
+        }
+    }
+
+    private <T> T executeMethod(TransportRequest request, Class<T> type) throws IOException, HttpRequestException {
+        return readResponse(request, transport.send(request), type);
+    }
+
+    private <T> CompletableFuture<T> executeMethodAsync(TransportRequest request, Class<T> type, Executor executor) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        transport.sendAsync(request, executor).whenComplete((response, error) -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                LOG.trace("Unrecoverable issue when trying to send the request", cause);
+                result.completeExceptionally(new HttpClientException(cause instanceof Exception ? (Exception) cause : new IOException(cause)));
+                return;
+            }
+            try {
+                result.complete(readResponse(request, response, type));
+            } catch (HttpRequestException e) {
+                result.completeExceptionally(e);
+            } catch (IOException e) {
+                LOG.trace("Unrecoverable issue when reading the response", e);
+                result.completeExceptionally(new HttpClientException(e));
+            }
+        });
+        return result;
+    }
+
+    private <T> T readResponse(TransportRequest request, TransportResponse transportResponse, Class<T> type) throws IOException, HttpRequestException {
+        try (TransportResponse response = transportResponse) {
+            LOG.trace("{} [{}] {}", request.getMethod(), response.getStatusCode(), request.getUrl());
+            if (response.getStatusCode() >= HTTP_BAD_REQUEST) {
+                throw wrapToHttpRequestException(response);
+            }
+            try {
+                return mapper.read(decode(response), type);
+            } catch (IOException e) {
+                LOG.trace("Response body is not readable", e);
+                throw new HttpRequestException(response.getStatusCode(), null);
+            }
+        }
+    }
+
+    private HttpRequestException wrapToHttpRequestException(TransportResponse response) {
+        Long retryAfterInMs = readRetryAfter(response.getHeader(RETRY_AFTER));
+        try {
+            InputStream stream = decode(response);
             if (stream == null) {
                 throw new IOException("No error stream available");
             }
-            return new HttpRequestException(connection.getResponseCode(), mapper.readError(stream));
+            return new HttpRequestException(response.getStatusCode(), mapper.readError(stream), retryAfterInMs);
         } catch (IOException e) {
             LOG.trace("Error stream is empty or not readable, returning only the response code");
-            return new HttpRequestException(connection.getResponseCode(), null);
+            return new HttpRequestException(response.getStatusCode(), null, retryAfterInMs);
         }
     }
 
+    /**
+     * Read a <code>Retry-After</code> header, that is either a number of seconds or a date.
+     */
+    private static Long readRetryAfter(String retryAfter) {
+        if (retryAfter == null || retryAfter.trim().isEmpty()) {
+            return null;
+        }
+        String value = retryAfter.trim();
+        try {
+            return Math.max(0, SECONDS.toMillis(Long.parseLong(value)));
+        } catch (NumberFormatException e) {
+            LOG.trace("Retry-After is not a number of seconds, trying as a date");
+        }
+        try {
+            Instant date = ZonedDateTime.parse(value, RFC_1123_DATE_TIME).toInstant();
+            return Math.max(0, Duration.between(Instant.now(), date).toMillis());
+        } catch (DateTimeParseException e) {
+            LOG.trace("Retry-After is not readable: {}", value);
+            return null;
+        }
+    }
+
+    /**
+     * <p>Create the payload of a request.</p>
+     * <p>When compression is enabled, the payload is first serialized in a buffer limited to the threshold. If it fits, the buffer is sent as is.
+     * Otherwise, the serialization is stopped and the payload is gzipped while it is written to the transport: only its first bytes
+     * (up to the threshold) are serialized twice.</p>
+     */
+    private TransportRequest.Body createBody(Object body, Map<String, String> headers) throws IOException {
+        if (!compression) {
+            return stream -> mapper.write(body, stream);
+        }
+        BoundedBuffer buffer = new BoundedBuffer(compressionThresholdInBytes);
+        try {
+            mapper.write(body, buffer);
+            return buffer::writeTo;
+        } catch (IOException e) {
+            if (!buffer.isExceeded()) {
+                throw e;
+            }
+        }
+        LOG.trace("Payload is larger than {} bytes, it will be gzipped", compressionThresholdInBytes);
+        headers.put(CONTENT_ENCODING, GZIP);
+        return stream -> {
+            try (OutputStream gzip = new GZIPOutputStream(stream, GZIP_BUFFER_SIZE)) {
+                mapper.write(body, gzip);
+            }
+        };
+    }
+
+    /**
+     * The payload of the response, inflated if the api gzipped it.
+     */
+    private static InputStream decode(TransportResponse response) throws IOException {
+        InputStream body = response.getBody();
+        if (body != null && GZIP.equalsIgnoreCase(response.getHeader(CONTENT_ENCODING))) {
+            return new GZIPInputStream(body, GZIP_BUFFER_SIZE);
+        }
+        return body;
+    }
+
+    private static void closeQuietly(TransportResponse response) {
+        try {
+            response.close();
+        } catch (IOException e) {
+            LOG.trace("Unable to close the response", e);
+        }
+    }
+
+    private static <T> CompletableFuture<T> failed(Exception exception) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(exception);
+        return future;
+    }
+
+    private Map<String, String> createHeaders(String token, boolean hasBody) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        if (hasBody) {
+            headers.put(CONTENT_TYPE, APPLICATION_JSON);
+        }
+        headers.put(ACCEPT, APPLICATION_JSON);
+        if (compression) {
+            headers.put(ACCEPT_ENCODING, GZIP);
+        }
+        if (token != null && !token.trim().isEmpty()) {
+            headers.put(AUTHORIZATION, String.format(TOKEN_TEMPLATE, token));
+        }
+        return headers;
+    }
+
     private String toQueryString(Map<String, Collection<String>> queryParameters) {
         String params = queryParameters.entrySet().stream().map(HttpClient::toQueryParam).collect(joining("&"));
         return params.trim().isEmpty() ? "" : "?" + params.trim();
@@ -120,32 +328,55 @@ public class HttpClient {
         return baseUrl.toURI().resolve(path + queryParams).toURL();
     }
 
-    private HttpURLConnection createGetConnection(URL url, String token) throws IOException {
-        HttpURLConnection connection = openConnection(url);
-        connection.setRequestMethod(GET);
-        connection.setRequestProperty(ACCEPT, APPLICATION_JSON);
-        if (token != null && !token.trim().isEmpty()) {
-            connection.setRequestProperty(AUTHORIZATION, String.format(TOKEN_TEMPLATE, token));
+    /**
+     * A buffer that grows with the payload but refuses to grow beyond a limit, so that a large payload is not fully serialized twice,
+     * and a large limit does not cost a large allocation per request.
+     */
+    private static class BoundedBuffer extends OutputStream {
+
+        private static final int INITIAL_SIZE = 1024;
+
+        private final int limit;
+        private byte[] buffer;
+        private int count;
+        private boolean exceeded;
+
+        private BoundedBuffer(int limit) {
+            this.limit = limit;
+            this.buffer = new byte[Math.min(limit, INITIAL_SIZE)];
         }
-        connection.setConnectTimeout(this.connectionTimeoutInMs);
-        connection.setReadTimeout(this.requestTimeoutInMs);
-        return connection;
-    }
 
-    private HttpURLConnection createPostConnection(URL url, String token) throws IOException {
-        HttpURLConnection connection = openConnection(url);
-        connection.setRequestMethod(POST);
-        connection.setRequestProperty(CONTENT_TYPE, APPLICATION_JSON);
-        connection.setRequestProperty(ACCEPT, APPLICATION_JSON);
-        if (token != null && !token.trim().isEmpty()) {
-            connection.setRequestProperty(AUTHORIZATION, String.format(TOKEN_TEMPLATE, token));
+        @Override
+        public void write(int b) throws IOException {
+            ensureCapacity(1);
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            ensureCapacity(length);
+            System.arraycopy(bytes, offset, buffer, count, length);
+            count += length;
         }
-        connection.setConnectTimeout(this.connectionTimeoutInMs);
-        connection.setDoOutput(true);
-        return connection;
-    }
 
-    private HttpURLConnection openConnection(URL url) throws IOException {
-        return proxy != null ? (HttpURLConnection) url.openConnection(proxy) : (HttpURLConnection) url.openConnection();
+        private void ensureCapacity(int length) throws IOException {
+            // compared as longs, so that a limit close to Integer.MAX_VALUE cannot overflow
+            long required = (long) count + length;
+            if (required > limit) {
+                exceeded = true;
+                throw new IOException("Payload is larger than " + limit + " bytes");
+            }
+            if (required > buffer.length) {
+                buffer = Arrays.copyOf(buffer, (int) Math.min(limit, Math.max(required, 2L * buffer.length)));
+            }
+        }
+
+        private boolean isExceeded() {
+            return exceeded;
+        }
+
+        private void writeTo(OutputStream stream) throws IOException {
+            stream.write(buffer, 0, count);
+        }
     }
 }
@@ -1,5 +1,9 @@
 package net.commuty.parking.http;
 
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+
 /**
  * This exception will occur if there was an issue before sending any request to the client (for instance, a network issue, a proxy issue,...)
  */
@@ -8,4 +12,20 @@ public class HttpClientException extends ApiException {
     protected HttpClientException(Exception cause) {
         super("The client was unable to send the query", cause);
     }
+
+    protected HttpClientException(String message) {
+        super(message);
+    }
+
+    /**
+     * <p>Indicates if the client was unable to open a connection to the api (unknown host, connection refused,...).</p>
+     * <p>In that case, the query never reached the api and it is safe to send it again.
+     * Otherwise, the connection was lost during the call and the api may have processed the query.</p>
+     */
+    public boolean isConnectionFailure() {
+        Throwable cause = getCause();
+        return cause instanceof ConnectException
+                || cause instanceof NoRouteToHostException
+                || cause instanceof UnknownHostException;
+    }
 }
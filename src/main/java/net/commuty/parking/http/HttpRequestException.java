@@ -9,18 +9,29 @@ import static java.net.HttpURLConnection.*;
  *     <li>{@link #isForbidden()}: http status 403</li>
  *     <li>{@link #isUnauthorized()}: http status 401</li>
  *     <li>{@link #isBadRequest()}: http status 400</li>
+ *     <li>{@link #isTooManyRequests()}: http status 429</li>
+ *     <li>{@link #isServiceUnavailable()}: http status 503</li>
  * </ul>
+ * <p>When the api asks the client to slow down (usually with a 429 or 503), {@link #getRetryAfterInMs()} tells how long to wait before the next call.</p>
  * <p>Sometimes, you will get more information via the {@link #getErrorResponse()} method. This exposes a reason and message property. For more information, consult the api documentation.</p>
  */
 public class HttpRequestException extends ApiException {
 
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
     private final int httpResponseCode;
     private final Error errorResponse;
+    private final Long retryAfterInMs;
 
     protected HttpRequestException(int httpResponseCode, Error errorResponse) {
+        this(httpResponseCode, errorResponse, null);
+    }
+
+    protected HttpRequestException(int httpResponseCode, Error errorResponse, Long retryAfterInMs) {
         super("The request failed with an error code "+ httpResponseCode);
         this.httpResponseCode = httpResponseCode;
         this.errorResponse = errorResponse;
+        this.retryAfterInMs = retryAfterInMs;
     }
 
     /**
@@ -51,6 +62,34 @@ public class HttpRequestException extends ApiException {
         return httpResponseCode == HTTP_BAD_REQUEST;
     }
 
+    /**
+     * Indicates if the api received too many requests (http 429).
+     */
+    public boolean isTooManyRequests() {
+        return httpResponseCode == HTTP_TOO_MANY_REQUESTS;
+    }
+
+    /**
+     * Indicates if the api is temporarily unavailable (http 503).
+     */
+    public boolean isServiceUnavailable() {
+        return httpResponseCode == HTTP_UNAVAILABLE;
+    }
+
+    /**
+     * Indicates if the api failed to process a valid request (http 500 and above).
+     */
+    public boolean isServerError() {
+        return httpResponseCode >= HTTP_INTERNAL_ERROR;
+    }
+
+    /**
+     * Returns how long (in milliseconds) the api asked to wait before the next call, from the <code>Retry-After</code> header. Can be null.
+     */
+    public Long getRetryAfterInMs() {
+        return retryAfterInMs;
+    }
+
     /**
      * Returns the http status code.
      */
@@ -0,0 +1,47 @@
+package net.commuty.parking.http;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * <p>The low level component that moves bytes between the {@link HttpClient} and the api.</p>
+ * <p>The {@link HttpClient} takes care of building the URL, the headers and of mapping the payloads,
+ * a transport only has to send a {@link TransportRequest} and give back the raw {@link TransportResponse}.</p>
+ * <p>Use the {@link HttpTransportFactory} to create one of the bundled implementations.</p>
+ */
+public interface HttpTransport {
+
+    /**
+     * Send a request and wait for the status and headers of the response.
+     * @param request the request to send.
+     * @return the response. The caller must close it once the body has been consumed.
+     * @throws IOException the request did not reach the api or the response could not be read.
+     */
+    TransportResponse send(TransportRequest request) throws IOException;
+
+    /**
+     * <p>Send a request without waiting for the response.</p>
+     * <p>By default, the blocking {@link #send(TransportRequest)} is called on the given executor.
+     * Transports that are able to do non-blocking I/O override this method and ignore the executor.</p>
+     * @param request the request to send.
+     * @param executor the executor that may run the blocking call.
+     * @return a future response, completed exceptionally with an {@link IOException} if the request did not reach the api.
+     */
+    default CompletableFuture<TransportResponse> sendAsync(TransportRequest request, Executor executor) {
+        CompletableFuture<TransportResponse> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(send(request));
+                } catch (IOException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+}
@@ -0,0 +1,54 @@
+package net.commuty.parking.http;
+
+import org.slf4j.Logger;
+
+import java.net.Proxy;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * <p>Creates the {@link HttpTransport} implementations bundled with the client.</p>
+ * <p>This library is packaged as a multi-release jar: on Java 11 and above, this class is replaced by a version
+ * that is able to create a transport built on <code>java.net.http.HttpClient</code>.</p>
+ */
+public final class HttpTransportFactory {
+
+    private static final Logger LOG = getLogger(HttpTransportFactory.class);
+
+    private HttpTransportFactory() {
+    }
+
+    /**
+     * Indicates whether {@link #httpClient(Proxy, int, int, int, int)} is supported by the running JVM.
+     */
+    public static boolean isHttpClientAvailable() {
+        return false;
+    }
+
+    /**
+     * Creates a transport built on {@link java.net.HttpURLConnection}.
+     * @param proxy a proxy to use (can be null).
+     * @param connectionTimeoutInMs the connection timeout (0 means infinite).
+     * @param requestTimeoutInMs the read timeout of GET requests (0 means infinite).
+     * @return the transport.
+     */
+    public static HttpTransport urlConnection(Proxy proxy, int connectionTimeoutInMs, int requestTimeoutInMs) {
+        return new UrlConnectionTransport(proxy, connectionTimeoutInMs, requestTimeoutInMs);
+    }
+
+    /**
+     * <p>Creates a transport built on <code>java.net.http.HttpClient</code> (HTTP/2 with a fallback on HTTP/1.1).</p>
+     * <p>This requires Java 11 or above. On Java 8, a warning is logged and a {@link java.net.HttpURLConnection} transport is returned instead.</p>
+     * @param proxy a proxy to use (can be null).
+     * @param connectionTimeoutInMs the connection timeout (0 means infinite).
+     * @param requestTimeoutInMs the read timeout of GET requests (0 means infinite).
+     * @param connectionPoolSize the maximum number of idle HTTP/1.1 connections kept in the pool (0 means unlimited). JVM-wide and
+     *                           best-effort, see {@link net.commuty.parking.Configuration.Builder#withHttpClientTransport(int, int)}.
+     * @param keepAliveInMs how long an idle connection stays in the pool. JVM-wide and best-effort, like <code>connectionPoolSize</code>.
+     * @return the transport.
+     */
+    public static HttpTransport httpClient(Proxy proxy, int connectionTimeoutInMs, int requestTimeoutInMs, int connectionPoolSize, int keepAliveInMs) {
+        LOG.warn("java.net.http.HttpClient requires Java 11 or above, falling back on HttpURLConnection");
+        return urlConnection(proxy, connectionTimeoutInMs, requestTimeoutInMs);
+    }
+}
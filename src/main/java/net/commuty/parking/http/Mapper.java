@@ -2,9 +2,22 @@ package net.commuty.parking.http;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
 
 public interface Mapper {
     String write(Object body) throws IOException;
+
+    /**
+     * Serialize the body straight into the stream, without building an intermediate String.
+     */
+    void write(Object body, OutputStream stream) throws IOException;
     <R> R read(InputStream stream, Class<R> clazz) throws IOException;
     Error readError(InputStream stream) throws IOException;
+
+    /**
+     * Read the elements of an array, present in a field of the root object, one at a time.
+     * The iterator throws an {@link java.io.UncheckedIOException} if the stream cannot be read while iterating.
+     */
+    <R> Iterator<R> readArray(InputStream stream, String field, Class<R> clazz) throws IOException;
 }
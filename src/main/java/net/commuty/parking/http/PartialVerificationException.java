@@ -0,0 +1,38 @@
+package net.commuty.parking.http;
+
+import net.commuty.parking.model.UserId;
+
+import java.util.Map;
+
+import static java.util.Collections.unmodifiableMap;
+
+/**
+ * <p>Some of the users of a bulk verification could not be verified.</p>
+ * <p>The users that could be verified are still available in {@link #getVerified()}, and the reason why each of the other ones
+ * could not be verified is available in {@link #getFailures()}.</p>
+ */
+public class PartialVerificationException extends ApiException {
+
+    private final Map<UserId, Boolean> verified;
+    private final Map<UserId, ApiException> failures;
+
+    public PartialVerificationException(Map<UserId, Boolean> verified, Map<UserId, ApiException> failures) {
+        super(failures.size() + " of " + (verified.size() + failures.size()) + " users could not be verified");
+        this.verified = unmodifiableMap(verified);
+        this.failures = unmodifiableMap(failures);
+    }
+
+    /**
+     * The users that could be verified, with whether they are granted or not.
+     */
+    public Map<UserId, Boolean> getVerified() {
+        return verified;
+    }
+
+    /**
+     * The users that could not be verified, with the exception of their verification.
+     */
+    public Map<UserId, ApiException> getFailures() {
+        return failures;
+    }
+}
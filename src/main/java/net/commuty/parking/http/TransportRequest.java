@@ -0,0 +1,73 @@
+package net.commuty.parking.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.Map;
+
+import static java.util.Collections.unmodifiableMap;
+
+/**
+ * A request that a {@link HttpTransport} must send.
+ */
+public class TransportRequest {
+
+    static final String GET = "GET";
+    static final String POST = "POST";
+
+    private final String method;
+    private final URL url;
+    private final Map<String, String> headers;
+    private final Body body;
+
+    TransportRequest(String method, URL url, Map<String, String> headers, Body body) {
+        this.method = method;
+        this.url = url;
+        this.headers = unmodifiableMap(headers);
+        this.body = body;
+    }
+
+    /**
+     * The HTTP method (GET, POST,...).
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * The absolute URL, including the query string.
+     */
+    public URL getUrl() {
+        return url;
+    }
+
+    /**
+     * The headers to send with the request.
+     */
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * The payload to send. Null if the request has no body.
+     */
+    public Body getBody() {
+        return body;
+    }
+
+    /**
+     * Indicates whether the request has a payload.
+     */
+    public boolean hasBody() {
+        return body != null;
+    }
+
+    /**
+     * <p>A payload that is serialized straight into the stream of the transport, without any intermediate copy.</p>
+     * <p>It can be written more than once, i.e. when a request is attempted again.</p>
+     */
+    @FunctionalInterface
+    public interface Body {
+        void writeTo(OutputStream stream) throws IOException;
+    }
+}
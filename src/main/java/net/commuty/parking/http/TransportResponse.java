@@ -0,0 +1,30 @@
+package net.commuty.parking.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * <p>The raw response received by a {@link HttpTransport}.</p>
+ * <p>Closing the response releases the underlying connection so that the transport can reuse it.</p>
+ */
+public interface TransportResponse extends Closeable {
+
+    /**
+     * The HTTP status code.
+     */
+    int getStatusCode();
+
+    /**
+     * The first value of a response header. Null if the header is absent.
+     */
+    String getHeader(String name);
+
+    /**
+     * The payload of the response (for successful and failed requests). Can be null if the api returned nothing.
+     */
+    InputStream getBody() throws IOException;
+
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,162 @@
+package net.commuty.parking.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URL;
+
+import static java.net.HttpURLConnection.HTTP_BAD_REQUEST;
+
+/**
+ * <p>The default {@link HttpTransport}, built on {@link HttpURLConnection}. It is available on every Java version.</p>
+ * <p>Connections are kept alive and reused by the JDK as long as every response is fully read and closed
+ * (see the <code>http.keepAlive</code> and <code>http.maxConnections</code> system properties).</p>
+ * <p>Payloads are serialized straight into the socket. Small payloads are buffered to be sent with a <code>Content-Length</code>,
+ * larger ones are sent in chunks as soon as they exceed {@link #BUFFER_SIZE}, so that a payload is never fully held in memory.</p>
+ */
+class UrlConnectionTransport implements HttpTransport {
+
+    static final int BUFFER_SIZE = 8192;
+
+    private final Proxy proxy;
+    private final int connectionTimeoutInMs;
+    private final int requestTimeoutInMs;
+
+    UrlConnectionTransport(Proxy proxy, int connectionTimeoutInMs, int requestTimeoutInMs) {
+        this.proxy = proxy;
+        this.connectionTimeoutInMs = connectionTimeoutInMs;
+        this.requestTimeoutInMs = requestTimeoutInMs;
+    }
+
+    @Override
+    public TransportResponse send(TransportRequest request) throws IOException {
+        HttpURLConnection connection = openConnection(request.getUrl());
+        connection.setRequestMethod(request.getMethod());
+        request.getHeaders().forEach(connection::setRequestProperty);
+        connection.setConnectTimeout(connectionTimeoutInMs);
+        if (TransportRequest.GET.equals(request.getMethod())) {
+            connection.setReadTimeout(requestTimeoutInMs);
+        }
+        if (request.hasBody()) {
+            connection.setDoOutput(true);
+            try (OutputStream payloadStream = new PayloadStream(connection)) {
+                request.getBody().writeTo(payloadStream);
+            }
+        }
+        connection.connect();
+        return new UrlConnectionResponse(connection, connection.getResponseCode());
+    }
+
+    private HttpURLConnection openConnection(URL url) throws IOException {
+        return proxy != null ? (HttpURLConnection) url.openConnection(proxy) : (HttpURLConnection) url.openConnection();
+    }
+
+    /**
+     * Buffers the beginning of a payload. If the whole payload fits in the buffer, it is sent with a fixed length,
+     * otherwise the connection switches to chunked streaming and the payload goes straight to the socket.
+     */
+    private static class PayloadStream extends OutputStream {
+
+        private final HttpURLConnection connection;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int count;
+        private OutputStream socket;
+        private boolean closed;
+
+        private PayloadStream(HttpURLConnection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (socket == null && count == buffer.length) {
+                switchToChunks();
+            }
+            if (socket != null) {
+                socket.write(b);
+            } else {
+                buffer[count++] = (byte) b;
+            }
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (socket == null && count + length > buffer.length) {
+                switchToChunks();
+            }
+            if (socket != null) {
+                socket.write(bytes, offset, length);
+            } else {
+                System.arraycopy(bytes, offset, buffer, count, length);
+                count += length;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (socket != null) {
+                socket.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (socket == null) {
+                connection.setFixedLengthStreamingMode(count);
+                socket = connection.getOutputStream();
+                socket.write(buffer, 0, count);
+            }
+            socket.close();
+        }
+
+        private void switchToChunks() throws IOException {
+            connection.setChunkedStreamingMode(BUFFER_SIZE);
+            socket = connection.getOutputStream();
+            socket.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    private static class UrlConnectionResponse implements TransportResponse {
+
+        private final HttpURLConnection connection;
+        private final int statusCode;
+        private InputStream body;
+
+        private UrlConnectionResponse(HttpURLConnection connection, int statusCode) {
+            this.connection = connection;
+            this.statusCode = statusCode;
+        }
+
+        @Override
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return connection.getHeaderField(name);
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                body = statusCode >= HTTP_BAD_REQUEST ? connection.getErrorStream() : connection.getInputStream();
+            }
+            return body;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (body != null) {
+                body.close();
+            }
+        }
+    }
+}
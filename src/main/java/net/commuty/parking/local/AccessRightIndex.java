@@ -0,0 +1,356 @@
+package net.commuty.parking.local;
+
+import net.commuty.parking.model.AccessRight;
+import net.commuty.parking.model.UserId;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * <p>An in-memory copy of the {@link AccessRight}s, that answers whether a user is granted on a parking site without calling the api.</p>
+ * <p>The rights are grouped by <code>parkingSiteId</code>, then by {@link UserId}: a right listing several ids of the same user
+ * (i.e. a badge number and a license plate) can be found by any of them. The ids are interned in a {@link UserIdTable} shared by
+ * all the parking sites, so they are compared once {@link UserIdTable#canonicalize(net.commuty.parking.model.UserIdType, String) canonicalized}
+ * (i.e. a license plate is found whatever its case and whitespace). The rights of a user are sorted by start time, along with
+ * the latest end among the rights starting before each one: the right covering a moment is found by a binary search on the
+ * start, then by walking back only while an earlier right can still cover the moment (the rights of a user may overlap).</p>
+ * <p>The rights of each parking site are also kept in an interval tree, to find who is allowed (or not) at a given moment or
+ * during a period (i.e. "who can enter tomorrow at 08:00") in <code>O(log n + k)</code>, <code>k</code> being the number of rights found.</p>
+ * <p>The index can be read by many threads while it is updated. Load it with {@link #replaceAll(Collection)}, or keep it up
+ * to date with {@link #put(AccessRight)} and {@link #remove(AccessRight)}.</p>
+ */
+public class AccessRightIndex {
+
+    private static final Comparator<AccessRight> BY_START_TIME = Comparator.comparing(right -> right.getStartTime().toInstant());
+
+    private final Clock clock;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Map<String, Site> sites = new HashMap<>();
+    private UserIdTable users = new UserIdTable();
+    private int size;
+    private volatile Instant updatedAt;
+
+    public AccessRightIndex() {
+        this(Clock.systemUTC());
+    }
+
+    AccessRightIndex(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * <p>Check whether a user is granted on a parking site at a given moment.</p>
+     * @param parkingSiteId The identifier of the parking site that was given by Commuty.
+     * @param user The {@link UserId} to check.
+     * @param moment The moment to check.
+     * @return <code>true</code> or <code>false</code> depending on the right that covers the moment,
+     * or <code>null</code> if the index does not hold any right of this user covering the moment.
+     */
+    public Boolean isGranted(String parkingSiteId, UserId user, OffsetDateTime moment) {
+        AccessRight right = find(parkingSiteId, user, moment);
+        return right != null ? right.isGranted() : null;
+    }
+
+    /**
+     * <p>Find the right of a user that covers a given moment on a parking site.</p>
+     * @return The {@link AccessRight} starting on or before the moment and ending after it, or <code>null</code> if there is none.
+     * When several rights cover the moment, the one that starts first.
+     */
+    public AccessRight find(String parkingSiteId, UserId user, OffsetDateTime moment) {
+        long point = moment.toInstant().toEpochMilli();
+        lock.readLock().lock();
+        try {
+            UserRights rights = userRightsOf(parkingSiteId, user);
+            return rights != null ? rights.find(point) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * <p>List the rights of a user on a parking site.</p>
+     * @return The {@link AccessRight}s of the user, sorted by start time. Empty if the user is unknown.
+     */
+    public List<AccessRight> findAll(String parkingSiteId, UserId user) {
+        lock.readLock().lock();
+        try {
+            return unmodifiableList(new ArrayList<>(rightsOf(parkingSiteId, user)));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * <p>List the rights of all the users that cover a given moment on a parking site.</p>
+     * @return The {@link AccessRight}s starting on or before the moment and ending after it, sorted by start time.
+     */
+    public List<AccessRight> findAll(String parkingSiteId, OffsetDateTime moment) {
+        long point = moment.toInstant().toEpochMilli();
+        lock.readLock().lock();
+        try {
+            Site site = sites.get(parkingSiteId);
+            return site != null ? unmodifiableList(site.rights.findContaining(point)) : emptyList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * <p>List the rights of all the users that overlap a period on a parking site.</p>
+     * @param from The start of the period (included).
+     * @param to The end of the period (excluded).
+     * @return The {@link AccessRight}s ending after <code>from</code> and starting before <code>to</code>, sorted by start time.
+     */
+    public List<AccessRight> findAll(String parkingSiteId, OffsetDateTime from, OffsetDateTime to) {
+        long start = from.toInstant().toEpochMilli();
+        long end = to.toInstant().toEpochMilli();
+        lock.readLock().lock();
+        try {
+            Site site = sites.get(parkingSiteId);
+            return site != null ? unmodifiableList(site.rights.findOverlapping(start, end)) : emptyList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * <p>List all the rights of the index.</p>
+     * @return The {@link AccessRight}s of all the parking sites, sorted by start time within each parking site.
+     */
+    public List<AccessRight> findAll() {
+        lock.readLock().lock();
+        try {
+            List<AccessRight> rights = new ArrayList<>(size);
+            for (Site site : sites.values()) {
+                rights.addAll(site.rights.findOverlapping(Long.MIN_VALUE, Long.MAX_VALUE));
+            }
+            return unmodifiableList(rights);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * <p>Add a right to the index.</p>
+     * <p>To update a right, {@link #remove(AccessRight)} its previous version first.</p>
+     */
+    public void put(AccessRight right) {
+        validate(right);
+        lock.writeLock().lock();
+        try {
+            if (add(sites, users, right)) {
+                size++;
+            }
+            updatedAt = clock.instant();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * <p>Remove a right that was added to the index.</p>
+     * @return <code>true</code> if the right was in the index.
+     */
+    public boolean remove(AccessRight right) {
+        lock.writeLock().lock();
+        try {
+            Site site = sites.get(right.getParkingSiteId());
+            if (site == null || !site.rights.remove(right)) {
+                return false;
+            }
+            for (UserId user : right.getUserIds()) {
+                int handle = users.find(user);
+                UserRights rights = handle != UserIdTable.NOT_FOUND ? site.rightsByUser.get(handle) : null;
+                if (rights != null && rights.remove(right) && rights.isEmpty()) {
+                    site.rightsByUser.remove(handle);
+                }
+            }
+            if (site.rights.isEmpty()) {
+                sites.remove(right.getParkingSiteId());
+            }
+            size--;
+            updatedAt = clock.instant();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * <p>Replace the whole content of the index, i.e. with the result of {@link net.commuty.parking.ParkingAccess#listAccessRightsForToday()}.</p>
+     * <p>The new index is built aside, so that readers never see a partially loaded index.</p>
+     */
+    public void replaceAll(Collection<AccessRight> rights) {
+        replaceAll(rights, clock.instant());
+    }
+
+    /**
+     * Replace the whole content of the index with rights that were up to date at <code>updatedAt</code>, i.e. read from an {@link AccessRightSnapshot}.
+     */
+    void replaceAll(Collection<AccessRight> rights, Instant updatedAt) {
+        Map<String, Site> replacement = new HashMap<>();
+        UserIdTable replacementUsers = new UserIdTable(rights.size());
+        int count = 0;
+        for (AccessRight right : rights) {
+            validate(right);
+            if (add(replacement, replacementUsers, right)) {
+                count++;
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            sites = replacement;
+            users = replacementUsers;
+            size = count;
+            this.updatedAt = updatedAt;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The number of rights in the index.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The last time the index was modified, or <code>null</code> if it was never loaded.
+     */
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    /**
+     * Mark the index as up to date, i.e. after checking with the api that no right changed.
+     */
+    public void markUpToDate() {
+        updatedAt = clock.instant();
+    }
+
+    private List<AccessRight> rightsOf(String parkingSiteId, UserId user) {
+        UserRights rights = userRightsOf(parkingSiteId, user);
+        return rights != null ? rights.rights : emptyList();
+    }
+
+    private UserRights userRightsOf(String parkingSiteId, UserId user) {
+        Site site = sites.get(parkingSiteId);
+        if (site == null) {
+            return null;
+        }
+        int handle = users.find(user);
+        return handle != UserIdTable.NOT_FOUND ? site.rightsByUser.get(handle) : null;
+    }
+
+    private static void validate(AccessRight right) {
+        if (right.getParkingSiteId() == null || right.getStartTime() == null || right.getEndTime() == null || right.getUserIds() == null) {
+            throw new IllegalArgumentException("An access right must have a parking site, a start time, an end time and user ids");
+        }
+    }
+
+    private static boolean add(Map<String, Site> sites, UserIdTable users, AccessRight right) {
+        if (!right.getEndTime().isAfter(right.getStartTime())) {
+            // covers no moment at all
+            return false;
+        }
+        Site site = sites.computeIfAbsent(right.getParkingSiteId(), id -> new Site());
+        int before = site.rights.size();
+        site.rights.add(right.getStartTime().toInstant().toEpochMilli(), right.getEndTime().toInstant().toEpochMilli(), right);
+        if (site.rights.size() == before) {
+            return false;
+        }
+        for (UserId user : right.getUserIds()) {
+            int handle = users.intern(user);
+            UserRights rights = site.rightsByUser.get(handle);
+            if (rights == null) {
+                rights = new UserRights();
+                site.rightsByUser.put(handle, rights);
+            }
+            rights.add(right);
+        }
+        return true;
+    }
+
+    private static final class Site {
+        private final IntObjectMap<UserRights> rightsByUser = new IntObjectMap<>();
+        private final IntervalTree<AccessRight> rights = new IntervalTree<>();
+    }
+
+    /**
+     * The rights of a user on a parking site, sorted by start time. <code>maxEnds[i]</code> is the latest end (in epoch ms) of
+     * the rights <code>0..i</code>: no right before <code>i</code> covers a moment at or after it.
+     */
+    private static final class UserRights {
+        private final List<AccessRight> rights = new ArrayList<>(3);
+        private long[] maxEnds = new long[0];
+
+        private AccessRight find(long point) {
+            // the last right starting on or before the point
+            int low = 0;
+            int high = rights.size() - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (startOf(rights.get(middle)) > point) {
+                    high = middle - 1;
+                } else {
+                    low = middle + 1;
+                }
+            }
+            AccessRight found = null;
+            for (int i = high; i >= 0 && maxEnds[i] > point; i--) {
+                if (endOf(rights.get(i)) > point) {
+                    found = rights.get(i);
+                }
+            }
+            return found;
+        }
+
+        private void add(AccessRight right) {
+            int position = Collections.binarySearch(rights, right, BY_START_TIME);
+            rights.add(position < 0 ? -position - 1 : position, right);
+            updateMaxEnds();
+        }
+
+        private boolean remove(AccessRight right) {
+            if (!rights.removeIf(existing -> existing == right)) {
+                return false;
+            }
+            updateMaxEnds();
+            return true;
+        }
+
+        private boolean isEmpty() {
+            return rights.isEmpty();
+        }
+
+        private void updateMaxEnds() {
+            maxEnds = new long[rights.size()];
+            long maxEnd = Long.MIN_VALUE;
+            for (int i = 0; i < maxEnds.length; i++) {
+                maxEnd = Math.max(maxEnd, endOf(rights.get(i)));
+                maxEnds[i] = maxEnd;
+            }
+        }
+
+        private static long startOf(AccessRight right) {
+            return right.getStartTime().toInstant().toEpochMilli();
+        }
+
+        private static long endOf(AccessRight right) {
+            return right.getEndTime().toInstant().toEpochMilli();
+        }
+    }
+}
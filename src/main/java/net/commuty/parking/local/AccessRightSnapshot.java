@@ -0,0 +1,249 @@
+package net.commuty.parking.local;
+
+import net.commuty.parking.model.AccessRight;
+import net.commuty.parking.model.AccessRightAttributeName;
+import net.commuty.parking.model.UserId;
+import net.commuty.parking.model.UserIdType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.zip.CRC32;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * <p>Saves the content of an {@link AccessRightIndex} to a compact binary file, so that it can answer as soon as the
+ * application restarts, before the api is called again.</p>
+ * <p>All the strings of the file (parking site ids, user ids, attributes) are stored once in a table, and each right only refers
+ * to them: a user with rights on several parking sites, or several rights in a day, costs its ids only once. The start and end
+ * of a right are stored as epoch seconds with their offset.</p>
+ * <p>The file is written next to its final location, flushed to the disk, then moved over the previous one: a reader (or a crash)
+ * sees either the previous snapshot or the new one, never a partial one. The directory is flushed after the move, so that the new
+ * snapshot survives a crash of the machine, on the platforms that allow it (not on Windows). It is read through a {@link MappedByteBuffer} and checked
+ * against its checksum before the index is replaced.</p>
+ * <pre>
+ * AccessRightSnapshot.load(Paths.get("access-rights.bin"), index); // answer right away with the rights known before the restart
+ * ...
+ * AccessRightSnapshot.write(Paths.get("access-rights.bin"), index);
+ * </pre>
+ * <p>The index keeps the time the snapshot was taken as its {@link AccessRightIndex#getUpdatedAt()}, so that a
+ * {@link LocalParkingAccess} does not trust a snapshot older than its staleness bound.</p>
+ */
+public final class AccessRightSnapshot {
+
+    private static final int MAGIC = 0x50415253; // "PARS"
+    private static final short VERSION = 1;
+    private static final int NONE = -1;
+
+    private AccessRightSnapshot() {
+    }
+
+    /**
+     * <p>Save all the rights of an index to a file, replacing the previous snapshot.</p>
+     * @throws IOException The file could not be written. The previous snapshot, if any, is left as is.
+     */
+    public static void write(Path file, AccessRightIndex index) throws IOException {
+        Instant updatedAt = index.getUpdatedAt();
+        write(file, index.findAll(), updatedAt != null ? updatedAt : Instant.EPOCH);
+    }
+
+    /**
+     * <p>Replace the content of an index with the rights saved in a file.</p>
+     * @return <code>false</code> if there is no snapshot yet. The index is not modified.
+     * @throws IOException The file could not be read, or is not a valid snapshot. The index is not modified.
+     */
+    public static boolean load(Path file, AccessRightIndex index) throws IOException {
+        Content content;
+        try {
+            content = read(file);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        index.replaceAll(content.rights, content.updatedAt);
+        return true;
+    }
+
+    static void write(Path file, Collection<AccessRight> rights, Instant updatedAt) throws IOException {
+        byte[] bytes = encode(rights, updatedAt);
+        Path directory = file.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            try {
+                Files.move(temporary, file, ATOMIC_MOVE, REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, file, REPLACE_EXISTING);
+            }
+            syncDirectory(directory);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Flush the entries of a directory (i.e. a file moved into it) to the disk.
+     */
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // the platform cannot open or flush a directory (i.e. Windows): the move is as durable as the file system makes it
+        }
+    }
+
+    static Content read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return decode(buffer);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("The file " + file + " is not a valid access rights snapshot", e);
+        }
+    }
+
+    private static byte[] encode(Collection<AccessRight> rights, Instant updatedAt) throws IOException {
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        ByteArrayOutputStream body = new ByteArrayOutputStream(64 + rights.size() * 48);
+        DataOutputStream out = new DataOutputStream(body);
+        out.writeInt(rights.size());
+        for (AccessRight right : rights) {
+            out.writeInt(intern(strings, right.getParkingSiteId()));
+            writeTime(out, right.getStartTime());
+            writeTime(out, right.getEndTime());
+            out.writeBoolean(right.isGranted());
+            out.writeShort(right.getUserIds().size());
+            for (UserId user : right.getUserIds()) {
+                out.writeInt(user.getType() != null ? intern(strings, user.getType().name()) : NONE);
+                out.writeInt(intern(strings, user.getId()));
+            }
+            out.writeByte(right.getAttributes().size());
+            for (Map.Entry<AccessRightAttributeName, String> attribute : right.getAttributes().entrySet()) {
+                out.writeInt(intern(strings, attribute.getKey().name()));
+                out.writeInt(attribute.getValue() != null ? intern(strings, attribute.getValue()) : NONE);
+            }
+        }
+        out.flush();
+
+        ByteArrayOutputStream file = new ByteArrayOutputStream(body.size() + strings.size() * 24 + 32);
+        out = new DataOutputStream(file);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeLong(updatedAt.toEpochMilli());
+        out.writeInt(strings.size());
+        for (String string : strings.keySet()) {
+            byte[] bytes = string.getBytes(UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        body.writeTo(out);
+        out.flush();
+        CRC32 checksum = new CRC32();
+        checksum.update(file.toByteArray());
+        out.writeInt((int) checksum.getValue());
+        out.flush();
+        return file.toByteArray();
+    }
+
+    private static Content decode(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < Integer.BYTES * 2 || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not an access rights snapshot");
+        }
+        ByteBuffer content = buffer.duplicate();
+        content.limit(buffer.limit() - Integer.BYTES);
+        CRC32 checksum = new CRC32();
+        checksum.update(content);
+        if ((int) checksum.getValue() != buffer.getInt(buffer.limit() - Integer.BYTES)) {
+            throw new IOException("The checksum of the access rights snapshot does not match its content");
+        }
+        buffer.position(Integer.BYTES);
+        short version = buffer.getShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported access rights snapshot version " + version);
+        }
+        Instant updatedAt = Instant.ofEpochMilli(buffer.getLong());
+        String[] strings = new String[buffer.getInt()];
+        for (int position = 0; position < strings.length; position++) {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            strings[position] = new String(bytes, UTF_8);
+        }
+        // each distinct user id is built once and shared by all its rights
+        Map<Long, UserId> users = new HashMap<>();
+        int count = buffer.getInt();
+        List<AccessRight> rights = new ArrayList<>(count);
+        for (int right = 0; right < count; right++) {
+            String parkingSiteId = strings[buffer.getInt()];
+            OffsetDateTime startTime = readTime(buffer);
+            OffsetDateTime endTime = readTime(buffer);
+            boolean granted = buffer.get() != 0;
+            int userCount = buffer.getShort() & 0xffff;
+            List<UserId> userIds = new ArrayList<>(userCount);
+            for (int user = 0; user < userCount; user++) {
+                int type = buffer.getInt();
+                int id = buffer.getInt();
+                userIds.add(users.computeIfAbsent(((long) type << 32) | (id & 0xffffffffL),
+                        key -> new UserId(type != NONE ? UserIdType.valueOf(strings[type]) : null, strings[id])));
+            }
+            Map<AccessRightAttributeName, String> attributes = new EnumMap<>(AccessRightAttributeName.class);
+            for (int attribute = buffer.get() & 0xff; attribute > 0; attribute--) {
+                AccessRightAttributeName name = AccessRightAttributeName.valueOf(strings[buffer.getInt()]);
+                int value = buffer.getInt();
+                attributes.put(name, value != NONE ? strings[value] : null);
+            }
+            rights.add(new AccessRight(userIds, parkingSiteId, startTime, endTime, granted, attributes));
+        }
+        return new Content(rights, updatedAt);
+    }
+
+    private static int intern(Map<String, Integer> strings, String string) {
+        Integer position = strings.get(string);
+        if (position == null) {
+            position = strings.size();
+            strings.put(string, position);
+        }
+        return position;
+    }
+
+    private static void writeTime(DataOutputStream out, OffsetDateTime time) throws IOException {
+        out.writeLong(time.toEpochSecond());
+        out.writeInt(time.getOffset().getTotalSeconds());
+    }
+
+    private static OffsetDateTime readTime(ByteBuffer buffer) {
+        long epochSecond = buffer.getLong();
+        ZoneOffset offset = ZoneOffset.ofTotalSeconds(buffer.getInt());
+        return OffsetDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), offset);
+    }
+
+    static final class Content {
+        final List<AccessRight> rights;
+        final Instant updatedAt;
+
+        private Content(List<AccessRight> rights, Instant updatedAt) {
+            this.rights = rights;
+            this.updatedAt = updatedAt;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package net.commuty.parking.local;
+
+import net.commuty.parking.ParkingAccess;
+import net.commuty.parking.http.ApiException;
+import net.commuty.parking.model.AccessRight;
+import net.commuty.parking.model.UserId;
+import net.commuty.parking.rest.DaemonThreadFactory;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+
+import static java.util.Collections.singleton;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static net.commuty.parking.model.AccessRightAttributeName.ID;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * <p>Keeps an {@link AccessRightIndex} up to date by fetching only the access rights created since the previous poll.</p>
+ * <p>Each poll asks the api for the rights created after a high-water mark (the start of the previous successful poll,
+ * minus {@link #HIGH_WATER_MARK_OVERLAP}). The rights are merged by {@link AccessRight#getId()}: a right received again replaces
+ * its previous version, and a new right of a user replaces the rights of that user it overlaps.</p>
+ * <p>Deleted rights never show up in a poll, so the whole day is fetched again every <code>fullSyncIntervalInMs</code>, and
+ * as soon as the day changes. All the calls are made with <code>dryRun</code>, so that the rights are never flagged as "read".</p>
+ * <p>Once started, the polls are made in the background. When a poll fails, the index is left as is and the next poll catches up.</p>
+ * <p>When a <code>snapshot</code> file is given, the index is loaded from it on {@link #start()} (so that it answers before the
+ * first poll completes), and the file is rewritten with an {@link AccessRightSnapshot} each time a poll changes the index.</p>
+ * <pre>
+ * AccessRightIndex index = new AccessRightIndex();
+ * AccessRightSync sync = new AccessRightSync(client, index, 30000, 3600000); // poll every 30 seconds, fetch everything every hour
+ * sync.start();
+ * ParkingAccess localClient = new LocalParkingAccess(client, index, 300000);
+ * </pre>
+ */
+public class AccessRightSync implements AutoCloseable {
+
+    private static final Logger LOG = getLogger(AccessRightSync.class);
+
+    static final Duration HIGH_WATER_MARK_OVERLAP = Duration.ofSeconds(10);
+
+    private final ParkingAccess remote;
+    private final AccessRightIndex index;
+    private final int pollIntervalInMs;
+    private final int fullSyncIntervalInMs;
+    private final Clock clock;
+    private final ZoneId zone;
+    private final Path snapshot;
+    private final Map<UUID, AccessRight> rightsById = new HashMap<>();
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> polling;
+
+    private volatile LocalDateTime highWaterMark;
+    private volatile LocalDate syncedDay;
+    private volatile Instant lastFullSyncAt;
+    private volatile Instant lastSyncAt;
+    private volatile int lastBatchSize;
+    private volatile long fullSyncCount;
+    private volatile long deltaSyncCount;
+    private volatile long failureCount;
+
+    /**
+     * @param remote The client that calls the api.
+     * @param index The index to keep up to date.
+     * @param pollIntervalInMs How long (in ms) to wait between two polls.
+     * @param fullSyncIntervalInMs How long (in ms) to wait between two fetches of the whole day, that remove the deleted rights from the index.
+     */
+    public AccessRightSync(ParkingAccess remote, AccessRightIndex index, int pollIntervalInMs, int fullSyncIntervalInMs) {
+        this(remote, index, pollIntervalInMs, fullSyncIntervalInMs, null, Clock.systemDefaultZone());
+    }
+
+    /**
+     * @param remote The client that calls the api.
+     * @param index The index to keep up to date.
+     * @param pollIntervalInMs How long (in ms) to wait between two polls.
+     * @param fullSyncIntervalInMs How long (in ms) to wait between two fetches of the whole day, that remove the deleted rights from the index.
+     * @param snapshot The file the index is loaded from on start, and saved to after each poll that changes it.
+     */
+    public AccessRightSync(ParkingAccess remote, AccessRightIndex index, int pollIntervalInMs, int fullSyncIntervalInMs, Path snapshot) {
+        this(remote, index, pollIntervalInMs, fullSyncIntervalInMs, snapshot, Clock.systemDefaultZone());
+    }
+
+    AccessRightSync(ParkingAccess remote, AccessRightIndex index, int pollIntervalInMs, int fullSyncIntervalInMs, Clock clock) {
+        this(remote, index, pollIntervalInMs, fullSyncIntervalInMs, null, clock);
+    }
+
+    AccessRightSync(ParkingAccess remote, AccessRightIndex index, int pollIntervalInMs, int fullSyncIntervalInMs, Path snapshot, Clock clock) {
+        if (remote == null || index == null) {
+            throw new IllegalArgumentException("The client and the index cannot be null");
+        }
+        if (pollIntervalInMs <= 0 || fullSyncIntervalInMs <= 0) {
+            throw new IllegalArgumentException("You must provide a positive interval");
+        }
+        this.remote = remote;
+        this.index = index;
+        this.pollIntervalInMs = pollIntervalInMs;
+        this.fullSyncIntervalInMs = fullSyncIntervalInMs;
+        this.clock = clock;
+        this.zone = clock.getZone();
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * <p>Start polling the api in the background. The first poll fetches the whole day.</p>
+     * <p>If the index was never loaded, it is first loaded from the snapshot file, if any.</p>
+     */
+    public synchronized void start() {
+        if (polling != null) {
+            return;
+        }
+        if (snapshot != null && index.getUpdatedAt() == null) {
+            loadSnapshot();
+        }
+        scheduler = newSingleThreadScheduledExecutor(new DaemonThreadFactory("parking-access-sync"));
+        polling = scheduler.scheduleWithFixedDelay(this::syncQuietly, 0, pollIntervalInMs, MILLISECONDS);
+    }
+
+    /**
+     * <p>Stop polling the api. The index keeps its content.</p>
+     */
+    @Override
+    public synchronized void close() {
+        if (polling != null) {
+            polling.cancel(false);
+            scheduler.shutdown();
+            polling = null;
+        }
+    }
+
+    /**
+     * <p>Poll the api right now: fetch the whole day if it is due, otherwise only the rights created since the previous poll.</p>
+     * @return The number of rights received.
+     * @throws ApiException The api could not be called. The index was not modified.
+     */
+    public synchronized int sync() throws ApiException {
+        Instant start = clock.instant();
+        LocalDate today = LocalDate.now(clock);
+        boolean full = highWaterMark == null
+                || !today.equals(syncedDay)
+                || Duration.between(lastFullSyncAt, start).toMillis() >= fullSyncIntervalInMs;
+        Collection<AccessRight> rights;
+        if (full) {
+            rights = remote.listAccessRights(null, null, true, null, null, null, null, singleton(ID));
+            replaceAll(rights);
+            syncedDay = today;
+            lastFullSyncAt = start;
+            fullSyncCount++;
+        } else {
+            rights = remote.listAccessRights(null, null, true, highWaterMark, null, null, null, singleton(ID));
+            rights.forEach(this::merge);
+            deltaSyncCount++;
+        }
+        index.markUpToDate();
+        if (snapshot != null && (full || !rights.isEmpty())) {
+            saveSnapshot();
+        }
+        highWaterMark = LocalDateTime.ofInstant(start.minus(HIGH_WATER_MARK_OVERLAP), ZoneOffset.UTC);
+        lastSyncAt = start;
+        lastBatchSize = rights.size();
+        LOG.debug("{} sync done, {} access rights received, {} in the index", full ? "Full" : "Incremental", rights.size(), index.size());
+        return rights.size();
+    }
+
+    /**
+     * How long (in ms) since the start of the last successful poll, i.e. how late the index may be compared to the api.
+     * <code>-1</code> if no poll succeeded yet.
+     */
+    public long getLagInMs() {
+        Instant last = lastSyncAt;
+        return last != null ? Duration.between(last, clock.instant()).toMillis() : -1;
+    }
+
+    /**
+     * The start of the last successful poll, or <code>null</code> if no poll succeeded yet.
+     */
+    public Instant getLastSyncAt() {
+        return lastSyncAt;
+    }
+
+    /**
+     * The number of rights received by the last successful poll.
+     */
+    public int getLastBatchSize() {
+        return lastBatchSize;
+    }
+
+    /**
+     * The number of successful fetches of the whole day.
+     */
+    public long getFullSyncCount() {
+        return fullSyncCount;
+    }
+
+    /**
+     * The number of successful polls of the rights created since the previous poll.
+     */
+    public long getDeltaSyncCount() {
+        return deltaSyncCount;
+    }
+
+    /**
+     * The number of background polls that failed.
+     */
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (ApiException | RuntimeException e) {
+            failureCount++;
+            LOG.warn("Unable to sync the access rights, the index is {}ms late", getLagInMs(), e);
+        }
+    }
+
+    private void loadSnapshot() {
+        try {
+            if (AccessRightSnapshot.load(snapshot, index)) {
+                LOG.info("{} access rights loaded from {}, taken at {}", index.size(), snapshot, index.getUpdatedAt());
+            }
+        } catch (IOException e) {
+            LOG.warn("Unable to load the access rights from {}, waiting for the first sync", snapshot, e);
+        }
+    }
+
+    private void saveSnapshot() {
+        try {
+            AccessRightSnapshot.write(snapshot, index);
+        } catch (IOException e) {
+            LOG.warn("Unable to save the access rights to {}", snapshot, e);
+        }
+    }
+
+    private void replaceAll(Collection<AccessRight> rights) {
+        rightsById.clear();
+        for (AccessRight right : rights) {
+            if (right.getId() != null) {
+                rightsById.put(right.getId(), right);
+            }
+        }
+        index.replaceAll(rights);
+    }
+
+    private void merge(AccessRight right) {
+        AccessRight previous = right.getId() != null ? rightsById.put(right.getId(), right) : null;
+        if (previous != null) {
+            index.remove(previous);
+        }
+        for (UserId user : right.getUserIds()) {
+            for (AccessRight existing : index.findAll(right.getParkingSiteId(), user)) {
+                if (overlaps(existing, right)) {
+                    LOG.trace("Access right {} replaced by {}", existing.getId(), right.getId());
+                    index.remove(existing);
+                    if (existing.getId() != null) {
+                        rightsById.remove(existing.getId());
+                    }
+                }
+            }
+        }
+        index.put(right);
+    }
+
+    private static boolean overlaps(AccessRight first, AccessRight second) {
+        return first.getStartTime().toInstant().isBefore(second.getEndTime().toInstant())
+                && second.getStartTime().toInstant().isBefore(first.getEndTime().toInstant());
+    }
+}
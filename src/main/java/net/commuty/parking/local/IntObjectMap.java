@@ -0,0 +1,114 @@
+package net.commuty.parking.local;
+
+/**
+ * <p>A hash map from <code>int</code> keys to values, with open addressing and linear probing: the keys are not boxed, and
+ * there is no entry object per mapping.</p>
+ * <p>This class is not thread-safe.</p>
+ */
+class IntObjectMap<V> {
+
+    private static final int MIN_CAPACITY = 4;
+
+    private int[] keys; // key + 1, 0 when the slot is empty
+    private Object[] values;
+    private int size;
+
+    IntObjectMap() {
+        keys = new int[MIN_CAPACITY];
+        values = new Object[MIN_CAPACITY];
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(int key) {
+        int slot = slotOf(key);
+        return keys[slot] != 0 ? (V) values[slot] : null;
+    }
+
+    /**
+     * @return The previous value of the key, or <code>null</code>.
+     */
+    @SuppressWarnings("unchecked")
+    V put(int key, V value) {
+        int slot = slotOf(key);
+        if (keys[slot] != 0) {
+            V previous = (V) values[slot];
+            values[slot] = value;
+            return previous;
+        }
+        keys[slot] = key + 1;
+        values[slot] = value;
+        if (++size * 4 >= keys.length * 3) {
+            rehash(keys.length * 2);
+        }
+        return null;
+    }
+
+    /**
+     * @return The value the key had, or <code>null</code>.
+     */
+    @SuppressWarnings("unchecked")
+    V remove(int key) {
+        int slot = slotOf(key);
+        if (keys[slot] == 0) {
+            return null;
+        }
+        V previous = (V) values[slot];
+        // shift back the following keys of the run, so that a lookup never stops on the freed slot
+        int mask = keys.length - 1;
+        int free = slot;
+        int next = (free + 1) & mask;
+        while (keys[next] != 0) {
+            int home = mix(keys[next] - 1) & mask;
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                keys[free] = keys[next];
+                values[free] = values[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[free] = 0;
+        values[free] = null;
+        size--;
+        return previous;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    private int slotOf(int key) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != 0 && keys[slot] != key + 1) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash(int capacity) {
+        int[] previousKeys = keys;
+        Object[] previousValues = values;
+        keys = new int[capacity];
+        values = new Object[capacity];
+        int mask = capacity - 1;
+        for (int position = 0; position < previousKeys.length; position++) {
+            if (previousKeys[position] != 0) {
+                int slot = mix(previousKeys[position] - 1) & mask;
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = previousKeys[position];
+                values[slot] = previousValues[position];
+            }
+        }
+    }
+
+    private static int mix(int key) {
+        int hash = key * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,207 @@
+package net.commuty.parking.local;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>A balanced (AVL) search tree of half-open intervals <code>[start, end)</code>, sorted by start.</p>
+ * <p>Each node also holds the greatest end of its subtree, so that the subtrees that end before a query are skipped:
+ * finding the <code>k</code> intervals overlapping a query takes <code>O(log n + k)</code>. Adding and removing an interval
+ * take <code>O(log n)</code>.</p>
+ * <p>The same value can be added only once, values are compared by identity. This class is not thread-safe.</p>
+ */
+class IntervalTree<T> {
+
+    private final Map<T, Node<T>> nodes = new IdentityHashMap<>();
+    private Node<T> root;
+    private long sequence;
+
+    /**
+     * Add a value covering <code>[start, end)</code>. Does nothing if the value is already in the tree.
+     */
+    void add(long start, long end, T value) {
+        if (end <= start) {
+            throw new IllegalArgumentException("The end of an interval must be after its start");
+        }
+        if (nodes.containsKey(value)) {
+            return;
+        }
+        Node<T> node = new Node<>(start, end, sequence++, value);
+        nodes.put(value, node);
+        root = insert(root, node);
+    }
+
+    /**
+     * @return <code>true</code> if the value was in the tree.
+     */
+    boolean remove(T value) {
+        Node<T> node = nodes.remove(value);
+        if (node == null) {
+            return false;
+        }
+        root = delete(root, node);
+        return true;
+    }
+
+    /**
+     * The values whose interval contains <code>point</code>, sorted by start.
+     */
+    List<T> findContaining(long point) {
+        return findOverlapping(point, point + 1);
+    }
+
+    /**
+     * The values whose interval overlaps <code>[from, to)</code>, sorted by start.
+     */
+    List<T> findOverlapping(long from, long to) {
+        List<T> found = new ArrayList<>();
+        collect(root, from, to, found);
+        return found;
+    }
+
+    int size() {
+        return nodes.size();
+    }
+
+    boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+
+    private static <T> void collect(Node<T> node, long from, long to, List<T> found) {
+        if (node == null || node.maxEnd <= from) {
+            return;
+        }
+        collect(node.left, from, to, found);
+        if (node.start < to) {
+            if (from < node.end) {
+                found.add(node.value);
+            }
+            collect(node.right, from, to, found);
+        }
+    }
+
+    private static <T> Node<T> insert(Node<T> node, Node<T> added) {
+        if (node == null) {
+            return added;
+        }
+        if (added.compareTo(node) < 0) {
+            node.left = insert(node.left, added);
+        } else {
+            node.right = insert(node.right, added);
+        }
+        return balance(node);
+    }
+
+    private static <T> Node<T> delete(Node<T> node, Node<T> removed) {
+        if (node == null) {
+            return null;
+        }
+        int comparison = removed.compareTo(node);
+        if (comparison < 0) {
+            node.left = delete(node.left, removed);
+        } else if (comparison > 0) {
+            node.right = delete(node.right, removed);
+        } else {
+            if (node.left == null) {
+                return node.right;
+            }
+            if (node.right == null) {
+                return node.left;
+            }
+            Node<T> successor = node.right;
+            while (successor.left != null) {
+                successor = successor.left;
+            }
+            successor.right = deleteMin(node.right);
+            successor.left = node.left;
+            node = successor;
+        }
+        return balance(node);
+    }
+
+    private static <T> Node<T> deleteMin(Node<T> node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        node.left = deleteMin(node.left);
+        return balance(node);
+    }
+
+    private static <T> Node<T> balance(Node<T> node) {
+        node.update();
+        int factor = height(node.left) - height(node.right);
+        if (factor > 1) {
+            if (height(node.left.left) < height(node.left.right)) {
+                node.left = rotateLeft(node.left);
+            }
+            return rotateRight(node);
+        }
+        if (factor < -1) {
+            if (height(node.right.right) < height(node.right.left)) {
+                node.right = rotateRight(node.right);
+            }
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    private static <T> Node<T> rotateRight(Node<T> node) {
+        Node<T> pivot = node.left;
+        node.left = pivot.right;
+        pivot.right = node;
+        node.update();
+        pivot.update();
+        return pivot;
+    }
+
+    private static <T> Node<T> rotateLeft(Node<T> node) {
+        Node<T> pivot = node.right;
+        node.right = pivot.left;
+        pivot.left = node;
+        node.update();
+        pivot.update();
+        return pivot;
+    }
+
+    private static int height(Node<?> node) {
+        return node != null ? node.height : 0;
+    }
+
+    private static final class Node<T> implements Comparable<Node<T>> {
+        private final long start;
+        private final long end;
+        private final long sequence;
+        private final T value;
+        private Node<T> left;
+        private Node<T> right;
+        private int height = 1;
+        private long maxEnd;
+
+        private Node(long start, long end, long sequence, T value) {
+            this.start = start;
+            this.end = end;
+            this.sequence = sequence;
+            this.value = value;
+            this.maxEnd = end;
+        }
+
+        private void update() {
+            height = 1 + Math.max(height(left), height(right));
+            maxEnd = end;
+            if (left != null && left.maxEnd > maxEnd) {
+                maxEnd = left.maxEnd;
+            }
+            if (right != null && right.maxEnd > maxEnd) {
+                maxEnd = right.maxEnd;
+            }
+        }
+
+        @Override
+        public int compareTo(Node<T> other) {
+            int comparison = Long.compare(start, other.start);
+            return comparison != 0 ? comparison : Long.compare(sequence, other.sequence);
+        }
+    }
+}
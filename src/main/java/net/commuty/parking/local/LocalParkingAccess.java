@@ -0,0 +1,254 @@
+package net.commuty.parking.local;
+
+import net.commuty.parking.ParkingAccess;
+import net.commuty.parking.http.ApiException;
+import net.commuty.parking.http.CredentialsException;
+import net.commuty.parking.http.HttpClientException;
+import net.commuty.parking.http.HttpRequestException;
+import net.commuty.parking.http.PartialVerificationException;
+import net.commuty.parking.model.*;
+import org.slf4j.Logger;
+
+import java.time.*;
+import java.util.*;
+import java.util.stream.Stream;
+
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.emptySet;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * <p>A {@link ParkingAccess} that answers {@link #isGranted(String, UserId)} and {@link #areGranted(String, Collection)} from an
+ * {@link AccessRightIndex} instead of calling the api.</p>
+ * <p>The api is still called when the index cannot answer:</p>
+ * <ul>
+ *     <li>the index was not updated for longer than the staleness bound (i.e. the api could not be reached to refresh it);</li>
+ *     <li>the index holds no right of the user covering the current moment (i.e. a user created after the last refresh).</li>
+ * </ul>
+ * <p>All the other methods are forwarded to the given client, and {@link #close()} closes it.</p>
+ * <p>The index is loaded by {@link #refresh()}, that you should call periodically (i.e. every few minutes):</p>
+ * <pre>
+ * LocalParkingAccess client = new LocalParkingAccess(Configuration.Builder.buildDefault("a-username", "a-password").toRestClient(), 900000);
+ * client.refresh();
+ * scheduler.scheduleWithFixedDelay(client::refresh, 5, 5, TimeUnit.MINUTES);
+ * </pre>
+ * <p>To avoid fetching the whole day each time, keep the index up to date with an {@link AccessRightSync} instead.</p>
+ */
+public class LocalParkingAccess implements ParkingAccess {
+
+    private static final Logger LOG = getLogger(LocalParkingAccess.class);
+
+    private final ParkingAccess remote;
+    private final AccessRightIndex index;
+    private final int maxStalenessInMs;
+    private final Clock clock;
+
+    /**
+     * @param remote The client that calls the api.
+     * @param maxStalenessInMs How long (in ms) the index is used after its last update. Once it is older, every verification calls the api.
+     */
+    public LocalParkingAccess(ParkingAccess remote, int maxStalenessInMs) {
+        this(remote, new AccessRightIndex(), maxStalenessInMs);
+    }
+
+    /**
+     * @param remote The client that calls the api.
+     * @param index The index used to answer the verifications, i.e. an index that you keep up to date yourself.
+     * @param maxStalenessInMs How long (in ms) the index is used after its last update. Once it is older, every verification calls the api.
+     */
+    public LocalParkingAccess(ParkingAccess remote, AccessRightIndex index, int maxStalenessInMs) {
+        this(remote, index, maxStalenessInMs, Clock.systemUTC());
+    }
+
+    LocalParkingAccess(ParkingAccess remote, AccessRightIndex index, int maxStalenessInMs, Clock clock) {
+        if (remote == null || index == null) {
+            throw new IllegalArgumentException("The client and the index cannot be null");
+        }
+        if (maxStalenessInMs <= 0) {
+            throw new IllegalArgumentException("You must provide a positive staleness");
+        }
+        this.remote = remote;
+        this.index = index;
+        this.maxStalenessInMs = maxStalenessInMs;
+        this.clock = clock;
+    }
+
+    /**
+     * <p>Load the access rights of the current day from the api and replace the content of the index.</p>
+     * <p>The rights are fetched with <code>dryRun</code>, so that they are not flagged as "read".</p>
+     * @throws CredentialsException Your username or password is invalid.
+     * @throws HttpRequestException The query was sent to the api but the status is unsuccessful (HTTP status code &ge; 400). See {@link HttpRequestException} for more details.
+     * @throws HttpClientException The query did not reached the api, i.e. there was a network issue.
+     */
+    public void refresh() throws CredentialsException, HttpRequestException, HttpClientException {
+        LOG.debug("Loading the access rights of the day in the local index");
+        index.replaceAll(remote.listAccessRights(null, null, true, null, null, null, null, emptySet()));
+        LOG.debug("{} access rights loaded in the local index", index.size());
+    }
+
+    /**
+     * The index used to answer the verifications.
+     */
+    public AccessRightIndex getIndex() {
+        return index;
+    }
+
+    @Override
+    public String authenticate() throws CredentialsException, HttpRequestException, HttpClientException {
+        return remote.authenticate();
+    }
+
+    /**
+     * <p>Check whether a {@link UserId} is allowed to enter the parking site (or not) right now.</p>
+     * <p>The answer comes from the index when it is fresh enough and knows the user, otherwise the api is called.</p>
+     * @see ParkingAccess#isGranted(String, UserId)
+     */
+    @Override
+    public boolean isGranted(String parkingSiteId, UserId user) throws CredentialsException, HttpRequestException, HttpClientException {
+        if (parkingSiteId == null || parkingSiteId.trim().isEmpty()) {
+            throw new IllegalArgumentException("parkingSiteId must not be null or blank");
+        }
+        if (user == null) {
+            throw new IllegalArgumentException("UserId cannot be null");
+        }
+        Instant now = clock.instant();
+        if (!isFresh(now)) {
+            LOG.debug("Local index is outdated, verifying user {} with the api", user);
+            return remote.isGranted(parkingSiteId, user);
+        }
+        Boolean granted = index.isGranted(parkingSiteId, user, OffsetDateTime.ofInstant(now, ZoneOffset.UTC));
+        if (granted == null) {
+            LOG.debug("User {} is not in the local index, verifying it with the api", user);
+            return remote.isGranted(parkingSiteId, user);
+        }
+        return granted;
+    }
+
+    /**
+     * <p>Check whether several {@link UserId} are allowed to enter the parking site (or not) right now.</p>
+     * <p>The users the index can answer for (when it is fresh enough) are answered from it, and all the other ones are verified
+     * with a single call to the {@link ParkingAccess#areGranted(String, Collection)} of the given client, i.e. in parallel.</p>
+     * @see ParkingAccess#areGranted(String, Collection)
+     */
+    @Override
+    public Map<UserId, Boolean> areGranted(String parkingSiteId, Collection<UserId> users) throws PartialVerificationException {
+        if (parkingSiteId == null || parkingSiteId.trim().isEmpty()) {
+            throw new IllegalArgumentException("parkingSiteId must not be null or blank");
+        }
+        if (users == null || users.contains(null)) {
+            throw new IllegalArgumentException("Users cannot be null");
+        }
+        Set<UserId> distinct = new LinkedHashSet<>(users);
+        Map<UserId, Boolean> local = new HashMap<>();
+        List<UserId> missing = new ArrayList<>();
+        Instant now = clock.instant();
+        if (isFresh(now)) {
+            OffsetDateTime moment = OffsetDateTime.ofInstant(now, ZoneOffset.UTC);
+            for (UserId user : distinct) {
+                Boolean granted = index.isGranted(parkingSiteId, user, moment);
+                if (granted != null) {
+                    local.put(user, granted);
+                } else {
+                    missing.add(user);
+                }
+            }
+        } else {
+            missing.addAll(distinct);
+        }
+        Map<UserId, Boolean> fromApi = emptyMap();
+        Map<UserId, ApiException> failures = emptyMap();
+        if (!missing.isEmpty()) {
+            LOG.debug("{} of {} users are verified with the api", missing.size(), distinct.size());
+            try {
+                fromApi = remote.areGranted(parkingSiteId, missing);
+            } catch (PartialVerificationException e) {
+                fromApi = e.getVerified();
+                failures = e.getFailures();
+            }
+        }
+        // in the order of the given users
+        Map<UserId, Boolean> verified = new LinkedHashMap<>();
+        for (UserId user : distinct) {
+            Boolean granted = local.containsKey(user) ? local.get(user) : fromApi.get(user);
+            if (granted != null) {
+                verified.put(user, granted);
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw new PartialVerificationException(verified, failures);
+        }
+        return verified;
+    }
+
+    private boolean isFresh(Instant now) {
+        Instant updatedAt = index.getUpdatedAt();
+        return updatedAt != null && Duration.between(updatedAt, now).toMillis() <= maxStalenessInMs;
+    }
+
+    @Override
+    public Collection<AccessRight> listAccessRightsForToday() throws CredentialsException, HttpRequestException, HttpClientException {
+        return remote.listAccessRightsForToday();
+    }
+
+    @Override
+    public Collection<AccessRight> listAccessRightsForToday(boolean unreadOnly) throws CredentialsException, HttpRequestException, HttpClientException {
+        return remote.listAccessRightsForToday(unreadOnly);
+    }
+
+    @Override
+    public Collection<AccessRight> listAccessRights(LocalDate date,
+                                                    Boolean unreadOnly,
+                                                    Boolean dryRun,
+                                                    LocalDateTime createdAfter,
+                                                    Boolean granted,
+                                                    String parkingSiteId,
+                                                    UUID subjectId,
+                                                    Set<AccessRightAttributeName> includeAttributes) throws CredentialsException, HttpRequestException, HttpClientException {
+        return remote.listAccessRights(date, unreadOnly, dryRun, createdAfter, granted, parkingSiteId, subjectId, includeAttributes);
+    }
+
+    @Override
+    public Stream<AccessRight> streamAccessRights(LocalDate date,
+                                                  Boolean unreadOnly,
+                                                  Boolean dryRun,
+                                                  LocalDateTime createdAfter,
+                                                  Boolean granted,
+                                                  String parkingSiteId,
+                                                  UUID subjectId,
+                                                  Set<AccessRightAttributeName> includeAttributes) throws CredentialsException, HttpRequestException, HttpClientException {
+        return remote.streamAccessRights(date, unreadOnly, dryRun, createdAfter, granted, parkingSiteId, subjectId, includeAttributes);
+    }
+
+    @Override
+    public String reportAccessLog(String parkingSiteId, Collection<AccessLog> accessLogs) throws CredentialsException, HttpRequestException, HttpClientException {
+        return remote.reportAccessLog(parkingSiteId, accessLogs);
+    }
+
+    @Override
+    public UserId reportMissingUserId(UserId user) throws CredentialsException, HttpRequestException, HttpClientException {
+        return remote.reportMissingUserId(user);
+    }
+
+    @Override
+    public Count reportAvailableSpotCount(String parkingSiteId, int count, Integer total) throws CredentialsException, HttpRequestException, HttpClientException {
+        return remote.reportAvailableSpotCount(parkingSiteId, count, total);
+    }
+
+    @Override
+    public List<ParkingSpot> listParkingSpots(String parkingSiteId) throws CredentialsException, HttpRequestException, HttpClientException {
+        return remote.listParkingSpots(parkingSiteId);
+    }
+
+    @Override
+    public UUID reportApplicationLog(ApplicationLog log) throws CredentialsException, HttpRequestException, HttpClientException {
+        return remote.reportApplicationLog(log);
+    }
+
+    /**
+     * <p>Close the given client (i.e. stop its token renewal). Do not use it afterwards, i.e. with an {@link AccessRightSync}.</p>
+     */
+    @Override
+    public void close() {
+        remote.close();
+    }
+}
@@ -0,0 +1,205 @@
+package net.commuty.parking.local;
+
+import net.commuty.parking.model.UserId;
+import net.commuty.parking.model.UserIdType;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import static net.commuty.parking.model.UserIdType.EMAIL;
+import static net.commuty.parking.model.UserIdType.LICENSE_PLATE;
+
+/**
+ * <p>Gives a small <code>int</code> handle to each distinct {@link UserId}, so that large sets of identifiers (i.e. millions of
+ * license plates and badges) are stored once, and can be keyed by a primitive instead of an object.</p>
+ * <p>The values are {@link #canonicalize(UserIdType, String) canonicalized} first: <code>1-abc 123</code> and <code>1-ABC123</code>
+ * are the same license plate, and get the same handle.</p>
+ * <p>The identifiers are kept in two arrays (values and types), indexed by handle, and found through an open-addressing hash
+ * table of handles: looking up an identifier that is already canonical allocates nothing. Handles are never reused: build a
+ * new table to drop the identifiers that are no longer needed.</p>
+ * <p>This class is not thread-safe, but it can be read by many threads as long as nobody adds to it.</p>
+ */
+public class UserIdTable {
+
+    public static final int NOT_FOUND = -1;
+
+    private static final UserIdType[] TYPES = UserIdType.values();
+    private static final byte NO_TYPE = -1;
+    private static final int MIN_CAPACITY = 16;
+
+    private String[] ids;
+    private byte[] types;
+    private int[] slots; // handle + 1, 0 when the slot is empty
+    private int size;
+
+    public UserIdTable() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize The number of identifiers the table is expected to hold, to avoid growing it.
+     */
+    public UserIdTable(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("You must provide a positive expectedSize");
+        }
+        int capacity = Math.max(expectedSize, MIN_CAPACITY);
+        ids = new String[capacity];
+        types = new byte[capacity];
+        slots = new int[tableSizeFor(capacity)];
+    }
+
+    /**
+     * <p>Add an identifier to the table, if it is not there yet.</p>
+     * @return The handle of the identifier.
+     */
+    public int intern(UserId user) {
+        String id = canonicalize(user.getType(), user.getId());
+        byte type = typeOf(user.getType());
+        int slot = slotOf(type, id);
+        if (slots[slot] != 0) {
+            return slots[slot] - 1;
+        }
+        if (size == ids.length) {
+            int capacity = ids.length + (ids.length >> 1);
+            ids = Arrays.copyOf(ids, capacity);
+            types = Arrays.copyOf(types, capacity);
+        }
+        int handle = size++;
+        ids[handle] = id;
+        types[handle] = type;
+        slots[slot] = handle + 1;
+        if (size * 4L >= slots.length * 3L) {
+            rehash(slots.length * 2);
+        }
+        return handle;
+    }
+
+    /**
+     * @return The handle of the identifier, or {@link #NOT_FOUND} if it is not in the table.
+     */
+    public int find(UserId user) {
+        return find(user.getType(), user.getId());
+    }
+
+    /**
+     * @return The handle of the identifier, or {@link #NOT_FOUND} if it is not in the table.
+     */
+    public int find(UserIdType type, String id) {
+        return slots[slotOf(typeOf(type), canonicalize(type, id))] - 1;
+    }
+
+    /**
+     * @return The identifier of a handle, with its canonical value. A new {@link UserId} is created at each call.
+     */
+    public UserId get(int handle) {
+        return new UserId(getType(handle), getId(handle));
+    }
+
+    /**
+     * @return The canonical value of the identifier of a handle.
+     */
+    public String getId(int handle) {
+        checkHandle(handle);
+        return ids[handle];
+    }
+
+    /**
+     * @return The type of the identifier of a handle.
+     */
+    public UserIdType getType(int handle) {
+        checkHandle(handle);
+        return types[handle] != NO_TYPE ? TYPES[types[handle]] : null;
+    }
+
+    /**
+     * The number of identifiers in the table. The handles go from <code>0</code> to <code>size() - 1</code>.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * <p>The value of an identifier as it is compared by the table:</p>
+     * <ul>
+     *     <li>a {@link UserIdType#LICENSE_PLATE} is upper-cased, without any whitespace;</li>
+     *     <li>an {@link UserIdType#EMAIL} is lower-cased, without leading and trailing whitespace;</li>
+     *     <li>the other identifiers are kept as is.</li>
+     * </ul>
+     * @return The canonical value, which is the given one (not a copy) when it is already canonical.
+     */
+    public static String canonicalize(UserIdType type, String id) {
+        if (type == LICENSE_PLATE) {
+            for (int position = 0; position < id.length(); position++) {
+                char character = id.charAt(position);
+                boolean kept = character < 128
+                        ? character > ' ' && (character < 'a' || character > 'z')
+                        : !Character.isWhitespace(character) && Character.toUpperCase(character) == character;
+                if (!kept) {
+                    StringBuilder canonical = new StringBuilder(id.length());
+                    id.codePoints()
+                            .filter(codePoint -> !Character.isWhitespace(codePoint))
+                            .map(Character::toUpperCase)
+                            .forEach(canonical::appendCodePoint);
+                    return canonical.toString();
+                }
+            }
+        } else if (type == EMAIL) {
+            for (int position = 0; position < id.length(); position++) {
+                char character = id.charAt(position);
+                if (character < 128 ? character >= 'A' && character <= 'Z' : Character.toLowerCase(character) != character) {
+                    return id.trim().toLowerCase(Locale.ROOT);
+                }
+            }
+            if (!id.isEmpty() && (Character.isWhitespace(id.charAt(0)) || Character.isWhitespace(id.charAt(id.length() - 1)))) {
+                return id.trim();
+            }
+        }
+        return id;
+    }
+
+    private int slotOf(byte type, String id) {
+        int mask = slots.length - 1;
+        int slot = hash(type, id) & mask;
+        while (slots[slot] != 0) {
+            int handle = slots[slot] - 1;
+            if (types[handle] == type && ids[handle].equals(id)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        int mask = capacity - 1;
+        for (int handle = 0; handle < size; handle++) {
+            int slot = hash(types[handle], ids[handle]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = handle + 1;
+        }
+    }
+
+    private void checkHandle(int handle) {
+        if (handle < 0 || handle >= size) {
+            throw new IllegalArgumentException("Unknown handle " + handle);
+        }
+    }
+
+    private static int hash(byte type, String id) {
+        int hash = id.hashCode() * 31 + type;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static byte typeOf(UserIdType type) {
+        return type != null ? (byte) type.ordinal() : NO_TYPE;
+    }
+
+    private static int tableSizeFor(int capacity) {
+        // a power of two, at most 3/4 full
+        return Integer.highestOneBit(capacity * 4 / 3 + 1) * 2;
+    }
+}
@@ -4,8 +4,6 @@ package net.commuty.parking.model;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
-import java.util.Objects;
-
 import static net.commuty.parking.model.UserIdType.*;
 
 /**
@@ -129,11 +127,12 @@ public class UserId {
         }
 
         UserId userId = (UserId) other;
-        return Objects.equals(id, userId.id) && type == userId.type;
+        return type == userId.type && id.equals(userId.id);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(id, type);
+        // no varargs array, and the hash of the id is cached by String
+        return 31 * id.hashCode() + (type != null ? type.ordinal() + 1 : 0);
     }
 }
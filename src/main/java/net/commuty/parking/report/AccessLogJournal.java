@@ -0,0 +1,535 @@
+package net.commuty.parking.report;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import net.commuty.parking.model.AccessLog;
+import net.commuty.parking.rest.DaemonThreadFactory;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.zip.CRC32;
+
+import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_NULL;
+import static com.fasterxml.jackson.databind.DeserializationFeature.*;
+import static com.fasterxml.jackson.databind.SerializationFeature.WRITE_DATES_AS_TIMESTAMPS;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * <p>A write-ahead journal of {@link AccessLog}s, so that the logs given to an {@link AccessLogReporter} are not lost when the
+ * application restarts, or while the api cannot be reached.</p>
+ * <p>Each log is appended to the journal, with a sequence number, before it is sent, and is acknowledged once the api returned
+ * a log id for it. When a journal is opened, the logs that were never acknowledged are read back ({@link #getRecovered()}), so
+ * that the reporter sends them again. A log can be sent twice (if the application stops between the response of the api and the
+ * acknowledgment), but it is not lost.</p>
+ * <p>The journal is a sequence of append-only segment files in a directory, holding both the logs and the acknowledgments. A segment
+ * is deleted once all its logs (and the ones of the older segments) are acknowledged. Each record has a checksum: a record that
+ * was only partially written, because the application stopped during the write, is ignored with what follows it in its segment,
+ * and a new segment is started each time the journal is opened.</p>
+ * <p>The logs are written to the file system at each append, so they survive a crash of the application. When they are forced to
+ * the disk, to survive a crash of the machine, is decided by the {@link SyncPolicy}.</p>
+ * <pre>
+ * AccessLogJournal journal = new AccessLogJournal(Paths.get("/var/lib/parking/journal"), SyncPolicy.EVERY_BATCH);
+ * AccessLogReporter reporter = new AccessLogReporter(client, 100, 1000, 10000, journal, listener); // sends the recovered logs first
+ * ...
+ * reporter.close();
+ * journal.close();
+ * </pre>
+ * <p>A directory holds the journal of one reporter, in one application.</p>
+ */
+public class AccessLogJournal implements AutoCloseable {
+
+    private static final Logger LOG = getLogger(AccessLogJournal.class);
+
+    public static final int DEFAULT_SYNC_INTERVAL_IN_MS = 1000;
+    public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    private static final int MAGIC = 0x50414c4a; // "PALJ"
+    private static final short VERSION = 1;
+    private static final int FILE_HEADER_SIZE = Integer.BYTES + Short.BYTES;
+    private static final int RECORD_HEADER_SIZE = Integer.BYTES * 2 + 1; // length, checksum, type
+    private static final byte ENTRY = 1;
+    private static final byte ACKNOWLEDGMENT = 2;
+    private static final String PREFIX = "access-logs-";
+    private static final String SUFFIX = ".journal";
+
+    private final Path directory;
+    private final SyncPolicy syncPolicy;
+    private final long segmentSize;
+    private final ObjectMapper mapper;
+    private final NavigableMap<Long, Segment> segments = new TreeMap<>();
+    private final List<Entry> recovered;
+    private final Object syncLock = new Object();
+    private final ScheduledExecutorService scheduler;
+    private Segment active;
+    private long nextSequence;
+    private long written; // bytes written since the journal was opened, in all the segments
+    private long synced; // guarded by syncLock
+    private int pendingCount;
+    private boolean closed;
+
+    /**
+     * A journal forced to the disk as set by the sync policy, every {@link #DEFAULT_SYNC_INTERVAL_IN_MS} ms if it is
+     * {@link SyncPolicy#PERIODIC}.
+     */
+    public AccessLogJournal(Path directory, SyncPolicy syncPolicy) throws IOException {
+        this(directory, syncPolicy, DEFAULT_SYNC_INTERVAL_IN_MS);
+    }
+
+    /**
+     * <p>Open the journal of a directory (created if needed), and read the logs it holds that were not acknowledged.</p>
+     * @param directory The directory of the segment files.
+     * @param syncPolicy When the logs are forced to the disk.
+     * @param syncIntervalInMs How often (in ms) the logs are forced to the disk, with {@link SyncPolicy#PERIODIC}. Must be strictly positive.
+     * @throws IOException The directory cannot be written, or holds a file that is not a journal segment.
+     */
+    public AccessLogJournal(Path directory, SyncPolicy syncPolicy, int syncIntervalInMs) throws IOException {
+        this(directory, syncPolicy, syncIntervalInMs, DEFAULT_SEGMENT_SIZE);
+    }
+
+    AccessLogJournal(Path directory, SyncPolicy syncPolicy, int syncIntervalInMs, long segmentSize) throws IOException {
+        if (directory == null || syncPolicy == null) {
+            throw new IllegalArgumentException("The directory and the sync policy cannot be null");
+        }
+        if (syncIntervalInMs <= 0) {
+            throw new IllegalArgumentException("You must provide a strictly positive syncIntervalInMs");
+        }
+        this.directory = directory;
+        this.syncPolicy = syncPolicy;
+        this.segmentSize = segmentSize;
+        this.mapper = new ObjectMapper()
+                .configure(FAIL_ON_UNKNOWN_PROPERTIES, false)
+                .registerModules(new JavaTimeModule())
+                .setSerializationInclusion(NON_NULL)
+                .disable(WRITE_DATES_AS_TIMESTAMPS)
+                .disable(ADJUST_DATES_TO_CONTEXT_TIME_ZONE)
+                .enable(READ_UNKNOWN_ENUM_VALUES_USING_DEFAULT_VALUE);
+        Files.createDirectories(directory);
+        this.recovered = Collections.unmodifiableList(recover());
+        this.active = Segment.create(directory, nextSequence);
+        segments.put(active.firstSequence, active);
+        if (syncPolicy == SyncPolicy.PERIODIC) {
+            scheduler = newSingleThreadScheduledExecutor(new DaemonThreadFactory("parking-access-log-journal"));
+            scheduler.scheduleWithFixedDelay(this::syncQuietly, syncIntervalInMs, syncIntervalInMs, MILLISECONDS);
+        } else {
+            scheduler = null;
+        }
+    }
+
+    /**
+     * <p>Write a log to the journal. With {@link SyncPolicy#EVERY_ENTRY}, wait until it is on the disk.</p>
+     * @return The sequence number of the log, to {@link #acknowledge(long...)} it.
+     * @throws IOException The log could not be written.
+     */
+    public long append(String parkingSiteId, AccessLog accessLog) throws IOException {
+        if (parkingSiteId == null || accessLog == null) {
+            throw new IllegalArgumentException("The parking site and the access log cannot be null");
+        }
+        byte[] site = parkingSiteId.getBytes(UTF_8);
+        if (site.length > 0xffff) {
+            throw new IllegalArgumentException("The parking site id is too long");
+        }
+        byte[] json = mapper.writeValueAsBytes(accessLog);
+        long sequence;
+        long end;
+        synchronized (this) {
+            checkOpen();
+            rollIfFull();
+            sequence = nextSequence++;
+            ByteBuffer record = record(ENTRY, Long.BYTES + Short.BYTES + site.length + json.length);
+            record.putLong(sequence).putShort((short) site.length).put(site).put(json);
+            end = write(record);
+            active.pending.set((int) (sequence - active.firstSequence));
+            active.pendingCount++;
+            pendingCount++;
+        }
+        if (syncPolicy == SyncPolicy.EVERY_ENTRY) {
+            syncUpTo(end);
+        }
+        return sequence;
+    }
+
+    /**
+     * <p>Mark logs as sent: they are not recovered when the journal is opened again. Unknown or already acknowledged sequence
+     * numbers are ignored.</p>
+     * <p>The acknowledgment is not forced to the disk: if it is lost, the logs are sent again.</p>
+     * @throws IOException The acknowledgment could not be written.
+     */
+    public void acknowledge(long... sequences) throws IOException {
+        if (sequences.length == 0) {
+            return;
+        }
+        synchronized (this) {
+            checkOpen();
+            rollIfFull();
+            ByteBuffer record = record(ACKNOWLEDGMENT, Integer.BYTES + sequences.length * Long.BYTES);
+            record.putInt(sequences.length);
+            for (long sequence : sequences) {
+                record.putLong(sequence);
+            }
+            write(record);
+            for (long sequence : sequences) {
+                Map.Entry<Long, Segment> segment = segments.floorEntry(sequence);
+                if (segment != null && segment.getValue().acknowledge(sequence)) {
+                    pendingCount--;
+                }
+            }
+            deleteAcknowledged();
+        }
+    }
+
+    /**
+     * <p>Force the logs written so far to the disk, whatever the sync policy.</p>
+     */
+    public void sync() throws IOException {
+        long end;
+        synchronized (this) {
+            end = written;
+        }
+        syncUpTo(end);
+    }
+
+    /**
+     * <p>Called before a batch is sent: with {@link SyncPolicy#EVERY_BATCH}, the logs of the batch are forced to the disk.</p>
+     */
+    void syncBatch() throws IOException {
+        if (syncPolicy == SyncPolicy.EVERY_BATCH) {
+            sync();
+        }
+    }
+
+    /**
+     * The logs that were not acknowledged when the journal was opened, in the order they were appended.
+     */
+    public List<Entry> getRecovered() {
+        return recovered;
+    }
+
+    /**
+     * The number of logs of the journal that are not acknowledged yet.
+     */
+    public synchronized int getPendingCount() {
+        return pendingCount;
+    }
+
+    public SyncPolicy getSyncPolicy() {
+        return syncPolicy;
+    }
+
+    /**
+     * <p>Force the journal to the disk, and close it. The logs that are not acknowledged are recovered when it is opened again.</p>
+     */
+    @Override
+    public void close() throws IOException {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+        synchronized (syncLock) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                try {
+                    active.channel.force(false);
+                } finally {
+                    active.channel.close();
+                }
+            }
+        }
+    }
+
+    private void syncUpTo(long end) throws IOException {
+        // a single thread forces the file at a time, and the threads that were waiting for it find their record already synced
+        synchronized (syncLock) {
+            if (synced >= end) {
+                return;
+            }
+            FileChannel channel;
+            long target;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                channel = active.channel;
+                target = written;
+            }
+            try {
+                channel.force(false);
+            } catch (ClosedChannelException e) {
+                // the segment was forced before being closed, when the journal rolled to a new one
+            }
+            synced = target;
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Unable to sync the access log journal {}", directory, e);
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("The access log journal is closed");
+        }
+    }
+
+    private ByteBuffer record(byte type, int length) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+        record.putInt(length).putInt(0).put(type);
+        return record;
+    }
+
+    private long write(ByteBuffer record) throws IOException {
+        CRC32 checksum = new CRC32();
+        checksum.update(record.array(), Integer.BYTES * 2, record.position() - Integer.BYTES * 2);
+        record.putInt(Integer.BYTES, (int) checksum.getValue());
+        record.flip();
+        try {
+            while (record.hasRemaining()) {
+                active.channel.write(record);
+            }
+        } catch (IOException e) {
+            // the partial record hides what follows it: the next records go to a new segment
+            active.size = Long.MAX_VALUE;
+            throw e;
+        }
+        active.size += record.limit();
+        written += record.limit();
+        return written;
+    }
+
+    private void rollIfFull() throws IOException {
+        if (active.size < segmentSize) {
+            return;
+        }
+        // a segment name is never reused, even if the previous one holds no log
+        nextSequence = Math.max(nextSequence, active.firstSequence + 1);
+        Segment next = Segment.create(directory, nextSequence);
+        try {
+            active.channel.force(false);
+            active.channel.close();
+        } catch (IOException e) {
+            next.channel.close();
+            Files.deleteIfExists(next.file);
+            throw e;
+        }
+        active = next;
+        segments.put(next.firstSequence, next);
+        deleteAcknowledged();
+    }
+
+    private void deleteAcknowledged() {
+        // in order, so that an acknowledgment is never deleted before the log it acknowledges
+        Iterator<Segment> iterator = segments.values().iterator();
+        while (iterator.hasNext()) {
+            Segment segment = iterator.next();
+            if (segment == active || segment.pendingCount > 0) {
+                return;
+            }
+            try {
+                Files.deleteIfExists(segment.file);
+            } catch (IOException e) {
+                LOG.warn("Unable to delete the access log journal segment {}", segment.file, e);
+                return;
+            }
+            iterator.remove();
+        }
+    }
+
+    private List<Entry> recover() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        Map<Long, Entry> entries = new LinkedHashMap<>();
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long firstSequence;
+            try {
+                firstSequence = Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                throw new IOException("The file " + file + " is not an access log journal segment", e);
+            }
+            segments.put(firstSequence, new Segment(file, firstSequence));
+            nextSequence = Math.max(nextSequence, firstSequence + 1);
+        }
+        for (Segment segment : segments.values()) {
+            read(segment.file, entries);
+        }
+        for (Entry entry : entries.values()) {
+            Segment segment = segments.floorEntry(entry.sequence).getValue();
+            segment.pending.set((int) (entry.sequence - segment.firstSequence));
+            segment.pendingCount++;
+            nextSequence = Math.max(nextSequence, entry.sequence + 1);
+        }
+        pendingCount = entries.size();
+        deleteAcknowledged();
+        if (!entries.isEmpty()) {
+            LOG.info("{} access logs recovered from the journal {}", entries.size(), directory);
+        }
+        return new ArrayList<>(entries.values());
+    }
+
+    private void read(Path file, Map<Long, Entry> entries) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (buffer.remaining() < FILE_HEADER_SIZE) {
+            return; // created, but the header was never written
+        }
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("The file " + file + " is not an access log journal segment");
+        }
+        short version = buffer.getShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported access log journal version " + version);
+        }
+        while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            int expected = buffer.getInt();
+            if (length < 0 || length > buffer.remaining() - 1) {
+                buffer.position(start);
+                break;
+            }
+            CRC32 checksum = new CRC32();
+            checksum.update(buffer.array(), start + Integer.BYTES * 2, length + 1);
+            if ((int) checksum.getValue() != expected) {
+                buffer.position(start);
+                break;
+            }
+            byte type = buffer.get();
+            ByteBuffer payload = buffer.slice();
+            payload.limit(length);
+            buffer.position(buffer.position() + length);
+            if (type == ENTRY) {
+                long sequence = payload.getLong();
+                byte[] site = new byte[payload.getShort() & 0xffff];
+                payload.get(site);
+                try {
+                    AccessLog accessLog = mapper.readValue(payload.array(), payload.arrayOffset() + payload.position(),
+                            payload.remaining(), AccessLog.class);
+                    entries.put(sequence, new Entry(sequence, new String(site, UTF_8), accessLog));
+                } catch (IOException e) {
+                    LOG.error("Unable to read the access log {} of the journal segment {}", sequence, file, e);
+                }
+            } else if (type == ACKNOWLEDGMENT) {
+                for (int count = payload.getInt(); count > 0; count--) {
+                    entries.remove(payload.getLong());
+                }
+            }
+        }
+        if (buffer.hasRemaining()) {
+            LOG.warn("Ignoring the last {} bytes of the access log journal segment {}, that were not completely written",
+                    buffer.remaining(), file);
+        }
+    }
+
+    /**
+     * <p>When the logs are forced to the disk. They are written to the file system at each append in any case, and survive a crash
+     * of the application: the policy only matters if the machine itself crashes.</p>
+     */
+    public enum SyncPolicy {
+
+        /**
+         * Each append waits until its log is on the disk: no log is ever lost. The appends of concurrent threads share the same
+         * sync, but a single thread is limited by the latency of the disk.
+         */
+        EVERY_ENTRY,
+
+        /**
+         * The logs are forced to the disk before each batch is sent: a crash of the machine can lose the logs that were waiting
+         * to be sent (i.e. at most <code>maxDelayInMs</code> of logs).
+         */
+        EVERY_BATCH,
+
+        /**
+         * The logs are forced to the disk every <code>syncIntervalInMs</code>, from a background thread: a crash of the machine
+         * can lose the logs of the last interval.
+         */
+        PERIODIC
+    }
+
+    /**
+     * <p>A log of the journal, with the parking site it belongs to.</p>
+     */
+    public static final class Entry {
+        private final long sequence;
+        private final String parkingSiteId;
+        private final AccessLog accessLog;
+
+        Entry(long sequence, String parkingSiteId, AccessLog accessLog) {
+            this.sequence = sequence;
+            this.parkingSiteId = parkingSiteId;
+            this.accessLog = accessLog;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public String getParkingSiteId() {
+            return parkingSiteId;
+        }
+
+        public AccessLog getAccessLog() {
+            return accessLog;
+        }
+    }
+
+    private static final class Segment {
+        private final Path file;
+        private final long firstSequence;
+        private final BitSet pending = new BitSet(); // by sequence - firstSequence
+        private int pendingCount;
+        private FileChannel channel; // only for the active segment
+        private long size;
+
+        private Segment(Path file, long firstSequence) {
+            this.file = file;
+            this.firstSequence = firstSequence;
+        }
+
+        private static Segment create(Path directory, long firstSequence) throws IOException {
+            Segment segment = new Segment(directory.resolve(String.format("%s%019d%s", PREFIX, firstSequence, SUFFIX)), firstSequence);
+            segment.channel = FileChannel.open(segment.file, CREATE_NEW, WRITE);
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE).putInt(MAGIC).putShort(VERSION);
+            header.flip();
+            try {
+                while (header.hasRemaining()) {
+                    segment.channel.write(header);
+                }
+            } catch (IOException e) {
+                segment.channel.close();
+                Files.deleteIfExists(segment.file);
+                throw e;
+            }
+            segment.size = FILE_HEADER_SIZE;
+            return segment;
+        }
+
+        private boolean acknowledge(long sequence) {
+            int index = (int) (sequence - firstSequence);
+            if (!pending.get(index)) {
+                return false;
+            }
+            pending.clear(index);
+            pendingCount--;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,446 @@
+package net.commuty.parking.report;
+
+import net.commuty.parking.ParkingAccess;
+import net.commuty.parking.http.ApiException;
+import net.commuty.parking.http.HttpRequestException;
+import net.commuty.parking.model.AccessLog;
+import net.commuty.parking.rest.DaemonThreadFactory;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * <p>Reports {@link AccessLog}s in batches, instead of one request per passage.</p>
+ * <p>{@link #submit(String, AccessLog)} only queues the log, and never blocks the caller. A background thread groups the queued
+ * logs by parking site, and sends the logs of a parking site with {@link ParkingAccess#reportAccessLog(String, Collection)}:</p>
+ * <ul>
+ *     <li>as soon as <code>maxBatchSize</code> logs of this parking site are waiting;</li>
+ *     <li>or <code>maxDelayInMs</code> after the oldest waiting log of this parking site was submitted.</li>
+ * </ul>
+ * <p>The identifier returned by the api for each batch (or the exception the batch failed with, once retried by the client)
+ * is given to a {@link Listener}. When <code>capacity</code> logs are queued (i.e. while the api cannot be reached), the new logs
+ * are rejected.</p>
+ * <p>With an {@link AccessLogJournal}, each log is written to the journal before it is queued, and acknowledged once its batch
+ * was sent. The logs the journal recovered (from a previous run of the application) are sent first, and a batch that could not
+ * be sent is kept and sent again {@link #FAILED_BATCH_DELAY_IN_MS} later, unless the api rejected it as a bad request.</p>
+ * <pre>
+ * AccessLogReporter reporter = new AccessLogReporter(client, 100, 1000, 10000,
+ *         (parkingSiteId, accessLogs, logId) -&gt; LOG.info("{} logs reported as {}", accessLogs.size(), logId));
+ * reporter.submit("a-parking-site-id", AccessLog.createInAccessLog(UserId.fromBadgeNumber("1234"), LocalDateTime.now()));
+ * ...
+ * reporter.close(); // sends the logs still waiting
+ * </pre>
+ */
+public class AccessLogReporter implements AutoCloseable {
+
+    private static final Logger LOG = getLogger(AccessLogReporter.class);
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+    public static final int DEFAULT_MAX_DELAY_IN_MS = 1000;
+    public static final int DEFAULT_CAPACITY = 10000;
+    public static final int FAILED_BATCH_DELAY_IN_MS = 30000;
+
+    private static final long IDLE_WAIT_IN_MS = 1000;
+    private static final long NO_SEQUENCE = -1;
+    private static final Submission WAKE_UP = new Submission(null, null, NO_SEQUENCE, 0);
+
+    private final ParkingAccess client;
+    private final int maxBatchSize;
+    private final long maxDelayInNanos;
+    private final int capacity;
+    private final AccessLogJournal journal;
+    private final Listener listener;
+    private final BlockingQueue<Submission> queue;
+    private final List<Submission> recovered = new ArrayList<>();
+    private final Map<String, Batch> batches = new LinkedHashMap<>();
+    private final Deque<Batch> failedBatches = new ArrayDeque<>();
+    private int failedBatchesSize;
+    private final Thread flusher;
+    private final LongAdder sentCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+    private final AtomicInteger submitting = new AtomicInteger();
+    private volatile boolean closed;
+
+    /**
+     * A reporter sending up to {@link #DEFAULT_MAX_BATCH_SIZE} logs per request, at most {@link #DEFAULT_MAX_DELAY_IN_MS} after
+     * they were submitted, and holding up to {@link #DEFAULT_CAPACITY} logs.
+     */
+    public AccessLogReporter(ParkingAccess client, Listener listener) {
+        this(client, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_DELAY_IN_MS, DEFAULT_CAPACITY, listener);
+    }
+
+    /**
+     * @param client The client that sends the logs.
+     * @param maxBatchSize The maximum number of logs sent in one request. Must be strictly positive.
+     * @param maxDelayInMs How long (in ms) a log can wait for other logs of the same parking site before being sent. Must be positive.
+     * @param capacity The maximum number of logs waiting to be sent. Must be strictly positive.
+     * @param listener Notified of the result of each request.
+     */
+    public AccessLogReporter(ParkingAccess client, int maxBatchSize, int maxDelayInMs, int capacity, Listener listener) {
+        this(client, maxBatchSize, maxDelayInMs, capacity, null, listener);
+    }
+
+    /**
+     * @param client The client that sends the logs.
+     * @param maxBatchSize The maximum number of logs sent in one request. Must be strictly positive.
+     * @param maxDelayInMs How long (in ms) a log can wait for other logs of the same parking site before being sent. Must be positive.
+     * @param capacity The maximum number of logs waiting to be sent, and of logs waiting to be sent again. Must be strictly positive.
+     * @param journal Where the logs are written before being sent, or <code>null</code>. Its recovered logs are sent first.
+     * @param listener Notified of the result of each request.
+     */
+    public AccessLogReporter(ParkingAccess client, int maxBatchSize, int maxDelayInMs, int capacity, AccessLogJournal journal,
+                             Listener listener) {
+        if (client == null || listener == null) {
+            throw new IllegalArgumentException("The client and the listener cannot be null");
+        }
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("You must provide a strictly positive maxBatchSize");
+        }
+        if (maxDelayInMs < 0) {
+            throw new IllegalArgumentException("You must provide a positive maxDelayInMs");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("You must provide a strictly positive capacity");
+        }
+        this.client = client;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayInNanos = MILLISECONDS.toNanos(maxDelayInMs);
+        this.capacity = capacity;
+        this.journal = journal;
+        this.listener = listener;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        if (journal != null) {
+            long now = System.nanoTime();
+            for (AccessLogJournal.Entry entry : journal.getRecovered()) {
+                recovered.add(new Submission(entry.getParkingSiteId(), entry.getAccessLog(), entry.getSequence(), now));
+            }
+        }
+        this.flusher = new DaemonThreadFactory("parking-access-log-reporter").newThread(this::run);
+        this.flusher.start();
+    }
+
+    /**
+     * <p>Queue a log, to be sent with the other logs of the same parking site.</p>
+     * <p>With a journal, the log is written to it first (and this waits for the disk with
+     * {@link AccessLogJournal.SyncPolicy#EVERY_ENTRY}).</p>
+     * @return <code>false</code> if the log was rejected, because the reporter is full or closed, or the journal could not be written.
+     */
+    public boolean submit(String parkingSiteId, AccessLog accessLog) {
+        if (parkingSiteId == null || accessLog == null) {
+            throw new IllegalArgumentException("The parking site and the access log cannot be null");
+        }
+        // counted before reading closed, so that the flusher waits for the log of a submit that saw the reporter open
+        submitting.incrementAndGet();
+        try {
+            return enqueue(parkingSiteId, accessLog);
+        } finally {
+            submitting.decrementAndGet();
+        }
+    }
+
+    private boolean enqueue(String parkingSiteId, AccessLog accessLog) {
+        if (closed || queue.remainingCapacity() == 0) {
+            return reject(parkingSiteId, NO_SEQUENCE);
+        }
+        long sequence = NO_SEQUENCE;
+        if (journal != null) {
+            try {
+                sequence = journal.append(parkingSiteId, accessLog);
+            } catch (IOException | IllegalStateException e) {
+                LOG.error("Unable to write the access log of {} to the journal", parkingSiteId, e);
+                return reject(parkingSiteId, NO_SEQUENCE);
+            }
+        }
+        if (!queue.offer(new Submission(parkingSiteId, accessLog, sequence, System.nanoTime()))) {
+            return reject(parkingSiteId, sequence);
+        }
+        return true;
+    }
+
+    private boolean reject(String parkingSiteId, long sequence) {
+        rejectedCount.increment();
+        LOG.warn("Access log of {} rejected, {} logs are waiting to be sent", parkingSiteId, queue.size());
+        if (sequence != NO_SEQUENCE) {
+            // the caller knows the log was not taken: it must not be sent when the journal is recovered
+            acknowledge(new long[]{sequence});
+        }
+        return false;
+    }
+
+    /**
+     * <p>Stop accepting logs, and wait until the logs already submitted are sent. The failed batches waiting to be sent again are
+     * left in the journal.</p>
+     */
+    @Override
+    public void close() {
+        closed = true;
+        // not interrupted, so that a request in flight completes (and its retries are not cut short)
+        queue.offer(WAKE_UP);
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The number of logs waiting to be sent (approximately).
+     */
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    /**
+     * The number of logs sent successfully.
+     */
+    public long getSentCount() {
+        return sentCount.sum();
+    }
+
+    /**
+     * The number of logs whose request failed.
+     */
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    /**
+     * The number of logs rejected because the reporter was full or closed.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    private void run() {
+        // the recovered logs are sent in full batches, then the rest along with the new logs
+        recovered.forEach(this::add);
+        recovered.clear();
+        List<Submission> submissions = new ArrayList<>();
+        while (!closed) {
+            try {
+                Submission first = queue.poll(nextWaitInNanos(), TimeUnit.NANOSECONDS);
+                if (first != null) {
+                    submissions.add(first);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            // take all the logs already waiting, so that a backlog is sent in full batches
+            queue.drainTo(submissions);
+            submissions.forEach(this::add);
+            submissions.clear();
+            sendExpired(System.nanoTime());
+        }
+        drainAfterClose(submissions);
+        submissions.forEach(this::add);
+        for (String parkingSiteId : new ArrayList<>(batches.keySet())) {
+            send(batches.remove(parkingSiteId), false);
+        }
+        if (failedBatchesSize > 0) {
+            LOG.info("{} access logs that could not be sent are left in the journal", failedBatchesSize);
+        }
+    }
+
+    /**
+     * Take the logs left in the queue, including the ones of the submits still in progress when the reporter was closed.
+     */
+    private void drainAfterClose(List<Submission> submissions) {
+        // a submit decrements its count once its log is queued: the queue is read after the count reached 0
+        while (submitting.get() > 0 || !queue.isEmpty()) {
+            queue.drainTo(submissions);
+            Thread.yield();
+        }
+    }
+
+    private void add(Submission submission) {
+        if (submission == WAKE_UP) {
+            return;
+        }
+        Batch batch = batches.get(submission.parkingSiteId);
+        if (batch == null) {
+            batch = new Batch(submission.parkingSiteId, submission.submittedAt + maxDelayInNanos, journal != null ? maxBatchSize : 0);
+            batches.put(submission.parkingSiteId, batch);
+        }
+        batch.add(submission);
+        if (batch.accessLogs.size() >= maxBatchSize) {
+            send(batches.remove(submission.parkingSiteId), false);
+        }
+    }
+
+    private void sendExpired(long now) {
+        // the batches are sorted by deadline, as they are created in order and never postponed
+        Iterator<Batch> iterator = batches.values().iterator();
+        while (iterator.hasNext()) {
+            Batch batch = iterator.next();
+            if (now - batch.deadline < 0) {
+                break;
+            }
+            iterator.remove();
+            send(batch, false);
+        }
+        // same for the failed batches, that all wait for the same delay
+        while (!failedBatches.isEmpty() && now - failedBatches.peekFirst().deadline >= 0) {
+            Batch batch = failedBatches.pollFirst();
+            failedBatchesSize -= batch.accessLogs.size();
+            send(batch, true);
+        }
+    }
+
+    private long nextWaitInNanos() {
+        long wait = MILLISECONDS.toNanos(IDLE_WAIT_IN_MS);
+        long now = System.nanoTime();
+        if (!batches.isEmpty()) {
+            wait = Math.min(wait, batches.values().iterator().next().deadline - now);
+        }
+        if (!failedBatches.isEmpty()) {
+            wait = Math.min(wait, failedBatches.peekFirst().deadline - now);
+        }
+        return Math.max(0, wait);
+    }
+
+    private void send(Batch batch, boolean resent) {
+        String parkingSiteId = batch.parkingSiteId;
+        List<AccessLog> accessLogs = Collections.unmodifiableList(batch.accessLogs);
+        if (journal != null && !resent) {
+            try {
+                journal.syncBatch();
+            } catch (IOException | IllegalStateException e) {
+                LOG.error("Unable to sync the access log journal, sending the logs anyway", e);
+            }
+        }
+        try {
+            String logId = client.reportAccessLog(parkingSiteId, accessLogs);
+            sentCount.add(accessLogs.size());
+            LOG.debug("{} access logs of {} reported as {}", accessLogs.size(), parkingSiteId, logId);
+            acknowledge(batch.sequences());
+            notifySent(parkingSiteId, accessLogs, logId);
+        } catch (ApiException e) {
+            failedCount.add(accessLogs.size());
+            LOG.warn("Unable to report {} access logs of {}", accessLogs.size(), parkingSiteId, e);
+            if (e instanceof HttpRequestException && ((HttpRequestException) e).isBadRequest()) {
+                // sending them again would fail the same way
+                acknowledge(batch.sequences());
+            } else {
+                sendAgainLater(batch);
+            }
+            notifyFailure(parkingSiteId, accessLogs, e);
+        } catch (RuntimeException e) {
+            failedCount.add(accessLogs.size());
+            LOG.error("Unable to report {} access logs of {}", accessLogs.size(), parkingSiteId, e);
+            sendAgainLater(batch);
+        }
+    }
+
+    private void sendAgainLater(Batch batch) {
+        if (journal == null) {
+            return;
+        }
+        if (failedBatchesSize + batch.accessLogs.size() > capacity) {
+            LOG.warn("{} access logs of {} are left in the journal, until it is opened again", batch.accessLogs.size(), batch.parkingSiteId);
+            return;
+        }
+        batch.deadline = System.nanoTime() + MILLISECONDS.toNanos(FAILED_BATCH_DELAY_IN_MS);
+        failedBatches.addLast(batch);
+        failedBatchesSize += batch.accessLogs.size();
+    }
+
+    private void acknowledge(long[] sequences) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.acknowledge(sequences);
+        } catch (IOException | IllegalStateException e) {
+            LOG.warn("Unable to acknowledge {} access logs in the journal, they will be sent again when it is opened", sequences.length, e);
+        }
+    }
+
+    private void notifySent(String parkingSiteId, List<AccessLog> accessLogs, String logId) {
+        try {
+            listener.onSent(parkingSiteId, accessLogs, logId);
+        } catch (RuntimeException e) {
+            LOG.warn("Access log listener failed", e);
+        }
+    }
+
+    private void notifyFailure(String parkingSiteId, List<AccessLog> accessLogs, ApiException exception) {
+        try {
+            listener.onFailure(parkingSiteId, accessLogs, exception);
+        } catch (RuntimeException e) {
+            LOG.warn("Access log listener failed", e);
+        }
+    }
+
+    /**
+     * <p>Notified of the result of each request made by an {@link AccessLogReporter}, from its background thread.</p>
+     */
+    @FunctionalInterface
+    public interface Listener {
+
+        /**
+         * @param parkingSiteId The parking site of the logs.
+         * @param accessLogs The logs that were sent.
+         * @param logId The identifier the api returned for these logs.
+         */
+        void onSent(String parkingSiteId, List<AccessLog> accessLogs, String logId);
+
+        /**
+         * <p>The logs could not be sent, even after the retries of the client. They are not sent again, unless the reporter
+         * has a journal.</p>
+         * @param parkingSiteId The parking site of the logs.
+         * @param accessLogs The logs that were not sent.
+         * @param exception The error of the last attempt.
+         */
+        default void onFailure(String parkingSiteId, List<AccessLog> accessLogs, ApiException exception) {
+        }
+    }
+
+    private static final class Submission {
+        private final String parkingSiteId;
+        private final AccessLog accessLog;
+        private final long sequence;
+        private final long submittedAt;
+
+        private Submission(String parkingSiteId, AccessLog accessLog, long sequence, long submittedAt) {
+            this.parkingSiteId = parkingSiteId;
+            this.accessLog = accessLog;
+            this.sequence = sequence;
+            this.submittedAt = submittedAt;
+        }
+    }
+
+    private static final class Batch {
+        private final String parkingSiteId;
+        private final List<AccessLog> accessLogs = new ArrayList<>();
+        private final long[] sequences; // empty without a journal
+        private long deadline;
+
+        private Batch(String parkingSiteId, long deadline, int maxBatchSize) {
+            this.parkingSiteId = parkingSiteId;
+            this.deadline = deadline;
+            this.sequences = new long[maxBatchSize];
+        }
+
+        private void add(Submission submission) {
+            if (sequences.length > 0) {
+                sequences[accessLogs.size()] = submission.sequence;
+            }
+            accessLogs.add(submission.accessLog);
+        }
+
+        private long[] sequences() {
+            return sequences.length > 0 ? Arrays.copyOf(sequences, accessLogs.size()) : sequences;
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package net.commuty.parking.report;
+
+import net.commuty.parking.ParkingAccess;
+import net.commuty.parking.http.ApiException;
+import net.commuty.parking.model.ApplicationLog;
+import net.commuty.parking.model.ApplicationLogLevel;
+import net.commuty.parking.rest.DaemonThreadFactory;
+import org.slf4j.Logger;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * <p>Sends {@link ApplicationLog}s to Commuty from a background thread, so that an error storm on your side does not become a
+ * storm of requests.</p>
+ * <p>{@link #submit(ApplicationLog)} never blocks: the logs below <code>minLevel</code> are dropped, and the others are put in a
+ * bounded buffer (rejected when it holds <code>capacity</code> logs). The background thread then:</p>
+ * <ul>
+ *     <li>collapses the repeated logs: the first log of a level, type and message is sent, the same log received in the following
+ *     <code>collapseWindowInMs</code> is only counted, and one log with a <code>repeated</code> count in its context is sent at
+ *     the end of the window;</li>
+ *     <li>sends at most <code>maxLogsPerMinute</code> logs of each type. The logs over the limit are dropped, and their number
+ *     is given as <code>suppressed</code> in the context of the next log of this type that is sent.</li>
+ * </ul>
+ * <p>The api has one request per log: this bounds the number of requests, and the repeated logs cost one request per window
+ * instead of one each.</p>
+ * <pre>
+ * ApplicationLogShipper shipper = new ApplicationLogShipper(client, ApplicationLogLevel.WARN, 1000, 10, 60000);
+ * shipper.submit(new ApplicationLog(LocalDateTime.now(ZoneOffset.UTC), ApplicationLogLevel.ERROR, "barrier-failure",
+ *         "The barrier of lane 2 does not open", "gate-controller-1", null));
+ * ...
+ * shipper.close(); // sends the logs still waiting
+ * </pre>
+ * <p>To ship the logs your application already writes with SLF4J, see {@link ShippingLogger}.</p>
+ */
+public class ApplicationLogShipper implements AutoCloseable {
+
+    private static final Logger LOG = getLogger(ApplicationLogShipper.class);
+
+    public static final ApplicationLogLevel DEFAULT_MIN_LEVEL = ApplicationLogLevel.WARN;
+    public static final int DEFAULT_CAPACITY = 1000;
+    public static final int DEFAULT_MAX_LOGS_PER_MINUTE = 10;
+    public static final int DEFAULT_COLLAPSE_WINDOW_IN_MS = 60000;
+
+    public static final String REPEATED = "repeated";
+    public static final String SUPPRESSED = "suppressed";
+
+    private static final long IDLE_WAIT_IN_MS = 1000;
+    private static final ApplicationLog WAKE_UP = new ApplicationLog(LocalDateTime.MIN, ApplicationLogLevel.INFO, "-", "-", "-", null);
+
+    private final ParkingAccess client;
+    private final ApplicationLogLevel minLevel;
+    private final int capacity;
+    private final int maxLogsPerMinute;
+    private final long collapseWindowInNanos;
+    private final BlockingQueue<ApplicationLog> queue;
+    private final Map<Key, Window> windows = new LinkedHashMap<>();
+    private final Map<String, Bucket> buckets = new HashMap<>();
+    private final Thread drainer;
+    private final LongAdder sentCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+    private final LongAdder collapsedCount = new LongAdder();
+    private final LongAdder suppressedCount = new LongAdder();
+    private final AtomicInteger submitting = new AtomicInteger();
+    private volatile boolean closed;
+
+    /**
+     * A shipper sending the logs from {@link #DEFAULT_MIN_LEVEL}, holding up to {@link #DEFAULT_CAPACITY} logs, sending up to
+     * {@link #DEFAULT_MAX_LOGS_PER_MINUTE} logs per type and minute, and collapsing the logs repeated within
+     * {@link #DEFAULT_COLLAPSE_WINDOW_IN_MS} ms.
+     */
+    public ApplicationLogShipper(ParkingAccess client) {
+        this(client, DEFAULT_MIN_LEVEL, DEFAULT_CAPACITY, DEFAULT_MAX_LOGS_PER_MINUTE, DEFAULT_COLLAPSE_WINDOW_IN_MS);
+    }
+
+    /**
+     * @param client The client that sends the logs.
+     * @param minLevel The lowest level that is sent.
+     * @param capacity The maximum number of logs waiting to be sent. Must be strictly positive.
+     * @param maxLogsPerMinute The maximum number of logs of the same type sent per minute. Must be strictly positive.
+     * @param collapseWindowInMs How long (in ms) the same log is counted instead of being sent again. Must be positive,
+     *                           <code>0</code> to send every log.
+     */
+    public ApplicationLogShipper(ParkingAccess client, ApplicationLogLevel minLevel, int capacity, int maxLogsPerMinute,
+                                 int collapseWindowInMs) {
+        if (client == null || minLevel == null) {
+            throw new IllegalArgumentException("The client and the minimum level cannot be null");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("You must provide a strictly positive capacity");
+        }
+        if (maxLogsPerMinute <= 0) {
+            throw new IllegalArgumentException("You must provide a strictly positive maxLogsPerMinute");
+        }
+        if (collapseWindowInMs < 0) {
+            throw new IllegalArgumentException("You must provide a positive collapseWindowInMs");
+        }
+        this.client = client;
+        this.minLevel = minLevel;
+        this.capacity = capacity;
+        this.maxLogsPerMinute = maxLogsPerMinute;
+        this.collapseWindowInNanos = MILLISECONDS.toNanos(collapseWindowInMs);
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.drainer = new DaemonThreadFactory("parking-access-application-log-shipper").newThread(this::run);
+        this.drainer.start();
+    }
+
+    /**
+     * <p>Queue a log, to be sent from the background thread.</p>
+     * @return <code>false</code> if the log was dropped, because of its level, or because the shipper is full or closed.
+     */
+    public boolean submit(ApplicationLog log) {
+        if (log == null) {
+            throw new IllegalArgumentException("The log cannot be null");
+        }
+        if (!isShipped(log.getLevel())) {
+            return false;
+        }
+        // counted before reading closed, so that the drainer waits for the log of a submit that saw the shipper open
+        submitting.incrementAndGet();
+        try {
+            if (closed || !queue.offer(log)) {
+                rejectedCount.increment();
+                return false;
+            }
+            return true;
+        } finally {
+            submitting.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the logs of this level are sent.
+     */
+    public boolean isShipped(ApplicationLogLevel level) {
+        return level.compareTo(minLevel) >= 0;
+    }
+
+    /**
+     * <p>Stop accepting logs, and send the logs already submitted, and the counts of the repeated ones.</p>
+     */
+    @Override
+    public void close() {
+        closed = true;
+        queue.offer(WAKE_UP);
+        try {
+            drainer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The number of logs sent successfully.
+     */
+    public long getSentCount() {
+        return sentCount.sum();
+    }
+
+    /**
+     * The number of logs whose request failed.
+     */
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    /**
+     * The number of logs rejected because the shipper was full or closed.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    /**
+     * The number of logs counted in the <code>repeated</code> count of another log, instead of being sent.
+     */
+    public long getCollapsedCount() {
+        return collapsedCount.sum();
+    }
+
+    /**
+     * The number of logs dropped because their type sent too many logs.
+     */
+    public long getSuppressedCount() {
+        return suppressedCount.sum();
+    }
+
+    private void run() {
+        List<ApplicationLog> logs = new ArrayList<>();
+        while (!closed) {
+            try {
+                ApplicationLog first = queue.poll(nextWaitInNanos(), TimeUnit.NANOSECONDS);
+                if (first != null) {
+                    logs.add(first);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            queue.drainTo(logs);
+            long now = System.nanoTime();
+            logs.forEach(log -> add(log, now));
+            logs.clear();
+            sendExpired(now, false);
+        }
+        // a submit decrements its count once its log is queued: the queue is read after the count reached 0
+        while (submitting.get() > 0 || !queue.isEmpty()) {
+            queue.drainTo(logs);
+            Thread.yield();
+        }
+        long now = System.nanoTime();
+        logs.forEach(log -> add(log, now));
+        sendExpired(now, true);
+    }
+
+    private void add(ApplicationLog log, long now) {
+        if (log == WAKE_UP) {
+            return;
+        }
+        if (collapseWindowInNanos == 0) {
+            send(log, now);
+            return;
+        }
+        Key key = new Key(log);
+        Window window = windows.get(key);
+        if (window != null) {
+            window.last = log;
+            window.repeated++;
+            collapsedCount.increment();
+            return;
+        }
+        if (windows.size() < capacity) {
+            windows.put(key, new Window(log, now + collapseWindowInNanos));
+        }
+        send(log, now);
+    }
+
+    private void sendExpired(long now, boolean all) {
+        // the windows are sorted by deadline, as they are created in order and never postponed
+        Iterator<Window> iterator = windows.values().iterator();
+        while (iterator.hasNext()) {
+            Window window = iterator.next();
+            if (!all && now - window.deadline < 0) {
+                return;
+            }
+            iterator.remove();
+            if (window.repeated > 0) {
+                send(withContext(window.last, REPEATED, window.repeated), now);
+            }
+        }
+    }
+
+    private long nextWaitInNanos() {
+        if (windows.isEmpty()) {
+            return MILLISECONDS.toNanos(IDLE_WAIT_IN_MS);
+        }
+        return Math.max(0, windows.values().iterator().next().deadline - System.nanoTime());
+    }
+
+    private void send(ApplicationLog log, long now) {
+        Bucket bucket = buckets.computeIfAbsent(log.getType(), type -> new Bucket(maxLogsPerMinute, now));
+        if (!bucket.tryAcquire(maxLogsPerMinute, now)) {
+            bucket.suppressed++;
+            suppressedCount.increment();
+            return;
+        }
+        if (bucket.suppressed > 0) {
+            log = withContext(log, SUPPRESSED, bucket.suppressed);
+            bucket.suppressed = 0;
+        }
+        try {
+            UUID id = client.reportApplicationLog(log);
+            sentCount.increment();
+            LOG.debug("Application log {} sent as {}", log.getType(), id);
+        } catch (ApiException | RuntimeException e) {
+            failedCount.increment();
+            LOG.warn("Unable to send the application log {}: {}", log.getType(), e.getMessage());
+        }
+    }
+
+    private static ApplicationLog withContext(ApplicationLog log, String name, int value) {
+        Map<String, Object> context = log.getContext() != null ? new LinkedHashMap<>(log.getContext()) : new LinkedHashMap<>();
+        context.put(name, value);
+        return new ApplicationLog(log.getTimestamp(), log.getLevel(), log.getType(), log.getMessage(), log.getApplicationId(), context);
+    }
+
+    private static final class Key {
+        private final ApplicationLogLevel level;
+        private final String type;
+        private final String message;
+
+        private Key(ApplicationLog log) {
+            this.level = log.getLevel();
+            this.type = log.getType();
+            this.message = log.getMessage();
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return level == key.level && type.equals(key.type) && message.equals(key.message);
+        }
+
+        @Override
+        public int hashCode() {
+            return (level.hashCode() * 31 + type.hashCode()) * 31 + message.hashCode();
+        }
+    }
+
+    private static final class Window {
+        private final long deadline;
+        private ApplicationLog last;
+        private int repeated;
+
+        private Window(ApplicationLog first, long deadline) {
+            this.last = first;
+            this.deadline = deadline;
+        }
+    }
+
+    private static final class Bucket {
+        private double tokens;
+        private long refilledAt;
+        private int suppressed;
+
+        private Bucket(int tokens, long now) {
+            this.tokens = tokens;
+            this.refilledAt = now;
+        }
+
+        private boolean tryAcquire(int maxLogsPerMinute, long now) {
+            tokens = Math.min(maxLogsPerMinute, tokens + (now - refilledAt) * maxLogsPerMinute / (double) MINUTES.toNanos(1));
+            refilledAt = now;
+            if (tokens < 1) {
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package net.commuty.parking.report;
+
+import net.commuty.parking.ParkingAccess;
+import net.commuty.parking.http.ApiException;
+import net.commuty.parking.local.UserIdTable;
+import net.commuty.parking.model.UserId;
+import net.commuty.parking.rest.DaemonThreadFactory;
+import org.slf4j.Logger;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * <p>Reports the users that are unknown to Commuty once per window, instead of at each presentation of their badge or plate.</p>
+ * <p>Only report the ids that you know (i.e. enrolled in your own badge system) but that Commuty does not know, as
+ * {@link ParkingAccess#reportMissingUserId(UserId)} expects. A user that is denied is not a missing user: Commuty knows it, and
+ * decided that it cannot enter.</p>
+ * <p>{@link #report(UserId)} remembers the users it reported during <code>windowInMs</code>, and drops the reports of these users
+ * until then. The identifiers are compared once {@link UserIdTable#canonicalize(net.commuty.parking.model.UserIdType, String)
+ * canonicalized}: <code>1-abc 123</code> is a repeat of <code>1-ABC123</code>. At most <code>maxSize</code> users are remembered
+ * (the oldest reports are forgotten first).</p>
+ * <p>The other reports are queued, and sent with {@link ParkingAccess#reportMissingUserId(UserId)} from a background thread: the
+ * caller never waits for the api. A report that could not be sent is forgotten, so that the next presentation of the user
+ * reports it again.</p>
+ * <pre>
+ * MissingUserIdReporter reporter = new MissingUserIdReporter(client, 86400000, 100000, 1000);
+ * // enrolledBadges: your own badges, knownByCommuty: the ids found in the access rights listed by Commuty
+ * if (enrolledBadges.contains(user) &amp;&amp; !knownByCommuty.contains(user)) {
+ *     reporter.report(user); // sent at most once a day per user
+ * }
+ * ...
+ * reporter.close();
+ * </pre>
+ */
+public class MissingUserIdReporter implements AutoCloseable {
+
+    private static final Logger LOG = getLogger(MissingUserIdReporter.class);
+
+    public static final int DEFAULT_WINDOW_IN_MS = 86400000;
+    public static final int DEFAULT_MAX_SIZE = 100000;
+    public static final int DEFAULT_CAPACITY = 1000;
+
+    private static final long IDLE_WAIT_IN_MS = 1000;
+    private static final UserId WAKE_UP = new UserId(null, "-");
+
+    private final ParkingAccess client;
+    private final int maxSize;
+    private final long windowInNanos;
+    private final LongSupplier nanoTime;
+    private final LinkedHashMap<UserId, Long> reported = new LinkedHashMap<>();
+    private final BlockingQueue<UserId> queue;
+    private final Thread sender;
+    private final LongAdder sentCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final LongAdder suppressedCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+    private volatile boolean closed;
+
+    /**
+     * A reporter sending each user at most once every {@link #DEFAULT_WINDOW_IN_MS} ms, remembering up to
+     * {@link #DEFAULT_MAX_SIZE} users, and holding up to {@link #DEFAULT_CAPACITY} reports waiting to be sent.
+     */
+    public MissingUserIdReporter(ParkingAccess client) {
+        this(client, DEFAULT_WINDOW_IN_MS, DEFAULT_MAX_SIZE, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param client The client that sends the reports.
+     * @param windowInMs How long (in ms) the reports of a user are dropped once it was reported. Must be strictly positive.
+     * @param maxSize The maximum number of users remembered. Must be strictly positive.
+     * @param capacity The maximum number of reports waiting to be sent. Must be strictly positive.
+     */
+    public MissingUserIdReporter(ParkingAccess client, int windowInMs, int maxSize, int capacity) {
+        this(client, windowInMs, maxSize, capacity, System::nanoTime);
+    }
+
+    MissingUserIdReporter(ParkingAccess client, int windowInMs, int maxSize, int capacity, LongSupplier nanoTime) {
+        if (client == null) {
+            throw new IllegalArgumentException("The client cannot be null");
+        }
+        if (windowInMs <= 0) {
+            throw new IllegalArgumentException("You must provide a strictly positive windowInMs");
+        }
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("You must provide a strictly positive maxSize");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("You must provide a strictly positive capacity");
+        }
+        this.client = client;
+        this.maxSize = maxSize;
+        this.windowInNanos = MILLISECONDS.toNanos(windowInMs);
+        this.nanoTime = nanoTime;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.sender = new DaemonThreadFactory("parking-access-missing-user-id-reporter").newThread(this::run);
+        this.sender.start();
+    }
+
+    /**
+     * <p>Report a user that is known by you but not by Commuty, unless it was reported in the window.</p>
+     * @return <code>true</code> if the report is queued, <code>false</code> if it was dropped (because the user was reported
+     * recently, or the reporter is full or closed).
+     */
+    public boolean report(UserId user) {
+        if (user == null) {
+            throw new IllegalArgumentException("The user cannot be null");
+        }
+        UserId key = keyOf(user);
+        long now = nanoTime.getAsLong();
+        synchronized (reported) {
+            forgetExpired(now);
+            if (reported.containsKey(key)) {
+                suppressedCount.increment();
+                return false;
+            }
+            if (closed || !queue.offer(user)) {
+                rejectedCount.increment();
+                LOG.warn("Report of the missing user {} rejected, {} reports are waiting to be sent", user, queue.size());
+                return false;
+            }
+            reported.put(key, now);
+            if (reported.size() > maxSize) {
+                Iterator<UserId> oldest = reported.keySet().iterator();
+                oldest.next();
+                oldest.remove();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * <p>Stop accepting reports, and wait until the reports already queued are sent.</p>
+     */
+    @Override
+    public void close() {
+        // under the lock of report(), so that no report can be queued once the sender saw the reporter closed
+        synchronized (reported) {
+            closed = true;
+        }
+        queue.offer(WAKE_UP);
+        try {
+            sender.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The number of users sent successfully.
+     */
+    public long getSentCount() {
+        return sentCount.sum();
+    }
+
+    /**
+     * The number of reports whose request failed.
+     */
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    /**
+     * The number of reports dropped because the user was reported in the window.
+     */
+    public long getSuppressedCount() {
+        return suppressedCount.sum();
+    }
+
+    /**
+     * The number of reports rejected because the reporter was full or closed.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    private void forgetExpired(long now) {
+        // the users are sorted by the time they were reported
+        Iterator<Map.Entry<UserId, Long>> iterator = reported.entrySet().iterator();
+        while (iterator.hasNext() && now - iterator.next().getValue() >= windowInNanos) {
+            iterator.remove();
+        }
+    }
+
+    private void run() {
+        while (!closed || !queue.isEmpty()) {
+            UserId user;
+            try {
+                user = queue.poll(IDLE_WAIT_IN_MS, MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (user != null && user != WAKE_UP) {
+                send(user);
+            }
+        }
+    }
+
+    private void send(UserId user) {
+        try {
+            client.reportMissingUserId(user);
+            sentCount.increment();
+            LOG.debug("Missing user {} reported", user);
+        } catch (ApiException | RuntimeException e) {
+            failedCount.increment();
+            LOG.warn("Unable to report the missing user {}", user, e);
+            synchronized (reported) {
+                reported.remove(keyOf(user));
+            }
+        }
+    }
+
+    private static UserId keyOf(UserId user) {
+        String id = UserIdTable.canonicalize(user.getType(), user.getId());
+        return id.equals(user.getId()) ? user : new UserId(user.getType(), id);
+    }
+}
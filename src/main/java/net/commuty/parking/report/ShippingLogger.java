@@ -0,0 +1,154 @@
+package net.commuty.parking.report;
+
+import net.commuty.parking.model.ApplicationLog;
+import net.commuty.parking.model.ApplicationLogLevel;
+import org.slf4j.Logger;
+import org.slf4j.Marker;
+import org.slf4j.event.Level;
+import org.slf4j.helpers.AbstractLogger;
+import org.slf4j.helpers.LegacyAbstractLogger;
+import org.slf4j.helpers.MessageFormatter;
+import org.slf4j.spi.LocationAwareLogger;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>An SLF4J {@link Logger} that writes to another logger (as usual), and also sends its <code>info</code>, <code>warn</code>
+ * and <code>error</code> logs to Commuty through an {@link ApplicationLogShipper}.</p>
+ * <p>The type of the sent log is the name of the marker of the call if there is one, the simple name of the logger otherwise. The
+ * context of the sent log holds the name of the logger, and the exception of the call if there is one. Shipping a log only
+ * formats its message and queues it: the caller never waits for the api.</p>
+ * <pre>
+ * private static final Logger LOG = new ShippingLogger(LoggerFactory.getLogger(Gate.class), shipper, "gate-controller-1");
+ * ...
+ * LOG.error(MarkerFactory.getMarker("barrier-failure"), "The barrier of lane {} does not open", lane); // written, and sent
+ * LOG.debug("Lane {} polled", lane); // written only
+ * </pre>
+ */
+public class ShippingLogger extends LegacyAbstractLogger {
+
+    public static final String LOGGER = "logger";
+    public static final String EXCEPTION = "exception";
+
+    private static final String FQCN = AbstractLogger.class.getName();
+
+    private final transient Logger delegate;
+    private final transient ApplicationLogShipper shipper;
+    private final String applicationId;
+    private final String type;
+
+    /**
+     * @param delegate The logger the logs are written to.
+     * @param shipper The shipper the logs are sent with. Only its levels are sent.
+     * @param applicationId The {@link ApplicationLog#getApplicationId()} of the sent logs.
+     */
+    public ShippingLogger(Logger delegate, ApplicationLogShipper shipper, String applicationId) {
+        if (delegate == null || shipper == null) {
+            throw new IllegalArgumentException("The logger and the shipper cannot be null");
+        }
+        if (applicationId == null || applicationId.isEmpty()) {
+            throw new IllegalArgumentException("applicationId cannot be blank");
+        }
+        this.name = delegate.getName();
+        this.delegate = delegate;
+        this.shipper = shipper;
+        this.applicationId = applicationId;
+        this.type = name.substring(name.lastIndexOf('.') + 1);
+    }
+
+    @Override
+    public boolean isTraceEnabled() {
+        return delegate.isTraceEnabled();
+    }
+
+    @Override
+    public boolean isDebugEnabled() {
+        return delegate.isDebugEnabled();
+    }
+
+    @Override
+    public boolean isInfoEnabled() {
+        return delegate.isInfoEnabled() || shipper.isShipped(ApplicationLogLevel.INFO);
+    }
+
+    @Override
+    public boolean isWarnEnabled() {
+        return delegate.isWarnEnabled() || shipper.isShipped(ApplicationLogLevel.WARN);
+    }
+
+    @Override
+    public boolean isErrorEnabled() {
+        return delegate.isErrorEnabled() || shipper.isShipped(ApplicationLogLevel.ERROR);
+    }
+
+    @Override
+    protected String getFullyQualifiedCallerName() {
+        return FQCN;
+    }
+
+    @Override
+    protected void handleNormalizedLoggingCall(Level level, Marker marker, String messagePattern, Object[] arguments, Throwable throwable) {
+        write(level, marker, messagePattern, arguments, throwable);
+        ApplicationLogLevel shippedLevel = toApplicationLogLevel(level);
+        if (shippedLevel == null || !shipper.isShipped(shippedLevel)) {
+            return;
+        }
+        String message = MessageFormatter.basicArrayFormat(messagePattern, arguments);
+        if (message == null || message.isEmpty()) {
+            return;
+        }
+        Map<String, Object> context = new LinkedHashMap<>();
+        context.put(LOGGER, name);
+        if (throwable != null) {
+            context.put(EXCEPTION, throwable.toString());
+        }
+        shipper.submit(new ApplicationLog(LocalDateTime.now(Clock.systemUTC()), shippedLevel, marker != null ? marker.getName() : type,
+                message, applicationId, context));
+    }
+
+    private void write(Level level, Marker marker, String messagePattern, Object[] arguments, Throwable throwable) {
+        if (delegate instanceof LocationAwareLogger) {
+            // the caller of this logger is given as the location of the log, not this class
+            ((LocationAwareLogger) delegate).log(marker, FQCN, level.toInt(), messagePattern, arguments, throwable);
+            return;
+        }
+        Object[] withThrowable = arguments;
+        if (throwable != null) {
+            withThrowable = arguments != null ? Arrays.copyOf(arguments, arguments.length + 1) : new Object[1];
+            withThrowable[withThrowable.length - 1] = throwable;
+        }
+        switch (level) {
+            case ERROR:
+                delegate.error(marker, messagePattern, withThrowable);
+                break;
+            case WARN:
+                delegate.warn(marker, messagePattern, withThrowable);
+                break;
+            case INFO:
+                delegate.info(marker, messagePattern, withThrowable);
+                break;
+            case DEBUG:
+                delegate.debug(marker, messagePattern, withThrowable);
+                break;
+            default:
+                delegate.trace(marker, messagePattern, withThrowable);
+        }
+    }
+
+    private static ApplicationLogLevel toApplicationLogLevel(Level level) {
+        switch (level) {
+            case ERROR:
+                return ApplicationLogLevel.ERROR;
+            case WARN:
+                return ApplicationLogLevel.WARN;
+            case INFO:
+                return ApplicationLogLevel.INFO;
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package net.commuty.parking.report;
+
+import net.commuty.parking.ParkingAccess;
+import net.commuty.parking.http.ApiException;
+import net.commuty.parking.rest.DaemonThreadFactory;
+import org.slf4j.Logger;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * <p>Reports the available spots of parking sites, without making a request at each change of the count.</p>
+ * <p>{@link #update(String, int, Integer)} only stores the latest count of a parking site (in a single atomic field, without
+ * allocating anything): a count replaced before it was sent is never sent. A background thread sends the latest count of each
+ * parking site with {@link ParkingAccess#reportAvailableSpotCount(String, int, Integer)}:</p>
+ * <ul>
+ *     <li>right away for the first count of a parking site;</li>
+ *     <li>then at most once every <code>intervalInMs</code> per parking site, and only if it changed since the last report;</li>
+ *     <li>or right away, if the count moved by <code>threshold</code> spots or more since the last report (i.e. the parking site
+ *     suddenly filled up).</li>
+ * </ul>
+ * <p>A count that could not be sent is sent again at the next interval, unless a newer one replaced it.</p>
+ * <pre>
+ * SpotCountReporter reporter = new SpotCountReporter(client, 5000, 10);
+ * reporter.update("a-parking-site-id", 42, 300); // at each change of the sensors
+ * ...
+ * reporter.close(); // sends the counts that changed since the last report
+ * </pre>
+ */
+public class SpotCountReporter implements AutoCloseable {
+
+    private static final Logger LOG = getLogger(SpotCountReporter.class);
+
+    public static final int DEFAULT_INTERVAL_IN_MS = 5000;
+    public static final int DEFAULT_THRESHOLD = 0;
+
+    private static final int NO_TOTAL = Integer.MIN_VALUE;
+
+    private final ParkingAccess client;
+    private final long intervalInNanos;
+    private final int threshold;
+    private final ConcurrentMap<String, Site> sites = new ConcurrentHashMap<>();
+    private final Thread sender;
+    private final LongAdder sentCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private volatile boolean closed;
+
+    /**
+     * A reporter sending the count of a parking site at most every {@link #DEFAULT_INTERVAL_IN_MS} ms, whatever the change.
+     */
+    public SpotCountReporter(ParkingAccess client) {
+        this(client, DEFAULT_INTERVAL_IN_MS, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param client The client that sends the counts.
+     * @param intervalInMs The minimum time (in ms) between two reports of the same parking site. Must be strictly positive.
+     * @param threshold The change of the count (in spots) that is reported right away, without waiting for the interval. Must be
+     *                  positive, <code>0</code> to always wait for the interval.
+     */
+    public SpotCountReporter(ParkingAccess client, int intervalInMs, int threshold) {
+        if (client == null) {
+            throw new IllegalArgumentException("The client cannot be null");
+        }
+        if (intervalInMs <= 0) {
+            throw new IllegalArgumentException("You must provide a strictly positive intervalInMs");
+        }
+        if (threshold < 0) {
+            throw new IllegalArgumentException("You must provide a positive threshold");
+        }
+        this.client = client;
+        this.intervalInNanos = MILLISECONDS.toNanos(intervalInMs);
+        this.threshold = threshold;
+        this.sender = new DaemonThreadFactory("parking-access-spot-count-reporter").newThread(this::run);
+        this.sender.start();
+    }
+
+    /**
+     * <p>Set the latest count of a parking site, replacing the one that was not sent yet. Ignored once the reporter is closed.</p>
+     * @param parkingSiteId The identifier of the parking site that was given by Commuty.
+     * @param count The number of available spots.
+     * @param total The total number of spots, or <code>null</code>.
+     */
+    public void update(String parkingSiteId, int count, Integer total) {
+        if (parkingSiteId == null) {
+            throw new IllegalArgumentException("The parking site cannot be null");
+        }
+        if (closed) {
+            return;
+        }
+        long value = encode(count, total);
+        Site site = sites.get(parkingSiteId);
+        if (site == null) {
+            site = sites.computeIfAbsent(parkingSiteId, id -> new Site(id, value));
+            // the first count of a parking site is sent right away
+            LockSupport.unpark(sender);
+        }
+        site.latest.set(value);
+        if (threshold > 0 && !site.urgent.get() && site.reported && Math.abs((long) count - site.reportedCount) >= threshold
+                && site.urgent.compareAndSet(false, true)) {
+            LockSupport.unpark(sender);
+        }
+    }
+
+    /**
+     * <p>Stop accepting counts, and send the ones that changed since the last report.</p>
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(sender);
+        try {
+            sender.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The number of counts sent successfully.
+     */
+    public long getSentCount() {
+        return sentCount.sum();
+    }
+
+    /**
+     * The number of counts whose request failed.
+     */
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    private void run() {
+        long nextTick = System.nanoTime() + intervalInNanos;
+        while (!closed) {
+            LockSupport.parkNanos(this, nextTick - System.nanoTime());
+            long now = System.nanoTime();
+            if (now - nextTick >= 0) {
+                nextTick = now + intervalInNanos;
+            }
+            for (Site site : sites.values()) {
+                if (closed) {
+                    break;
+                }
+                // cleared before the count is read: an update stored after this read marks the parking site urgent again
+                boolean urgent = site.urgent.getAndSet(false);
+                long latest = site.latest.get();
+                if (site.reported && latest == site.reportedValue) {
+                    continue;
+                }
+                boolean due = !site.attempted || now - site.attemptedAt >= intervalInNanos;
+                if (due || urgent && site.lastAttemptSucceeded) {
+                    send(site, latest, now);
+                } else if (site.attemptedAt + intervalInNanos - nextTick < 0) {
+                    // the next report of this parking site is due before the next tick
+                    nextTick = site.attemptedAt + intervalInNanos;
+                }
+            }
+        }
+        for (Site site : sites.values()) {
+            long latest = site.latest.get();
+            if (!site.reported || latest != site.reportedValue) {
+                send(site, latest, System.nanoTime());
+            }
+        }
+    }
+
+    private void send(Site site, long value, long now) {
+        site.attempted = true;
+        site.attemptedAt = now;
+        int count = (int) (value >> 32);
+        int total = (int) value;
+        try {
+            client.reportAvailableSpotCount(site.parkingSiteId, count, total != NO_TOTAL ? total : null);
+            site.reportedValue = value;
+            site.reportedCount = count;
+            site.reported = true;
+            site.lastAttemptSucceeded = true;
+            sentCount.increment();
+            LOG.debug("{} available spots reported for {}", count, site.parkingSiteId);
+        } catch (ApiException | RuntimeException e) {
+            failedCount.increment();
+            site.lastAttemptSucceeded = false;
+            LOG.warn("Unable to report the available spots of {}", site.parkingSiteId, e);
+        }
+    }
+
+    private static long encode(int count, Integer total) {
+        return ((long) count << 32) | ((total != null ? total : NO_TOTAL) & 0xffffffffL);
+    }
+
+    private static final class Site {
+        private final String parkingSiteId;
+        private final AtomicLong latest = new AtomicLong(); // count << 32 | total, or NO_TOTAL
+        private final AtomicBoolean urgent = new AtomicBoolean();
+        // written by the sender thread only, read by the callers of update()
+        private volatile int reportedCount;
+        private volatile boolean reported;
+        private long reportedValue;
+        private boolean attempted;
+        private long attemptedAt;
+        private boolean lastAttemptSucceeded;
+
+        private Site(String parkingSiteId, long value) {
+            this.parkingSiteId = parkingSiteId;
+            this.latest.set(value);
+        }
+    }
+}
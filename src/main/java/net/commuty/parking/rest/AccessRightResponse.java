@@ -8,14 +8,16 @@ import java.util.Collection;
 
 class AccessRightResponse {
 
+    static final String ACCESS_RIGHTS_FIELD = "accessRights";
+
     private final Collection<AccessRight> accessRights;
 
     @JsonCreator
-    AccessRightResponse(@JsonProperty("accessRights") Collection<AccessRight> accessRights) {
+    AccessRightResponse(@JsonProperty(ACCESS_RIGHTS_FIELD) Collection<AccessRight> accessRights) {
         this.accessRights = accessRights;
     }
 
-    @JsonProperty("accessRights")
+    @JsonProperty(ACCESS_RIGHTS_FIELD)
     public Collection<AccessRight> getAccessRights() {
         return accessRights;
     }
@@ -0,0 +1,112 @@
+package net.commuty.parking.rest;
+
+import net.commuty.parking.http.ApiException;
+import net.commuty.parking.http.PartialVerificationException;
+import net.commuty.parking.model.UserId;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * <p>Verifies several users with at most <code>parallelism</code> verifications in flight at the same time.</p>
+ * <p>Each time a verification completes, the next user is verified. A failed verification does not stop the others:
+ * once all the users are verified, the result completes with their answers, or with a {@link PartialVerificationException}
+ * if at least one of them failed.</p>
+ */
+class BulkVerification {
+
+    private final List<UserId> users;
+    private final Function<UserId, CompletableFuture<Boolean>> verify;
+    private final Boolean[] answers;
+    private final Throwable[] failures;
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicInteger remaining;
+    private final CompletableFuture<Map<UserId, Boolean>> result = new CompletableFuture<>();
+
+    private BulkVerification(Collection<UserId> users, Function<UserId, CompletableFuture<Boolean>> verify) {
+        this.users = new ArrayList<>(new LinkedHashSet<>(users));
+        this.verify = verify;
+        this.answers = new Boolean[this.users.size()];
+        this.failures = new Throwable[this.users.size()];
+        this.remaining = new AtomicInteger(this.users.size());
+    }
+
+    static CompletableFuture<Map<UserId, Boolean>> verify(Collection<UserId> users, int parallelism, Function<UserId, CompletableFuture<Boolean>> verify) {
+        if (users == null) {
+            throw new IllegalArgumentException("Users cannot be null");
+        }
+        BulkVerification verification = new BulkVerification(users, verify);
+        if (verification.users.isEmpty()) {
+            return CompletableFuture.completedFuture(new LinkedHashMap<>());
+        }
+        for (int worker = 0; worker < Math.min(parallelism, verification.users.size()); worker++) {
+            verification.verifyNext();
+        }
+        return verification.result;
+    }
+
+    private void verifyNext() {
+        int position;
+        // loop instead of recursing when the answers are already known (i.e. cached), to keep the stack flat
+        while ((position = next.getAndIncrement()) < users.size()) {
+            CompletableFuture<Boolean> verification;
+            try {
+                verification = verify.apply(users.get(position));
+            } catch (RuntimeException e) {
+                verification = new CompletableFuture<>();
+                verification.completeExceptionally(e);
+            }
+            if (!verification.isDone()) {
+                int pending = position;
+                verification.whenComplete((granted, error) -> {
+                    record(pending, granted, error);
+                    verifyNext();
+                });
+                return;
+            }
+            Boolean granted = null;
+            Throwable error = null;
+            try {
+                granted = verification.join();
+            } catch (CompletionException e) {
+                error = e;
+            }
+            record(position, granted, error);
+        }
+    }
+
+    private void record(int position, Boolean granted, Throwable error) {
+        if (error != null) {
+            failures[position] = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        } else {
+            answers[position] = granted;
+        }
+        if (remaining.decrementAndGet() == 0) {
+            complete();
+        }
+    }
+
+    private void complete() {
+        Map<UserId, Boolean> verified = new LinkedHashMap<>();
+        Map<UserId, ApiException> failed = new LinkedHashMap<>();
+        for (int position = 0; position < users.size(); position++) {
+            Throwable failure = failures[position];
+            if (failure == null) {
+                verified.put(users.get(position), answers[position]);
+            } else if (failure instanceof ApiException) {
+                failed.put(users.get(position), (ApiException) failure);
+            } else {
+                result.completeExceptionally(failure);
+                return;
+            }
+        }
+        if (failed.isEmpty()) {
+            result.complete(verified);
+        } else {
+            result.completeExceptionally(new PartialVerificationException(verified, failed));
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package net.commuty.parking.rest;
+
+import net.commuty.parking.Configuration;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The circuit breakers of a client, one per endpoint template (i.e. {@link ParkingAccessRestClient#ACCESS_REQUESTS_URL}),
+ * whatever the parking site in the path.
+ */
+class CircuitBreakers {
+
+    private final Configuration configuration;
+    private final ConcurrentMap<String, EndpointCircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    CircuitBreakers(Configuration configuration) {
+        this.configuration = configuration;
+    }
+
+    EndpointCircuitBreaker get(String endpoint) {
+        return breakers.computeIfAbsent(endpoint, key -> new EndpointCircuitBreaker(key, configuration.getCircuitBreaker(), configuration.getCircuitBreakerListener()));
+    }
+}
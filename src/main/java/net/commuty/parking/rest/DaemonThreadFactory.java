@@ -0,0 +1,25 @@
+package net.commuty.parking.rest;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Creates named daemon threads, so that the background work of the client never prevents the JVM from exiting.</p>
+ * <p>Used by every background thread of the client (the threads are named <code>parking-access-...-N</code>), it is not part of the api.</p>
+ */
+public class DaemonThreadFactory implements ThreadFactory {
+
+    private final String prefix;
+    private final AtomicInteger counter = new AtomicInteger();
+
+    public DaemonThreadFactory(String prefix) {
+        this.prefix = prefix;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -0,0 +1,241 @@
+package net.commuty.parking.rest;
+
+import net.commuty.parking.CircuitBreakerListener;
+import net.commuty.parking.CircuitBreakerListener.State;
+import net.commuty.parking.Configuration;
+import net.commuty.parking.http.ApiException;
+import net.commuty.parking.http.CircuitBreakerOpenException;
+import net.commuty.parking.http.HttpClientException;
+import net.commuty.parking.http.HttpRequestException;
+import org.slf4j.Logger;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static net.commuty.parking.CircuitBreakerListener.State.*;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * <p>The circuit breaker of one endpoint, see {@link Configuration.CircuitBreaker}.</p>
+ * <p>The outcomes of the last calls are kept in a ring buffer, together with the number of failed and slow calls it contains,
+ * so that recording a call and computing the rates never iterates over the window.</p>
+ */
+class EndpointCircuitBreaker {
+
+    private static final Logger LOG = getLogger(EndpointCircuitBreaker.class);
+
+    private final String endpoint;
+    private final Configuration.CircuitBreaker settings;
+    private final CircuitBreakerListener listener;
+    private final long slowCallDurationInNanos;
+    private final long openDurationInNanos;
+
+    private final boolean[] failed;
+    private final boolean[] slow;
+    private int windowSize;
+    private int next;
+    private int recorded;
+    private int failedCount;
+    private int slowCount;
+
+    private State state = CLOSED;
+    private long openedAtInNanos;
+    private int permittedCalls;
+
+    EndpointCircuitBreaker(String endpoint, Configuration.CircuitBreaker settings, CircuitBreakerListener listener) {
+        this.endpoint = endpoint;
+        this.settings = settings;
+        this.listener = listener;
+        this.slowCallDurationInNanos = MILLISECONDS.toNanos(settings.getSlowCallDurationInMs());
+        this.openDurationInNanos = MILLISECONDS.toNanos(settings.getOpenDurationInMs());
+        int capacity = Math.max(settings.getWindowSize(), Configuration.CircuitBreaker.PERMITTED_CALLS_IN_HALF_OPEN_STATE);
+        this.failed = new boolean[capacity];
+        this.slow = new boolean[capacity];
+        this.windowSize = settings.getWindowSize();
+    }
+
+    /**
+     * Send a blocking call through the circuit breaker.
+     */
+    <T> T call(ParkingAccessRestClient.ApiCall<T> call, String token) throws ApiException {
+        acquire();
+        long start = System.nanoTime();
+        try {
+            T result = call.call(token);
+            onSuccess(System.nanoTime() - start);
+            return result;
+        } catch (ApiException e) {
+            onError(System.nanoTime() - start, e);
+            throw e;
+        } catch (RuntimeException e) {
+            onIgnored();
+            throw e;
+        }
+    }
+
+    /**
+     * Send a non-blocking call through the circuit breaker.
+     */
+    <T> CompletableFuture<T> callAsync(Function<String, CompletableFuture<T>> call, String token) {
+        try {
+            acquire();
+        } catch (CircuitBreakerOpenException e) {
+            CompletableFuture<T> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(e);
+            return rejected;
+        }
+        long start = System.nanoTime();
+        return call.apply(token).whenComplete((value, error) -> {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause == null) {
+                onSuccess(System.nanoTime() - start);
+            } else if (cause instanceof ApiException) {
+                onError(System.nanoTime() - start, (ApiException) cause);
+            } else {
+                onIgnored();
+            }
+        });
+    }
+
+    State getState() {
+        synchronized (this) {
+            return state;
+        }
+    }
+
+    private void acquire() throws CircuitBreakerOpenException {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        boolean halfOpened = false;
+        synchronized (this) {
+            if (state == OPEN) {
+                if (System.nanoTime() - openedAtInNanos < openDurationInNanos) {
+                    throw new CircuitBreakerOpenException(endpoint);
+                }
+                moveTo(HALF_OPEN);
+                halfOpened = true;
+            }
+            if (state == HALF_OPEN) {
+                if (permittedCalls == 0) {
+                    throw new CircuitBreakerOpenException(endpoint);
+                }
+                permittedCalls--;
+            }
+        }
+        if (halfOpened) {
+            notifyListener(OPEN, HALF_OPEN);
+        }
+    }
+
+    private void onSuccess(long durationInNanos) {
+        record(false, durationInNanos >= slowCallDurationInNanos);
+    }
+
+    private void onError(long durationInNanos, ApiException error) {
+        if (isFailure(error)) {
+            record(true, durationInNanos >= slowCallDurationInNanos);
+        } else {
+            // the api answered (i.e. a bad request or an expired token), it is healthy
+            onSuccess(durationInNanos);
+        }
+    }
+
+    /**
+     * The call failed in the client (i.e. a bug while mapping the payload), it says nothing about the api.
+     */
+    private void onIgnored() {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        synchronized (this) {
+            if (state == HALF_OPEN) {
+                permittedCalls++;
+            }
+        }
+    }
+
+    private static boolean isFailure(ApiException error) {
+        if (error instanceof CircuitBreakerOpenException) {
+            return false;
+        }
+        if (error instanceof HttpRequestException) {
+            HttpRequestException exception = (HttpRequestException) error;
+            return exception.isServerError() || exception.isTooManyRequests();
+        }
+        return error instanceof HttpClientException;
+    }
+
+    private void record(boolean isFailed, boolean isSlow) {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        State from;
+        State to;
+        synchronized (this) {
+            if (state == OPEN) {
+                // a call sent before the circuit opened
+                return;
+            }
+            if (recorded == windowSize) {
+                failedCount -= failed[next] ? 1 : 0;
+                slowCount -= slow[next] ? 1 : 0;
+            } else {
+                recorded++;
+            }
+            failed[next] = isFailed;
+            slow[next] = isSlow;
+            failedCount += isFailed ? 1 : 0;
+            slowCount += isSlow ? 1 : 0;
+            next = (next + 1) % windowSize;
+            if (recorded < windowSize) {
+                return;
+            }
+            from = state;
+            boolean unhealthy = failedCount * 100 >= settings.getFailureRateThreshold() * windowSize
+                    || slowCount * 100 >= settings.getSlowCallRateThreshold() * windowSize;
+            if (unhealthy) {
+                moveTo(OPEN);
+            } else if (state == HALF_OPEN) {
+                moveTo(CLOSED);
+            } else {
+                return;
+            }
+            to = state;
+        }
+        if (from != to) {
+            notifyListener(from, to);
+        }
+    }
+
+    /**
+     * Change the state and start a new window. Must be called while holding the lock.
+     */
+    private void moveTo(State newState) {
+        state = newState;
+        if (newState == OPEN) {
+            openedAtInNanos = System.nanoTime();
+        }
+        windowSize = newState == HALF_OPEN ? Configuration.CircuitBreaker.PERMITTED_CALLS_IN_HALF_OPEN_STATE : settings.getWindowSize();
+        permittedCalls = windowSize;
+        next = 0;
+        recorded = 0;
+        failedCount = 0;
+        slowCount = 0;
+    }
+
+    private void notifyListener(State from, State to) {
+        if (to == OPEN) {
+            LOG.warn("Circuit breaker of {} is open, calls are rejected for {}ms", endpoint, settings.getOpenDurationInMs());
+        } else {
+            LOG.info("Circuit breaker of {} is now {}", endpoint, to);
+        }
+        try {
+            listener.onStateChange(endpoint, from, to);
+        } catch (RuntimeException e) {
+            LOG.warn("Circuit breaker listener failed", e);
+        }
+    }
+}
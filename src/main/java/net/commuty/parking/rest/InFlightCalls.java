@@ -0,0 +1,118 @@
+package net.commuty.parking.rest;
+
+import net.commuty.parking.http.CredentialsException;
+import net.commuty.parking.http.HttpClientException;
+import net.commuty.parking.http.HttpRequestException;
+import org.slf4j.Logger;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * <p>Makes concurrent identical calls share one request to the api.</p>
+ * <p>The first caller of a key makes the call. The callers that arrive with the same key while it is in flight wait for it,
+ * and receive its result (or its exception). A caller that arrives once the call is done makes a new call.</p>
+ * <p>As the result is shared, the waiting callers receive a copy of it made by <code>share</code>, so that no caller sees
+ * the changes another one makes to its result.</p>
+ */
+class InFlightCalls<K, V> {
+
+    private static final Logger LOG = getLogger(InFlightCalls.class);
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> calls = new ConcurrentHashMap<>();
+    private final UnaryOperator<V> share;
+
+    InFlightCalls(UnaryOperator<V> share) {
+        this.share = share;
+    }
+
+    V call(K key, Call<V> call) throws CredentialsException, HttpRequestException, HttpClientException {
+        CompletableFuture<V> pending = new CompletableFuture<>();
+        CompletableFuture<V> inFlight = calls.putIfAbsent(key, pending);
+        if (inFlight != null) {
+            LOG.trace("Identical call already in flight, waiting for it");
+            return share.apply(await(inFlight));
+        }
+        try {
+            V value = call.call();
+            calls.remove(key, pending);
+            pending.complete(value);
+            return value;
+        } catch (Throwable e) {
+            calls.remove(key, pending);
+            pending.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    CompletableFuture<V> callAsync(K key, Supplier<CompletableFuture<V>> call) {
+        CompletableFuture<V> pending = new CompletableFuture<>();
+        CompletableFuture<V> inFlight = calls.putIfAbsent(key, pending);
+        if (inFlight != null) {
+            LOG.trace("Identical call already in flight, waiting for it");
+            CompletableFuture<V> shared = new CompletableFuture<>();
+            inFlight.whenComplete((value, error) -> {
+                if (error == null) {
+                    shared.complete(share.apply(value));
+                } else {
+                    shared.completeExceptionally(error);
+                }
+            });
+            return shared;
+        }
+        CompletableFuture<V> started;
+        try {
+            started = call.get();
+        } catch (RuntimeException e) {
+            started = new CompletableFuture<>();
+            started.completeExceptionally(e);
+        }
+        started.whenComplete((value, error) -> {
+            calls.remove(key, pending);
+            if (error == null) {
+                pending.complete(value);
+            } else {
+                pending.completeExceptionally(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+            }
+        });
+        return pending;
+    }
+
+    /**
+     * Wait for the result of a future, and throw the exception of the client it failed with.
+     */
+    static <V> V await(Future<V> future) throws CredentialsException, HttpRequestException, HttpClientException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a call in flight", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException ? e.getCause().getCause() : e.getCause();
+            if (cause instanceof CredentialsException) {
+                throw (CredentialsException) cause;
+            } else if (cause instanceof HttpRequestException) {
+                throw (HttpRequestException) cause;
+            } else if (cause instanceof HttpClientException) {
+                throw (HttpClientException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    @FunctionalInterface
+    interface Call<V> {
+        V call() throws CredentialsException, HttpRequestException, HttpClientException;
+    }
+}
@@ -1,6 +1,9 @@
 package net.commuty.parking.rest;
 
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import net.commuty.parking.http.Error;
@@ -8,10 +11,16 @@ import net.commuty.parking.http.Mapper;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_NULL;
+import static com.fasterxml.jackson.core.JsonToken.*;
 import static com.fasterxml.jackson.databind.DeserializationFeature.*;
 import static com.fasterxml.jackson.databind.SerializationFeature.WRITE_DATES_AS_TIMESTAMPS;
+import static java.util.Collections.emptyIterator;
 
 class JsonMapper implements Mapper {
 
@@ -41,6 +50,11 @@ class JsonMapper implements Mapper {
         return mapper.writeValueAsString(body);
     }
 
+    @Override
+    public void write(Object body, OutputStream stream) throws IOException {
+        mapper.writeValue(stream, body);
+    }
+
     @Override
     public <R> R read(InputStream stream, Class<R> type) throws IOException {
         return mapper.readValue(stream, type);
@@ -51,7 +65,68 @@ class JsonMapper implements Mapper {
         return read(stream, JsonError.class);
     }
 
+    @Override
+    public <R> Iterator<R> readArray(InputStream stream, String field, Class<R> type) throws IOException {
+        JsonParser parser = mapper.getFactory().createParser(stream);
+        if (parser.nextToken() != START_OBJECT) {
+            throw new JsonParseException(parser, "Expected an object at the root of the document");
+        }
+        while (parser.nextToken() == FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (field.equals(name) && value == START_ARRAY) {
+                return new ArrayIterator<>(parser, type);
+            }
+            parser.skipChildren();
+        }
+        return emptyIterator();
+    }
+
     public ObjectMapper getMapper() {
         return mapper;
     }
+
+    /**
+     * Deserialize the elements of an array one by one, only the current element is kept in memory.
+     * The <code>null</code> elements are skipped: the end of the array is tracked by <code>done</code>, never by a <code>null</code> element.
+     */
+    private class ArrayIterator<R> implements Iterator<R> {
+
+        private final JsonParser parser;
+        private final Class<R> type;
+        private R next;
+        private boolean done;
+
+        private ArrayIterator(JsonParser parser, Class<R> type) {
+            this.parser = parser;
+            this.type = type;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && !done) {
+                try {
+                    JsonToken token = parser.nextToken();
+                    if (token == null || token == END_ARRAY) {
+                        done = true;
+                    } else if (token != VALUE_NULL) {
+                        next = mapper.readValue(parser, type);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public R next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            R current = next;
+            next = null;
+            return current;
+        }
+    }
 }
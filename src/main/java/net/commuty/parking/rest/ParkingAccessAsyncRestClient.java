@@ -0,0 +1,280 @@
+package net.commuty.parking.rest;
+
+import net.commuty.parking.Configuration;
+import net.commuty.parking.ParkingAccessAsync;
+import net.commuty.parking.http.ApiException;
+import net.commuty.parking.http.CredentialsException;
+import net.commuty.parking.http.HttpClient;
+import net.commuty.parking.http.HttpClientException;
+import net.commuty.parking.http.HttpRequestException;
+import net.commuty.parking.model.*;
+import org.slf4j.Logger;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.emptySet;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static net.commuty.parking.rest.ParkingAccessRestClient.*;
+import static org.slf4j.LoggerFactory.getLogger;
+
+public class ParkingAccessAsyncRestClient implements ParkingAccessAsync {
+
+    private static final Logger LOG = getLogger(ParkingAccessAsyncRestClient.class);
+
+    private final Configuration configuration;
+    private final HttpClient httpClient;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService scheduler;
+    private final TokenHolder tokens = new TokenHolder();
+    private final RetryLimiter retryLimiter;
+    private final CircuitBreakers circuitBreakers;
+    private final TokenRenewer tokenRenewer;
+    private final AtomicInteger inFlightCount = new AtomicInteger();
+    private volatile boolean closed;
+    private final InFlightCalls<List<Object>, Boolean> verifications = new InFlightCalls<>(granted -> granted);
+    private final InFlightCalls<Map<String, Collection<String>>, Collection<AccessRight>> accessRightListings = new InFlightCalls<>(ArrayList::new);
+
+    public ParkingAccessAsyncRestClient(Configuration configuration) {
+        this.configuration = configuration;
+        this.retryLimiter = new RetryLimiter(configuration.getRetryBudget());
+        this.circuitBreakers = new CircuitBreakers(configuration);
+        this.httpClient = new HttpClient(configuration.getHost(),
+                JsonMapper.create(),
+                createTransport(configuration),
+                configuration.getCompression().isEnabled(),
+                configuration.getCompression().getMinRequestSizeInBytes());
+        this.executor = newCachedThreadPool(new DaemonThreadFactory("parking-access-io"));
+        this.scheduler = newSingleThreadScheduledExecutor(new DaemonThreadFactory("parking-access-retry"));
+        // registers itself on the token holder
+        this.tokenRenewer = configuration.getTokenRenewal().isEnabled() ? new TokenRenewer(tokens, this::authenticate, configuration.getTokenRenewal()) : null;
+    }
+
+    @Override
+    public CompletableFuture<String> authenticate() {
+        LOG.debug("Authenticating user");
+        TokenRequest request = new TokenRequest(this.configuration.getUsername(), this.configuration.getPassword());
+        CompletableFuture<String> result = new CompletableFuture<>();
+        httpClient.makePostRequestAsync(TOKEN_REQUESTS_URL, null, request, TokenResponse.class, executor).whenComplete((auth, error) -> {
+            if (error == null) {
+                tokens.set(auth.getToken());
+                LOG.debug("Authentication done, token saved");
+                result.complete(auth.getToken());
+                return;
+            }
+            Throwable cause = unwrap(error);
+            if (cause instanceof HttpRequestException) {
+                LOG.warn("Received response code other than 200");
+                if (((HttpRequestException) cause).isForbidden()) {
+                    LOG.trace("Unable to authenticate: username or password is invalid");
+                    cause = new CredentialsException();
+                }
+            }
+            result.completeExceptionally(cause);
+        });
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> isGranted(String parkingSiteId, UserId user) {
+        validateParkingSiteId(parkingSiteId);
+        if (user == null) {
+            throw new IllegalArgumentException("UserId cannot be null");
+        }
+        Boolean cached = configuration.getVerdictCache().get(parkingSiteId, user);
+        if (cached != null) {
+            LOG.debug("User {} was verified recently on the parking site {}", user, parkingSiteId);
+            return CompletableFuture.completedFuture(cached);
+        }
+        LOG.debug("Verify whether user {} is authorized to access the parking site {}", user, parkingSiteId);
+        String path = String.format(ACCESS_REQUESTS_URL, parkingSiteId);
+        return verifications.callAsync(asList(parkingSiteId, user),
+                () -> withRetry(ACCESS_REQUESTS_URL, IDEMPOTENT, currentToken -> httpClient.makePostRequestAsync(path, currentToken, new VerificationRequest(user), VerificationResponse.class, executor)
+                        .thenApply(VerificationResponse::isGranted)))
+                .thenApply(granted -> {
+                    configuration.getVerdictCache().put(parkingSiteId, user, granted);
+                    return granted;
+                });
+    }
+
+    @Override
+    public CompletableFuture<Map<UserId, Boolean>> areGranted(String parkingSiteId, Collection<UserId> users) {
+        validateParkingSiteId(parkingSiteId);
+        LOG.debug("Verify whether {} users are authorized to access the parking site {}", users != null ? users.size() : 0, parkingSiteId);
+        return BulkVerification.verify(users, configuration.getVerificationParallelism(), user -> isGranted(parkingSiteId, user));
+    }
+
+    @Override
+    public CompletableFuture<Collection<AccessRight>> listAccessRightsForToday() {
+        return listAccessRights(null, null, null, null, null, null, null, emptySet());
+    }
+
+    @Override
+    public CompletableFuture<Collection<AccessRight>> listAccessRightsForToday(boolean unreadOnly) {
+        return listAccessRights(null, unreadOnly, null, null, null, null, null, emptySet());
+    }
+
+    @Override
+    public CompletableFuture<Collection<AccessRight>> listAccessRights(LocalDate date,
+                                                                       Boolean unreadOnly,
+                                                                       Boolean dryRun,
+                                                                       LocalDateTime createdAfter,
+                                                                       Boolean granted,
+                                                                       String parkingSiteId,
+                                                                       UUID subjectId,
+                                                                       Set<AccessRightAttributeName> includeAttributes) {
+        LOG.debug("Check the presence of Access rights");
+        Map<String, Collection<String>> parameters = createListAccessRightQueryParameters(date, unreadOnly, dryRun, createdAfter, granted, parkingSiteId, subjectId, includeAttributes);
+        return accessRightListings.callAsync(parameters,
+                () -> withRetry(ACCESS_RIGHTS_URL, IDEMPOTENT, currentToken -> httpClient.makeGetRequestAsync(ACCESS_RIGHTS_URL, currentToken, parameters, AccessRightResponse.class, executor)
+                        .thenApply(AccessRightResponse::getAccessRights)));
+    }
+
+    @Override
+    public CompletableFuture<String> reportAccessLog(String parkingSiteId, Collection<AccessLog> accessLogs) {
+        validateParkingSiteId(parkingSiteId);
+        if (accessLogs == null || accessLogs.isEmpty()) {
+            throw new IllegalArgumentException("Accesses cannot be null or blank");
+        }
+        LOG.debug("Report Access logs to Commuty for the site {}", parkingSiteId);
+        String path = String.format(REPORT_ACCESS_URL, parkingSiteId);
+        return withRetry(REPORT_ACCESS_URL, NOT_IDEMPOTENT, currentToken -> httpClient.makePostRequestAsync(path, currentToken, new AccessLogRequest(accessLogs), AccessLogResponse.class, executor)
+                .thenApply(AccessLogResponse::getLogId));
+    }
+
+    @Override
+    public CompletableFuture<UserId> reportMissingUserId(UserId user) {
+        if (user == null) {
+            throw new IllegalArgumentException("UserId cannot be null");
+        }
+        LOG.debug("Report user {} as missing", user);
+        return withRetry(REPORT_MISSING_IDS_URL, IDEMPOTENT, currentToken -> httpClient.makePostRequestAsync(REPORT_MISSING_IDS_URL, currentToken, new MissingUserIdRequest(user), UserId.class, executor));
+    }
+
+    @Override
+    public CompletableFuture<Count> reportAvailableSpotCount(String parkingSiteId, int count, Integer total) {
+        validateParkingSiteId(parkingSiteId);
+        LOG.debug("Report number of available spots to Commuty for the site {}", parkingSiteId);
+        String path = String.format(REPORT_AVAILABLE_SPOTS_COUNT_URL, parkingSiteId);
+        return withRetry(REPORT_AVAILABLE_SPOTS_COUNT_URL, IDEMPOTENT, currentToken -> httpClient.makePostRequestAsync(path, currentToken, new CountRequest(count, total), Count.class, executor));
+    }
+
+    @Override
+    public CompletableFuture<List<ParkingSpot>> listParkingSpots(String parkingSiteId) {
+        if (parkingSiteId == null || parkingSiteId.trim().isEmpty()) {
+            throw new IllegalArgumentException("parkingSiteId must not be null or blank");
+        }
+
+        LOG.debug("List parking spot for parkingSiteId={}", parkingSiteId);
+        String path = String.format(PARKING_SPOTS_RIGHTS_URL, parkingSiteId);
+        return withRetry(PARKING_SPOTS_RIGHTS_URL, IDEMPOTENT, currentToken -> httpClient.makeGetRequestAsync(path, currentToken, emptyMap(), ParkingSpotResponse.class, executor)
+                .thenApply(ParkingSpotResponse::getParkingSpots));
+    }
+
+    @Override
+    public CompletableFuture<UUID> reportApplicationLog(ApplicationLog log) {
+        if (log == null) {
+            throw new IllegalArgumentException("log must not be null");
+        }
+
+        LOG.debug("Report Application log to Commuty");
+        return withRetry(APPLICATION_LOGS_URL, NOT_IDEMPOTENT, currentToken -> httpClient.makePostRequestAsync(APPLICATION_LOGS_URL, currentToken, log, ApplicationLogResponse.class, executor)
+                .thenApply(ApplicationLogResponse::getLogId));
+    }
+
+    /**
+     * Stop the token renewal, and release the internal threads once the calls in flight (and their retries) are done.
+     * The calls made afterwards fail with an {@link IllegalStateException}.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (tokenRenewer != null) {
+            tokenRenewer.close();
+        }
+        if (inFlightCount.get() == 0) {
+            shutdown();
+        }
+    }
+
+    private void shutdown() {
+        scheduler.shutdown();
+        executor.shutdown();
+    }
+
+    private <T> CompletableFuture<T> withRetry(String endpoint, boolean idempotent, Function<String, CompletableFuture<T>> call) {
+        EndpointCircuitBreaker circuitBreaker = circuitBreakers.get(endpoint);
+        CompletableFuture<T> result = new CompletableFuture<>();
+        // counted before closed is read: either this call sees the client closed, or close() sees this call in flight
+        inFlightCount.incrementAndGet();
+        result.whenComplete((value, error) -> {
+            if (inFlightCount.decrementAndGet() == 0 && closed) {
+                shutdown();
+            }
+        });
+        if (closed) {
+            result.completeExceptionally(new IllegalStateException("The client is closed"));
+            return result;
+        }
+        retryLimiter.onCall();
+        attempt(idempotent, token -> circuitBreaker.callAsync(call, token), new Retry(configuration.getRetryStrategy()), result);
+        return result;
+    }
+
+    private <T> void attempt(boolean idempotent, Function<String, CompletableFuture<T>> call, Retry retry, CompletableFuture<T> result) {
+        LOG.trace("{} retries left to call api", retry.getCount());
+        String currentToken = tokens.get();
+        CompletableFuture<String> tokenFuture = currentToken != null ? CompletableFuture.completedFuture(currentToken) : tokens.refresh(null, this::authenticate);
+        AtomicReference<String> usedToken = new AtomicReference<>();
+        tokenFuture.thenCompose(token -> {
+            usedToken.set(token);
+            return call.apply(token);
+        }).whenComplete((value, error) -> {
+            if (error == null) {
+                result.complete(value);
+                return;
+            }
+            Throwable cause = unwrap(error);
+            if (cause instanceof HttpRequestException && ((HttpRequestException) cause).isForbidden()) {
+                LOG.trace("Token exception, refreshing token then try again");
+                tokens.refresh(usedToken.get(), this::authenticate).whenComplete((refreshed, authError) -> {
+                    if (authError != null) {
+                        result.completeExceptionally(unwrap(authError));
+                    } else {
+                        scheduleNext(idempotent, call, retry, (HttpRequestException) cause, result);
+                    }
+                });
+            } else if (cause instanceof HttpRequestException || cause instanceof HttpClientException) {
+                scheduleNext(idempotent, call, retry, (ApiException) cause, result);
+            } else {
+                LOG.trace("Issue in the client or invalid username/password");
+                result.completeExceptionally(cause);
+            }
+        });
+    }
+
+    private <T> void scheduleNext(boolean idempotent, Function<String, CompletableFuture<T>> call, Retry retry, ApiException exception, CompletableFuture<T> result) {
+        Retry next = retry.after(exception, idempotent, retryLimiter);
+        if (next == null) {
+            result.completeExceptionally(exception);
+        } else {
+            scheduler.schedule(() -> attempt(idempotent, call, next, result), next.getIntervalInMs(), MILLISECONDS);
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+}
@@ -2,10 +2,15 @@ package net.commuty.parking.rest;
 
 import net.commuty.parking.Configuration;
 import net.commuty.parking.ParkingAccess;
+import net.commuty.parking.RequestScheduler;
+import net.commuty.parking.http.ApiException;
 import net.commuty.parking.http.CredentialsException;
 import net.commuty.parking.http.HttpClient;
 import net.commuty.parking.http.HttpClientException;
 import net.commuty.parking.http.HttpRequestException;
+import net.commuty.parking.http.HttpTransport;
+import net.commuty.parking.http.HttpTransportFactory;
+import net.commuty.parking.http.PartialVerificationException;
 import net.commuty.parking.model.*;
 import org.slf4j.Logger;
 
@@ -13,13 +18,22 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.*;
-import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Stream;
 
 import static java.time.format.DateTimeFormatter.ISO_INSTANT;
 import static java.time.format.DateTimeFormatter.ISO_LOCAL_DATE;
 import static java.time.temporal.ChronoUnit.SECONDS;
+import static java.util.Arrays.asList;
 import static java.util.Collections.*;
+import static java.util.concurrent.Executors.newCachedThreadPool;
 import static java.util.stream.Collectors.toList;
+import static net.commuty.parking.RequestScheduler.Priority.INTERACTIVE;
+import static net.commuty.parking.RequestScheduler.Priority.LISTING;
+import static net.commuty.parking.RequestScheduler.Priority.REPORTING;
 import static org.slf4j.LoggerFactory.getLogger;
 
 public class ParkingAccessRestClient implements ParkingAccess {
@@ -45,17 +59,53 @@ public class ParkingAccessRestClient implements ParkingAccess {
     public static final String INCLUDE_ATTRIBUTES_PARAM = "includeAttributes";
     private static final ZoneId UTC = ZoneId.of("UTC");
 
+    /**
+     * Calls that can be sent twice without side effects, they are retried after any network error.
+     */
+    static final boolean IDEMPOTENT = true;
+    /**
+     * Calls that create data (i.e. logs), they are retried after a network error only if the query did not reach the api.
+     */
+    static final boolean NOT_IDEMPOTENT = false;
+
     private final Configuration configuration;
     private final HttpClient httpClient;
-    private String token;
+    private final TokenHolder tokens = new TokenHolder();
+    private final RetryLimiter retryLimiter;
+    private final CircuitBreakers circuitBreakers;
+    private final RequestScheduler scheduler;
+    private final TokenRenewer tokenRenewer;
+    private final ExecutorService bulkExecutor = newCachedThreadPool(new DaemonThreadFactory("parking-access-bulk"));
+    private final InFlightCalls<List<Object>, Boolean> verifications = new InFlightCalls<>(granted -> granted);
+    private final InFlightCalls<Map<String, Collection<String>>, Collection<AccessRight>> accessRightListings = new InFlightCalls<>(ArrayList::new);
 
     public ParkingAccessRestClient(Configuration configuration) {
         this.configuration = configuration;
+        this.retryLimiter = new RetryLimiter(configuration.getRetryBudget());
+        this.circuitBreakers = new CircuitBreakers(configuration);
+        this.scheduler = configuration.getRequestScheduler();
         this.httpClient = new HttpClient(configuration.getHost(),
                 JsonMapper.create(),
-                configuration.getProxy(),
-                configuration.getTimeout().getConnectionTimeoutInMs(),
-                configuration.getTimeout().getRequestTimeoutInMs());
+                createTransport(configuration),
+                configuration.getCompression().isEnabled(),
+                configuration.getCompression().getMinRequestSizeInBytes());
+        // registers itself on the token holder
+        this.tokenRenewer = configuration.getTokenRenewal().isEnabled() ? new TokenRenewer(tokens, this::authenticateAsFuture, configuration.getTokenRenewal()) : null;
+    }
+
+    static HttpTransport createTransport(Configuration configuration) {
+        Configuration.Timeout timeout = configuration.getTimeout();
+        Configuration.Transport transport = configuration.getTransport();
+        if (transport.getType() == Configuration.Transport.Type.HTTP_CLIENT) {
+            return HttpTransportFactory.httpClient(configuration.getProxy(),
+                    timeout.getConnectionTimeoutInMs(),
+                    timeout.getRequestTimeoutInMs(),
+                    transport.getConnectionPoolSize(),
+                    transport.getKeepAliveInMs());
+        }
+        return HttpTransportFactory.urlConnection(configuration.getProxy(),
+                timeout.getConnectionTimeoutInMs(),
+                timeout.getRequestTimeoutInMs());
     }
 
     @Override
@@ -63,9 +113,9 @@ public class ParkingAccessRestClient implements ParkingAccess {
         LOG.debug("Authenticating user");
         try {
             TokenResponse auth = httpClient.makePostRequest(TOKEN_REQUESTS_URL, null, new TokenRequest(this.configuration.getUsername(), this.configuration.getPassword()), TokenResponse.class);
-            token = auth.getToken();
+            tokens.set(auth.getToken());
             LOG.debug("Authentication done, token saved");
-            return token;
+            return auth.getToken();
         } catch (HttpRequestException requestException) {
             LOG.warn("Received response code other than 200");
             if (requestException.isForbidden()) {
@@ -83,9 +133,43 @@ public class ParkingAccessRestClient implements ParkingAccess {
         if(user == null) {
             throw new IllegalArgumentException("UserId cannot be null");
         }
+        Boolean cached = configuration.getVerdictCache().get(parkingSiteId, user);
+        if (cached != null) {
+            LOG.debug("User {} was verified recently on the parking site {}", user, parkingSiteId);
+            return cached;
+        }
         LOG.debug("Verify whether user {} is authorized to access the parking site {}", user, parkingSiteId);
         String path = String.format(ACCESS_REQUESTS_URL, parkingSiteId);
-        return withRetry(() -> httpClient.makePostRequest(path, token, new VerificationRequest(user), VerificationResponse.class).isGranted());
+        boolean granted = verifications.call(asList(parkingSiteId, user),
+                () -> withRetry(ACCESS_REQUESTS_URL, IDEMPOTENT, INTERACTIVE, token -> httpClient.makePostRequest(path, token, new VerificationRequest(user), VerificationResponse.class).isGranted()));
+        configuration.getVerdictCache().put(parkingSiteId, user, granted);
+        return granted;
+    }
+
+    @Override
+    public Map<UserId, Boolean> areGranted(String parkingSiteId, Collection<UserId> users) throws PartialVerificationException {
+        validateParkingSiteId(parkingSiteId);
+        LOG.debug("Verify whether {} users are authorized to access the parking site {}", users != null ? users.size() : 0, parkingSiteId);
+        CompletableFuture<Map<UserId, Boolean>> verification = BulkVerification.verify(users, configuration.getVerificationParallelism(), user -> CompletableFuture.supplyAsync(() -> {
+            try {
+                return isGranted(parkingSiteId, user);
+            } catch (ApiException e) {
+                throw new CompletionException(e);
+            }
+        }, bulkExecutor));
+        try {
+            return verification.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while verifying users", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof PartialVerificationException) {
+                throw (PartialVerificationException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
     }
 
     @Override
@@ -109,17 +193,43 @@ public class ParkingAccessRestClient implements ParkingAccess {
                                                     Set<AccessRightAttributeName> includeAttributes) throws CredentialsException, HttpRequestException, HttpClientException {
         LOG.debug("Check the presence of Access rights");
         Map<String, Collection<String>> parameters = createListAccessRightQueryParameters(date, unreadOnly, dryRun, createdAfter, granted, parkingSiteId, subjectId, includeAttributes);
-        return withRetry(() -> httpClient.makeGetRequest(ACCESS_RIGHTS_URL, token, parameters, AccessRightResponse.class).getAccessRights());
+        return accessRightListings.call(parameters,
+                () -> withRetry(ACCESS_RIGHTS_URL, IDEMPOTENT, LISTING, token -> httpClient.makeGetRequest(ACCESS_RIGHTS_URL, token, parameters, AccessRightResponse.class).getAccessRights()));
+    }
+
+    @Override
+    public Stream<AccessRight> streamAccessRights(LocalDate date,
+                                                  Boolean unreadOnly,
+                                                  Boolean dryRun,
+                                                  LocalDateTime createdAfter,
+                                                  Boolean granted,
+                                                  String parkingSiteId,
+                                                  UUID subjectId,
+                                                  Set<AccessRightAttributeName> includeAttributes) throws CredentialsException, HttpRequestException, HttpClientException {
+        LOG.debug("Stream the Access rights");
+        Map<String, Collection<String>> parameters = createListAccessRightQueryParameters(date, unreadOnly, dryRun, createdAfter, granted, parkingSiteId, subjectId, includeAttributes);
+        // the listing is in flight until the stream is closed, so the call holds its place during all its attempts
+        acquire(LISTING);
+        boolean opened = false;
+        try {
+            Stream<AccessRight> accessRights = withRetry(ACCESS_RIGHTS_URL, IDEMPOTENT, null, token -> httpClient.makeGetStreamRequest(ACCESS_RIGHTS_URL, token, parameters, AccessRightResponse.ACCESS_RIGHTS_FIELD, AccessRight.class));
+            opened = true;
+            return accessRights.onClose(() -> scheduler.release(LISTING));
+        } finally {
+            if (!opened) {
+                scheduler.release(LISTING);
+            }
+        }
     }
 
-    private Map<String, Collection<String>> createListAccessRightQueryParameters(LocalDate date,
-                                                                                 Boolean unreadOnly,
-                                                                                 Boolean dryRun,
-                                                                                 LocalDateTime createdAfter,
-                                                                                 Boolean granted,
-                                                                                 String parkingSiteId,
-                                                                                 UUID subjectId,
-                                                                                 Set<AccessRightAttributeName> includeAttributes) {
+    static Map<String, Collection<String>> createListAccessRightQueryParameters(LocalDate date,
+                                                                                Boolean unreadOnly,
+                                                                                Boolean dryRun,
+                                                                                LocalDateTime createdAfter,
+                                                                                Boolean granted,
+                                                                                String parkingSiteId,
+                                                                                UUID subjectId,
+                                                                                Set<AccessRightAttributeName> includeAttributes) {
         Map<String, Collection<String>> parameters = new HashMap<>();
         if (date != null) {
             String formatted = date.format(ISO_LOCAL_DATE);
@@ -177,7 +287,7 @@ public class ParkingAccessRestClient implements ParkingAccess {
         }
         LOG.debug("Report Access logs to Commuty for the site {}", parkingSiteId);
         String path = String.format(REPORT_ACCESS_URL, parkingSiteId);
-        return withRetry(() -> httpClient.makePostRequest(path, token, new AccessLogRequest(accessLogs), AccessLogResponse.class).getLogId());
+        return withRetry(REPORT_ACCESS_URL, NOT_IDEMPOTENT, REPORTING, token -> httpClient.makePostRequest(path, token, new AccessLogRequest(accessLogs), AccessLogResponse.class).getLogId());
     }
 
     @Override
@@ -186,7 +296,7 @@ public class ParkingAccessRestClient implements ParkingAccess {
             throw new IllegalArgumentException("UserId cannot be null");
         }
         LOG.debug("Report user {} as missing", user);
-        return withRetry(() -> httpClient.makePostRequest(REPORT_MISSING_IDS_URL, token, new MissingUserIdRequest(user), UserId.class));
+        return withRetry(REPORT_MISSING_IDS_URL, IDEMPOTENT, REPORTING, token -> httpClient.makePostRequest(REPORT_MISSING_IDS_URL, token, new MissingUserIdRequest(user), UserId.class));
     }
 
     @Override
@@ -194,7 +304,7 @@ public class ParkingAccessRestClient implements ParkingAccess {
         validateParkingSiteId(parkingSiteId);
         LOG.debug("Report number of available spots to Commuty for the site {}", parkingSiteId);
         String path = String.format(REPORT_AVAILABLE_SPOTS_COUNT_URL, parkingSiteId);
-        return withRetry(() -> httpClient.makePostRequest(path, token, new CountRequest(count, total), Count.class));
+        return withRetry(REPORT_AVAILABLE_SPOTS_COUNT_URL, IDEMPOTENT, REPORTING, token -> httpClient.makePostRequest(path, token, new CountRequest(count, total), Count.class));
     }
 
     @Override
@@ -205,7 +315,7 @@ public class ParkingAccessRestClient implements ParkingAccess {
 
         LOG.debug("List parking spot for parkingSiteId={}", parkingSiteId);
         String path = String.format(PARKING_SPOTS_RIGHTS_URL, parkingSiteId);
-        return withRetry(() -> httpClient.makeGetRequest(path, token, emptyMap(), ParkingSpotResponse.class).getParkingSpots());
+        return withRetry(PARKING_SPOTS_RIGHTS_URL, IDEMPOTENT, LISTING, token -> httpClient.makeGetRequest(path, token, emptyMap(), ParkingSpotResponse.class).getParkingSpots());
     }
 
     @Override
@@ -215,33 +325,42 @@ public class ParkingAccessRestClient implements ParkingAccess {
         }
 
         LOG.debug("Report Application log to Commuty");
-        return withRetry(() -> httpClient.makePostRequest(APPLICATION_LOGS_URL, token, log, ApplicationLogResponse.class).getLogId());
+        return withRetry(APPLICATION_LOGS_URL, NOT_IDEMPOTENT, REPORTING, token -> httpClient.makePostRequest(APPLICATION_LOGS_URL, token, log, ApplicationLogResponse.class).getLogId());
     }
 
-    private <T> T withRetry(Callable<T> callable) throws HttpClientException, CredentialsException, HttpRequestException {
-        Retry retry = new Retry(configuration.getRetryStrategy().getNumberOfRetries() + 1, configuration.getRetryStrategy().getIntervalInMs());
+    @Override
+    public void close() {
+        if (tokenRenewer != null) {
+            tokenRenewer.close();
+        }
+        bulkExecutor.shutdown();
+    }
+
+    /**
+     * @param priority The priority each attempt waits for in the {@link RequestScheduler}, or <code>null</code> if the caller already holds its place.
+     */
+    private <T> T withRetry(String endpoint, boolean idempotent, RequestScheduler.Priority priority, ApiCall<T> call) throws HttpClientException, CredentialsException, HttpRequestException {
+        EndpointCircuitBreaker circuitBreaker = circuitBreakers.get(endpoint);
+        Retry retry = new Retry(configuration.getRetryStrategy());
+        retryLimiter.onCall();
         while (true) {
             LOG.trace("{} retries left to call api", retry.getCount());
+            String token = tokens.get();
             try {
-                token = token != null ? token : authenticate();
-                return callable.call();
+                token = token != null ? token : refreshToken(null);
+                return scheduled(priority, circuitBreaker, call, token);
             } catch (HttpRequestException exception) {
                 if (exception.isForbidden()) {
                     LOG.trace("Token exception, refreshing token then try again");
-                    token = authenticate();
-                }
-                retry = retry.next();
-                if (retry.isOver()) {
-                    throw exception;
-                } else {
-                    retry.waitInterval();
+                    refreshToken(token);
                 }
+                retry = nextOrThrow(retry, exception, idempotent);
             } catch (CredentialsException exception) {
                 LOG.trace("Invalid username/password");
                 throw exception;
             } catch (HttpClientException exception) {
                 LOG.trace("Issue in the client");
-                throw exception;
+                retry = nextOrThrow(retry, exception, idempotent);
             } catch (RuntimeException exception) {
                 throw exception;
             } catch (Exception exception) {
@@ -250,7 +369,59 @@ public class ParkingAccessRestClient implements ParkingAccess {
         }
     }
 
-    private void validateParkingSiteId(String parkingSiteId) {
+    private <T> T scheduled(RequestScheduler.Priority priority, EndpointCircuitBreaker circuitBreaker, ApiCall<T> call, String token) throws ApiException {
+        if (priority == null) {
+            return circuitBreaker.call(call, token);
+        }
+        acquire(priority);
+        try {
+            return circuitBreaker.call(call, token);
+        } finally {
+            scheduler.release(priority);
+        }
+    }
+
+    private void acquire(RequestScheduler.Priority priority) {
+        try {
+            scheduler.acquire(priority);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to call the api", e);
+        }
+    }
+
+    private <E extends ApiException> Retry nextOrThrow(Retry retry, E exception, boolean idempotent) throws E {
+        Retry next = retry.after(exception, idempotent, retryLimiter);
+        if (next == null) {
+            throw exception;
+        }
+        next.waitInterval();
+        return next;
+    }
+
+    /**
+     * Authenticate once for all the threads that noticed the same stale token.
+     */
+    private String refreshToken(String staleToken) throws CredentialsException, HttpRequestException, HttpClientException {
+        return InFlightCalls.await(tokens.refresh(staleToken, this::authenticateAsFuture));
+    }
+
+    private CompletableFuture<String> authenticateAsFuture() {
+        CompletableFuture<String> authentication = new CompletableFuture<>();
+        try {
+            authentication.complete(authenticate());
+        } catch (ApiException e) {
+            authentication.completeExceptionally(e);
+        }
+        return authentication;
+    }
+
+    @FunctionalInterface
+    interface ApiCall<T> {
+        T call(String token) throws ApiException;
+    }
+
+    static void validateParkingSiteId(String parkingSiteId) {
         if(parkingSiteId == null || parkingSiteId.trim().isEmpty()) {
             throw new IllegalArgumentException("Parking site cannot be null or blank");
         }
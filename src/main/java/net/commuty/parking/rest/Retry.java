@@ -1,5 +1,9 @@
 package net.commuty.parking.rest;
 
+import net.commuty.parking.Configuration;
+import net.commuty.parking.http.ApiException;
+import net.commuty.parking.http.CircuitBreakerOpenException;
+import net.commuty.parking.http.HttpRequestException;
 import org.slf4j.Logger;
 
 import static java.lang.Thread.currentThread;
@@ -9,11 +13,24 @@ import static org.slf4j.LoggerFactory.getLogger;
 class Retry {
     private static final Logger LOG = getLogger(Retry.class);
 
+    /**
+     * If the api asks to wait longer than this, the failure is thrown instead of blocking the caller.
+     */
+    static final long MAX_RETRY_AFTER_IN_MS = 60000;
+
+    private final Configuration.RetryStrategy strategy;
     private final int count;
-    private final int intervalInMs;
+    private final int retries;
+    private final long intervalInMs;
+
+    Retry(Configuration.RetryStrategy strategy) {
+        this(strategy, strategy.getNumberOfRetries() + 1, 0, 0);
+    }
 
-    Retry(int count, int intervalInMs) {
+    private Retry(Configuration.RetryStrategy strategy, int count, int retries, long intervalInMs) {
+        this.strategy = strategy;
         this.count = count;
+        this.retries = retries;
         this.intervalInMs = intervalInMs;
     }
 
@@ -21,7 +38,7 @@ class Retry {
         return count;
     }
 
-    public int getIntervalInMs() {
+    public long getIntervalInMs() {
         return intervalInMs;
     }
 
@@ -29,12 +46,49 @@ class Retry {
         return count <= 0;
     }
 
-    public Retry next() {
+    private Retry next(Long retryAfterInMs) {
         if (isOver()) {
             return this;
-        } else {
-            return new Retry(count - 1, intervalInMs);
         }
+        long interval = strategy.getIntervalInMs(retries + 1);
+        if (retryAfterInMs != null) {
+            interval = Math.max(interval, retryAfterInMs);
+        }
+        return new Retry(strategy, count - 1, retries + 1, interval);
+    }
+
+    /**
+     * <p>The next attempt after a failure, or null if the failure must be thrown to the caller.</p>
+     * <p>An expired token is always attempted again, the other failures only if the {@link Configuration.RetryStrategy} allows it,
+     * and if the budget of the client is not spent. A call rejected by an open circuit breaker is never attempted again.</p>
+     * @param failure the exception thrown by the last attempt.
+     * @param idempotent whether the call can be sent twice without side effects.
+     * @param limiter the retry budget of the client.
+     */
+    Retry after(ApiException failure, boolean idempotent, RetryLimiter limiter) {
+        if (failure instanceof CircuitBreakerOpenException) {
+            LOG.trace("Circuit breaker is open, not retrying");
+            return null;
+        }
+        boolean expiredToken = failure instanceof HttpRequestException && ((HttpRequestException) failure).isForbidden();
+        if (!expiredToken && !strategy.isRetryable(failure, idempotent)) {
+            LOG.trace("Failure is not retryable");
+            return null;
+        }
+        Long retryAfterInMs = failure instanceof HttpRequestException ? ((HttpRequestException) failure).getRetryAfterInMs() : null;
+        if (retryAfterInMs != null && retryAfterInMs > MAX_RETRY_AFTER_IN_MS) {
+            LOG.debug("Api asked to wait {}ms before the next call, giving up", retryAfterInMs);
+            return null;
+        }
+        Retry next = next(retryAfterInMs);
+        if (next.isOver()) {
+            return null;
+        }
+        if (!expiredToken && !limiter.tryAcquire()) {
+            LOG.warn("Retry budget is spent, not retrying the call");
+            return null;
+        }
+        return next;
     }
 
     public void waitInterval() {
@@ -0,0 +1,58 @@
+package net.commuty.parking.rest;
+
+import net.commuty.parking.Configuration;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * <p>Keeps the balance of the {@link Configuration.RetryBudget} of a client.</p>
+ * <p>Each call deposits <code>retryRatio</code>, each retry withdraws 1. The balance also grows by <code>minRetriesPerSecond</code>
+ * every second, and never exceeds {@link Configuration.RetryBudget#MAX_SAVED_SECONDS} seconds of retries.</p>
+ */
+class RetryLimiter {
+
+    private final Configuration.RetryBudget budget;
+    private final double maxBalance;
+    private double balance;
+    private long lastRefillInNanos;
+
+    RetryLimiter(Configuration.RetryBudget budget) {
+        this.budget = budget;
+        this.maxBalance = Math.max(1, budget.getMinRetriesPerSecond()) * (double) Configuration.RetryBudget.MAX_SAVED_SECONDS;
+        this.balance = maxBalance;
+        this.lastRefillInNanos = System.nanoTime();
+    }
+
+    /**
+     * Record a new call (not a retry).
+     */
+    synchronized void onCall() {
+        if (budget.isEnabled()) {
+            refill();
+            balance = Math.min(maxBalance, balance + budget.getRetryRatio());
+        }
+    }
+
+    /**
+     * Withdraw a retry from the budget.
+     * @return <code>false</code> if the budget is spent.
+     */
+    synchronized boolean tryAcquire() {
+        if (!budget.isEnabled()) {
+            return true;
+        }
+        refill();
+        if (balance < 1) {
+            return false;
+        }
+        balance -= 1;
+        return true;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        double seconds = (now - lastRefillInNanos) / (double) SECONDS.toNanos(1);
+        lastRefillInNanos = now;
+        balance = Math.min(maxBalance, balance + seconds * budget.getMinRetriesPerSecond());
+    }
+}
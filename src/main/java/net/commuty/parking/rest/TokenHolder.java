@@ -0,0 +1,96 @@
+package net.commuty.parking.rest;
+
+import org.slf4j.Logger;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * <p>Holds the token of a client and makes sure that concurrent callers never authenticate more than once at the same time.</p>
+ * <p>When several callers notice that the same token is no longer valid, the first one starts an authentication and the others
+ * wait for its result. A caller that notices it after the authentication is done simply gets the new token.</p>
+ */
+class TokenHolder {
+
+    private static final Logger LOG = getLogger(TokenHolder.class);
+
+    private volatile String token;
+    private CompletableFuture<String> authentication;
+    private volatile Consumer<String> listener = newToken -> { };
+
+    /**
+     * Register a callback, called each time the token is replaced by a different one.
+     */
+    void onNewToken(Consumer<String> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * The current token. Null if the client never authenticated.
+     */
+    String get() {
+        return token;
+    }
+
+    /**
+     * Replace the current token, i.e. after an explicit authentication.
+     */
+    void set(String token) {
+        String previous;
+        synchronized (this) {
+            previous = this.token;
+            this.token = token;
+        }
+        if (token != null && !token.equals(previous)) {
+            listener.accept(token);
+        }
+    }
+
+    /**
+     * <p>Get a token that is not the given stale token.</p>
+     * <p>If another caller already replaced the stale token, the current token is returned right away.
+     * Otherwise, the authentication in flight is joined, or started if there is none.</p>
+     * @param staleToken the token that the api rejected (or null if the caller had no token).
+     * @param authenticate starts an authentication and returns the new token.
+     * @return the new token, or a future completed exceptionally with the failure of the authentication.
+     */
+    CompletableFuture<String> refresh(String staleToken, Supplier<CompletableFuture<String>> authenticate) {
+        CompletableFuture<String> pending;
+        synchronized (this) {
+            String current = token;
+            if (current != null && !current.equals(staleToken)) {
+                return CompletableFuture.completedFuture(current);
+            }
+            if (authentication != null) {
+                LOG.trace("Authentication already in flight, waiting for it");
+                return authentication;
+            }
+            pending = new CompletableFuture<>();
+            authentication = pending;
+        }
+        CompletableFuture<String> started;
+        try {
+            started = authenticate.get();
+        } catch (RuntimeException e) {
+            started = new CompletableFuture<>();
+            started.completeExceptionally(e);
+        }
+        started.whenComplete((newToken, error) -> {
+            if (error == null) {
+                set(newToken);
+            }
+            synchronized (this) {
+                authentication = null;
+            }
+            if (error == null) {
+                pending.complete(newToken);
+            } else {
+                pending.completeExceptionally(error);
+            }
+        });
+        return pending;
+    }
+}
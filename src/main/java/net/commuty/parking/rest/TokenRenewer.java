@@ -0,0 +1,148 @@
+package net.commuty.parking.rest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.commuty.parking.Configuration;
+import net.commuty.parking.http.CredentialsException;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * <p>Renews the token of a client in the background, a little before it expires.</p>
+ * <p>Each time the {@link TokenHolder} receives a new token, the next renewal is scheduled. The expiry is read from the
+ * <code>exp</code> claim when the token is a JWT, otherwise the token is considered valid for {@link #DEFAULT_TOKEN_LIFETIME}.</p>
+ * <p>The renewal goes through {@link TokenHolder#refresh(String, Supplier)}, so it never runs together with an authentication
+ * triggered by a rejected call. If it fails, it is attempted again after {@link #RETRY_DELAY}, unless the credentials were
+ * rejected.</p>
+ * <p>A token is never renewed less than <code>minDelayInMs</code> (i.e. {@link #RETRY_DELAY}) after it was received, even if it
+ * expires within the margin (a short lifetime, or the clock of the host ahead of the api): otherwise each new token would be
+ * renewed right away, in a loop.</p>
+ */
+class TokenRenewer {
+
+    private static final Logger LOG = getLogger(TokenRenewer.class);
+
+    static final Duration DEFAULT_TOKEN_LIFETIME = Duration.ofHours(24);
+    static final Duration RETRY_DELAY = Duration.ofMinutes(1);
+
+    private final TokenHolder tokens;
+    private final Supplier<CompletableFuture<String>> authenticate;
+    private final Configuration.TokenRenewal renewal;
+    private final Clock clock;
+    private final ObjectMapper mapper;
+    private final long minDelayInMs;
+    private final ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> next;
+    private boolean closed;
+
+    TokenRenewer(TokenHolder tokens, Supplier<CompletableFuture<String>> authenticate, Configuration.TokenRenewal renewal) {
+        this(tokens, authenticate, renewal, Clock.systemUTC(), RETRY_DELAY.toMillis());
+    }
+
+    TokenRenewer(TokenHolder tokens, Supplier<CompletableFuture<String>> authenticate, Configuration.TokenRenewal renewal, Clock clock, long minDelayInMs) {
+        this.tokens = tokens;
+        this.authenticate = authenticate;
+        this.renewal = renewal;
+        this.clock = clock;
+        this.minDelayInMs = minDelayInMs;
+        this.mapper = JsonMapper.create().getMapper();
+        this.scheduler = newSingleThreadScheduledExecutor(new DaemonThreadFactory("parking-access-token"));
+        tokens.onNewToken(this::scheduleRenewal);
+    }
+
+    /**
+     * Compute when the given token must be renewed.
+     */
+    long delayBeforeRenewalInMs(String token) {
+        Instant now = clock.instant();
+        Instant expiry = readExpiry(token);
+        if (expiry == null) {
+            expiry = now.plus(DEFAULT_TOKEN_LIFETIME);
+        }
+        long jitter = renewal.getJitterInMs() > 0 ? ThreadLocalRandom.current().nextLong(renewal.getJitterInMs() + 1L) : 0;
+        long delay = Duration.between(now, expiry).toMillis() - renewal.getRenewBeforeExpiryInMs() - jitter;
+        return Math.max(minDelayInMs, delay);
+    }
+
+    /**
+     * @return <code>true</code> if a renewal is waiting to run.
+     */
+    synchronized boolean isRenewalScheduled() {
+        return next != null && !next.isDone();
+    }
+
+    /**
+     * Cancel the next renewal and stop the background thread.
+     */
+    synchronized void close() {
+        closed = true;
+        if (next != null) {
+            next.cancel(false);
+        }
+        scheduler.shutdownNow();
+    }
+
+    private synchronized void scheduleRenewal(String token) {
+        schedule(token, delayBeforeRenewalInMs(token));
+    }
+
+    private synchronized void schedule(String token, long delayInMs) {
+        if (closed) {
+            return;
+        }
+        if (next != null) {
+            next.cancel(false);
+        }
+        LOG.debug("Token will be renewed in {}ms", delayInMs);
+        next = scheduler.schedule(() -> renew(token), delayInMs, MILLISECONDS);
+    }
+
+    private void renew(String token) {
+        LOG.debug("Renewing the token before it expires");
+        tokens.refresh(token, authenticate).whenComplete((newToken, error) -> {
+            if (error == null) {
+                return;
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause instanceof CredentialsException) {
+                // trying again cannot help, the next call authenticates (and fails) by itself
+                LOG.warn("Unable to renew the token, the credentials were rejected");
+                return;
+            }
+            LOG.warn("Unable to renew the token, trying again in {}", RETRY_DELAY, error);
+            if (token.equals(tokens.get())) {
+                schedule(token, RETRY_DELAY.toMillis());
+            }
+        });
+    }
+
+    private Instant readExpiry(String token) {
+        String[] parts = token.split("\\.");
+        if (parts.length != 3) {
+            return null;
+        }
+        try {
+            JsonNode claims = mapper.readTree(Base64.getUrlDecoder().decode(parts[1]));
+            JsonNode exp = claims.get("exp");
+            return exp != null && exp.canConvertToLong() ? Instant.ofEpochSecond(exp.asLong()) : null;
+        } catch (IOException | IllegalArgumentException e) {
+            LOG.trace("Token is not a readable JWT, using the default lifetime");
+            return null;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package net.commuty.parking.rest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import net.commuty.parking.WebhookListener;
+import net.commuty.parking.http.Mapper;
+import net.commuty.parking.model.WebhookMessage;
+import net.commuty.parking.model.WebhookMessageErrorResponse;
+import net.commuty.parking.model.WebhookMessageOperation;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.security.MessageDigest;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static net.commuty.parking.model.WebhookMessageOperation.CREATE;
+import static net.commuty.parking.model.WebhookMessageOperation.UNKNOWN;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * <p>Receives the {@link WebhookMessage}s that Commuty pushes when an access right is created or removed, and hands them to a
+ * {@link WebhookListener}.</p>
+ * <p>The receiver is a small HTTP server built on the JDK (<code>com.sun.net.httpserver</code>), that accepts <code>POST</code>
+ * requests on one path. Each message is parsed, then dispatched according to its operation:</p>
+ * <ul>
+ *     <li>once the listener returns, the receiver answers <code>200</code>;</li>
+ *     <li>a message that cannot be parsed, or with an unknown operation, is answered with <code>400</code>;</li>
+ *     <li>when the listener throws an exception, the receiver answers <code>500</code>, so that the message is sent again.</li>
+ * </ul>
+ * <p>The errors are described by a {@link WebhookMessageErrorResponse}. The detail of a failure of the listener is logged, it is
+ * never sent back to the caller.</p>
+ * <p><b>Anyone who can reach the address can post messages, and make the listener grant access rights.</b> Listen on a private
+ * network only, or behind a proxy that authenticates the caller, or give a shared secret to
+ * {@link #WebhookReceiver(InetSocketAddress, String, WebhookListener, Executor, String, String)}: the receiver then answers
+ * <code>401</code> to the requests that do not hold this secret in the given header.</p>
+ * <p>The requests are handled by virtual threads when the JVM supports them (Java 21 and above), by a pool of
+ * {@link #DEFAULT_POOL_SIZE} threads otherwise, or by the given executor.</p>
+ * <pre>
+ * WebhookReceiver receiver = new WebhookReceiver(new InetSocketAddress(8080), "/commuty/webhook", listener);
+ * receiver.start();
+ * </pre>
+ */
+public class WebhookReceiver implements AutoCloseable {
+
+    private static final Logger LOG = getLogger(WebhookReceiver.class);
+
+    public static final int DEFAULT_POOL_SIZE = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    static final String INVALID_MESSAGE = "invalidMessage";
+    static final String UNKNOWN_OPERATION = "unknownOperation";
+    static final String METHOD_NOT_ALLOWED = "methodNotAllowed";
+    static final String PROCESSING_FAILED = "processingFailed";
+    static final String UNAUTHORIZED = "unauthorized";
+
+    private final HttpServer server;
+    private final WebhookListener listener;
+    private final String secretHeader;
+    private final byte[] secret;
+    private final Mapper mapper = JsonMapper.create();
+    private final ExecutorService ownExecutor;
+    private final LongAdder receivedCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+
+    /**
+     * @param address The address to listen to. Use a port <code>0</code> to pick a free port (see {@link #getAddress()}).
+     * @param path The path the messages are posted to, i.e. <code>/commuty/webhook</code>.
+     * @param listener The listener notified of each message.
+     * @throws IOException The address cannot be bound.
+     */
+    public WebhookReceiver(InetSocketAddress address, String path, WebhookListener listener) throws IOException {
+        this(address, path, listener, null);
+    }
+
+    /**
+     * @param address The address to listen to. Use a port <code>0</code> to pick a free port (see {@link #getAddress()}).
+     * @param path The path the messages are posted to, i.e. <code>/commuty/webhook</code>.
+     * @param listener The listener notified of each message.
+     * @param executor The executor that handles the requests. It is not shut down by {@link #close()}.
+     * @throws IOException The address cannot be bound.
+     */
+    public WebhookReceiver(InetSocketAddress address, String path, WebhookListener listener, Executor executor) throws IOException {
+        this(address, path, listener, executor, null, null);
+    }
+
+    /**
+     * @param address The address to listen to. Use a port <code>0</code> to pick a free port (see {@link #getAddress()}).
+     * @param path The path the messages are posted to, i.e. <code>/commuty/webhook</code>.
+     * @param listener The listener notified of each message.
+     * @param executor The executor that handles the requests, or <code>null</code> for the default one. It is not shut down by {@link #close()}.
+     * @param secretHeader The header that holds the shared secret, i.e. <code>X-Webhook-Secret</code>.
+     * @param secret The shared secret the requests must hold. The requests without it are answered with <code>401</code>.
+     * @throws IOException The address cannot be bound.
+     */
+    public WebhookReceiver(InetSocketAddress address, String path, WebhookListener listener, Executor executor, String secretHeader, String secret) throws IOException {
+        if (address == null || path == null || listener == null) {
+            throw new IllegalArgumentException("The address, the path and the listener cannot be null");
+        }
+        if ((secretHeader == null) != (secret == null) || (secret != null && (secretHeader.isEmpty() || secret.isEmpty()))) {
+            throw new IllegalArgumentException("You must provide both a secret header and a secret, or none");
+        }
+        this.listener = listener;
+        this.secretHeader = secretHeader;
+        this.secret = secret != null ? secret.getBytes(UTF_8) : null;
+        this.ownExecutor = executor == null ? defaultExecutor() : null;
+        this.server = HttpServer.create(address, 0);
+        this.server.createContext(path, this::handle);
+        this.server.setExecutor(executor != null ? executor : ownExecutor);
+    }
+
+    /**
+     * <p>Start accepting messages.</p>
+     */
+    public void start() {
+        server.start();
+        LOG.info("Receiving webhook messages on {}", server.getAddress());
+    }
+
+    /**
+     * <p>Stop accepting messages. The messages being handled are given one second to complete.</p>
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        if (ownExecutor != null) {
+            ownExecutor.shutdown();
+        }
+    }
+
+    /**
+     * The address the receiver listens to.
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * The number of messages handed to the listener successfully.
+     */
+    public long getReceivedCount() {
+        return receivedCount.sum();
+    }
+
+    /**
+     * The number of requests answered with <code>400</code>, <code>401</code> or <code>405</code>.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    /**
+     * The number of messages the listener failed to handle.
+     */
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                reject(exchange, 405, METHOD_NOT_ALLOWED, "Webhook messages must be sent with POST");
+                return;
+            }
+            if (!isAuthorized(exchange)) {
+                LOG.warn("Rejected a webhook message from {} without the expected secret", exchange.getRemoteAddress());
+                reject(exchange, 401, UNAUTHORIZED, "The request does not hold the expected secret");
+                return;
+            }
+            WebhookMessage message;
+            try (InputStream body = exchange.getRequestBody()) {
+                message = mapper.read(body, WebhookMessage.class);
+            } catch (IOException e) {
+                LOG.debug("Unable to parse a webhook message", e);
+                reject(exchange, 400, INVALID_MESSAGE, "The body is not a valid webhook message");
+                return;
+            }
+            if (message == null || message.getAccessRight() == null) {
+                reject(exchange, 400, INVALID_MESSAGE, "The message does not hold any access right");
+                return;
+            }
+            WebhookMessageOperation operation = message.getOperation() != null ? message.getOperation() : UNKNOWN;
+            if (operation == UNKNOWN) {
+                reject(exchange, 400, UNKNOWN_OPERATION, "Unknown operation for message " + message.getId());
+                return;
+            }
+            try {
+                if (operation == CREATE) {
+                    listener.onCreate(message);
+                } else {
+                    listener.onRemove(message);
+                }
+            } catch (Exception e) {
+                failedCount.increment();
+                LOG.warn("Unable to handle the webhook message {}", message.getId(), e);
+                respond(exchange, 500, new WebhookMessageErrorResponse(PROCESSING_FAILED, "Unable to handle the message " + message.getId()));
+                return;
+            }
+            receivedCount.increment();
+            exchange.sendResponseHeaders(200, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * The secret is compared in constant time, so that the time to answer does not tell how much of it was guessed.
+     */
+    private boolean isAuthorized(HttpExchange exchange) {
+        if (secret == null) {
+            return true;
+        }
+        String given = exchange.getRequestHeaders().getFirst(secretHeader);
+        return given != null && MessageDigest.isEqual(secret, given.getBytes(UTF_8));
+    }
+
+    private void reject(HttpExchange exchange, int code, String reason, String message) throws IOException {
+        rejectedCount.increment();
+        respond(exchange, code, new WebhookMessageErrorResponse(reason, message));
+    }
+
+    private void respond(HttpExchange exchange, int code, WebhookMessageErrorResponse error) throws IOException {
+        byte[] body = mapper.write(error).getBytes(UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(code, body.length);
+        try (OutputStream stream = exchange.getResponseBody()) {
+            stream.write(body);
+        }
+    }
+
+    private static ExecutorService defaultExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.debug("Virtual threads are not available, using a pool of {} threads", DEFAULT_POOL_SIZE);
+            return newFixedThreadPool(DEFAULT_POOL_SIZE, new DaemonThreadFactory("parking-access-webhook"));
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package net.commuty.parking.http;
+
+import java.net.Proxy;
+
+/**
+ * <p>Creates the {@link HttpTransport} implementations bundled with the client.</p>
+ * <p>This is the Java 11 version of the factory, it is able to create a transport built on <code>java.net.http.HttpClient</code>.</p>
+ */
+public final class HttpTransportFactory {
+
+    private HttpTransportFactory() {
+    }
+
+    /**
+     * Indicates whether {@link #httpClient(Proxy, int, int, int, int)} is supported by the running JVM.
+     */
+    public static boolean isHttpClientAvailable() {
+        return true;
+    }
+
+    /**
+     * Creates a transport built on {@link java.net.HttpURLConnection}.
+     * @param proxy a proxy to use (can be null).
+     * @param connectionTimeoutInMs the connection timeout (0 means infinite).
+     * @param requestTimeoutInMs the read timeout of GET requests (0 means infinite).
+     * @return the transport.
+     */
+    public static HttpTransport urlConnection(Proxy proxy, int connectionTimeoutInMs, int requestTimeoutInMs) {
+        return new UrlConnectionTransport(proxy, connectionTimeoutInMs, requestTimeoutInMs);
+    }
+
+    /**
+     * Creates a transport built on <code>java.net.http.HttpClient</code> (HTTP/2 with a fallback on HTTP/1.1).
+     * @param proxy a proxy to use (can be null).
+     * @param connectionTimeoutInMs the connection timeout (0 means infinite).
+     * @param requestTimeoutInMs the read timeout of GET requests (0 means infinite).
+     * @param connectionPoolSize the maximum number of idle HTTP/1.1 connections kept in the pool (0 means unlimited). JVM-wide and
+     *                           best-effort, see {@link net.commuty.parking.Configuration.Builder#withHttpClientTransport(int, int)}.
+     * @param keepAliveInMs how long an idle connection stays in the pool. JVM-wide and best-effort, like <code>connectionPoolSize</code>.
+     * @return the transport.
+     */
+    public static HttpTransport httpClient(Proxy proxy, int connectionTimeoutInMs, int requestTimeoutInMs, int connectionPoolSize, int keepAliveInMs) {
+        return new JdkHttpTransport(proxy, connectionTimeoutInMs, requestTimeoutInMs, connectionPoolSize, keepAliveInMs);
+    }
+}
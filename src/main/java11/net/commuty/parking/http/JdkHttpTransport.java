@@ -0,0 +1,191 @@
+package net.commuty.parking.http;
+
+import org.slf4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import static java.net.http.HttpClient.Version.HTTP_2;
+import static java.net.http.HttpRequest.BodyPublishers.noBody;
+import static java.net.http.HttpResponse.BodyHandlers.ofByteArray;
+import static java.net.http.HttpResponse.BodyHandlers.ofInputStream;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * <p>A {@link HttpTransport} built on <code>java.net.http.HttpClient</code>.</p>
+ * <p>Requests are sent over HTTP/2 when the api supports it (every concurrent request is then multiplexed on one connection),
+ * otherwise over pooled HTTP/1.1 connections.</p>
+ * <p>The JDK reads the pool settings once per JVM (<code>jdk.httpclient.connectionPoolSize</code> and <code>jdk.httpclient.keepalive.timeout</code>),
+ * when its connection pool is first used. They are process-wide and best-effort: the properties are only set here if they are not set
+ * yet, and they have no effect if any <code>HttpClient</code> already ran in the JVM.</p>
+ */
+class JdkHttpTransport implements HttpTransport {
+
+    private static final Logger LOG = getLogger(JdkHttpTransport.class);
+
+    private static final String CONNECTION_POOL_SIZE_PROPERTY = "jdk.httpclient.connectionPoolSize";
+    private static final String KEEP_ALIVE_PROPERTY = "jdk.httpclient.keepalive.timeout";
+
+    private final HttpClient client;
+    private final int requestTimeoutInMs;
+
+    JdkHttpTransport(Proxy proxy, int connectionTimeoutInMs, int requestTimeoutInMs, int connectionPoolSize, int keepAliveInMs) {
+        configurePool(connectionPoolSize, keepAliveInMs);
+        HttpClient.Builder builder = HttpClient.newBuilder().version(HTTP_2);
+        if (connectionTimeoutInMs > 0) {
+            builder.connectTimeout(Duration.ofMillis(connectionTimeoutInMs));
+        }
+        if (proxy != null && proxy.type() != Proxy.Type.DIRECT) {
+            if (proxy.type() != Proxy.Type.HTTP || !(proxy.address() instanceof InetSocketAddress)) {
+                throw new IllegalArgumentException("java.net.http.HttpClient only supports HTTP proxies");
+            }
+            builder.proxy(ProxySelector.of((InetSocketAddress) proxy.address()));
+        }
+        this.client = builder.build();
+        this.requestTimeoutInMs = requestTimeoutInMs;
+    }
+
+    private static synchronized void configurePool(int connectionPoolSize, int keepAliveInMs) {
+        setIfAbsent(CONNECTION_POOL_SIZE_PROPERTY, String.valueOf(connectionPoolSize));
+        setIfAbsent(KEEP_ALIVE_PROPERTY, String.valueOf(Math.max(1, keepAliveInMs / 1000)));
+        LOG.debug("HttpClient pool size is {}, keep alive is {}s (JVM-wide, unless an HttpClient already ran)",
+                System.getProperty(CONNECTION_POOL_SIZE_PROPERTY), System.getProperty(KEEP_ALIVE_PROPERTY));
+    }
+
+    private static void setIfAbsent(String property, String value) {
+        String current = System.getProperty(property);
+        if (current == null) {
+            System.setProperty(property, value);
+        } else if (!current.equals(value)) {
+            LOG.warn("{} is already set to {} for the whole JVM, the value {} of this client is ignored", property, current, value);
+        }
+    }
+
+    @Override
+    public TransportResponse send(TransportRequest request) throws IOException {
+        try {
+            HttpResponse<InputStream> response = client.send(toHttpRequest(request), ofInputStream());
+            return new JdkHttpResponse(response.statusCode(), response.headers(), response.body());
+        } catch (HttpConnectTimeoutException e) {
+            throw toConnectException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the response");
+        }
+    }
+
+    /**
+     * The response is fully received by the selector thread of the <code>HttpClient</code>, so no thread waits on the network.
+     * The executor is not used.
+     */
+    @Override
+    public CompletableFuture<TransportResponse> sendAsync(TransportRequest request, Executor executor) {
+        try {
+            return client.sendAsync(toHttpRequest(request), ofByteArray())
+                    .<TransportResponse>thenApply(response -> new JdkHttpResponse(response.statusCode(), response.headers(), new ByteArrayInputStream(response.body())))
+                    .exceptionally(error -> {
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                        throw new CompletionException(cause instanceof HttpConnectTimeoutException ? toConnectException((HttpConnectTimeoutException) cause) : cause);
+                    });
+        } catch (IOException e) {
+            CompletableFuture<TransportResponse> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    /**
+     * A connection timeout means that the request was never sent, report it like the other connection failures.
+     */
+    private static ConnectException toConnectException(HttpConnectTimeoutException e) {
+        ConnectException exception = new ConnectException(e.getMessage());
+        exception.initCause(e);
+        return exception;
+    }
+
+    private HttpRequest toHttpRequest(TransportRequest request) throws IOException {
+        try {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(request.getUrl().toURI())
+                    .method(request.getMethod(), request.hasBody() ? serialize(request.getBody()) : noBody());
+            request.getHeaders().forEach(builder::header);
+            if (TransportRequest.GET.equals(request.getMethod()) && requestTimeoutInMs > 0) {
+                builder.timeout(Duration.ofMillis(requestTimeoutInMs));
+            }
+            return builder.build();
+        } catch (URISyntaxException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * The <code>HttpClient</code> pulls the payload from a publisher instead of letting us write it, so the payload is
+     * serialized once into a buffer that is published as is, without building a String nor copying the bytes again.
+     */
+    private static HttpRequest.BodyPublisher serialize(TransportRequest.Body body) throws IOException {
+        PayloadBuffer buffer = new PayloadBuffer();
+        body.writeTo(buffer);
+        return buffer.toPublisher();
+    }
+
+    private static class PayloadBuffer extends ByteArrayOutputStream {
+
+        private PayloadBuffer() {
+            super(8192);
+        }
+
+        private HttpRequest.BodyPublisher toPublisher() {
+            return BodyPublishers.ofByteArray(buf, 0, count);
+        }
+    }
+
+    private static class JdkHttpResponse implements TransportResponse {
+
+        private final int statusCode;
+        private final HttpHeaders headers;
+        private final InputStream body;
+
+        private JdkHttpResponse(int statusCode, HttpHeaders headers, InputStream body) {
+            this.statusCode = statusCode;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        @Override
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return headers.firstValue(name).orElse(null);
+        }
+
+        @Override
+        public InputStream getBody() {
+            return body;
+        }
+
+        @Override
+        public void close() throws IOException {
+            body.close();
+        }
+    }
+}
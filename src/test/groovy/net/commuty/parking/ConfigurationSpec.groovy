@@ -1,5 +1,7 @@
 package net.commuty.parking
 
+import net.commuty.parking.http.HttpClientException
+import net.commuty.parking.http.HttpRequestException
 import spock.lang.Shared
 import spock.lang.Specification
 
@@ -183,4 +185,326 @@ class ConfigurationSpec extends Specification {
         configuration.password == password
         configuration.host.toString() == host
     }
+
+    def """
+        build()
+        withHttpClientTransport not called
+        uses the url connection transport
+        """() {
+        when:
+        def configuration = Configuration.Builder.create().withCredentials("toto", "tutu").build()
+
+        then:
+        configuration.transport.type == Configuration.Transport.Type.URL_CONNECTION
+    }
+
+    def """
+        withHttpClientTransport(valid pool size, valid keep alive)
+        is valid
+        """() {
+        when:
+        def configuration = Configuration.Builder.create()
+                .withCredentials("toto", "tutu")
+                .withHttpClientTransport(20, 60000)
+                .build()
+
+        then:
+        configuration.transport.type == Configuration.Transport.Type.HTTP_CLIENT
+        configuration.transport.connectionPoolSize == 20
+        configuration.transport.keepAliveInMs == 60000
+    }
+
+    def """
+        withHttpClientTransport(invalid pool size, invalid keep alive)
+        throws an exception
+        """() {
+        when:
+        Configuration.Builder.create().withHttpClientTransport(connectionPoolSize, keepAliveInMs)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        connectionPoolSize | keepAliveInMs
+        -1                 | 1000
+        10                 | -1
+    }
+
+    def """
+        build()
+        withTokenRenewal not called
+        does not renew the token
+        """() {
+        when:
+        def configuration = Configuration.Builder.create().withCredentials("toto", "tutu").build()
+
+        then:
+        !configuration.tokenRenewal.enabled
+    }
+
+    def """
+        withTokenRenewal(invalid margin, invalid jitter)
+        throws an exception
+        """() {
+        when:
+        Configuration.Builder.create().withTokenRenewal(renewBeforeExpiryInMs, jitterInMs)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        renewBeforeExpiryInMs | jitterInMs
+        -1                    | 1000
+        1000                  | -1
+    }
+
+    def """
+        build()
+        withCompression not called
+        does not compress
+        """() {
+        when:
+        def configuration = Configuration.Builder.create().withCredentials("toto", "tutu").build()
+
+        then:
+        !configuration.compression.enabled
+    }
+
+    def """
+        withCompression(valid threshold)
+        is valid
+        """() {
+        when:
+        def configuration = Configuration.Builder.create()
+                .withCredentials("toto", "tutu")
+                .withCompression(1024)
+                .build()
+
+        then:
+        configuration.compression.enabled
+        configuration.compression.minRequestSizeInBytes == 1024
+    }
+
+    def """
+        withCompression(invalid threshold)
+        throws an exception
+        """() {
+        when:
+        Configuration.Builder.create().withCompression(-1)
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    def """
+        build()
+        withExponentialBackoff not called
+        waits a fixed interval
+        """() {
+        when:
+        def configuration = Configuration.Builder.create().withCredentials("toto", "tutu").build()
+
+        then:
+        configuration.retryStrategy.backoff == Configuration.RetryStrategy.Backoff.FIXED
+        (1..5).every { configuration.retryStrategy.getIntervalInMs(it) == 1000 }
+        configuration.retryBudget.enabled
+    }
+
+    def """
+        withExponentialBackoff(valid retries, valid intervals)
+        waits a random interval that doubles up to the max
+        """() {
+        when:
+        def strategy = Configuration.Builder.create()
+                .withCredentials("toto", "tutu")
+                .withExponentialBackoff(10, 100, 1000)
+                .build()
+                .retryStrategy
+
+        then:
+        strategy.backoff == Configuration.RetryStrategy.Backoff.EXPONENTIAL
+        (1..10).every { retry ->
+            def ceiling = Math.min(100L << (retry - 1), 1000L)
+            (1..50).collect { strategy.getIntervalInMs(retry) }.every { it >= 0 && it <= ceiling }
+        }
+    }
+
+    def """
+        withExponentialBackoff(invalid retries, invalid intervals)
+        throws an exception
+        """() {
+        when:
+        Configuration.Builder.create().withExponentialBackoff(numberOfRetries, initialIntervalInMs, maxIntervalInMs)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        numberOfRetries | initialIntervalInMs | maxIntervalInMs
+        -1              | 100                 | 1000
+        5               | -1                  | 1000
+        5               | 1000                | 100
+    }
+
+    def """
+        RetryStrategy.isRetryable(http status)
+        retries the server errors and the throttling only
+        """() {
+        when:
+        def retryable = Configuration.RetryStrategy.DEFAULT.isRetryable(new HttpRequestException(status, null), true)
+
+        then:
+        retryable == expected
+
+        where:
+        status | expected
+        400    | false
+        401    | false
+        404    | false
+        408    | true
+        429    | true
+        500    | true
+        502    | true
+        503    | true
+    }
+
+    def """
+        RetryStrategy.isRetryable(network error)
+        retries the calls that cannot be duplicated only if the query did not reach the api
+        """() {
+        when:
+        def retryable = Configuration.RetryStrategy.DEFAULT.isRetryable(new HttpClientException(cause), idempotent)
+
+        then:
+        retryable == expected
+
+        where:
+        cause                              | idempotent | expected
+        new ConnectException()             | false      | true
+        new UnknownHostException()         | false      | true
+        new SocketTimeoutException()       | false      | false
+        new SocketTimeoutException()       | true       | true
+        new SocketException("reset")       | true       | true
+    }
+
+    def """
+        withRetryBudget(invalid ratio, invalid minimum)
+        throws an exception
+        """() {
+        when:
+        Configuration.Builder.create().withRetryBudget(retryRatio, minRetriesPerSecond)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        retryRatio | minRetriesPerSecond
+        -0.1       | 10
+        0.1        | -1
+    }
+
+    def """
+        withoutRetryBudget()
+        disables the budget
+        """() {
+        when:
+        def configuration = Configuration.Builder.create()
+                .withCredentials("toto", "tutu")
+                .withoutRetryBudget()
+                .build()
+
+        then:
+        !configuration.retryBudget.enabled
+    }
+
+    def """
+        build()
+        withCircuitBreaker not called
+        does not use a circuit breaker
+        """() {
+        when:
+        def configuration = Configuration.Builder.create().withCredentials("toto", "tutu").build()
+
+        then:
+        !configuration.circuitBreaker.enabled
+        configuration.circuitBreakerListener != null
+    }
+
+    def """
+        withCircuitBreaker(invalid thresholds, invalid window, invalid duration)
+        throws an exception
+        """() {
+        when:
+        Configuration.Builder.create().withCircuitBreaker(failureRate, slowCallRate, slowCallDurationInMs, windowSize, openDurationInMs)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        failureRate | slowCallRate | slowCallDurationInMs | windowSize | openDurationInMs
+        0           | 80           | 2000                 | 20         | 30000
+        101         | 80           | 2000                 | 20         | 30000
+        50          | 0            | 2000                 | 20         | 30000
+        50          | 80           | -1                   | 20         | 30000
+        50          | 80           | 2000                 | 0          | 30000
+        50          | 80           | 2000                 | 20         | -1
+    }
+
+    def """
+        withCircuitBreakerListener(null listener)
+        throws an exception
+        """() {
+        when:
+        Configuration.Builder.create().withCircuitBreakerListener(null)
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    def """
+        withVerificationParallelism(not strictly positive)
+        throws an exception
+        """() {
+        when:
+        Configuration.Builder.create().withVerificationParallelism(parallelism)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        parallelism << [0, -1]
+    }
+
+    def """
+        create a default configuration
+        verifies 8 users at the same time
+        """() {
+        when:
+        def configuration = Configuration.Builder.create().withCredentials("toto", "tutu").build()
+
+        then:
+        configuration.verificationParallelism == 8
+    }
+
+    def """
+        withRequestScheduler(null)
+        throws an exception
+        """() {
+        when:
+        Configuration.Builder.create().withRequestScheduler(null)
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    def """
+        create a default configuration
+        never makes a call wait
+        """() {
+        when:
+        def configuration = Configuration.Builder.create().withCredentials("toto", "tutu").build()
+
+        then:
+        configuration.requestScheduler == RequestScheduler.DISABLED
+    }
 }
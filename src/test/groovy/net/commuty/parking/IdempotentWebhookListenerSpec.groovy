@@ -0,0 +1,161 @@
+package net.commuty.parking
+
+import net.commuty.parking.model.AccessRight
+import net.commuty.parking.model.WebhookMessage
+import spock.lang.Specification
+
+import java.time.OffsetDateTime
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS
+import static net.commuty.parking.model.AccessRightAttributeName.ID
+import static net.commuty.parking.model.UserId.fromBadgeNumber
+import static net.commuty.parking.model.WebhookMessageOperation.CREATE
+import static net.commuty.parking.model.WebhookMessageOperation.REMOVE
+
+class IdempotentWebhookListenerSpec extends Specification {
+
+    long now = 0
+    WebhookListener delegate = Mock()
+    IdempotentWebhookListener listener = new IdempotentWebhookListener(delegate, 100, 60_000, { now })
+
+    def message(UUID id, operation) {
+        def right = new AccessRight([fromBadgeNumber("1234")], "a-parking-site", OffsetDateTime.parse("2025-06-01T00:00:00Z"),
+                OffsetDateTime.parse("2025-06-02T00:00:00Z"), true, [(ID): id.toString()])
+        return new WebhookMessage(id, right, operation)
+    }
+
+    def """
+        a message sent twice
+        is handled once
+        """() {
+        given:
+        def id = UUID.randomUUID()
+
+        when:
+        listener.onCreate(message(id, CREATE))
+        listener.onCreate(message(id, CREATE))
+        listener.onRemove(message(id, REMOVE))
+        listener.onRemove(message(id, REMOVE))
+
+        then:
+        1 * delegate.onCreate(_)
+        1 * delegate.onRemove(_)
+        listener.processedCount == 2
+        listener.duplicateCount == 2
+    }
+
+    def """
+        a creation received after the removal of the same right
+        is dropped
+        """() {
+        given:
+        def id = UUID.randomUUID()
+
+        when:
+        listener.onRemove(message(id, REMOVE))
+        listener.onCreate(message(id, CREATE))
+
+        then:
+        1 * delegate.onRemove(_)
+        0 * delegate.onCreate(_)
+        listener.reorderedCount == 1
+    }
+
+    def """
+        a message the listener failed to handle
+        is handled when it is sent again
+        """() {
+        given:
+        def id = UUID.randomUUID()
+
+        when:
+        listener.onCreate(message(id, CREATE))
+
+        then:
+        1 * delegate.onCreate(_) >> { throw new IllegalStateException("database unavailable") }
+        thrown(IllegalStateException)
+
+        when:
+        listener.onCreate(message(id, CREATE))
+
+        then:
+        1 * delegate.onCreate(_)
+        listener.duplicateCount == 0
+    }
+
+    def """
+        a message sent again after the window, or once the right was forgotten
+        is handled again
+        """() {
+        given:
+        def id = UUID.randomUUID()
+        def small = new IdempotentWebhookListener(delegate, 2, 60_000, { now })
+
+        when:
+        listener.onCreate(message(id, CREATE))
+        now += MILLISECONDS.toNanos(60_000)
+        listener.onCreate(message(id, CREATE))
+
+        small.onCreate(message(id, CREATE))
+        small.onCreate(message(UUID.randomUUID(), CREATE))
+        small.onCreate(message(UUID.randomUUID(), CREATE))
+        small.onCreate(message(id, CREATE))
+
+        then:
+        6 * delegate.onCreate(_)
+    }
+
+    def """
+        messages of the same access right
+        are handed to the listener one at a time, while other rights are handled in parallel
+        """() {
+        given:
+        def concurrentForSameRight = new AtomicInteger()
+        def maxForSameRight = new AtomicInteger()
+        def concurrent = new AtomicInteger()
+        def maxConcurrent = new AtomicInteger()
+        def same = UUID.randomUUID()
+        def slow = new WebhookListener() {
+            void onCreate(WebhookMessage message) {
+                def forSameRight = message.id == same ? concurrentForSameRight.incrementAndGet() : 0
+                maxForSameRight.accumulateAndGet(forSameRight, Math::max)
+                maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max)
+                Thread.sleep(50)
+                concurrent.decrementAndGet()
+                if (message.id == same) {
+                    concurrentForSameRight.decrementAndGet()
+                }
+            }
+
+            void onRemove(WebhookMessage message) {
+                onCreate(message)
+            }
+        }
+        def ordered = new IdempotentWebhookListener(slow, 100, 60_000)
+        def pool = Executors.newFixedThreadPool(8)
+        def start = new CountDownLatch(1)
+
+        when:
+        4.times {
+            pool.submit { start.await(); ordered.onCreate(message(same, CREATE)) }
+            pool.submit { start.await(); ordered.onRemove(message(same, REMOVE)) }
+        }
+        4.times {
+            pool.submit { start.await(); ordered.onCreate(message(UUID.randomUUID(), CREATE)) }
+        }
+        start.countDown()
+        pool.shutdown()
+        pool.awaitTermination(10, TimeUnit.SECONDS)
+
+        then:
+        maxForSameRight.get() == 1
+        maxConcurrent.get() > 1
+        // the removal may arrive first, then the creations of the same right are all dropped
+        ordered.processedCount in [5L, 6L]
+        ordered.processedCount + ordered.duplicateCount + ordered.reorderedCount == 12
+    }
+}
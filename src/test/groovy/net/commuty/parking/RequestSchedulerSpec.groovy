@@ -0,0 +1,203 @@
+package net.commuty.parking
+
+import spock.lang.Specification
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+
+import static java.util.concurrent.TimeUnit.SECONDS
+import static net.commuty.parking.RequestScheduler.Priority.INTERACTIVE
+import static net.commuty.parking.RequestScheduler.Priority.LISTING
+import static net.commuty.parking.RequestScheduler.Priority.REPORTING
+
+class RequestSchedulerSpec extends Specification {
+
+    def admitted = new CopyOnWriteArrayList<String>()
+
+    def queue(RequestScheduler scheduler, RequestScheduler.Priority priority, String name) {
+        def queued = scheduler.getStats(priority).queuedCount
+        def thread = Thread.start {
+            scheduler.acquire(priority)
+            admitted << name
+        }
+        // wait until the thread is queued, so that the threads are queued in the order they are started
+        while (scheduler.getStats(priority).queuedCount == queued && thread.alive) {
+            Thread.sleep(1)
+        }
+        return thread
+    }
+
+    def """
+        acquire()
+        under the limits
+        does not wait
+        """() {
+        given:
+        def scheduler = new RequestScheduler(3, 3, 1, 1)
+
+        when:
+        scheduler.acquire(INTERACTIVE)
+        scheduler.acquire(REPORTING)
+        scheduler.acquire(LISTING)
+
+        then:
+        with(scheduler.getStats(INTERACTIVE)) {
+            callCount == 1
+            runningCount == 1
+            queuedCount == 0
+        }
+        scheduler.getStats(REPORTING).runningCount == 1
+        scheduler.getStats(LISTING).runningCount == 1
+    }
+
+    def """
+        acquire()
+        over the limit of its priority
+        waits for a call of this priority to end, even if the client has room
+        """() {
+        given:
+        def scheduler = new RequestScheduler(4, 4, 1, 1)
+        scheduler.acquire(LISTING)
+
+        when:
+        def waiting = queue(scheduler, LISTING, "listing")
+        scheduler.acquire(INTERACTIVE)
+
+        then:
+        admitted.empty
+        scheduler.getStats(LISTING).queuedCount == 1
+
+        when:
+        scheduler.release(LISTING)
+        waiting.join(SECONDS.toMillis(5))
+
+        then:
+        admitted == ["listing"]
+        with(scheduler.getStats(LISTING)) {
+            callCount == 2
+            runningCount == 1
+            queuedCount == 0
+        }
+    }
+
+    def """
+        release()
+        with calls of every priority waiting
+        lets the interactive calls through first, then in the order they arrived
+        """() {
+        given:
+        def scheduler = new RequestScheduler(1, 1, 1, 1)
+        scheduler.acquire(LISTING)
+        def threads = [
+                queue(scheduler, LISTING, "listing"),
+                queue(scheduler, REPORTING, "report"),
+                queue(scheduler, INTERACTIVE, "first verification"),
+                queue(scheduler, INTERACTIVE, "second verification")
+        ]
+
+        when:
+        4.times {
+            def count = admitted.size()
+            scheduler.release(it == 0 ? LISTING : [INTERACTIVE, INTERACTIVE, REPORTING][it - 1])
+            while (admitted.size() == count) {
+                Thread.sleep(1)
+            }
+        }
+        threads*.join(SECONDS.toMillis(5))
+
+        then:
+        admitted == ["first verification", "second verification", "report", "listing"]
+    }
+
+    def """
+        getStats()
+        of calls that waited
+        gives how long they waited
+        """() {
+        given:
+        def scheduler = new RequestScheduler(1, 1, 1, 1)
+        scheduler.acquire(INTERACTIVE)
+        def waiting = queue(scheduler, REPORTING, "report")
+
+        when:
+        Thread.sleep(200)
+        scheduler.release(INTERACTIVE)
+        waiting.join(SECONDS.toMillis(5))
+
+        then:
+        with(scheduler.getStats(REPORTING)) {
+            callCount == 1
+            maxWaitTimeInMs >= 200
+            totalWaitTimeInMs == maxWaitTimeInMs
+            averageWaitTimeInMs >= 200
+        }
+        scheduler.getStats(INTERACTIVE).maxWaitTimeInMs < 200
+    }
+
+    def """
+        acquire()
+        interrupted while waiting
+        leaves the queue
+        """() {
+        given:
+        def scheduler = new RequestScheduler(1, 1, 1, 1)
+        scheduler.acquire(INTERACTIVE)
+        def interrupted = new CountDownLatch(1)
+        def waiting = Thread.start {
+            try {
+                scheduler.acquire(LISTING)
+            } catch (InterruptedException ignored) {
+                interrupted.countDown()
+            }
+        }
+        while (scheduler.getStats(LISTING).queuedCount == 0) {
+            Thread.sleep(1)
+        }
+
+        when:
+        waiting.interrupt()
+
+        then:
+        interrupted.await(5, SECONDS)
+        scheduler.getStats(LISTING).queuedCount == 0
+
+        when:
+        scheduler.release(INTERACTIVE)
+        scheduler.acquire(REPORTING)
+
+        then:
+        scheduler.getStats(REPORTING).runningCount == 1
+        scheduler.getStats(LISTING).runningCount == 0
+    }
+
+    def """
+        the disabled scheduler
+        never waits nor counts
+        """() {
+        when:
+        100.times { RequestScheduler.DISABLED.acquire(LISTING) }
+
+        then:
+        !RequestScheduler.DISABLED.enabled
+        RequestScheduler.DISABLED.getStats(LISTING).callCount == 0
+    }
+
+    def """
+        create a scheduler
+        with invalid limits
+        throws an exception
+        """() {
+        when:
+        new RequestScheduler(maxConcurrentCalls, maxInteractiveCalls, maxReportingCalls, maxListingCalls)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        maxConcurrentCalls | maxInteractiveCalls | maxReportingCalls | maxListingCalls
+        0                  | 1                   | 1                 | 1
+        4                  | 0                   | 1                 | 1
+        4                  | 4                   | -1                | 1
+        4                  | 4                   | 1                 | 5
+    }
+}
@@ -0,0 +1,137 @@
+package net.commuty.parking
+
+import spock.lang.Specification
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS
+import static net.commuty.parking.model.UserId.fromBadgeNumber
+import static net.commuty.parking.model.UserId.fromLicensePlate
+
+class VerdictCacheSpec extends Specification {
+
+    long now = 0
+    VerdictCache cache = new VerdictCache(2, 10_000, 1_000, { now })
+
+    def elapse(long ms) {
+        now += MILLISECONDS.toNanos(ms)
+    }
+
+    def """
+        get()
+        returns the answer until its ttl, which depends on the answer
+        """() {
+        given:
+        cache.put("site", fromBadgeNumber("granted"), true)
+        cache.put("site", fromBadgeNumber("denied"), false)
+
+        when:
+        elapse(elapsedInMs)
+
+        then:
+        cache.get("site", fromBadgeNumber("granted")) == granted
+        cache.get("site", fromBadgeNumber("denied")) == denied
+
+        where:
+        elapsedInMs || granted | denied
+        0           || true    | false
+        999         || true    | false
+        1_000       || true    | null
+        10_000      || null    | null
+    }
+
+    def """
+        get()
+        of another parking site or another user
+        returns null
+        """() {
+        given:
+        cache.put("site", fromBadgeNumber("1234"), true)
+
+        expect:
+        cache.get("another-site", fromBadgeNumber("1234")) == null
+        cache.get("site", fromLicensePlate("1234")) == null
+    }
+
+    def """
+        put()
+        when the cache is full
+        drops the least recently used answer
+        """() {
+        given:
+        cache.put("site", fromBadgeNumber("1"), true)
+        cache.put("site", fromBadgeNumber("2"), true)
+        cache.get("site", fromBadgeNumber("1"))
+
+        when:
+        cache.put("site", fromBadgeNumber("3"), true)
+
+        then:
+        cache.get("site", fromBadgeNumber("1"))
+        cache.get("site", fromBadgeNumber("2")) == null
+        cache.get("site", fromBadgeNumber("3"))
+        cache.stats.evictionCount == 1
+        cache.stats.size == 2
+    }
+
+    def """
+        invalidate()
+        drops the answers
+        """() {
+        given:
+        cache.put("site", fromBadgeNumber("1"), true)
+        cache.put("another-site", fromBadgeNumber("1"), true)
+
+        when:
+        cache.invalidate(fromBadgeNumber("1"))
+
+        then:
+        cache.get("site", fromBadgeNumber("1")) == null
+        cache.get("another-site", fromBadgeNumber("1")) == null
+    }
+
+    def """
+        getStats()
+        counts the hits and the misses
+        """() {
+        given:
+        cache.put("site", fromBadgeNumber("1"), true)
+
+        when:
+        3.times { cache.get("site", fromBadgeNumber("1")) }
+        cache.get("site", fromBadgeNumber("2"))
+
+        then:
+        cache.stats.hitCount == 3
+        cache.stats.missCount == 1
+        cache.stats.hitRate == 0.75d
+    }
+
+    def """
+        DISABLED
+        never keeps any answer
+        """() {
+        when:
+        VerdictCache.DISABLED.put("site", fromBadgeNumber("1"), true)
+
+        then:
+        VerdictCache.DISABLED.get("site", fromBadgeNumber("1")) == null
+        VerdictCache.DISABLED.stats.missCount == 0
+    }
+
+    def """
+        new VerdictCache()
+        with invalid values
+        throws an exception
+        """() {
+        when:
+        new VerdictCache(maxSize, grantedTtlInMs, deniedTtlInMs)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        maxSize | grantedTtlInMs | deniedTtlInMs
+        0       | 1000           | 1000
+        10      | -1             | 1000
+        10      | 1000           | -1
+    }
+}
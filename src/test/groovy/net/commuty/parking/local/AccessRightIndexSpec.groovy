@@ -0,0 +1,82 @@
+package net.commuty.parking.local
+
+import net.commuty.parking.model.AccessRight
+import spock.lang.Specification
+
+import java.time.OffsetDateTime
+
+import static net.commuty.parking.model.UserId.fromBadgeNumber
+
+class AccessRightIndexSpec extends Specification {
+
+    static final String SITE = "a-parking-site"
+
+    AccessRightIndex index = new AccessRightIndex()
+
+    def right(String badge, String start, String end, boolean granted) {
+        return new AccessRight([fromBadgeNumber(badge)], SITE, OffsetDateTime.parse(start), OffsetDateTime.parse(end), granted, null)
+    }
+
+    def """
+        find()
+        with a long right and a shorter one that starts later
+        finds the long right once the short one ended
+        """() {
+        given:
+        def day = right("1234", "2025-06-01T00:00:00Z", "2025-06-02T00:00:00Z", true)
+        def meeting = right("1234", "2025-06-01T08:00:00Z", "2025-06-01T09:00:00Z", false)
+        index.replaceAll([meeting, day])
+
+        expect:
+        index.find(SITE, fromBadgeNumber("1234"), OffsetDateTime.parse(moment)) == [day: day, meeting: meeting, none: null][found]
+
+        where:
+        moment                 || found
+        "2025-06-01T07:00:00Z" || "day"
+        "2025-06-01T08:30:00Z" || "day"
+        "2025-06-01T10:00:00Z" || "day"
+        "2025-06-02T00:00:00Z" || "none"
+    }
+
+    def """
+        find()
+        with several rights covering the moment
+        finds the one that starts first, and the others once it is removed
+        """() {
+        given:
+        def first = right("1234", "2025-06-01T06:00:00Z", "2025-06-01T12:00:00Z", true)
+        def second = right("1234", "2025-06-01T07:00:00Z", "2025-06-01T20:00:00Z", false)
+        def third = right("1234", "2025-06-01T09:00:00Z", "2025-06-01T10:00:00Z", true)
+        [third, first, second].each { index.put(it) }
+        def moment = OffsetDateTime.parse("2025-06-01T09:30:00Z")
+
+        when:
+        def found = [index.find(SITE, fromBadgeNumber("1234"), moment)]
+        index.remove(first)
+        found << index.find(SITE, fromBadgeNumber("1234"), moment)
+        index.remove(second)
+        found << index.find(SITE, fromBadgeNumber("1234"), moment)
+        index.remove(third)
+        found << index.find(SITE, fromBadgeNumber("1234"), moment)
+
+        then:
+        found == [first, second, third, null]
+        index.size() == 0
+    }
+
+    def """
+        find()
+        only looks at the rights of the user
+        """() {
+        given:
+        index.replaceAll([
+                right("1234", "2025-06-01T00:00:00Z", "2025-06-02T00:00:00Z", true),
+                right("5678", "2025-06-01T08:00:00Z", "2025-06-01T09:00:00Z", true)
+        ])
+
+        expect:
+        index.isGranted(SITE, fromBadgeNumber("5678"), OffsetDateTime.parse("2025-06-01T10:00:00Z")) == null
+        index.isGranted(SITE, fromBadgeNumber("1234"), OffsetDateTime.parse("2025-06-01T10:00:00Z"))
+        index.isGranted("another-site", fromBadgeNumber("1234"), OffsetDateTime.parse("2025-06-01T10:00:00Z")) == null
+    }
+}
@@ -0,0 +1,121 @@
+package net.commuty.parking.local
+
+import net.commuty.parking.ParkingAccess
+import net.commuty.parking.model.AccessRight
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.time.Clock
+import java.time.Instant
+import java.time.OffsetDateTime
+
+import static java.time.ZoneOffset.UTC
+import static java.util.Collections.singleton
+import static net.commuty.parking.model.AccessRightAttributeName.ID
+import static net.commuty.parking.model.AccessRightAttributeName.REASON
+import static net.commuty.parking.model.UserId.fromBadgeNumber
+import static net.commuty.parking.model.UserId.fromLicensePlate
+
+class AccessRightSnapshotSpec extends Specification {
+
+    static final String SITE = "a-parking-site"
+
+    @TempDir
+    Path directory
+
+    Instant takenAt = Instant.parse("2025-06-01T10:00:00Z")
+    AccessRightIndex index = new AccessRightIndex(Clock.fixed(takenAt, UTC))
+
+    def right(List userIds, String site, String start, String end, boolean granted) {
+        return new AccessRight(userIds, site, OffsetDateTime.parse(start), OffsetDateTime.parse(end), granted,
+                [(ID): UUID.randomUUID().toString(), (REASON): "permanentAccess"])
+    }
+
+    def """
+        write() then load()
+        restores the rights of all the parking sites and the time they were up to date
+        """() {
+        given:
+        def rights = [
+                right([fromBadgeNumber("1234"), fromLicensePlate("1-ABC-123")], SITE, "2025-06-01T00:00:00+02:00", "2025-06-01T08:00:00+02:00", false),
+                right([fromBadgeNumber("1234"), fromLicensePlate("1-ABC-123")], SITE, "2025-06-01T08:00:00+02:00", "2025-06-02T00:00:00+02:00", true),
+                right([fromBadgeNumber("1234")], "another-site", "2025-06-01T00:00:00Z", "2025-06-02T00:00:00Z", true)
+        ]
+        index.replaceAll(rights)
+        def file = directory.resolve("access-rights.bin")
+        def restored = new AccessRightIndex(Clock.fixed(Instant.parse("2025-06-01T12:00:00Z"), UTC))
+
+        when:
+        AccessRightSnapshot.write(file, index)
+        def loaded = AccessRightSnapshot.load(file, restored)
+
+        then:
+        loaded
+        restored.size() == 3
+        restored.updatedAt == takenAt
+        restored.isGranted(SITE, fromLicensePlate("1-ABC-123"), OffsetDateTime.parse("2025-06-01T09:00:00+02:00"))
+        !restored.isGranted(SITE, fromBadgeNumber("1234"), OffsetDateTime.parse("2025-06-01T07:59:59+02:00"))
+        restored.isGranted("another-site", fromBadgeNumber("1234"), OffsetDateTime.parse("2025-06-01T12:00:00Z"))
+        restored.findAll(SITE, fromBadgeNumber("1234")).collect { it.id } == rights[0..1].collect { it.id }
+        restored.findAll(SITE, fromBadgeNumber("1234"))[1].startTime == OffsetDateTime.parse("2025-06-01T08:00:00+02:00")
+        restored.findAll(SITE, fromBadgeNumber("1234"))[1].attributes[REASON] == "permanentAccess"
+        directory.toFile().list() as List == ["access-rights.bin"]
+    }
+
+    def """
+        load()
+        without a snapshot
+        leaves the index as is
+        """() {
+        expect:
+        !AccessRightSnapshot.load(directory.resolve("missing.bin"), index)
+        index.updatedAt == null
+    }
+
+    def """
+        load()
+        of a damaged snapshot
+        throws an exception and leaves the index as is
+        """() {
+        given:
+        index.replaceAll([right([fromBadgeNumber("1234")], SITE, "2025-06-01T00:00:00Z", "2025-06-02T00:00:00Z", true)])
+        def file = directory.resolve("access-rights.bin")
+        AccessRightSnapshot.write(file, index)
+        def bytes = Files.readAllBytes(file)
+        bytes[bytes.length - 10] = (byte) (bytes[bytes.length - 10] ^ 0x01)
+        Files.write(file, bytes)
+        def restored = new AccessRightIndex()
+
+        when:
+        AccessRightSnapshot.load(file, restored)
+
+        then:
+        thrown(IOException)
+        restored.updatedAt == null
+    }
+
+    def """
+        AccessRightSync.sync()
+        with a snapshot
+        saves the index after the poll
+        """() {
+        given:
+        def file = directory.resolve("access-rights.bin")
+        ParkingAccess remote = Mock()
+        def sync = new AccessRightSync(remote, index, 30_000, 3600_000, file, Clock.fixed(takenAt, UTC))
+        def restored = new AccessRightIndex()
+
+        when:
+        sync.sync()
+        AccessRightSnapshot.load(file, restored)
+
+        then:
+        1 * remote.listAccessRights(null, null, true, null, null, null, null, singleton(ID)) >> [
+                right([fromBadgeNumber("1234")], SITE, "2025-06-01T00:00:00Z", "2025-06-02T00:00:00Z", true)
+        ]
+        restored.updatedAt == takenAt
+        restored.isGranted(SITE, fromBadgeNumber("1234"), OffsetDateTime.parse("2025-06-01T12:00:00Z"))
+    }
+}
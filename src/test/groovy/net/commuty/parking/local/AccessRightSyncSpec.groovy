@@ -0,0 +1,161 @@
+package net.commuty.parking.local
+
+import net.commuty.parking.ParkingAccess
+import net.commuty.parking.http.CircuitBreakerOpenException
+import net.commuty.parking.model.AccessRight
+import spock.lang.Specification
+
+import java.time.*
+
+import static java.util.Collections.singleton
+import static net.commuty.parking.model.AccessRightAttributeName.ID
+import static net.commuty.parking.model.UserId.fromBadgeNumber
+
+class AccessRightSyncSpec extends Specification {
+
+    static final String SITE = "a-parking-site"
+
+    static class MovingClock extends Clock {
+        Instant now
+
+        ZoneId getZone() { ZoneOffset.UTC }
+
+        Clock withZone(ZoneId zone) { this }
+
+        Instant instant() { now }
+    }
+
+    MovingClock clock = new MovingClock(now: Instant.parse("2025-06-01T10:00:00Z"))
+    ParkingAccess remote = Mock()
+    AccessRightIndex index = new AccessRightIndex(clock)
+    AccessRightSync sync = new AccessRightSync(remote, index, 30_000, 3600_000, clock)
+
+    def right(String badge, String start, String end, boolean granted) {
+        return new AccessRight([fromBadgeNumber(badge)], SITE, OffsetDateTime.parse(start), OffsetDateTime.parse(end), granted, [(ID): UUID.randomUUID().toString()])
+    }
+
+    def granted(String badge, String moment) {
+        return index.isGranted(SITE, fromBadgeNumber(badge), OffsetDateTime.parse(moment))
+    }
+
+    def """
+        sync()
+        the first time
+        fetches the whole day
+        """() {
+        when:
+        def received = sync.sync()
+
+        then:
+        1 * remote.listAccessRights(null, null, true, null, null, null, null, singleton(ID)) >> [
+                right("1234", "2025-06-01T00:00:00Z", "2025-06-02T00:00:00Z", true),
+                right("5678", "2025-06-01T00:00:00Z", "2025-06-02T00:00:00Z", false)
+        ]
+        received == 2
+        index.size() == 2
+        sync.fullSyncCount == 1
+        sync.lastBatchSize == 2
+        sync.lagInMs == 0
+    }
+
+    def """
+        sync()
+        after the first time
+        fetches the rights created since the previous poll and merges them
+        """() {
+        given:
+        remote.listAccessRights(null, null, true, null, null, null, null, singleton(ID)) >> [
+                right("1234", "2025-06-01T00:00:00Z", "2025-06-02T00:00:00Z", false)
+        ]
+        sync.sync()
+        clock.now = Instant.parse("2025-06-01T10:00:30Z")
+
+        when:
+        def received = sync.sync()
+
+        then:
+        1 * remote.listAccessRights(null, null, true, LocalDateTime.parse("2025-06-01T09:59:50"), null, null, null, singleton(ID)) >> [
+                right("1234", "2025-06-01T00:00:00Z", "2025-06-01T12:00:00Z", false),
+                right("1234", "2025-06-01T12:00:00Z", "2025-06-01T18:00:00Z", true),
+                right("1234", "2025-06-01T18:00:00Z", "2025-06-02T00:00:00Z", false),
+                right("9999", "2025-06-01T00:00:00Z", "2025-06-02T00:00:00Z", true)
+        ]
+        received == 4
+        sync.deltaSyncCount == 1
+        sync.lastBatchSize == 4
+        index.size() == 4
+        !granted("1234", "2025-06-01T11:00:00Z")
+        granted("1234", "2025-06-01T13:00:00Z")
+        granted("9999", "2025-06-01T13:00:00Z")
+    }
+
+    def """
+        sync()
+        receiving a right that is already known
+        replaces its previous version
+        """() {
+        given:
+        def initial = right("1234", "2025-06-01T00:00:00Z", "2025-06-02T00:00:00Z", false)
+        remote.listAccessRights(null, null, true, null, null, null, null, singleton(ID)) >> [initial]
+        sync.sync()
+        clock.now = Instant.parse("2025-06-01T10:00:30Z")
+
+        when:
+        sync.sync()
+
+        then:
+        1 * remote.listAccessRights(null, null, true, _ as LocalDateTime, null, null, null, singleton(ID)) >> [
+                new AccessRight(initial.userIds, SITE, initial.startTime, initial.endTime, true, initial.attributes)
+        ]
+        index.size() == 1
+        granted("1234", "2025-06-01T11:00:00Z")
+    }
+
+    def """
+        sync()
+        when the full sync is due or the day changed
+        fetches the whole day again
+        """() {
+        given:
+        remote.listAccessRights(null, null, true, null, null, null, null, singleton(ID)) >>> [
+                [right("1234", "2025-06-01T00:00:00Z", "2025-06-02T00:00:00Z", true), right("5678", "2025-06-01T00:00:00Z", "2025-06-02T00:00:00Z", true)],
+                [right("1234", "2025-06-01T00:00:00Z", "2025-06-02T00:00:00Z", true)]
+        ]
+        sync.sync()
+        clock.now = Instant.parse(now)
+
+        when:
+        sync.sync()
+
+        then:
+        sync.fullSyncCount == 2
+        sync.deltaSyncCount == 0
+        index.size() == 1
+        granted("5678", "2025-06-01T11:00:00Z") == null
+
+        where:
+        now << ["2025-06-01T11:00:00Z", "2025-06-02T00:00:10Z"]
+    }
+
+    def """
+        sync()
+        when the api cannot be reached
+        keeps the index as is
+        """() {
+        given:
+        remote.listAccessRights(null, null, true, null, null, null, null, singleton(ID)) >> [
+                right("1234", "2025-06-01T00:00:00Z", "2025-06-02T00:00:00Z", true)
+        ]
+        sync.sync()
+        clock.now = Instant.parse("2025-06-01T10:00:30Z")
+
+        when:
+        sync.sync()
+
+        then:
+        1 * remote.listAccessRights(null, null, true, _ as LocalDateTime, null, null, null, singleton(ID)) >> { throw new CircuitBreakerOpenException("/v2/access-rights") }
+        thrown(CircuitBreakerOpenException)
+        index.size() == 1
+        sync.lagInMs == 30_000
+    }
+}
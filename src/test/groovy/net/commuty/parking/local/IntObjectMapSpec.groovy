@@ -0,0 +1,28 @@
+package net.commuty.parking.local
+
+import spock.lang.Specification
+
+class IntObjectMapSpec extends Specification {
+
+    def """
+        put(), get() and remove()
+        in any order
+        give the same results as a HashMap
+        """() {
+        given:
+        def random = new Random(42)
+        def map = new IntObjectMap<Integer>()
+        def expected = new HashMap<Integer, Integer>()
+
+        expect:
+        100_000.times { step ->
+            int key = random.nextInt(500)
+            switch (random.nextInt(3)) {
+                case 0: assert map.put(key, step) == expected.put(key, step); break
+                case 1: assert map.remove(key) == expected.remove(key); break
+                default: assert map.get(key) == expected.get(key)
+            }
+            assert map.size() == expected.size()
+        }
+    }
+}
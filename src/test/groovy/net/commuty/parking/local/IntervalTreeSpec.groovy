@@ -0,0 +1,78 @@
+package net.commuty.parking.local
+
+import spock.lang.Specification
+
+class IntervalTreeSpec extends Specification {
+
+    def """
+        findOverlapping()
+        finds the intervals overlapping the query, sorted by start
+        """() {
+        given:
+        def tree = new IntervalTree<String>()
+        tree.add(0, 10, "a")
+        tree.add(5, 15, "b")
+        tree.add(10, 20, "c")
+        tree.add(30, 40, "d")
+
+        expect:
+        tree.findOverlapping(from, to) == expected
+
+        where:
+        from | to  || expected
+        0    | 1   || ["a"]
+        9    | 10  || ["a", "b"]
+        10   | 11  || ["b", "c"]
+        20   | 30  || []
+        0    | 100 || ["a", "b", "c", "d"]
+        39   | 40  || ["d"]
+    }
+
+    def """
+        add() then remove()
+        in any order
+        gives the same results as a linear scan
+        """() {
+        given:
+        def random = new Random(42)
+        def tree = new IntervalTree<long[]>()
+        def intervals = []
+
+        when:
+        def mismatches = (1..20_000).count {
+            if (intervals.isEmpty() || random.nextInt(10) < 5) {
+                long start = random.nextInt(10_000)
+                long[] interval = [start, start + 1 + random.nextInt(500)]
+                tree.add(interval[0], interval[1], interval)
+                intervals << interval
+            } else if (random.nextBoolean()) {
+                assert tree.remove(intervals.remove(random.nextInt(intervals.size())))
+            }
+            long from = random.nextInt(10_500)
+            long to = from + 1 + random.nextInt(100)
+            def expected = intervals.findAll { it[0] < to && from < it[1] } as Set
+            def found = tree.findOverlapping(from, to)
+            return found.size() != expected.size() || !expected.containsAll(found)
+        }
+
+        then:
+        mismatches == 0
+        tree.size() == intervals.size()
+    }
+
+    def """
+        remove()
+        of a value that is not in the tree
+        returns false
+        """() {
+        given:
+        def tree = new IntervalTree<String>()
+        tree.add(0, 10, "a")
+
+        expect:
+        !tree.remove("b")
+        tree.remove("a")
+        !tree.remove("a")
+        tree.isEmpty()
+    }
+}
@@ -0,0 +1,262 @@
+package net.commuty.parking.local
+
+import net.commuty.parking.ParkingAccess
+import net.commuty.parking.http.HttpClientException
+import net.commuty.parking.http.PartialVerificationException
+import net.commuty.parking.model.AccessRight
+import spock.lang.Specification
+
+import java.time.Clock
+import java.time.Instant
+import java.time.OffsetDateTime
+
+import static java.time.ZoneOffset.UTC
+import static java.util.Collections.emptySet
+import static net.commuty.parking.model.UserId.fromBadgeNumber
+import static net.commuty.parking.model.UserId.fromLicensePlate
+
+class LocalParkingAccessSpec extends Specification {
+
+    static final String SITE = "a-parking-site"
+
+    Instant loadedAt = Instant.parse("2025-06-01T10:00:00Z")
+    ParkingAccess remote = Mock()
+    AccessRightIndex index = new AccessRightIndex(Clock.fixed(loadedAt, UTC))
+
+    def right(List userIds, String start, String end, boolean granted) {
+        return new AccessRight(userIds, SITE, OffsetDateTime.parse(start), OffsetDateTime.parse(end), granted, null)
+    }
+
+    def dayOf(List userIds) {
+        return [
+                right(userIds, "2025-06-01T00:00:00+02:00", "2025-06-01T08:00:00+02:00", false),
+                right(userIds, "2025-06-01T08:00:00+02:00", "2025-06-01T16:00:00+02:00", true),
+                right(userIds, "2025-06-01T16:00:00+02:00", "2025-06-02T00:00:00+02:00", false)
+        ]
+    }
+
+    def client(String now) {
+        return new LocalParkingAccess(remote, index, 600_000, Clock.fixed(Instant.parse(now), UTC))
+    }
+
+    def """
+        AccessRightIndex.isGranted()
+        finds the right covering the moment, by any id of the user
+        """() {
+        given:
+        index.replaceAll(dayOf([fromBadgeNumber("1234"), fromLicensePlate("1-ABC-123")]))
+
+        expect:
+        index.isGranted(SITE, fromBadgeNumber("1234"), OffsetDateTime.parse(moment)) == granted
+        index.isGranted(SITE, fromLicensePlate("1-ABC-123"), OffsetDateTime.parse(moment)) == granted
+
+        where:
+        moment                      || granted
+        "2025-06-01T07:59:59+02:00" || false
+        "2025-06-01T06:00:00Z"      || true
+        "2025-06-01T15:59:59+02:00" || true
+        "2025-06-01T16:00:00+02:00" || false
+        "2025-06-02T00:00:00+02:00" || null
+    }
+
+    def """
+        AccessRightIndex.isGranted()
+        of an unknown user or site
+        is null
+        """() {
+        given:
+        index.replaceAll(dayOf([fromBadgeNumber("1234")]))
+
+        expect:
+        index.isGranted(SITE, fromBadgeNumber("5678"), OffsetDateTime.parse("2025-06-01T10:00:00Z")) == null
+        index.isGranted("another-site", fromBadgeNumber("1234"), OffsetDateTime.parse("2025-06-01T10:00:00Z")) == null
+    }
+
+    def """
+        AccessRightIndex.remove()
+        removes the right for all the ids of the user
+        """() {
+        given:
+        def rights = dayOf([fromBadgeNumber("1234"), fromLicensePlate("1-ABC-123")])
+        index.replaceAll(rights)
+
+        when:
+        def removed = index.remove(rights[1])
+        index.put(right([fromBadgeNumber("1234"), fromLicensePlate("1-ABC-123")], "2025-06-01T08:00:00+02:00", "2025-06-01T16:00:00+02:00", false))
+
+        then:
+        removed
+        index.size() == 3
+        !index.isGranted(SITE, fromBadgeNumber("1234"), OffsetDateTime.parse("2025-06-01T10:00:00+02:00"))
+        !index.isGranted(SITE, fromLicensePlate("1-ABC-123"), OffsetDateTime.parse("2025-06-01T10:00:00+02:00"))
+    }
+
+    def """
+        AccessRightIndex.findAll(site, moment) and findAll(site, from, to)
+        find the rights of all the users covering a moment or overlapping a period
+        """() {
+        given:
+        def first = dayOf([fromBadgeNumber("1234")])
+        def second = [right([fromBadgeNumber("5678")], "2025-06-01T00:00:00+02:00", "2025-06-01T12:00:00+02:00", true),
+                      right([fromBadgeNumber("5678")], "2025-06-01T12:00:00+02:00", "2025-06-02T00:00:00+02:00", false)]
+        index.replaceAll(first + second)
+
+        expect:
+        index.findAll(SITE, OffsetDateTime.parse("2025-06-01T08:00:00+02:00")) == [second[0], first[1]]
+        index.findAll(SITE, OffsetDateTime.parse("2025-06-01T11:00:00+02:00"), OffsetDateTime.parse("2025-06-01T17:00:00+02:00")) == [second[0], first[1], second[1], first[2]]
+        index.findAll("another-site", OffsetDateTime.parse("2025-06-01T08:00:00+02:00")).isEmpty()
+    }
+
+    def """
+        refresh()
+        loads the rights of the day without flagging them as read
+        """() {
+        when:
+        client("2025-06-01T10:00:00Z").refresh()
+
+        then:
+        1 * remote.listAccessRights(null, null, true, null, null, null, null, emptySet()) >> dayOf([fromBadgeNumber("1234")])
+        index.size() == 3
+    }
+
+    def """
+        isGranted()
+        with a fresh index
+        does not call the api
+        """() {
+        given:
+        index.replaceAll(dayOf([fromBadgeNumber("1234")]))
+
+        when:
+        def granted = client("2025-06-01T10:05:00Z").isGranted(SITE, fromBadgeNumber("1234"))
+
+        then:
+        granted
+        0 * remote.isGranted(*_)
+    }
+
+    def """
+        isGranted()
+        with an index older than the staleness bound
+        calls the api
+        """() {
+        given:
+        index.replaceAll(dayOf([fromBadgeNumber("1234")]))
+
+        when:
+        def granted = client("2025-06-01T10:10:01Z").isGranted(SITE, fromBadgeNumber("1234"))
+
+        then:
+        !granted
+        1 * remote.isGranted(SITE, fromBadgeNumber("1234")) >> false
+    }
+
+    def """
+        isGranted()
+        of a user that is not in the index
+        calls the api
+        """() {
+        given:
+        index.replaceAll(dayOf([fromBadgeNumber("1234")]))
+
+        when:
+        def granted = client("2025-06-01T10:05:00Z").isGranted(SITE, fromBadgeNumber("5678"))
+
+        then:
+        granted
+        1 * remote.isGranted(SITE, fromBadgeNumber("5678")) >> true
+    }
+
+    def """
+        isGranted()
+        with an index that was never loaded
+        throws the error of the api
+        """() {
+        given:
+        remote.isGranted(SITE, fromBadgeNumber("1234")) >> { throw new HttpClientException(new IOException("unreachable")) }
+
+        when:
+        client("2025-06-01T10:05:00Z").isGranted(SITE, fromBadgeNumber("1234"))
+
+        then:
+        thrown(HttpClientException)
+    }
+
+    def """
+        areGranted()
+        with a fresh index
+        answers the users of the index, and verifies all the others with a single call to the api
+        """() {
+        given:
+        index.replaceAll(dayOf([fromBadgeNumber("1234")]))
+
+        when:
+        def answers = client("2025-06-01T10:05:00Z").areGranted(SITE, [fromBadgeNumber("5678"), fromBadgeNumber("1234"), fromBadgeNumber("9012")])
+
+        then:
+        1 * remote.areGranted(SITE, [fromBadgeNumber("5678"), fromBadgeNumber("9012")]) >> [(fromBadgeNumber("5678")): false, (fromBadgeNumber("9012")): true]
+        0 * remote.isGranted(*_)
+        answers == [(fromBadgeNumber("5678")): false, (fromBadgeNumber("1234")): true, (fromBadgeNumber("9012")): true]
+        answers.keySet() as List == [fromBadgeNumber("5678"), fromBadgeNumber("1234"), fromBadgeNumber("9012")]
+    }
+
+    def """
+        areGranted()
+        with an index older than the staleness bound
+        verifies all the users with the api
+        """() {
+        given:
+        index.replaceAll(dayOf([fromBadgeNumber("1234")]))
+
+        when:
+        def answers = client("2025-06-01T10:10:01Z").areGranted(SITE, [fromBadgeNumber("1234"), fromBadgeNumber("5678")])
+
+        then:
+        1 * remote.areGranted(SITE, [fromBadgeNumber("1234"), fromBadgeNumber("5678")]) >> [(fromBadgeNumber("1234")): false, (fromBadgeNumber("5678")): true]
+        answers == [(fromBadgeNumber("1234")): false, (fromBadgeNumber("5678")): true]
+    }
+
+    def """
+        areGranted()
+        with users the api could not verify
+        throws the answers of the index along with the ones of the api
+        """() {
+        given:
+        index.replaceAll(dayOf([fromBadgeNumber("1234")]))
+        def failure = new HttpClientException(new IOException("unreachable"))
+        remote.areGranted(SITE, [fromBadgeNumber("5678"), fromBadgeNumber("9012")]) >> {
+            throw new PartialVerificationException([(fromBadgeNumber("5678")): true], [(fromBadgeNumber("9012")): failure])
+        }
+
+        when:
+        client("2025-06-01T10:05:00Z").areGranted(SITE, [fromBadgeNumber("1234"), fromBadgeNumber("5678"), fromBadgeNumber("9012")])
+
+        then:
+        def e = thrown(PartialVerificationException)
+        e.verified == [(fromBadgeNumber("1234")): true, (fromBadgeNumber("5678")): true]
+        e.failures == [(fromBadgeNumber("9012")): failure]
+    }
+
+    def """
+        close()
+        closes the given client
+        """() {
+        when:
+        client("2025-06-01T10:05:00Z").close()
+
+        then:
+        1 * remote.close()
+    }
+
+    def """
+        new LocalParkingAccess()
+        with a staleness that is not positive
+        throws an exception
+        """() {
+        when:
+        new LocalParkingAccess(remote, 0)
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+}
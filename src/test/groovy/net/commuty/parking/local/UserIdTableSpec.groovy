@@ -0,0 +1,59 @@
+package net.commuty.parking.local
+
+import spock.lang.Specification
+
+import static net.commuty.parking.model.UserId.*
+import static net.commuty.parking.model.UserIdType.*
+
+class UserIdTableSpec extends Specification {
+
+    def table = new UserIdTable()
+
+    def """
+        canonicalize()
+        ignores the case and whitespace of license plates and the case of emails only
+        """() {
+        expect:
+        UserIdTable.canonicalize(type, id) == canonical
+
+        where:
+        type          | id                    || canonical
+        LICENSE_PLATE | "1-abc 123"           || "1-ABC123"
+        LICENSE_PLATE | " 1-ABC-123\t"        || "1-ABC-123"
+        LICENSE_PLATE | "1-ABC-123"           || "1-ABC-123"
+        EMAIL         | " Someone@Commuty.net" || "someone@commuty.net"
+        EMAIL         | "someone@commuty.net " || "someone@commuty.net"
+        BADGE_NUMBER  | "abc 123"             || "abc 123"
+    }
+
+    def """
+        intern()
+        gives the same handle to the same canonical id of the same type
+        """() {
+        when:
+        def plate = table.intern(fromLicensePlate("1-abc-123"))
+        def samePlate = table.intern(fromLicensePlate("1-ABC-123"))
+        def badge = table.intern(fromBadgeNumber("1-ABC-123"))
+
+        then:
+        plate == samePlate
+        badge != plate
+        table.size() == 2
+        table.find(fromLicensePlate("1 - ABC - 123")) == plate
+        table.find(fromBadgeNumber("1-abc-123")) == UserIdTable.NOT_FOUND
+        table.get(plate) == fromLicensePlate("1-ABC-123")
+    }
+
+    def """
+        intern() many ids
+        keeps all of them reachable while the table grows
+        """() {
+        when:
+        def handles = (0..<10_000).collect { table.intern(fromBadgeNumber("badge-$it")) }
+
+        then:
+        handles == (0..<10_000).toList()
+        (0..<10_000).every { table.find(BADGE_NUMBER, "badge-$it") == it }
+        table.find(BADGE_NUMBER, "badge-10000") == UserIdTable.NOT_FOUND
+    }
+}
@@ -300,4 +300,15 @@ class UserIdSpec extends Specification {
         parsed.type == "licensePlateWim64"
     }
 
+    def """
+        equals() and hashCode()
+        depend on the type and the id
+        """() {
+        expect:
+        UserId.fromBadgeNumber("1234") == UserId.fromBadgeNumber("1234")
+        UserId.fromBadgeNumber("1234").hashCode() == UserId.fromBadgeNumber("1234").hashCode()
+        UserId.fromBadgeNumber("1234") != UserId.fromPinCode("1234")
+        new UserId(null, "1234") == new UserId(null, "1234")
+        new UserId(null, "1234") != UserId.fromPinCode("1234")
+    }
 }
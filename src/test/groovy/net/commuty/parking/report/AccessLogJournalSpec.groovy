@@ -0,0 +1,188 @@
+package net.commuty.parking.report
+
+import net.commuty.parking.model.AccessLog
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.time.LocalDateTime
+
+import static java.nio.file.StandardOpenOption.WRITE
+import static net.commuty.parking.model.AccessDirection.IN
+import static net.commuty.parking.model.AccessLog.createOutAccessLog
+import static net.commuty.parking.model.UserId.fromBadgeNumber
+import static net.commuty.parking.model.UserIdType.LICENSE_PLATE
+import static net.commuty.parking.report.AccessLogJournal.SyncPolicy.EVERY_BATCH
+import static net.commuty.parking.report.AccessLogJournal.SyncPolicy.EVERY_ENTRY
+import static net.commuty.parking.report.AccessLogJournal.SyncPolicy.PERIODIC
+
+class AccessLogJournalSpec extends Specification {
+
+    @TempDir
+    Path directory
+
+    def log(String badge) {
+        return createOutAccessLog(fromBadgeNumber(badge), LocalDateTime.parse("2025-06-01T18:00:00"))
+    }
+
+    def segments() {
+        return Files.list(directory).withCloseable { it.count() }
+    }
+
+    def """
+        a journal opened again
+        recovers the logs that were not acknowledged, in order
+        """() {
+        given:
+        def journal = new AccessLogJournal(directory, policy)
+
+        when:
+        def first = journal.append("site-a", log("1"))
+        def second = journal.append("site-b", log("2"))
+        def third = journal.append("site-a", log("3"))
+        journal.acknowledge(second)
+        journal.close()
+        def reopened = new AccessLogJournal(directory, policy)
+
+        then:
+        first < second
+        second < third
+        reopened.recovered*.sequence == [first, third]
+        reopened.recovered*.parkingSiteId == ["site-a", "site-a"]
+        reopened.recovered*.accessLog*.userId == ["1", "3"]
+        reopened.pendingCount == 2
+        reopened.append("site-a", log("4")) > third
+
+        cleanup:
+        reopened.close()
+
+        where:
+        policy << [EVERY_ENTRY, EVERY_BATCH, PERIODIC]
+    }
+
+    def """
+        the logs of a recovered journal
+        keep all their fields
+        """() {
+        given:
+        def journal = new AccessLogJournal(directory, EVERY_BATCH)
+        def detailed = new AccessLog("1-ABC-123", LICENSE_PLATE, IN, LocalDateTime.parse("2025-06-01T08:00:00"), false, "camera",
+                "1ABC123", "unknownPlate", [lane: 2])
+
+        when:
+        journal.append("site-a", detailed)
+        journal.close()
+        def recovered = new AccessLogJournal(directory, EVERY_BATCH).withCloseable { it.recovered[0].accessLog }
+
+        then:
+        with(recovered) {
+            userId == "1-ABC-123"
+            userIdType == LICENSE_PLATE
+            way == IN
+            at == detailed.at
+            !granted
+            identificationMethod == "camera"
+            identificationValue == "1ABC123"
+            reason == "unknownPlate"
+            attributes == [lane: 2]
+        }
+    }
+
+    def """
+        a segment whose logs are all acknowledged
+        is deleted
+        """() {
+        given:
+        def journal = new AccessLogJournal(directory, EVERY_BATCH, 1000, 1024)
+
+        when:
+        def sequences = (1..40).collect { journal.append("site-a", log("$it")) }
+
+        then:
+        segments() > 2
+
+        when:
+        journal.acknowledge(sequences as long[])
+        journal.append("site-a", log("41"))
+
+        then:
+        segments() == 1
+        journal.pendingCount == 1
+
+        cleanup:
+        journal.close()
+    }
+
+    def """
+        a record that was not completely written
+        is ignored, with what follows it
+        """() {
+        given:
+        def journal = new AccessLogJournal(directory, EVERY_BATCH)
+        journal.append("site-a", log("1"))
+        journal.append("site-a", log("2"))
+        journal.close()
+        def segment = Files.list(directory).withCloseable { it.findFirst().get() }
+        FileChannel.open(segment, WRITE).withCloseable { it.truncate(it.size() - 3) }
+
+        when:
+        def reopened = new AccessLogJournal(directory, EVERY_BATCH)
+
+        then:
+        reopened.recovered*.accessLog*.userId == ["1"]
+
+        cleanup:
+        reopened.close()
+    }
+
+    def """
+        acknowledge()
+        ignores the unknown and already acknowledged logs
+        """() {
+        given:
+        def journal = new AccessLogJournal(directory, EVERY_ENTRY)
+        def sequence = journal.append("site-a", log("1"))
+
+        when:
+        journal.acknowledge(sequence, sequence, 1_000_000L)
+        journal.acknowledge(sequence)
+
+        then:
+        journal.pendingCount == 0
+
+        cleanup:
+        journal.close()
+    }
+
+    def """
+        a directory holding a file that is not a journal segment
+        cannot be opened
+        """() {
+        given:
+        Files.write(directory.resolve("access-logs-0000000000000000000.journal"), "not a journal".bytes)
+
+        when:
+        new AccessLogJournal(directory, EVERY_BATCH)
+
+        then:
+        thrown(IOException)
+    }
+
+    def """
+        append()
+        on a closed journal
+        throws an exception
+        """() {
+        given:
+        def journal = new AccessLogJournal(directory, EVERY_BATCH)
+        journal.close()
+
+        when:
+        journal.append("site-a", log("1"))
+
+        then:
+        thrown(IllegalStateException)
+    }
+}
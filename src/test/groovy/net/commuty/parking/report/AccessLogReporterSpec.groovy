@@ -0,0 +1,231 @@
+package net.commuty.parking.report
+
+import net.commuty.parking.ParkingAccess
+import net.commuty.parking.http.HttpClientException
+import net.commuty.parking.http.HttpRequestException
+import net.commuty.parking.model.AccessLog
+import spock.lang.Specification
+import spock.lang.TempDir
+import spock.util.concurrent.PollingConditions
+
+import java.nio.file.Path
+import java.time.LocalDateTime
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.LongAdder
+
+import static net.commuty.parking.model.AccessLog.createInAccessLog
+import static net.commuty.parking.model.UserId.fromBadgeNumber
+import static net.commuty.parking.report.AccessLogJournal.SyncPolicy.EVERY_BATCH
+
+class AccessLogReporterSpec extends Specification {
+
+    ParkingAccess client = Mock()
+    AccessLogReporter.Listener listener = Mock()
+
+    @TempDir
+    Path directory
+
+    def log(String badge) {
+        return createInAccessLog(fromBadgeNumber(badge), LocalDateTime.parse("2025-06-01T08:00:00"))
+    }
+
+    def """
+        submit()
+        sends a batch as soon as it is full, and the rest on close()
+        """() {
+        given:
+        def reporter = new AccessLogReporter(client, 3, 60_000, 100, listener)
+
+        when:
+        7.times { reporter.submit("site-a", log("badge-$it")) }
+        reporter.close()
+
+        then:
+        2 * client.reportAccessLog("site-a", { it.size() == 3 }) >> "log-id"
+        1 * client.reportAccessLog("site-a", { it.size() == 1 }) >> "last-log-id"
+        2 * listener.onSent("site-a", _, "log-id")
+        1 * listener.onSent("site-a", { it*.userId == ["badge-6"] }, "last-log-id")
+        reporter.sentCount == 7
+    }
+
+    def """
+        submit()
+        groups the logs by parking site
+        """() {
+        given:
+        def reporter = new AccessLogReporter(client, 10, 60_000, 100, listener)
+
+        when:
+        reporter.submit("site-a", log("1"))
+        reporter.submit("site-b", log("2"))
+        reporter.submit("site-a", log("3"))
+        reporter.close()
+
+        then:
+        1 * client.reportAccessLog("site-a", { it*.userId == ["1", "3"] }) >> "log-a"
+        1 * client.reportAccessLog("site-b", { it*.userId == ["2"] }) >> "log-b"
+    }
+
+    def """
+        submit()
+        sends the logs after maxDelayInMs, even if the batch is not full
+        """() {
+        given:
+        def reporter = new AccessLogReporter(client, 10, 100, 100, listener)
+        def conditions = new PollingConditions(timeout: 5)
+
+        when:
+        reporter.submit("site-a", log("1"))
+
+        then:
+        conditions.eventually {
+            assert reporter.sentCount == 1
+        }
+        1 * client.reportAccessLog("site-a", _) >> "log-id"
+
+        cleanup:
+        reporter.close()
+    }
+
+    def """
+        a batch that cannot be sent
+        is given to the listener
+        """() {
+        given:
+        def reporter = new AccessLogReporter(client, 10, 60_000, 100, listener)
+
+        when:
+        reporter.submit("site-a", log("1"))
+        reporter.close()
+
+        then:
+        1 * client.reportAccessLog("site-a", _) >> { throw new HttpClientException(new IOException("unreachable")) }
+        1 * listener.onFailure("site-a", { it*.userId == ["1"] }, { it instanceof HttpClientException })
+        reporter.failedCount == 1
+        reporter.sentCount == 0
+    }
+
+    def """
+        submit()
+        when the reporter is full or closed
+        rejects the log
+        """() {
+        given:
+        def sending = new CountDownLatch(1)
+        def release = new CountDownLatch(1)
+        client.reportAccessLog(*_) >> { sending.countDown(); release.await(); "log-id" }
+        def reporter = new AccessLogReporter(client, 1, 0, 2, listener)
+
+        when:
+        reporter.submit("site-a", log("1"))
+        sending.await()
+        def accepted = [reporter.submit("site-a", log("2")), reporter.submit("site-a", log("3")), reporter.submit("site-a", log("4"))]
+        release.countDown()
+        reporter.close()
+
+        then:
+        accepted == [true, true, false]
+        !reporter.submit("site-a", log("5"))
+        reporter.rejectedCount == 2
+        reporter.sentCount == 3
+    }
+
+    def """
+        with a journal
+        the logs that were not sent before the restart are sent first, in batches
+        """() {
+        given:
+        def previous = new AccessLogJournal(directory, EVERY_BATCH)
+        3.times { previous.append("site-a", log("old-$it")) }
+        previous.close()
+        def journal = new AccessLogJournal(directory, EVERY_BATCH)
+
+        when:
+        def reporter = new AccessLogReporter(client, 2, 60_000, 100, journal, listener)
+        reporter.submit("site-a", log("new"))
+        reporter.close()
+
+        then:
+        1 * client.reportAccessLog("site-a", { it*.userId == ["old-0", "old-1"] }) >> "log-1"
+        1 * client.reportAccessLog("site-a", { it*.userId == ["old-2", "new"] }) >> "log-2"
+        journal.pendingCount == 0
+
+        cleanup:
+        journal.close()
+    }
+
+    def """
+        with a journal
+        a batch that cannot be sent is kept in the journal, unless the api rejected it
+        """() {
+        given:
+        def journal = new AccessLogJournal(directory, EVERY_BATCH)
+
+        when:
+        def reporter = new AccessLogReporter(client, 10, 60_000, 100, journal, listener)
+        reporter.submit("site-a", log("1"))
+        reporter.submit("site-b", log("2"))
+        reporter.close()
+        journal.close()
+        def reopened = new AccessLogJournal(directory, EVERY_BATCH)
+
+        then:
+        1 * client.reportAccessLog("site-a", _) >> { throw new HttpClientException(new IOException("unreachable")) }
+        1 * client.reportAccessLog("site-b", _) >> { throw new HttpRequestException(400, null) }
+        reopened.recovered*.parkingSiteId == ["site-a"]
+        reopened.recovered*.accessLog*.userId == ["1"]
+
+        cleanup:
+        reopened.close()
+    }
+
+    def """
+        new AccessLogReporter()
+        with invalid settings
+        throws an exception
+        """() {
+        when:
+        new AccessLogReporter(client, maxBatchSize, maxDelayInMs, capacity, listener)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        maxBatchSize | maxDelayInMs | capacity
+        0            | 1000         | 100
+        10           | -1           | 100
+        10           | 1000         | 0
+    }
+
+    def """
+        submit()
+        concurrently with close()
+        sends every log it accepted
+        """() {
+        given:
+        def reporter = new AccessLogReporter(client, 50, 60_000, 100_000, listener)
+        def accepted = new LongAdder()
+        def start = new CountDownLatch(1)
+        def threads = (1..4).collect { thread ->
+            Thread.start {
+                start.await()
+                2000.times {
+                    if (reporter.submit("site-a", log("$thread-$it"))) {
+                        accepted.increment()
+                    }
+                }
+            }
+        }
+
+        when:
+        start.countDown()
+        Thread.sleep(1)
+        reporter.close()
+        threads*.join()
+
+        then:
+        _ * client.reportAccessLog("site-a", _) >> "log-id"
+        reporter.sentCount == accepted.sum()
+        reporter.rejectedCount == 8000 - accepted.sum()
+    }
+}
@@ -0,0 +1,149 @@
+package net.commuty.parking.report
+
+import net.commuty.parking.ParkingAccess
+import net.commuty.parking.http.HttpClientException
+import net.commuty.parking.model.ApplicationLog
+import spock.lang.Specification
+
+import java.time.LocalDateTime
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.LongAdder
+
+import static net.commuty.parking.model.ApplicationLogLevel.ERROR
+import static net.commuty.parking.model.ApplicationLogLevel.INFO
+import static net.commuty.parking.model.ApplicationLogLevel.WARN
+
+class ApplicationLogShipperSpec extends Specification {
+
+    ParkingAccess client = Mock()
+
+    def log(level, String type, String message) {
+        return new ApplicationLog(LocalDateTime.parse("2025-06-01T08:00:00"), level, type, message, "gate-controller-1", null)
+    }
+
+    def """
+        submit()
+        sends the logs from the minimum level
+        """() {
+        given:
+        def shipper = new ApplicationLogShipper(client, WARN, 100, 10, 0)
+
+        when:
+        def accepted = [shipper.submit(log(INFO, "sync", "routine")), shipper.submit(log(WARN, "sync", "slow")),
+                        shipper.submit(log(ERROR, "sync", "failed"))]
+        shipper.close()
+
+        then:
+        accepted == [false, true, true]
+        1 * client.reportApplicationLog({ it.message == "slow" }) >> UUID.randomUUID()
+        1 * client.reportApplicationLog({ it.message == "failed" }) >> UUID.randomUUID()
+        0 * client.reportApplicationLog(_)
+        shipper.sentCount == 2
+    }
+
+    def """
+        the same log, repeated within the collapse window
+        is sent once, then once more with the number of repeats
+        """() {
+        given:
+        def shipper = new ApplicationLogShipper(client, INFO, 100, 10, 60_000)
+
+        when:
+        5.times { shipper.submit(log(ERROR, "barrier", "The barrier does not open")) }
+        shipper.submit(log(ERROR, "barrier", "The barrier does not close"))
+        shipper.close()
+
+        then:
+        1 * client.reportApplicationLog({ it.message == "The barrier does not open" && it.context == null })
+        1 * client.reportApplicationLog({ it.message == "The barrier does not open" && it.context == [repeated: 4] })
+        1 * client.reportApplicationLog({ it.message == "The barrier does not close" })
+        0 * client.reportApplicationLog(_)
+        shipper.collapsedCount == 4
+    }
+
+    def """
+        the logs of a type over maxLogsPerMinute
+        are dropped, and counted in the context of the next log of this type
+        """() {
+        given:
+        def shipper = new ApplicationLogShipper(client, INFO, 100, 2, 0)
+
+        when:
+        5.times { shipper.submit(log(WARN, "sensor", "Sensor $it does not answer")) }
+        shipper.submit(log(WARN, "camera", "Camera 1 does not answer"))
+        shipper.close()
+
+        then:
+        2 * client.reportApplicationLog({ it.type == "sensor" })
+        1 * client.reportApplicationLog({ it.type == "camera" })
+        shipper.suppressedCount == 3
+    }
+
+    def """
+        a log that cannot be sent
+        is counted as failed
+        """() {
+        given:
+        def shipper = new ApplicationLogShipper(client, INFO, 100, 10, 0)
+
+        when:
+        shipper.submit(log(ERROR, "sync", "failed"))
+        shipper.close()
+
+        then:
+        1 * client.reportApplicationLog(_) >> { throw new HttpClientException(new IOException("unreachable")) }
+        shipper.failedCount == 1
+        !shipper.submit(log(ERROR, "sync", "failed"))
+        shipper.rejectedCount == 1
+    }
+
+    def """
+        new ApplicationLogShipper()
+        with invalid settings
+        throws an exception
+        """() {
+        when:
+        new ApplicationLogShipper(client, WARN, capacity, maxLogsPerMinute, collapseWindowInMs)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        capacity | maxLogsPerMinute | collapseWindowInMs
+        0        | 10               | 1000
+        100      | 0                | 1000
+        100      | 10               | -1
+    }
+
+    def """
+        submit()
+        concurrently with close()
+        sends every log it accepted
+        """() {
+        given:
+        def shipper = new ApplicationLogShipper(client, INFO, 100_000, Integer.MAX_VALUE, 0)
+        def accepted = new LongAdder()
+        def start = new CountDownLatch(1)
+        def threads = (1..4).collect { thread ->
+            Thread.start {
+                start.await()
+                2000.times {
+                    if (shipper.submit(log(ERROR, "sync", "$thread-$it"))) {
+                        accepted.increment()
+                    }
+                }
+            }
+        }
+
+        when:
+        start.countDown()
+        Thread.sleep(1)
+        shipper.close()
+        threads*.join()
+
+        then:
+        _ * client.reportApplicationLog(_) >> { UUID.randomUUID() }
+        shipper.sentCount == accepted.sum()
+        shipper.rejectedCount == 8000 - accepted.sum()
+    }
+}
@@ -0,0 +1,147 @@
+package net.commuty.parking.report
+
+import net.commuty.parking.ParkingAccess
+import net.commuty.parking.http.HttpClientException
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.LongAdder
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS
+import static net.commuty.parking.model.UserId.fromBadgeNumber
+import static net.commuty.parking.model.UserId.fromLicensePlate
+
+class MissingUserIdReporterSpec extends Specification {
+
+    long now = 0
+    ParkingAccess client = Mock()
+    MissingUserIdReporter reporter = new MissingUserIdReporter(client, 60_000, 100, 100, { now })
+
+    def cleanup() {
+        reporter.close()
+    }
+
+    def """
+        report()
+        sends a user once per window
+        """() {
+        when:
+        def reported = [reporter.report(fromBadgeNumber("1234")), reporter.report(fromBadgeNumber("1234")),
+                        reporter.report(fromLicensePlate("1-abc 123")), reporter.report(fromLicensePlate("1-ABC123"))]
+        now += MILLISECONDS.toNanos(60_000)
+        reported << reporter.report(fromBadgeNumber("1234"))
+        reporter.close()
+
+        then:
+        reported == [true, false, true, false, true]
+        2 * client.reportMissingUserId(fromBadgeNumber("1234"))
+        1 * client.reportMissingUserId(fromLicensePlate("1-abc 123"))
+        0 * client.reportMissingUserId(_)
+        reporter.suppressedCount == 2
+        reporter.sentCount == 3
+    }
+
+    def """
+        report()
+        forgets the oldest users first
+        """() {
+        given:
+        def small = new MissingUserIdReporter(client, 60_000, 2, 100, { now })
+
+        when:
+        def reported = ["1", "2", "3", "1"].collect { small.report(fromBadgeNumber(it)) }
+        small.close()
+
+        then:
+        reported == [true, true, true, true]
+    }
+
+    def """
+        a user that could not be reported
+        is reported again at its next presentation
+        """() {
+        given:
+        def conditions = new PollingConditions(timeout: 5)
+
+        when:
+        reporter.report(fromBadgeNumber("1234"))
+
+        then:
+        conditions.eventually {
+            assert reporter.failedCount == 1
+        }
+        1 * client.reportMissingUserId(_) >> { throw new HttpClientException(new IOException("unreachable")) }
+
+        when:
+        def reported = reporter.report(fromBadgeNumber("1234"))
+        reporter.close()
+
+        then:
+        reported
+        1 * client.reportMissingUserId(fromBadgeNumber("1234"))
+    }
+
+    def """
+        report()
+        once the reporter is closed
+        rejects the user
+        """() {
+        when:
+        reporter.close()
+
+        then:
+        !reporter.report(fromBadgeNumber("1234"))
+        reporter.rejectedCount == 1
+    }
+
+    def """
+        new MissingUserIdReporter()
+        with invalid settings
+        throws an exception
+        """() {
+        when:
+        new MissingUserIdReporter(client, windowInMs, maxSize, capacity)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        windowInMs | maxSize | capacity
+        0          | 100     | 100
+        60_000     | 0       | 100
+        60_000     | 100     | 0
+    }
+
+    def """
+        report()
+        concurrently with close()
+        sends every user it accepted
+        """() {
+        given:
+        reporter.close()
+        reporter = new MissingUserIdReporter(client, 60_000, 100_000, 100_000, { now })
+        def accepted = new LongAdder()
+        def start = new CountDownLatch(1)
+        def threads = (1..4).collect { thread ->
+            Thread.start {
+                start.await()
+                2000.times {
+                    if (reporter.report(fromBadgeNumber("$thread-$it"))) {
+                        accepted.increment()
+                    }
+                }
+            }
+        }
+
+        when:
+        start.countDown()
+        Thread.sleep(1)
+        reporter.close()
+        threads*.join()
+
+        then:
+        reporter.sentCount == accepted.sum()
+        reporter.rejectedCount == 8000 - accepted.sum()
+    }
+}
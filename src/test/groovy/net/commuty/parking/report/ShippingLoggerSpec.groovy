@@ -0,0 +1,84 @@
+package net.commuty.parking.report
+
+import net.commuty.parking.ParkingAccess
+import org.slf4j.Logger
+import org.slf4j.MarkerFactory
+import spock.lang.Specification
+
+import static net.commuty.parking.model.ApplicationLogLevel.ERROR
+import static net.commuty.parking.model.ApplicationLogLevel.WARN
+
+class ShippingLoggerSpec extends Specification {
+
+    ParkingAccess client = Mock()
+    Logger delegate = Mock() {
+        getName() >> "net.commuty.gate.BarrierController"
+    }
+    ApplicationLogShipper shipper = new ApplicationLogShipper(client, WARN, 100, 10, 0)
+    ShippingLogger logger = new ShippingLogger(delegate, shipper, "gate-controller-1")
+
+    def """
+        a log from the level of the shipper
+        is written to the delegate, and sent
+        """() {
+        given:
+        def failure = new IllegalStateException("jammed")
+
+        when:
+        logger.error("The barrier of lane {} does not open", 2, failure)
+        shipper.close()
+
+        then:
+        1 * delegate.error(null, "The barrier of lane {} does not open", [2, failure] as Object[])
+        1 * client.reportApplicationLog({
+            it.level == ERROR &&
+                    it.type == "BarrierController" &&
+                    it.message == "The barrier of lane 2 does not open" &&
+                    it.applicationId == "gate-controller-1" &&
+                    it.context == [logger: "net.commuty.gate.BarrierController", exception: "java.lang.IllegalStateException: jammed"]
+        })
+    }
+
+    def """
+        the marker of a log
+        is the type of the sent log
+        """() {
+        when:
+        logger.warn(MarkerFactory.getMarker("barrier-failure"), "The barrier is slow")
+        shipper.close()
+
+        then:
+        1 * client.reportApplicationLog({ it.type == "barrier-failure" && it.level == WARN })
+    }
+
+    def """
+        a log below the level of the shipper
+        is only written to the delegate
+        """() {
+        given:
+        delegate.isInfoEnabled() >> true
+
+        when:
+        logger.info("Lane {} polled", 2)
+        shipper.close()
+
+        then:
+        1 * delegate.info(null, "Lane {} polled", [2] as Object[])
+        0 * client.reportApplicationLog(_)
+    }
+
+    def """
+        isEnabled()
+        is true for the levels of the delegate and of the shipper
+        """() {
+        given:
+        delegate.isDebugEnabled() >> false
+        delegate.isInfoEnabled() >> false
+
+        expect:
+        !logger.debugEnabled
+        !logger.infoEnabled
+        logger.warnEnabled
+        logger.errorEnabled
+    }
+}
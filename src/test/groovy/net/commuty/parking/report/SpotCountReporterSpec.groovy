@@ -0,0 +1,154 @@
+package net.commuty.parking.report
+
+import net.commuty.parking.ParkingAccess
+import net.commuty.parking.http.HttpClientException
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+class SpotCountReporterSpec extends Specification {
+
+    ParkingAccess client = Mock()
+    PollingConditions conditions = new PollingConditions(timeout: 5)
+
+    def """
+        update()
+        sends only the latest count of each parking site
+        """() {
+        given:
+        def reporter = new SpotCountReporter(client, 60_000, 0)
+
+        when:
+        reporter.update("site-a", 10, 300)
+        conditions.eventually {
+            assert reporter.sentCount == 1
+        }
+        (11..100).each { reporter.update("site-a", it, 300) }
+        reporter.update("site-b", 5, null)
+        reporter.close()
+
+        then:
+        1 * client.reportAvailableSpotCount("site-a", 10, 300)
+        1 * client.reportAvailableSpotCount("site-a", 100, 300)
+        1 * client.reportAvailableSpotCount("site-b", 5, null)
+        0 * client.reportAvailableSpotCount(*_)
+    }
+
+    def """
+        update()
+        sends a change once per interval, and nothing if the count did not change
+        """() {
+        given:
+        def reporter = new SpotCountReporter(client, 100, 0)
+
+        when:
+        reporter.update("site-a", 10, 300)
+        reporter.update("site-a", 12, 300)
+        conditions.eventually {
+            assert reporter.sentCount == 1
+        }
+        reporter.update("site-a", 20, 300)
+        conditions.eventually {
+            assert reporter.sentCount == 2
+        }
+        reporter.update("site-a", 20, 300)
+        Thread.sleep(300)
+
+        then:
+        reporter.sentCount == 2
+        1 * client.reportAvailableSpotCount("site-a", 20, 300)
+
+        cleanup:
+        reporter.close()
+    }
+
+    def """
+        a change of more than the threshold
+        is sent without waiting for the interval
+        """() {
+        given:
+        def reporter = new SpotCountReporter(client, 60_000, 10)
+
+        when:
+        reporter.update("site-a", 100, 300)
+        conditions.eventually {
+            assert reporter.sentCount == 1
+        }
+        reporter.update("site-a", 95, 300)
+        reporter.update("site-a", 89, 300)
+
+        then:
+        conditions.eventually {
+            assert reporter.sentCount == 2
+        }
+        1 * client.reportAvailableSpotCount("site-a", 89, 300)
+
+        cleanup:
+        reporter.close()
+    }
+
+    def """
+        successive changes of more than the threshold
+        are each sent without waiting for the interval
+        """() {
+        given:
+        def reporter = new SpotCountReporter(client, 60_000, 10)
+        reporter.update("site-a", 100, 300)
+        conditions.eventually {
+            assert reporter.sentCount == 1
+        }
+
+        when:
+        reporter.update("site-a", 89, 300)
+        conditions.eventually {
+            assert reporter.sentCount == 2
+        }
+        reporter.update("site-a", 78, 300)
+
+        then:
+        conditions.eventually {
+            assert reporter.sentCount == 3
+        }
+        1 * client.reportAvailableSpotCount("site-a", 89, 300)
+        1 * client.reportAvailableSpotCount("site-a", 78, 300)
+
+        cleanup:
+        reporter.close()
+    }
+
+    def """
+        a count that could not be sent
+        is sent again
+        """() {
+        given:
+        def reporter = new SpotCountReporter(client, 60_000, 0)
+
+        when:
+        reporter.update("site-a", 10, 300)
+        conditions.eventually {
+            assert reporter.failedCount == 1
+        }
+        reporter.close()
+
+        then:
+        1 * client.reportAvailableSpotCount("site-a", 10, 300) >> { throw new HttpClientException(new IOException("unreachable")) }
+        1 * client.reportAvailableSpotCount("site-a", 10, 300)
+        reporter.sentCount == 1
+    }
+
+    def """
+        new SpotCountReporter()
+        with invalid settings
+        throws an exception
+        """() {
+        when:
+        new SpotCountReporter(client, intervalInMs, threshold)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        intervalInMs | threshold
+        0            | 0
+        1000         | -1
+    }
+}
@@ -0,0 +1,217 @@
+package net.commuty.parking.rest
+
+import groovy.json.JsonSlurper
+import net.commuty.parking.http.HttpClient
+import net.commuty.parking.http.HttpRequestException
+import net.commuty.parking.http.HttpTransport
+import net.commuty.parking.http.TransportRequest
+import net.commuty.parking.http.TransportResponse
+import net.commuty.parking.model.AccessLog
+import net.commuty.parking.model.AccessRight
+import net.commuty.parking.model.UserId
+import spock.lang.Shared
+import spock.lang.Specification
+
+import java.time.LocalDateTime
+import java.util.zip.GZIPInputStream
+import java.util.zip.GZIPOutputStream
+
+import static java.net.HttpURLConnection.HTTP_BAD_REQUEST
+import static java.net.HttpURLConnection.HTTP_CREATED
+import static java.net.HttpURLConnection.HTTP_OK
+import static java.util.Collections.emptyMap
+
+class HttpClientCompressionSpec extends Specification {
+
+    @Shared
+    JsonSlurper reader = new JsonSlurper()
+
+    @Shared
+    URL host = new URL("http://localhost")
+
+    RecordingTransport transport = new RecordingTransport()
+
+    def """
+        makePostRequest(small payload)
+        compression disabled
+        does not ask for nor send gzip
+        """() {
+        given:
+        def client = new HttpClient(host, JsonMapper.create(), transport)
+        transport.respond(HTTP_CREATED, '{"logId": "a-valid-log-id"}', false)
+
+        when:
+        def response = client.makePostRequest("/v2/parking-sites/a-site/access-logs", "atoken", accessLogs(1), AccessLogResponse)
+
+        then:
+        response.logId == "a-valid-log-id"
+        !transport.request.headers.containsKey("Accept-Encoding")
+        !transport.request.headers.containsKey("Content-Encoding")
+        reader.parse(transport.sentBody).accesses.size() == 1
+    }
+
+    def """
+        makePostRequest(payload smaller than the threshold)
+        compression enabled
+        asks for gzip but sends the payload as is
+        """() {
+        given:
+        def client = new HttpClient(host, JsonMapper.create(), transport, true, 1024)
+        transport.respond(HTTP_CREATED, '{"logId": "a-valid-log-id"}', false)
+
+        when:
+        def response = client.makePostRequest("/v2/parking-sites/a-site/access-logs", "atoken", accessLogs(1), AccessLogResponse)
+
+        then:
+        response.logId == "a-valid-log-id"
+        transport.request.headers["Accept-Encoding"] == "gzip"
+        !transport.request.headers.containsKey("Content-Encoding")
+        reader.parse(transport.sentBody).accesses.size() == 1
+    }
+
+    def """
+        makePostRequest(payload larger than the threshold)
+        compression enabled
+        sends a gzipped payload, at least 5 times smaller than the JSON
+        """() {
+        given:
+        def client = new HttpClient(host, JsonMapper.create(), transport, true, 1024)
+        transport.respond(HTTP_CREATED, '{"logId": "a-valid-log-id"}', false)
+        def request = accessLogs(1000)
+
+        when:
+        def response = client.makePostRequest("/v2/parking-sites/a-site/access-logs", "atoken", request, AccessLogResponse)
+
+        then:
+        response.logId == "a-valid-log-id"
+        transport.request.headers["Content-Encoding"] == "gzip"
+        def json = new GZIPInputStream(new ByteArrayInputStream(transport.sentBody)).bytes
+        reader.parse(json).accesses.size() == 1000
+        transport.sentBody.length * 5 < json.length
+    }
+
+    def """
+        makePostRequest(payload larger than the initial buffer)
+        compression enabled with a huge threshold
+        grows the buffer with the payload and sends it as is
+        """() {
+        given:
+        def client = new HttpClient(host, JsonMapper.create(), transport, true, Integer.MAX_VALUE)
+        transport.respond(HTTP_CREATED, '{"logId": "a-valid-log-id"}', false)
+
+        when:
+        def response = client.makePostRequest("/v2/parking-sites/a-site/access-logs", "atoken", accessLogs(1000), AccessLogResponse)
+
+        then:
+        response.logId == "a-valid-log-id"
+        !transport.request.headers.containsKey("Content-Encoding")
+        reader.parse(transport.sentBody).accesses.size() == 1000
+    }
+
+    def """
+        makeGetRequest()
+        the api gzipped the response
+        inflates the response
+        """() {
+        given:
+        def client = new HttpClient(host, JsonMapper.create(), transport, true, 1024)
+        transport.respond(HTTP_OK, accessRights(1000), true)
+
+        when:
+        def response = client.makeGetRequest("/v2/access-rights", "atoken", emptyMap(), AccessRightResponse)
+
+        then:
+        response.accessRights.size() == 1000
+        response.accessRights.first().userIds.first().id == "anonymised.0@commuty.net"
+    }
+
+    def """
+        makeGetStreamRequest()
+        the api gzipped the response
+        inflates the response
+        """() {
+        given:
+        def client = new HttpClient(host, JsonMapper.create(), transport, true, 1024)
+        transport.respond(HTTP_OK, accessRights(1000), true)
+
+        when:
+        def count = client.makeGetStreamRequest("/v2/access-rights", "atoken", emptyMap(), AccessRightResponse.ACCESS_RIGHTS_FIELD, AccessRight)
+                .withCloseable { it.count() }
+
+        then:
+        count == 1000
+    }
+
+    def """
+        makeGetRequest()
+        the api gzipped an error
+        inflates the error
+        """() {
+        given:
+        def client = new HttpClient(host, JsonMapper.create(), transport, true, 1024)
+        transport.respond(HTTP_BAD_REQUEST, '{"reason": "bad", "message": "a message"}', true)
+
+        when:
+        client.makeGetRequest("/v2/access-rights", "atoken", emptyMap(), AccessRightResponse)
+
+        then:
+        def exception = thrown(HttpRequestException)
+        exception.httpResponseCode == HTTP_BAD_REQUEST
+        exception.errorResponse.reason == "bad"
+    }
+
+    private static AccessLogRequest accessLogs(int size) {
+        new AccessLogRequest((1..size).collect {
+            AccessLog.createInAccessLog(UserId.fromBadgeNumber("${100000 + it}"), LocalDateTime.of(2019, 10, 10, 13, 37, 0).plusSeconds(it))
+        })
+    }
+
+    private static String accessRights(int size) {
+        def rights = (0..<size).collect {
+            """{"userIds": [{"id": "anonymised.${it}@commuty.net", "type": "email"}],
+                "parkingSiteId": "d59b4606-cd94-4d1c-9a30-cfc3a4bf70f4",
+                "granted": true,
+                "startTime": "2019-11-29T00:00:00+01:00",
+                "endTime": "2019-11-30T00:00:00+01:00"}"""
+        }
+        """{"accessRights": [${rights.join(",")}]}"""
+    }
+
+    static class RecordingTransport implements HttpTransport {
+
+        TransportRequest request
+        byte[] sentBody
+        int status
+        byte[] responseBody
+        boolean gzipped
+
+        void respond(int status, String body, boolean gzipped) {
+            this.status = status
+            this.gzipped = gzipped
+            def bytes = body.getBytes("UTF-8")
+            if (gzipped) {
+                def buffer = new ByteArrayOutputStream()
+                new GZIPOutputStream(buffer).withCloseable { it.write(bytes) }
+                bytes = buffer.toByteArray()
+            }
+            this.responseBody = bytes
+        }
+
+        @Override
+        TransportResponse send(TransportRequest request) throws IOException {
+            this.request = request
+            if (request.hasBody()) {
+                def buffer = new ByteArrayOutputStream()
+                request.body.writeTo(buffer)
+                sentBody = buffer.toByteArray()
+            }
+            def body = new ByteArrayInputStream(responseBody)
+            return [
+                    getStatusCode: { status },
+                    getHeader    : { String name -> name == "Content-Encoding" && gzipped ? "gzip" : null },
+                    getBody      : { body },
+                    close        : { body.close() }
+            ] as TransportResponse
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package net.commuty.parking.rest
+
+import net.commuty.parking.Configuration
+import net.commuty.parking.ParkingAccessAsync
+import net.commuty.parking.http.CredentialsException
+import net.commuty.parking.http.HttpClientException
+import net.commuty.parking.http.HttpRequestException
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+
+import static java.net.HttpURLConnection.HTTP_INTERNAL_ERROR
+import static java.net.HttpURLConnection.HTTP_OK
+import static net.commuty.parking.model.UserId.fromBadgeNumber
+import static org.mockserver.matchers.Times.exactly
+import static org.mockserver.model.HttpRequest.request
+import static org.mockserver.model.HttpResponse.response
+import static org.mockserver.verify.VerificationTimes.once
+
+class ParkingAccessAsyncSpec extends RestWithAuthSpec {
+
+    ParkingAccessAsync asyncClient
+
+    def validParkingSite = "parking-site"
+    def validUser = fromBadgeNumber("1234")
+
+    def setup() {
+        asyncClient = Configuration.Builder.create()
+                .withCredentials("dummy", "dummy")
+                .withRetryStrategy(2, 10)
+                .withTimeout(5000, 5000)
+                .withHost("http://localhost:${mockServer.getLocalPort()}")
+                .build().toAsyncClient()
+    }
+
+    def cleanup() {
+        asyncClient.close()
+    }
+
+    def mockVerificationRoutes() {
+        mockServer.when(
+                request()
+                        .withMethod("POST")
+                        .withPath("/v2/parking-sites/${validParkingSite}/access-requests")
+                        .withHeader("Authorization", tokenHeader)
+        ).respond(
+                response('{"granted":true}')
+                        .withStatusCode(HTTP_OK)
+        )
+    }
+
+    def """
+        #isGranted(null parking site id, valid userId)
+        throws an exception
+        """() {
+        when:
+        asyncClient.isGranted(null, validUser)
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    def """
+        #isGranted(known parking site, known user)
+        completes with true
+        """() {
+        given:
+        mockVerificationRoutes()
+
+        when:
+        def isGranted = asyncClient.isGranted(validParkingSite, validUser).get()
+
+        then:
+        isGranted
+    }
+
+    def """
+        #isGranted(known parking site, known user)
+        client closed while the call is in flight
+        completes the call
+        """() {
+        given:
+        mockVerificationRoutes()
+
+        when:
+        def granted = asyncClient.isGranted(validParkingSite, validUser)
+        asyncClient.close()
+
+        then:
+        granted.get()
+    }
+
+    def """
+        #isGranted(known parking site, known user)
+        many calls in flight
+        authenticates once and completes every call
+        """() {
+        given:
+        mockVerificationRoutes()
+        asyncClient.authenticate().get()
+
+        when:
+        def futures = (1..50).collect { asyncClient.isGranted(validParkingSite, validUser) }
+        CompletableFuture.allOf(futures as CompletableFuture[]).get()
+
+        then:
+        futures.every { it.get() }
+        mockServer.verify(
+                request()
+                        .withMethod("POST")
+                        .withPath("/v2/token-requests"),
+                once()
+        )
+    }
+
+    def """
+        #isGranted(known parking site, known user)
+        token is invalid (expired) then refreshed
+        completes with true
+        """() {
+        given:
+        mockVerificationRoutes()
+        authReturnsExpiredTokenOnceThenValidToken()
+
+        when:
+        def isGranted = asyncClient.isGranted(validParkingSite, validUser).get()
+
+        then:
+        isGranted
+    }
+
+    def """
+        #isGranted(known parking site, known user)
+        api fails once then recovers
+        retries and completes with true
+        """() {
+        given:
+        mockServer.when(
+                request()
+                        .withMethod("POST")
+                        .withPath("/v2/parking-sites/${validParkingSite}/access-requests"),
+                exactly(1)
+        ).respond(
+                response()
+                        .withStatusCode(HTTP_INTERNAL_ERROR)
+        )
+        mockVerificationRoutes()
+
+        when:
+        def isGranted = asyncClient.isGranted(validParkingSite, validUser).get()
+
+        then:
+        isGranted
+    }
+
+    def """
+        #isGranted(known parking site, known user)
+        api is broken
+        completes exceptionally once the retries are over
+        """() {
+        given:
+        mockServer.when(
+                request()
+                        .withMethod("POST")
+                        .withPath("/v2/parking-sites/${validParkingSite}/access-requests")
+        ).respond(
+                response()
+                        .withStatusCode(HTTP_INTERNAL_ERROR)
+        )
+
+        when:
+        asyncClient.isGranted(validParkingSite, validUser).get()
+
+        then:
+        def exception = thrown(ExecutionException)
+        exception.cause instanceof HttpRequestException
+        (exception.cause as HttpRequestException).httpResponseCode == HTTP_INTERNAL_ERROR
+    }
+
+    def """
+        #isGranted(known parking site, known user)
+        credentials are invalid
+        completes exceptionally
+        """() {
+        given:
+        authReturnsInvalidCredentials()
+
+        when:
+        asyncClient.isGranted(validParkingSite, validUser).get()
+
+        then:
+        def exception = thrown(ExecutionException)
+        exception.cause instanceof CredentialsException
+    }
+
+    def """
+        #isGranted(known parking site, known user)
+        Server is not reachable
+        completes exceptionally
+        """() {
+        given:
+        mockServer.stop()
+
+        when:
+        asyncClient.isGranted(validParkingSite, validUser).get()
+
+        then:
+        def exception = thrown(ExecutionException)
+        exception.cause instanceof HttpClientException
+    }
+}
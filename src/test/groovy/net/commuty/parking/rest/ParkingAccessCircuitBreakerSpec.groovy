@@ -0,0 +1,157 @@
+package net.commuty.parking.rest
+
+import net.commuty.parking.CircuitBreakerListener
+import net.commuty.parking.Configuration
+import net.commuty.parking.ParkingAccess
+import net.commuty.parking.http.CircuitBreakerOpenException
+import net.commuty.parking.http.HttpRequestException
+
+import static java.net.HttpURLConnection.HTTP_BAD_REQUEST
+import static java.net.HttpURLConnection.HTTP_INTERNAL_ERROR
+import static java.net.HttpURLConnection.HTTP_OK
+import static net.commuty.parking.CircuitBreakerListener.State.*
+import static net.commuty.parking.model.UserId.fromBadgeNumber
+import static net.commuty.parking.rest.ParkingAccessRestClient.ACCESS_REQUESTS_URL
+import static org.mockserver.model.HttpRequest.request
+import static org.mockserver.model.HttpResponse.response
+import static org.mockserver.verify.VerificationTimes.exactly
+
+class ParkingAccessCircuitBreakerSpec extends RestWithAuthSpec {
+
+    def validParkingSite = "parking-site"
+    def validUser = fromBadgeNumber("1234")
+    def transitions = Collections.synchronizedList([])
+    ParkingAccess client
+
+    def setup() {
+        client = Configuration.Builder.create()
+                .withCredentials("dummy", "dummy")
+                .withRetryStrategy(0, 0)
+                .withCircuitBreaker(50, 100, 60000, 4, 200)
+                .withCircuitBreakerListener({ endpoint, from, to -> transitions << [endpoint, from, to] } as CircuitBreakerListener)
+                .withHost("http://localhost:${mockServer.getLocalPort()}")
+                .build()
+                .toRestClient()
+    }
+
+    def verificationRequest() {
+        request()
+                .withMethod("POST")
+                .withPath("/v2/parking-sites/${validParkingSite}/access-requests")
+    }
+
+    def apiResponds(int status) {
+        mockServer.clear(verificationRequest())
+        mockServer.when(verificationRequest()).respond(
+                status == HTTP_OK ? response('{"granted":true}').withStatusCode(HTTP_OK) : response().withStatusCode(status)
+        )
+    }
+
+    def callIgnoringErrors(int times) {
+        (1..times).each {
+            try {
+                client.isGranted(validParkingSite, validUser)
+            } catch (HttpRequestException ignored) {
+            }
+        }
+    }
+
+    def """
+        #isGranted(known parking site, known user)
+        api keeps failing
+        opens the circuit and fails fast without calling the api
+        """() {
+        given:
+        apiResponds(HTTP_INTERNAL_ERROR)
+        callIgnoringErrors(4)
+
+        when:
+        client.isGranted(validParkingSite, validUser)
+
+        then:
+        def exception = thrown(CircuitBreakerOpenException)
+        exception.endpoint == ACCESS_REQUESTS_URL
+        mockServer.verify(verificationRequest(), exactly(4))
+        transitions == [[ACCESS_REQUESTS_URL, CLOSED, OPEN]]
+    }
+
+    def """
+        #isGranted(known parking site, known user)
+        api rejects invalid queries
+        keeps the circuit closed
+        """() {
+        given:
+        apiResponds(HTTP_BAD_REQUEST)
+        callIgnoringErrors(10)
+
+        expect:
+        mockServer.verify(verificationRequest(), exactly(10))
+        transitions.isEmpty()
+    }
+
+    def """
+        #isGranted(known parking site, known user)
+        api recovers while the circuit is open
+        closes the circuit once the probes succeed
+        """() {
+        given:
+        apiResponds(HTTP_INTERNAL_ERROR)
+        callIgnoringErrors(4)
+        apiResponds(HTTP_OK)
+        sleep(300)
+
+        when:
+        def results = (1..3).collect { client.isGranted(validParkingSite, validUser) }
+
+        then:
+        results.every()
+        transitions == [
+                [ACCESS_REQUESTS_URL, CLOSED, OPEN],
+                [ACCESS_REQUESTS_URL, OPEN, HALF_OPEN],
+                [ACCESS_REQUESTS_URL, HALF_OPEN, CLOSED]
+        ]
+    }
+
+    def """
+        #isGranted(known parking site, known user)
+        api still fails while the circuit is half open
+        opens the circuit again
+        """() {
+        given:
+        apiResponds(HTTP_INTERNAL_ERROR)
+        callIgnoringErrors(4)
+        sleep(300)
+
+        when:
+        callIgnoringErrors(3)
+        client.isGranted(validParkingSite, validUser)
+
+        then:
+        thrown(CircuitBreakerOpenException)
+        transitions.collect { it[2] } == [OPEN, HALF_OPEN, OPEN]
+    }
+
+    def """
+        #listParkingSpots(known parking site)
+        circuit of another endpoint is open
+        still calls the api
+        """() {
+        given:
+        apiResponds(HTTP_INTERNAL_ERROR)
+        callIgnoringErrors(4)
+        mockServer.when(
+                request()
+                        .withMethod("GET")
+                        .withPath("/v2/parking-sites/${validParkingSite}/parking-spots")
+        ).respond(
+                response('{"parkingSpots": []}')
+                        .withStatusCode(HTTP_OK)
+        )
+
+        when:
+        def spots = client.listParkingSpots(validParkingSite)
+
+        then:
+        spots.isEmpty()
+    }
+}
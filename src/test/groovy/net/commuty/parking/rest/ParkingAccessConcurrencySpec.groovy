@@ -0,0 +1,227 @@
+package net.commuty.parking.rest
+
+import net.commuty.parking.Configuration
+import net.commuty.parking.RequestScheduler
+
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+
+import static java.net.HttpURLConnection.HTTP_OK
+import static java.util.concurrent.TimeUnit.MILLISECONDS
+import static java.util.concurrent.TimeUnit.SECONDS
+import static net.commuty.parking.RequestScheduler.Priority.INTERACTIVE
+import static net.commuty.parking.RequestScheduler.Priority.LISTING
+import static net.commuty.parking.model.UserId.fromBadgeNumber
+import static org.mockserver.model.HttpRequest.request
+import static org.mockserver.model.HttpResponse.response
+import static org.mockserver.verify.VerificationTimes.exactly
+
+class ParkingAccessConcurrencySpec extends RestWithAuthSpec {
+
+    def validParkingSite = "parking-site"
+    def validUser = fromBadgeNumber("1234")
+
+    def mockVerificationRoutes() {
+        mockServer.when(
+                request()
+                        .withMethod("POST")
+                        .withPath("/v2/parking-sites/${validParkingSite}/access-requests")
+                        .withHeader("Authorization", tokenHeader)
+        ).respond(
+                response('{"granted":true}')
+                        .withStatusCode(HTTP_OK)
+        )
+    }
+
+    def runInParallel(int callers, Closure<Boolean> call) {
+        def pool = Executors.newFixedThreadPool(callers)
+        def start = new CountDownLatch(1)
+        try {
+            def futures = (1..callers).collect {
+                pool.submit({
+                    start.await()
+                    call()
+                } as Callable<Boolean>)
+            }
+            start.countDown()
+            return futures.collect { it.get() }
+        } finally {
+            pool.shutdownNow()
+        }
+    }
+
+    def """
+        #isGranted(known parking site, known user)
+        called by many threads without a token
+        authenticates once
+        """() {
+        given:
+        mockVerificationRoutes()
+
+        when:
+        def results = runInParallel(callers) { parkingAccess.isGranted(validParkingSite, validUser) }
+
+        then:
+        results.size() == callers
+        results.every()
+        mockServer.verify(
+                request()
+                        .withMethod("POST")
+                        .withPath("/v2/token-requests"),
+                exactly(1)
+        )
+
+        where:
+        callers = 32
+    }
+
+    def """
+        #isGranted(known parking site, known user)
+        token expired while many threads use it
+        re-authenticates exactly once
+        """() {
+        given:
+        mockVerificationRoutes()
+        authReturnsExpiredTokenOnceThenValidToken()
+        parkingAccess.authenticate() // every thread starts with the expired token
+
+        when:
+        def results = runInParallel(callers) { parkingAccess.isGranted(validParkingSite, validUser) }
+
+        then:
+        results.size() == callers
+        results.every()
+        // the initial (expired) token and a single re-authentication
+        mockServer.verify(
+                request()
+                        .withMethod("POST")
+                        .withPath("/v2/token-requests"),
+                exactly(2)
+        )
+
+        where:
+        callers = 32
+    }
+
+    def """
+        #isGranted(known parking site, known user)
+        called by many threads at the same time
+        sends one request
+        """() {
+        given:
+        parkingAccess.authenticate()
+        mockServer.when(
+                request()
+                        .withMethod("POST")
+                        .withPath("/v2/parking-sites/${validParkingSite}/access-requests")
+                        .withHeader("Authorization", tokenHeader)
+        ).respond(
+                response('{"granted":true}')
+                        .withStatusCode(HTTP_OK)
+                        .withDelay(MILLISECONDS, 500)
+        )
+
+        when:
+        def results = runInParallel(callers) { parkingAccess.isGranted(validParkingSite, validUser) }
+
+        then:
+        results.every()
+        mockServer.verify(
+                request()
+                        .withPath("/v2/parking-sites/${validParkingSite}/access-requests"),
+                exactly(1)
+        )
+
+        where:
+        callers = 16
+    }
+
+    def """
+        #listAccessRights()
+        called by many threads at the same time with the same parameters
+        sends one request and gives each thread its own list
+        """() {
+        given:
+        parkingAccess.authenticate()
+        mockServer.when(
+                request()
+                        .withMethod("GET")
+                        .withPath("/v2/access-rights")
+                        .withHeader("Authorization", tokenHeader)
+        ).respond(
+                response('''{"accessRights":[{"userIds":[{"id":"1234","type":"badgeNumber"}],"parkingSiteId":"parking-site","granted":true,
+                            "startTime":"2025-06-01T00:00:00Z","endTime":"2025-06-02T00:00:00Z"}]}''')
+                        .withStatusCode(HTTP_OK)
+                        .withDelay(MILLISECONDS, 500)
+        )
+
+        when:
+        def results = runInParallel(callers) { parkingAccess.listAccessRightsForToday() }
+
+        then:
+        results.every { it.size() == 1 }
+        results.collect { System.identityHashCode(it) }.unique().size() == callers
+        mockServer.verify(
+                request()
+                        .withPath("/v2/access-rights"),
+                exactly(1)
+        )
+
+        where:
+        callers = 16
+    }
+
+    def """
+        #listParkingSpots() called by many threads, then #isGranted()
+        with a request scheduler
+        sends one listing at a time, and lets the verification go first
+        """() {
+        given:
+        def scheduler = new RequestScheduler(2, 2, 1, 1)
+        def client = Configuration.Builder.create()
+                .withCredentials("dummy", "dummy")
+                .withRequestScheduler(scheduler)
+                .withHost("http://localhost:${mockServer.getLocalPort()}")
+                .build()
+                .toRestClient()
+        client.authenticate()
+        mockVerificationRoutes()
+        mockServer.when(
+                request()
+                        .withMethod("GET")
+                        .withPath("/v2/parking-sites/${validParkingSite}/parking-spots")
+                        .withHeader("Authorization", tokenHeader)
+        ).respond(
+                response('{"parkingSpots":[]}')
+                        .withStatusCode(HTTP_OK)
+                        .withDelay(MILLISECONDS, 300)
+        )
+
+        when:
+        def verification = new CountDownLatch(1)
+        def granted = false
+        Thread.start {
+            while (scheduler.getStats(LISTING).queuedCount == 0) {
+                Thread.sleep(1)
+            }
+            granted = client.isGranted(validParkingSite, validUser)
+            verification.countDown()
+        }
+        def results = runInParallel(callers) { client.listParkingSpots(validParkingSite) }
+
+        then:
+        results.every { it.empty }
+        verification.await(5, SECONDS)
+        granted
+        with(scheduler.getStats(LISTING)) {
+            callCount == callers
+            maxWaitTimeInMs >= 300 * (callers - 1) - 50
+            runningCount == 0
+        }
+        scheduler.getStats(INTERACTIVE).maxWaitTimeInMs < 300
+
+        where:
+        callers = 3
+    }
+}
@@ -0,0 +1,91 @@
+package net.commuty.parking.rest
+
+import net.commuty.parking.Configuration
+import net.commuty.parking.http.HttpRequestException
+import net.commuty.parking.http.HttpTransportFactory
+
+import static java.net.HttpURLConnection.HTTP_BAD_REQUEST
+import static java.net.HttpURLConnection.HTTP_OK
+import static net.commuty.parking.model.UserId.fromBadgeNumber
+import static org.mockserver.model.HttpRequest.request
+import static org.mockserver.model.HttpResponse.response
+import static org.mockserver.verify.VerificationTimes.once
+
+class ParkingAccessHttpClientTransportSpec extends RestWithAuthSpec {
+
+    def setup() {
+        // the base spec already started the mock server, only replace the client
+        parkingAccess = Configuration.Builder.create()
+                .withCredentials("dummy", "dummy")
+                .withRetryStrategy(5, 0)
+                .withTimeout(5000, 5000)
+                .withHttpClientTransport(10, 30000)
+                .withHost("http://localhost:${mockServer.getLocalPort()}")
+                .build().toRestClient()
+    }
+
+    def """
+        HttpTransportFactory
+        running on Java 11 or above
+        supports java.net.http.HttpClient
+        """() {
+        expect:
+        HttpTransportFactory.isHttpClientAvailable()
+    }
+
+    def """
+        #isGranted(known parking site, known user)
+        called several times
+        reuses the token and returns true
+        """() {
+        given:
+        def user = fromBadgeNumber("1234")
+        mockServer.when(
+                request()
+                        .withMethod("POST")
+                        .withPath("/v2/parking-sites/parking-site/access-requests")
+                        .withHeader("Authorization", tokenHeader)
+                        .withBody(mapper.write(new VerificationRequest(user)))
+        ).respond(
+                response('{"granted":true}')
+                        .withStatusCode(HTTP_OK)
+        )
+
+        when:
+        def results = (1..5).collect { parkingAccess.isGranted("parking-site", user) }
+
+        then:
+        results.every()
+        mockServer.verify(
+                request()
+                        .withMethod("POST")
+                        .withPath("/v2/token-requests"),
+                once()
+        )
+    }
+
+    def """
+        #listAccessRightsForToday()
+        api returns an error
+        throws an exception with the error response
+        """() {
+        given:
+        mockServer.when(
+                request()
+                        .withMethod("GET")
+                        .withPath("/v2/access-rights")
+                        .withHeader("Authorization", tokenHeader)
+        ).respond(
+                response('{"reason":"invalid", "message":"wrong date"}')
+                        .withStatusCode(HTTP_BAD_REQUEST)
+        )
+
+        when:
+        parkingAccess.listAccessRightsForToday()
+
+        then:
+        def exception = thrown(HttpRequestException)
+        exception.badRequest
+        exception.errorResponse.reason == "invalid"
+    }
+}
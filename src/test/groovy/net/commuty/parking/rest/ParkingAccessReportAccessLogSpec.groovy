@@ -127,6 +127,35 @@ class ParkingAccessReportAccessLogSpec extends RestWithAuthSpec {
         }
     }
 
+    def """
+        reportAccessLog(valid parkingSiteId, many valid access Logs)
+        payload is larger than the transport buffer
+        has a correct body
+        """() {
+        given:
+        mockAccessLogRoute()
+        def parkingSiteId = UUID.randomUUID().toString()
+        Collection<AccessLog> accesses = (1..5000).collect {
+            AccessLog.createInAccessLog(UserId.fromLicensePlate("1-ÄBC-${it}"), LocalDateTime.of(2019, 10, 10, 13, 37, 0))
+        }
+
+        when:
+        def logId = parkingAccess.reportAccessLog(parkingSiteId, accesses)
+
+        then:
+        logId == "a-valid-log-id"
+        def submittedRequests = mockServer.retrieveRecordedRequestsAndResponses(
+                request()
+                        .withMethod("POST")
+                        .withPath("/v2/parking-sites/${parkingSiteId}/access-logs")
+        )
+        with(reader.parseText(submittedRequests.first().httpRequest.bodyAsString)) {
+            it.accesses.size() == 5000
+            it.accesses.first().userId == "1-ÄBC-1"
+            it.accesses.last().userId == "1-ÄBC-5000"
+        }
+    }
+
     def """
         reportAccessLog(valid parkingSiteId, one valid access Log)
         has a correct body
@@ -0,0 +1,179 @@
+package net.commuty.parking.rest
+
+import net.commuty.parking.Configuration
+import net.commuty.parking.http.HttpRequestException
+import net.commuty.parking.model.AccessLog
+
+import java.time.LocalDateTime
+
+import static java.net.HttpURLConnection.*
+import static net.commuty.parking.model.UserId.fromBadgeNumber
+import static org.mockserver.matchers.Times.exactly as times
+import static org.mockserver.model.HttpRequest.request
+import static org.mockserver.model.HttpResponse.response
+import static org.mockserver.verify.VerificationTimes.exactly
+
+class ParkingAccessRetrySpec extends RestWithAuthSpec {
+
+    def validParkingSite = "parking-site"
+    def validUser = fromBadgeNumber("1234")
+
+    def verificationRequest() {
+        request()
+                .withMethod("POST")
+                .withPath("/v2/parking-sites/${validParkingSite}/access-requests")
+    }
+
+    def mockVerificationRoutes() {
+        mockServer.when(
+                verificationRequest().withHeader("Authorization", tokenHeader)
+        ).respond(
+                response('{"granted":true}')
+                        .withStatusCode(HTTP_OK)
+        )
+    }
+
+    def """
+        #isGranted(known parking site, known user)
+        api is throttling with a Retry-After
+        waits the requested time then retries
+        """() {
+        given:
+        mockServer.when(verificationRequest(), times(1)).respond(
+                response()
+                        .withStatusCode(429)
+                        .withHeader("Retry-After", "1")
+        )
+        mockVerificationRoutes()
+
+        when:
+        def start = System.nanoTime()
+        def isGranted = parkingAccess.isGranted(validParkingSite, validUser)
+        def elapsedInMs = (System.nanoTime() - start) / 1_000_000
+
+        then:
+        isGranted
+        elapsedInMs >= 1000
+        mockServer.verify(verificationRequest(), exactly(2))
+    }
+
+    def """
+        #isGranted(known parking site, known user)
+        api asks to wait for too long
+        throws the exception right away
+        """() {
+        given:
+        mockServer.when(verificationRequest()).respond(
+                response()
+                        .withStatusCode(HTTP_UNAVAILABLE)
+                        .withHeader("Retry-After", "3600")
+        )
+
+        when:
+        parkingAccess.isGranted(validParkingSite, validUser)
+
+        then:
+        def exception = thrown(HttpRequestException)
+        exception.serviceUnavailable
+        exception.retryAfterInMs == 3_600_000
+        mockServer.verify(verificationRequest(), exactly(1))
+    }
+
+    def """
+        #isGranted(known parking site, known user)
+        api rejects the query
+        does not retry
+        """() {
+        given:
+        mockServer.when(verificationRequest()).respond(
+                response()
+                        .withStatusCode(HTTP_BAD_REQUEST)
+        )
+
+        when:
+        parkingAccess.isGranted(validParkingSite, validUser)
+
+        then:
+        thrown(HttpRequestException)
+        mockServer.verify(verificationRequest(), exactly(1))
+    }
+
+    def """
+        #isGranted(known parking site, known user)
+        api is broken
+        retries as many times as configured
+        """() {
+        given:
+        mockServer.when(verificationRequest()).respond(
+                response()
+                        .withStatusCode(HTTP_INTERNAL_ERROR)
+        )
+
+        when:
+        parkingAccess.isGranted(validParkingSite, validUser)
+
+        then:
+        thrown(HttpRequestException)
+        mockServer.verify(verificationRequest(), exactly(6))
+    }
+
+    def """
+        #reportAccessLog(known parking site, one access log)
+        api fails once with an exponential backoff
+        retries and returns the log id
+        """() {
+        given:
+        def client = Configuration.Builder.create()
+                .withCredentials("dummy", "dummy")
+                .withExponentialBackoff(5, 10, 100)
+                .withHost("http://localhost:${mockServer.getLocalPort()}")
+                .build()
+                .toRestClient()
+        def path = "/v2/parking-sites/${validParkingSite}/access-logs"
+        mockServer.when(request().withMethod("POST").withPath(path), times(1)).respond(
+                response()
+                        .withStatusCode(HTTP_BAD_GATEWAY)
+        )
+        mockServer.when(request().withMethod("POST").withPath(path)).respond(
+                response('{"logId": "a-valid-log-id"}')
+                        .withStatusCode(HTTP_CREATED)
+        )
+
+        when:
+        def logId = client.reportAccessLog(validParkingSite, [AccessLog.createInAccessLog(validUser, LocalDateTime.now())])
+
+        then:
+        logId == "a-valid-log-id"
+        mockServer.verify(request().withMethod("POST").withPath(path), exactly(2))
+    }
+
+    def """
+        #isGranted(known parking site, known user)
+        api is broken and the retry budget is spent
+        stops retrying
+        """() {
+        given:
+        def client = Configuration.Builder.create()
+                .withCredentials("dummy", "dummy")
+                .withRetryStrategy(5, 0)
+                .withRetryBudget(0, 1)
+                .withHost("http://localhost:${mockServer.getLocalPort()}")
+                .build()
+                .toRestClient()
+        mockServer.when(verificationRequest()).respond(
+                response()
+                        .withStatusCode(HTTP_INTERNAL_ERROR)
+        )
+
+        when:
+        (1..3).each {
+            try {
+                client.isGranted(validParkingSite, validUser)
+            } catch (HttpRequestException ignored) {
+            }
+        }
+
+        then: "the budget allows 10 retries, that are spent by the first two calls"
+        mockServer.verify(verificationRequest(), exactly(3 + 10))
+    }
+}
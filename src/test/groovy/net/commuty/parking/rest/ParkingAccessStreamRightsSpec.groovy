@@ -0,0 +1,133 @@
+package net.commuty.parking.rest
+
+import net.commuty.parking.http.HttpRequestException
+
+import static java.net.HttpURLConnection.HTTP_BAD_REQUEST
+import static java.net.HttpURLConnection.HTTP_OK
+import static java.util.stream.Collectors.toList
+import static net.commuty.parking.model.UserIdType.EMAIL
+import static org.mockserver.model.HttpRequest.request
+import static org.mockserver.model.HttpResponse.response
+
+class ParkingAccessStreamRightsSpec extends RestWithAuthSpec {
+
+    def mockListRightRoute(String body) {
+        mockServer.when(
+                request()
+                        .withMethod("GET")
+                        .withPath("/v2/access-rights")
+                        .withHeader("Authorization", tokenHeader)
+        ).respond(
+                response()
+                        .withBody(body)
+                        .withStatusCode(HTTP_OK)
+        )
+    }
+
+    def accessRight(int index) {
+        return """
+            {
+              "userIds": [{"id": "user-${index}@commuty.net", "type": "email"}],
+              "parkingSiteId": "d59b4606-cd94-4d1c-9a30-cfc3a4bf70f4",
+              "granted": true,
+              "startTime": "2019-11-29T00:00:00+01:00",
+              "endTime": "2019-11-30T00:00:00+01:00",
+              "unknown": {"nested": ["value"]}
+            }"""
+    }
+
+    def """
+        streamAccessRights()
+        no results are expected
+        returns an empty stream
+        """() {
+        given:
+        mockListRightRoute('{"accessRights": []}')
+
+        when:
+        def accesses = parkingAccess.streamAccessRights(null, null, null, null, null, null, null, null).withCloseable { it.collect(toList()) }
+
+        then:
+        accesses.isEmpty()
+    }
+
+    def """
+        streamAccessRights()
+        many results are expected
+        returns every element parsed correctly
+        """() {
+        given:
+        def rights = (1..500).collect { accessRight(it) }.join(",")
+        mockListRightRoute("""{"before": {"accessRights": []}, "accessRights": [${rights}], "after": 1}""")
+
+        when:
+        def accesses = parkingAccess.streamAccessRights(null, true, null, null, null, null, null, null).withCloseable { it.collect(toList()) }
+
+        then:
+        accesses.size() == 500
+        accesses.first().userIds.first().type == EMAIL
+        accesses.first().userIds.first().id == "user-1@commuty.net"
+        accesses.last().userIds.first().id == "user-500@commuty.net"
+        accesses.every { it.granted }
+        mockServer.verify(
+                request()
+                        .withMethod("GET")
+                        .withPath("/v2/access-rights")
+                        .withQueryStringParameter("unreadOnly", "true")
+        )
+    }
+
+    def """
+        streamAccessRights()
+        null elements in the response
+        are skipped, and the elements after them are returned
+        """() {
+        given:
+        mockListRightRoute("""{"accessRights": [${accessRight(1)}, null, null, ${accessRight(2)}, null]}""")
+
+        when:
+        def accesses = parkingAccess.streamAccessRights(null, null, null, null, null, null, null, null).withCloseable { it.collect(toList()) }
+
+        then:
+        accesses*.userIds*.first()*.id == ["user-1@commuty.net", "user-2@commuty.net"]
+    }
+
+    def """
+        streamAccessRights()
+        token is invalid (expired) then refreshed
+        returns the elements
+        """() {
+        given:
+        mockListRightRoute("""{"accessRights": [${accessRight(1)}]}""")
+        authReturnsExpiredTokenOnceThenValidToken()
+
+        when:
+        def accesses = parkingAccess.streamAccessRights(null, null, null, null, null, null, null, null).withCloseable { it.collect(toList()) }
+
+        then:
+        accesses.size() == 1
+    }
+
+    def """
+        streamAccessRights()
+        api returns an error
+        throws an exception
+        """() {
+        given:
+        mockServer.when(
+                request()
+                        .withMethod("GET")
+                        .withPath("/v2/access-rights")
+                        .withHeader("Authorization", tokenHeader)
+        ).respond(
+                response()
+                        .withStatusCode(HTTP_BAD_REQUEST)
+        )
+
+        when:
+        parkingAccess.streamAccessRights(null, null, null, null, null, null, null, null)
+
+        then:
+        thrown(HttpRequestException)
+    }
+}
@@ -0,0 +1,126 @@
+package net.commuty.parking.rest
+
+import net.commuty.parking.Configuration
+import net.commuty.parking.http.HttpRequestException
+import net.commuty.parking.http.PartialVerificationException
+
+import java.util.concurrent.ExecutionException
+
+import static java.net.HttpURLConnection.HTTP_BAD_REQUEST
+import static java.net.HttpURLConnection.HTTP_OK
+import static net.commuty.parking.model.UserId.fromBadgeNumber
+import static org.mockserver.model.HttpRequest.request
+import static org.mockserver.model.HttpResponse.response
+import static org.mockserver.verify.VerificationTimes.exactly
+
+class ParkingAccessVerifyBulkSpec extends RestWithAuthSpec {
+
+    def validParkingSite = "parking-site"
+    def grantedUser = fromBadgeNumber("1234")
+    def deniedUser = fromBadgeNumber("5678")
+    def invalidUser = fromBadgeNumber("invalid")
+
+    def mockVerificationRoutes() {
+        [(grantedUser): '{"granted":true}', (deniedUser): '{"granted":false}'].each { user, body ->
+            mockServer.when(
+                    request()
+                            .withMethod("POST")
+                            .withPath("/v2/parking-sites/${validParkingSite}/access-requests")
+                            .withHeader("Authorization", tokenHeader)
+                            .withBody(mapper.write(new VerificationRequest(user)))
+            ).respond(
+                    response(body)
+                            .withStatusCode(HTTP_OK)
+            )
+        }
+        mockServer.when(
+                request()
+                        .withMethod("POST")
+                        .withPath("/v2/parking-sites/${validParkingSite}/access-requests")
+                        .withHeader("Authorization", tokenHeader)
+                        .withBody(mapper.write(new VerificationRequest(invalidUser)))
+        ).respond(
+                response()
+                        .withStatusCode(HTTP_BAD_REQUEST)
+        )
+    }
+
+    def """
+        #areGranted(known parking site, known users)
+        returns the answer of each user, once per user
+        """() {
+        given:
+        mockVerificationRoutes()
+
+        when:
+        def answers = parkingAccess.areGranted(validParkingSite, [grantedUser, deniedUser, grantedUser])
+
+        then:
+        answers == [(grantedUser): true, (deniedUser): false]
+        mockServer.verify(
+                request()
+                        .withPath("/v2/parking-sites/${validParkingSite}/access-requests")
+                        .withBody(mapper.write(new VerificationRequest(grantedUser))),
+                exactly(1)
+        )
+    }
+
+    def """
+        #areGranted(known parking site, no user)
+        returns no answer
+        """() {
+        expect:
+        parkingAccess.areGranted(validParkingSite, []).isEmpty()
+    }
+
+    def """
+        #areGranted(known parking site, known users and an invalid user)
+        verifies the other users then throws a PartialVerificationException
+        """() {
+        given:
+        mockVerificationRoutes()
+
+        when:
+        parkingAccess.areGranted(validParkingSite, [grantedUser, invalidUser, deniedUser])
+
+        then:
+        def exception = thrown(PartialVerificationException)
+        exception.verified == [(grantedUser): true, (deniedUser): false]
+        exception.failures.keySet() == [invalidUser] as Set
+        exception.failures[invalidUser] instanceof HttpRequestException
+    }
+
+    def """
+        #areGranted(known parking site, known users and an invalid user) with the non-blocking client
+        completes with a PartialVerificationException
+        """() {
+        given:
+        mockVerificationRoutes()
+        def asyncClient = Configuration.Builder.create()
+                .withCredentials("dummy", "dummy")
+                .withRetryStrategy(0, 0)
+                .withVerificationParallelism(2)
+                .withHost("http://localhost:${mockServer.getLocalPort()}")
+                .build()
+                .toAsyncClient()
+
+        when:
+        asyncClient.areGranted(validParkingSite, [grantedUser, invalidUser, deniedUser]).get()
+
+        then:
+        def exception = thrown(ExecutionException)
+        exception.cause instanceof PartialVerificationException
+        exception.cause.verified == [(grantedUser): true, (deniedUser): false]
+    }
+
+    def """
+        #areGranted(null parking site, known users)
+        throws an exception
+        """() {
+        when:
+        parkingAccess.areGranted(null, [grantedUser])
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+}
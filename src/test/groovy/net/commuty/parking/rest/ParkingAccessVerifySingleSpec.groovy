@@ -1,5 +1,7 @@
 package net.commuty.parking.rest
 
+import net.commuty.parking.Configuration
+import net.commuty.parking.VerdictCache
 import net.commuty.parking.http.CredentialsException
 import net.commuty.parking.http.HttpClientException
 import net.commuty.parking.http.HttpRequestException
@@ -11,6 +13,7 @@ import static net.commuty.parking.model.UserId.fromBadgeNumber
 import static net.commuty.parking.model.UserId.fromEmail
 import static org.mockserver.model.HttpRequest.request
 import static org.mockserver.model.HttpResponse.response
+import static org.mockserver.verify.VerificationTimes.exactly
 
 class ParkingAccessVerifySingleSpec extends RestWithAuthSpec {
 
@@ -234,4 +237,35 @@ class ParkingAccessVerifySingleSpec extends RestWithAuthSpec {
         then:
         thrown(HttpClientException)
     }
+
+    def """
+        #verifySingle(known parking site, known user) twice
+        with a verdict cache
+        calls the api once
+        """() {
+        given:
+        mockVerificationRoutes()
+        def cache = new VerdictCache(100, 60000, 60000)
+        def client = Configuration.Builder.create()
+                .withCredentials("dummy", "dummy")
+                .withVerdictCache(cache)
+                .withHost("http://localhost:${mockServer.getLocalPort()}")
+                .build()
+                .toRestClient()
+
+        when:
+        def first = client.isGranted(validParkingSite, validUser)
+        def second = client.isGranted(validParkingSite, validUser)
+
+        then:
+        first
+        second
+        cache.stats.hitCount == 1
+        cache.stats.missCount == 1
+        mockServer.verify(
+                request()
+                        .withPath("/v2/parking-sites/${validParkingSite}/access-requests"),
+                exactly(1)
+        )
+    }
 }
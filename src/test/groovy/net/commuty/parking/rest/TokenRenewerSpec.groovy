@@ -0,0 +1,165 @@
+package net.commuty.parking.rest
+
+import net.commuty.parking.Configuration
+import net.commuty.parking.http.CredentialsException
+import spock.lang.Specification
+
+import java.time.Clock
+import java.time.Instant
+import java.util.concurrent.CompletableFuture
+
+import static java.time.ZoneOffset.UTC
+
+class TokenRenewerSpec extends Specification {
+
+    Instant now = Instant.parse("2025-06-01T08:00:00Z")
+    Clock clock = Clock.fixed(now, UTC)
+
+    def jwt(Instant expiry) {
+        def claims = Base64.urlEncoder.withoutPadding().encodeToString("""{"exp":${expiry.epochSecond}}""".bytes)
+        return "header.${claims}.signature"
+    }
+
+    def renewal(int renewBeforeExpiryInMs, int jitterInMs) {
+        return Configuration.Builder.create()
+                .withCredentials("dummy", "dummy")
+                .withTokenRenewal(renewBeforeExpiryInMs, jitterInMs)
+                .build()
+                .tokenRenewal
+    }
+
+    def renewer(int renewBeforeExpiryInMs, int jitterInMs) {
+        return new TokenRenewer(new TokenHolder(), { CompletableFuture.completedFuture("new-token") }, renewal(renewBeforeExpiryInMs, jitterInMs),
+                clock, TokenRenewer.RETRY_DELAY.toMillis())
+    }
+
+    def failure(Exception exception) {
+        def future = new CompletableFuture<String>()
+        future.completeExceptionally(exception)
+        return future
+    }
+
+    def waitUntil(Closure<Boolean> condition) {
+        def deadline = System.currentTimeMillis() + 5000
+        while (!condition() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+        return condition()
+    }
+
+    def """
+        delayBeforeRenewalInMs(opaque token)
+        uses the default lifetime of 24 hours
+        """() {
+        expect:
+        renewer(60_000, 0).delayBeforeRenewalInMs("an-opaque-token") == 24 * 3600_000 - 60_000
+    }
+
+    def """
+        delayBeforeRenewalInMs(jwt token)
+        uses the expiry of the token
+        """() {
+        expect:
+        renewer(60_000, 0).delayBeforeRenewalInMs(jwt(now.plusSeconds(3600))) == 3600_000 - 60_000
+    }
+
+    def """
+        delayBeforeRenewalInMs(jwt token)
+        with jitter
+        renews earlier by at most the jitter
+        """() {
+        given:
+        def renewer = renewer(60_000, 10_000)
+
+        when:
+        def delays = (1..100).collect { renewer.delayBeforeRenewalInMs(jwt(now.plusSeconds(3600))) }
+
+        then:
+        delays.every { it <= 3600_000 - 60_000 && it >= 3600_000 - 70_000 }
+    }
+
+    def """
+        delayBeforeRenewalInMs(jwt token)
+        token expires before the margin, or already expired
+        renews after the minimum delay, not right away
+        """() {
+        expect:
+        renewer(60_000, 0).delayBeforeRenewalInMs(jwt(expiry)) == TokenRenewer.RETRY_DELAY.toMillis()
+
+        where:
+        expiry << [now.plusSeconds(30), now, now.minusSeconds(3600)]
+    }
+
+    def """
+        new token received
+        renews it in the background
+        """() {
+        given:
+        def tokens = new TokenHolder()
+        def renewed = new CompletableFuture<String>()
+        new TokenRenewer(tokens, { renewed.complete("renewed"); CompletableFuture.completedFuture("renewed") }, renewal(0, 0), clock, 0)
+
+        when:
+        tokens.set(jwt(now)) // already expired
+
+        then:
+        renewed.get() == "renewed"
+    }
+
+    def """
+        renewal rejected because of the credentials
+        is not attempted again
+        """() {
+        given:
+        def tokens = new TokenHolder()
+        def attempts = 0
+        def renewer = new TokenRenewer(tokens, { attempts++; failure(new CredentialsException()) }, renewal(0, 0), clock, 0)
+
+        when:
+        tokens.set(jwt(now))
+
+        then:
+        waitUntil { attempts == 1 && !renewer.isRenewalScheduled() }
+    }
+
+    def """
+        renewal failed for another reason
+        is attempted again later
+        """() {
+        given:
+        def tokens = new TokenHolder()
+        def attempts = 0
+        def renewer = new TokenRenewer(tokens, { attempts++; failure(new IllegalStateException("down")) }, renewal(0, 0), clock, 0)
+
+        when:
+        tokens.set(jwt(now))
+
+        then:
+        waitUntil { attempts == 1 && renewer.isRenewalScheduled() }
+
+        cleanup:
+        renewer.close()
+    }
+
+    def """
+        close()
+        cancels the next renewal, and ignores the next tokens
+        """() {
+        given:
+        def tokens = new TokenHolder()
+        def renewer = new TokenRenewer(tokens, { CompletableFuture.completedFuture("renewed") }, renewal(60_000, 0), clock, 0)
+
+        when:
+        tokens.set(jwt(now.plusSeconds(3600)))
+
+        then:
+        renewer.renewalScheduled
+
+        when:
+        renewer.close()
+        tokens.set(jwt(now.plusSeconds(7200)))
+
+        then:
+        !renewer.renewalScheduled
+    }
+}
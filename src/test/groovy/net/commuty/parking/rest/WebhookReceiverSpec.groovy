@@ -0,0 +1,153 @@
+package net.commuty.parking.rest
+
+import net.commuty.parking.WebhookListener
+import net.commuty.parking.model.WebhookMessage
+import spock.lang.Specification
+
+import static java.nio.charset.StandardCharsets.UTF_8
+
+class WebhookReceiverSpec extends Specification {
+
+    static final String MESSAGE = """
+        {
+            "id": "95b813e7-53bd-47e0-b0fb-c07feda96191",
+            "operation": "%s",
+            "accessRight": {
+                "userIds": [{
+                    "id": "anonymised.19884@commuty.net",
+                    "type": "email"
+                }],
+                "parkingSiteId": "d59b4606-cd94-4d1c-9a30-cfc3a4bf70f4",
+                "granted": true,
+                "startTime": "2019-11-29T00:00:00+01:00",
+                "endTime": "2019-11-30T00:00:00+01:00"
+            }
+        }
+    """
+
+    WebhookListener listener = Mock()
+    WebhookReceiver receiver = new WebhookReceiver(new InetSocketAddress("127.0.0.1", 0), "/webhook", listener)
+
+    def setup() {
+        receiver.start()
+    }
+
+    def cleanup() {
+        receiver.close()
+    }
+
+    def post(String body, String method = "POST", Map<String, String> headers = [:]) {
+        HttpURLConnection connection = new URL("http://127.0.0.1:${receiver.address.port}/webhook").openConnection() as HttpURLConnection
+        connection.requestMethod = method
+        headers.each { name, value -> connection.setRequestProperty(name, value) }
+        if (body != null) {
+            connection.doOutput = true
+            connection.outputStream.withStream { it.write(body.getBytes(UTF_8)) }
+        }
+        int code = connection.responseCode
+        def stream = code >= 400 ? connection.errorStream : connection.inputStream
+        return [code, stream?.getText("UTF-8") ?: ""]
+    }
+
+    def """
+        a message with the operation #operation
+        is dispatched to the listener
+        """() {
+        when:
+        def (code, body) = post(String.format(MESSAGE, operation))
+
+        then:
+        creates * listener.onCreate({ WebhookMessage message -> message.id.toString() == "95b813e7-53bd-47e0-b0fb-c07feda96191" })
+        removes * listener.onRemove({ WebhookMessage message -> message.accessRight.parkingSiteId == "d59b4606-cd94-4d1c-9a30-cfc3a4bf70f4" })
+        code == 200
+        body == ""
+        receiver.receivedCount == 1
+
+        where:
+        operation || creates | removes
+        "create"  || 1       | 0
+        "remove"  || 0       | 1
+    }
+
+    def """
+        a message that cannot be handled
+        is answered with an error
+        """() {
+        when:
+        def (code, body) = post(message, method)
+
+        then:
+        0 * listener._
+        code == expectedCode
+        body.contains("\"reason\":\"$reason\"")
+        receiver.rejectedCount == 1
+
+        where:
+        message                          | method || expectedCode | reason
+        "{ not json"                     | "POST" || 400          | WebhookReceiver.INVALID_MESSAGE
+        "{}"                             | "POST" || 400          | WebhookReceiver.INVALID_MESSAGE
+        String.format(MESSAGE, "update") | "POST" || 400          | WebhookReceiver.UNKNOWN_OPERATION
+        null                             | "GET"  || 405          | WebhookReceiver.METHOD_NOT_ALLOWED
+    }
+
+    def """
+        a message the listener fails to handle
+        is answered with 500, so that it is sent again
+        """() {
+        given:
+        listener.onCreate(_) >> { throw new IllegalStateException("database unavailable") }
+
+        when:
+        def (code, body) = post(String.format(MESSAGE, "create"))
+
+        then:
+        code == 500
+        body == '{"reason":"processingFailed","message":"Unable to handle the message 95b813e7-53bd-47e0-b0fb-c07feda96191"}'
+        receiver.failedCount == 1
+        receiver.receivedCount == 0
+    }
+
+    def """
+        a receiver with a shared secret
+        only dispatches the messages that hold the secret
+        """() {
+        given:
+        receiver.close()
+        receiver = new WebhookReceiver(new InetSocketAddress("127.0.0.1", 0), "/webhook", listener, null, "X-Webhook-Secret", "s3cr3t")
+        receiver.start()
+
+        when:
+        def (code, body) = post(String.format(MESSAGE, "create"), "POST", headers)
+
+        then:
+        dispatched * listener.onCreate(_)
+        code == expectedCode
+        body.contains("\"reason\":\"unauthorized\"") == (expectedCode == 401)
+        receiver.rejectedCount == (expectedCode == 401 ? 1 : 0)
+
+        where:
+        headers                            || expectedCode | dispatched
+        ["X-Webhook-Secret": "s3cr3t"]     || 200          | 1
+        ["X-Webhook-Secret": "s3cr3"]      || 401          | 0
+        ["X-Webhook-Secret": "s3cr3t-and"] || 401          | 0
+        [:]                                || 401          | 0
+    }
+
+    def """
+        create a receiver
+        with a secret but no header, or the opposite
+        throws an exception
+        """() {
+        when:
+        new WebhookReceiver(new InetSocketAddress("127.0.0.1", 0), "/webhook", listener, null, header, secret)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        header             | secret
+        null               | "s3cr3t"
+        "X-Webhook-Secret" | null
+        "X-Webhook-Secret" | ""
+    }
+}